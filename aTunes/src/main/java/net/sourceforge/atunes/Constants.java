@@ -85,12 +85,21 @@ public final class Constants {
 	/** File where repository information is stored. */
 	public static final String CACHE_REPOSITORY_NAME = "repository.dat";
 
+	/** File where progress of a repository read not finished is stored. */
+	public static final String CACHE_REPOSITORY_CHECKPOINT_NAME = "repository.checkpoint.dat";
+
+	/** File where changes made to repository after it was stored are logged. */
+	public static final String CACHE_REPOSITORY_JOURNAL_NAME = "repository.journal.dat";
+
 	/** The Constant CACHE_FAVORITES_NAME. */
 	public static final String CACHE_FAVORITES_NAME = "favorites.dat";
 
 	/** The Constant CACHE_STATISTICS_NAME. */
 	public static final String CACHE_STATISTICS_NAME = "statistics.dat";
 
+	/** File where plays counted after statistics were stored are logged. */
+	public static final String CACHE_STATISTICS_PLAY_LOG_NAME = "statistics.plays.dat";
+
 	/** Image size at audio object properties panel. */
 	public static final ImageSize IMAGE_SIZE = ImageSize.SIZE_90;
 
@@ -121,6 +130,9 @@ public final class Constants {
 	/** File where playlists are stored. */
 	public static final String PLAYLISTS_FILE = "playLists.dat";
 
+	/** File where playlists are stored as records, one per playlist changed. */
+	public static final String PLAYLISTS_RECORDS_FILE = "playLists.records.dat";
+
 	/** Directory where Mac OS X binaries are found (i.e. mplayer, lame, etc) */
 	public static final String MAC_TOOLS_DIR = "mac_tools";
 
@@ -28,6 +28,7 @@ import net.sourceforge.atunes.Constants;
 import net.sourceforge.atunes.model.IApplicationArguments;
 import net.sourceforge.atunes.model.ICommandHandler;
 import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IStateService;
 import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.StringUtils;
 
@@ -47,6 +48,15 @@ public final class Finisher {
 
 	private ICommandHandler commandHandler;
 
+	private IStateService stateService;
+
+	/**
+	 * @param stateService
+	 */
+	public void setStateService(final IStateService stateService) {
+		this.stateService = stateService;
+	}
+
 	/**
 	 * @param commandHandler
 	 */
@@ -93,6 +103,9 @@ public final class Finisher {
 			// Store all configuration and finish all active modules
 			this.applicationLifeCycleListeners.applicationFinish();
 
+			// Store caches whose store was delayed
+			this.stateService.flushCaches();
+
 			if (restart) {
 				Runtime.getRuntime().addShutdownHook(new Thread() {
 					@Override
@@ -203,7 +203,8 @@ public class GetSimilarArtistAudioObjectsBackgroundWorker extends
 		List<ILocalAudioObject> artistSongs = this.notAlreadySelectedSongsForArtist
 				.get(currentArtist.getName());
 		if (artistSongs == null) {
-			artistSongs = currentArtist.getAudioObjects();
+			artistSongs = new ArrayList<ILocalAudioObject>(
+					currentArtist.getAudioObjects());
 			this.notAlreadySelectedSongsForArtist.put(currentArtist.getName(),
 					artistSongs);
 		}
@@ -20,18 +20,28 @@
 
 package net.sourceforge.atunes.kernel.modules.playlist;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import net.sourceforge.atunes.Constants;
 import net.sourceforge.atunes.model.IListOfPlayLists;
 import net.sourceforge.atunes.model.IOSManager;
 import net.sourceforge.atunes.model.IObjectDataStore;
+import net.sourceforge.atunes.model.IPlayList;
+import net.sourceforge.atunes.utils.AppendedObjects;
+import net.sourceforge.atunes.utils.FileUtils;
 import net.sourceforge.atunes.utils.KryoSerializerService;
 import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.StringUtils;
 
 /**
- * Data store for playlist definition
+ * Data store for playlist definition. Each play list is stored as a record,
+ * and only records of play lists changed are appended when writing. Records
+ * file is written again with current play lists when too much of it is taken
+ * by records replaced
  * 
  * @author alex
  * 
@@ -43,6 +53,25 @@ public class PlayListObjectDataStore implements
 
 	private IOSManager osManager;
 
+	/**
+	 * Records replaced can always take up to this size
+	 */
+	private long minReplacedSize = 65536;
+
+	/**
+	 * Records file is written again when records replaced are bigger than
+	 * this percentage of size of current ones
+	 */
+	private int maxReplacedPercentage = 100;
+
+	/**
+	 * Checksums of play lists stored in records file, by position, or null
+	 * if records file must be written again
+	 */
+	private List<Long> storedChecksums;
+
+	private int storedSelectedPlayList;
+
 	/**
 	 * @param osManager
 	 */
@@ -58,8 +87,32 @@ public class PlayListObjectDataStore implements
 		this.kryoSerializerService = kryoSerializerService;
 	}
 
+	/**
+	 * @param minReplacedSize
+	 */
+	public void setMinReplacedSize(final long minReplacedSize) {
+		this.minReplacedSize = minReplacedSize;
+	}
+
+	/**
+	 * @param maxReplacedPercentage
+	 */
+	public void setMaxReplacedPercentage(final int maxReplacedPercentage) {
+		this.maxReplacedPercentage = maxReplacedPercentage;
+	}
+
 	@Override
-	public IListOfPlayLists read() {
+	public synchronized IListOfPlayLists read() {
+		this.storedChecksums = null;
+		File recordsFile = new File(getRecordsFileName());
+		if (recordsFile.exists()) {
+			IListOfPlayLists result = readRecords();
+			if (result != null) {
+				return result;
+			}
+			keepDamagedFile(recordsFile);
+		}
+		// Play lists stored by a previous version, or not stored yet
 		try {
 			return (ListOfPlayLists) this.kryoSerializerService
 					.readObjectFromFile(getFileName(), ListOfPlayLists.class);
@@ -70,16 +123,186 @@ public class PlayListObjectDataStore implements
 	}
 
 	/**
-	 * @return file name to store play list definition
+	 * Reads play lists from records file. If file was not completely read,
+	 * it will be written again with play lists read
+	 * 
+	 * @return play lists or null if no record could be read
+	 */
+	private IListOfPlayLists readRecords() {
+		AppendedObjects appendedObjects;
+		try {
+			appendedObjects = this.kryoSerializerService.readAppendedObjects(
+					getRecordsFileName(), PlayListRecord.class);
+		} catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+		List<Object> records = appendedObjects.getObjects();
+		if (records.isEmpty()) {
+			return null;
+		}
+
+		List<IPlayList> playLists = new ArrayList<IPlayList>();
+		int selectedPlayList = 0;
+		for (Object record : records) {
+			((PlayListRecord) record).applyTo(playLists);
+			selectedPlayList = ((PlayListRecord) record).selectedPlayList;
+		}
+		// Play lists whose record was not written are lost
+		playLists.removeAll(Collections.singleton(null));
+
+		if (appendedObjects.isComplete()) {
+			this.storedChecksums = getChecksums(playLists);
+			this.storedSelectedPlayList = selectedPlayList;
+		} else {
+			// Records appended now could not be read after damaged ones
+			Logger.error("Play lists records file is not complete");
+		}
+		ListOfPlayLists result = new ListOfPlayLists();
+		result.setPlayLists(playLists);
+		result.setSelectedPlayList(selectedPlayList);
+		return result;
+	}
+
+	/**
+	 * Renames a records file that can't be read, so it's not replaced when
+	 * play lists are written
+	 * 
+	 * @param recordsFile
+	 */
+	private void keepDamagedFile(final File recordsFile) {
+		File damagedFile = new File(StringUtils.getString(
+				recordsFile.getAbsolutePath(), ".damaged"));
+		Logger.error("Play lists records file can't be read, renamed to ",
+				damagedFile.getAbsolutePath());
+		FileUtils.replaceFile(recordsFile, damagedFile);
+	}
+
+	/**
+	 * @return file name where play lists were stored by previous versions
 	 */
 	private String getFileName() {
 		return StringUtils.getString(this.osManager.getUserConfigFolder(),
 				this.osManager.getFileSeparator(), Constants.PLAYLISTS_FILE);
 	}
 
+	/**
+	 * @return file name to store play list records
+	 */
+	private String getRecordsFileName() {
+		return StringUtils.getString(this.osManager.getUserConfigFolder(),
+				this.osManager.getFileSeparator(),
+				Constants.PLAYLISTS_RECORDS_FILE);
+	}
+
 	@Override
-	public void write(final IListOfPlayLists contents) {
-		this.kryoSerializerService.writeObjectToFile(getFileName(), contents);
+	public synchronized void write(final IListOfPlayLists contents) {
+		List<IPlayList> playLists = contents.getPlayLists();
+		List<Long> checksums = getChecksums(playLists);
+		if (!appendChanged(playLists, contents.getSelectedPlayList(),
+				checksums)) {
+			writeAll(playLists, contents.getSelectedPlayList(), checksums);
+		}
+	}
+
+	/**
+	 * Appends records of play lists changed since they were stored, if
+	 * records file doesn't need to be written again
+	 * 
+	 * @param playLists
+	 * @param selectedPlayList
+	 * @param checksums
+	 * @return if play lists are stored after appending records
+	 */
+	private boolean appendChanged(final List<IPlayList> playLists,
+			final int selectedPlayList, final List<Long> checksums) {
+		if (this.storedChecksums == null || isReplacedSizeTooBig()) {
+			return false;
+		}
+
+		List<PlayListRecord> records = new ArrayList<PlayListRecord>();
+		for (int i = 0; i < playLists.size(); i++) {
+			long checksum = checksums.get(i);
+			if (checksum == -1 || i >= this.storedChecksums.size()
+					|| checksum != this.storedChecksums.get(i)) {
+				records.add(new PlayListRecord(i, playLists.get(i), playLists
+						.size(), selectedPlayList));
+			}
+		}
+		if (records.isEmpty()
+				&& (playLists.size() != this.storedChecksums.size() || selectedPlayList != this.storedSelectedPlayList)) {
+			records.add(new PlayListRecord(-1, null, playLists.size(),
+					selectedPlayList));
+		}
+
+		for (PlayListRecord record : records) {
+			if (!this.kryoSerializerService.appendObjectToFile(
+					getRecordsFileName(), record)) {
+				this.storedChecksums = null;
+				return false;
+			}
+		}
+		Logger.debug(records.size(), " play list records appended");
+		this.storedChecksums = checksums;
+		this.storedSelectedPlayList = selectedPlayList;
+		return true;
+	}
+
+	/**
+	 * @return if records replaced by others take too much of records file
+	 */
+	private boolean isReplacedSizeTooBig() {
+		long currentSize = 0;
+		for (long checksum : this.storedChecksums) {
+			// Checksum contains size of record
+			currentSize += checksum != -1 ? (checksum >>> 32) + 8 : 0;
+		}
+		long replacedSize = new File(getRecordsFileName()).length()
+				- currentSize;
+		return replacedSize > this.minReplacedSize
+				&& replacedSize * 100 > currentSize * this.maxReplacedPercentage;
+	}
+
+	/**
+	 * Writes records file again with all play lists
+	 * 
+	 * @param playLists
+	 * @param selectedPlayList
+	 * @param checksums
+	 */
+	private void writeAll(final List<IPlayList> playLists,
+			final int selectedPlayList, final List<Long> checksums) {
+		List<PlayListRecord> records = new ArrayList<PlayListRecord>();
+		for (int i = 0; i < playLists.size(); i++) {
+			records.add(new PlayListRecord(i, playLists.get(i), playLists
+					.size(), selectedPlayList));
+		}
+		if (records.isEmpty()) {
+			records.add(new PlayListRecord(-1, null, 0, selectedPlayList));
+		}
+
+		this.storedChecksums = null;
+		if (this.kryoSerializerService.writeObjectsToFile(
+				getRecordsFileName(), records)) {
+			this.storedChecksums = checksums;
+			this.storedSelectedPlayList = selectedPlayList;
+			File previousFile = new File(getFileName());
+			if (previousFile.exists() && !previousFile.delete()) {
+				Logger.error("Could not delete ", previousFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * @param playLists
+	 * @return checksums of serialized play lists
+	 */
+	private List<Long> getChecksums(final List<IPlayList> playLists) {
+		List<Long> checksums = new ArrayList<Long>(playLists.size());
+		for (IPlayList playList : playLists) {
+			checksums.add(this.kryoSerializerService.getChecksum(playList));
+		}
+		return checksums;
 	}
 
 	@Override
@@ -55,10 +55,12 @@ public class PlayListPersistor {
 	}
 
 	/**
-	 * Called when play lists needs to be persisted
+	 * Called when play lists needs to be persisted. Store is requested from a
+	 * task once play lists stop changing, so state service copies them out of
+	 * the thread changing play lists
 	 */
 	void persistPlayLists(final IListOfPlayLists listOfPlayLists) {
-		// Wait 5 seconds and persist play list
+		// Wait 2 seconds and persist play list
 		if (this.persistPlayListFuture != null) {
 			this.persistPlayListFuture.cancel(false);
 		}
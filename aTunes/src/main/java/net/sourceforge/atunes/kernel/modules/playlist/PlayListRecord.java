@@ -0,0 +1,87 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.playlist;
+
+import java.io.Serializable;
+import java.util.List;
+
+import net.sourceforge.atunes.model.IPlayList;
+
+/**
+ * A play list stored in play lists records file, with the number of play
+ * lists and the selected one when it was stored
+ * 
+ * @author alex
+ * 
+ */
+class PlayListRecord implements Serializable {
+
+	private static final long serialVersionUID = 4319565718201842733L;
+
+	/**
+	 * Position of play list, or -1 if only number of play lists or selected
+	 * play list changed
+	 */
+	int index;
+
+	IPlayList playList;
+
+	int playListsCount;
+
+	int selectedPlayList;
+
+	/**
+	 * Default constructor for serialization
+	 */
+	PlayListRecord() {
+	}
+
+	/**
+	 * @param index
+	 * @param playList
+	 * @param playListsCount
+	 * @param selectedPlayList
+	 */
+	PlayListRecord(final int index, final IPlayList playList,
+			final int playListsCount, final int selectedPlayList) {
+		this.index = index;
+		this.playList = playList;
+		this.playListsCount = playListsCount;
+		this.selectedPlayList = selectedPlayList;
+	}
+
+	/**
+	 * Applies record to play lists read before
+	 * 
+	 * @param playLists
+	 */
+	void applyTo(final List<IPlayList> playLists) {
+		if (this.index >= 0) {
+			while (playLists.size() <= this.index) {
+				playLists.add(null);
+			}
+			playLists.set(this.index, this.playList);
+		}
+		while (playLists.size() > this.playListsCount) {
+			playLists.remove(playLists.size() - 1);
+		}
+	}
+}
@@ -21,24 +21,36 @@
 package net.sourceforge.atunes.kernel.modules.repository;
 
 import java.io.File;
-import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import net.sourceforge.atunes.kernel.modules.repository.ReadScheduler.ScheduledRead;
+import net.sourceforge.atunes.model.DirectoryFingerprint;
 import net.sourceforge.atunes.model.IFileManager;
 import net.sourceforge.atunes.model.ILocalAudioObject;
 import net.sourceforge.atunes.model.ILocalAudioObjectFactory;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
 import net.sourceforge.atunes.model.IRepository;
 import net.sourceforge.atunes.model.IRepositoryLoader;
 import net.sourceforge.atunes.model.IRepositoryLoaderListener;
 import net.sourceforge.atunes.model.IRepositoryTransaction;
 import net.sourceforge.atunes.model.IStateNavigation;
 import net.sourceforge.atunes.model.IUnknownObjectChecker;
-import net.sourceforge.atunes.utils.DirectoryFileFilter;
+import net.sourceforge.atunes.model.RepositoryLoadStage;
 import net.sourceforge.atunes.utils.FileUtils;
 import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.StringUtils;
 import net.sourceforge.atunes.utils.Timer;
 
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
 /**
  * Class for loading audio files into repository.
  */
@@ -48,7 +60,7 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	// Some attributes to speed up populate info process
 	private IRepositoryLoaderListener listener;
 	private List<File> folders;
-	private boolean interrupt;
+	private volatile boolean interrupt;
 	private IRepository oldRepository;
 	private IRepository repository;
 	private int filesLoaded;
@@ -56,8 +68,7 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	private int fastFirstChar;
 	private IStateNavigation stateNavigation;
 	private ILocalAudioObjectFactory localAudioObjectFactory;
-	private FileFilter validLocalAudioObjectFileFilter;
-	private DirectoryFileFilter directoryFileFilter;
+	private ILocalAudioObjectValidator localAudioObjectValidator;
 
 	private IRepositoryTransaction transaction;
 
@@ -65,6 +76,170 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 
 	private IFileManager fileManager;
 
+	/**
+	 * Number of threads used to read audio files. With 1 or less files are
+	 * read in loader thread
+	 */
+	private int readerThreads;
+
+	/**
+	 * Maximum number of files submitted to reader threads and not added yet
+	 * to repository, per reader thread
+	 */
+	private int pendingFilesPerThread;
+
+	/**
+	 * Executor used to list directories and read audio files when loading in
+	 * parallel
+	 */
+	private ExecutorService readerService;
+
+	/**
+	 * Audio files being read by reader threads, in the same order they were
+	 * found
+	 */
+	private LinkedList<PendingAudioFile> pendingAudioFiles;
+
+	/**
+	 * When refreshing, besides modification time of directories, check names
+	 * of their children before considering them unchanged
+	 */
+	private boolean verifyDirectoryEntries;
+
+	/**
+	 * If true audio files are first added to folder structure without reading
+	 * them, and then their tags are read and added to the rest of structures
+	 */
+	private boolean readTagsAfterFolderStructure;
+
+	/**
+	 * When reading tags after folder structure, number of files read between
+	 * progress notifications
+	 */
+	private int tagsReadPerProgressNotification;
+
+	/**
+	 * Maximum number of files read at the same time from each repository
+	 * folder. 0 for no limit other than number of reader threads
+	 */
+	private int readsPerFolder;
+
+	/**
+	 * Orders reads of audio files and limits reads from each repository
+	 * folder. When reading tags after folder structure keeps audio files added
+	 * to folder structure which tags are still not read
+	 */
+	private ReadScheduler readScheduler;
+
+	/**
+	 * Times and counters of current load
+	 */
+	private RepositoryLoadStatistics statistics;
+
+	/**
+	 * Number of files which tags took more time to read kept in statistics
+	 */
+	private int slowestFilesCount;
+
+	private RepositoryLoadMonitor repositoryLoadMonitor;
+
+	/**
+	 * Store of checkpoints. Only set for reads which must be resumed if not
+	 * finished
+	 */
+	private RepositoryCheckpointStore checkpointStore;
+
+	/**
+	 * Minimum seconds between checkpoints
+	 */
+	private int checkpointInterval;
+
+	/**
+	 * Progress of current load, stored periodically
+	 */
+	private RepositoryCheckpoint checkpoint;
+
+	/**
+	 * Progress of a previous load of the same folders not finished
+	 */
+	private RepositoryCheckpoint resumedCheckpoint;
+
+	private long lastCheckpointTime;
+
+	/**
+	 * @param checkpointStore
+	 */
+	public void setCheckpointStore(
+			final RepositoryCheckpointStore checkpointStore) {
+		this.checkpointStore = checkpointStore;
+	}
+
+	/**
+	 * @param checkpointInterval
+	 */
+	public void setCheckpointInterval(final int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * @param slowestFilesCount
+	 */
+	public void setSlowestFilesCount(final int slowestFilesCount) {
+		this.slowestFilesCount = slowestFilesCount;
+	}
+
+	/**
+	 * @param repositoryLoadMonitor
+	 */
+	public void setRepositoryLoadMonitor(
+			final RepositoryLoadMonitor repositoryLoadMonitor) {
+		this.repositoryLoadMonitor = repositoryLoadMonitor;
+	}
+
+	/**
+	 * @param readsPerFolder
+	 */
+	public void setReadsPerFolder(final int readsPerFolder) {
+		this.readsPerFolder = readsPerFolder;
+	}
+
+	/**
+	 * @param readerThreads
+	 */
+	public void setReaderThreads(final int readerThreads) {
+		this.readerThreads = readerThreads;
+	}
+
+	/**
+	 * @param pendingFilesPerThread
+	 */
+	public void setPendingFilesPerThread(final int pendingFilesPerThread) {
+		this.pendingFilesPerThread = pendingFilesPerThread;
+	}
+
+	/**
+	 * @param verifyDirectoryEntries
+	 */
+	public void setVerifyDirectoryEntries(final boolean verifyDirectoryEntries) {
+		this.verifyDirectoryEntries = verifyDirectoryEntries;
+	}
+
+	/**
+	 * @param readTagsAfterFolderStructure
+	 */
+	public void setReadTagsAfterFolderStructure(
+			final boolean readTagsAfterFolderStructure) {
+		this.readTagsAfterFolderStructure = readTagsAfterFolderStructure;
+	}
+
+	/**
+	 * @param tagsReadPerProgressNotification
+	 */
+	public void setTagsReadPerProgressNotification(
+			final int tagsReadPerProgressNotification) {
+		this.tagsReadPerProgressNotification = tagsReadPerProgressNotification;
+	}
+
 	/**
 	 * @param fileManager
 	 */
@@ -97,7 +272,6 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 		this.folders = folders;
 		this.oldRepository = oldRepository;
 		this.repository = repository;
-		this.directoryFileFilter = new DirectoryFileFilter();
 		if (this.listener == null) {
 			this.listener = new VoidRepositoryLoaderListener();
 		}
@@ -158,11 +332,18 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	}
 
 	/**
-	 * @param validLocalAudioObjectFileFilter
+	 * @param localAudioObjectValidator
 	 */
-	public void setValidLocalAudioObjectFileFilter(
-			final FileFilter validLocalAudioObjectFileFilter) {
-		this.validLocalAudioObjectFileFilter = validLocalAudioObjectFileFilter;
+	public void setLocalAudioObjectValidator(
+			final ILocalAudioObjectValidator localAudioObjectValidator) {
+		this.localAudioObjectValidator = localAudioObjectValidator;
+	}
+
+	/**
+	 * @return
+	 */
+	protected final ILocalAudioObjectValidator getLocalAudioObjectValidator() {
+		return this.localAudioObjectValidator;
 	}
 
 	/**
@@ -203,31 +384,166 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 		RepositoryFiller filler = new RepositoryFiller(this.repository,
 				this.stateNavigation, this.unknownObjectChecker,
 				this.fileManager);
-		for (File folder : this.folders) {
-			String fastRepositoryPath = FileUtils.getNormalizedPath(folder);
-			this.fastFirstChar = fastRepositoryPath.length() + 1;
+		if (this.readerThreads > 1) {
+			this.readerService = Executors.newFixedThreadPool(
+					this.readerThreads, new CustomizableThreadFactory(
+							"RepositoryReader-"));
+			this.pendingAudioFiles = new LinkedList<PendingAudioFile>();
+		}
+		this.readScheduler = new ReadScheduler(this.folders,
+				this.readsPerFolder);
+		startCheckpoints();
+		try {
+			for (File folder : this.folders) {
+				String fastRepositoryPath = FileUtils.getNormalizedPath(folder);
+				this.fastFirstChar = fastRepositoryPath.length() + 1;
+
+				if (folder.exists()) {
+					navigateDir(filler, folder, folder, listDirectory(folder));
+				}
+			}
+			// Add files still being read
+			addPendingAudioFiles(filler, 0);
+
+			if (this.readTagsAfterFolderStructure && !this.interrupt) {
+				notifyFolderStructureLoaded();
+				readTags(filler);
+			}
+			finishCheckpoints();
+		} finally {
+			if (this.readerService != null) {
+				this.readerService.shutdownNow();
+				this.readerService = null;
+				this.pendingAudioFiles = null;
+			}
+			this.readScheduler = null;
+		}
+	}
 
-			if (folder.exists()) {
-				navigateDir(filler, folder, folder);
+	/**
+	 * When reading without a previous repository, reads progress of a previous
+	 * load of the same folders not finished, and starts storing progress of
+	 * this load
+	 */
+	private void startCheckpoints() {
+		if (this.checkpointStore != null && this.oldRepository == null) {
+			this.resumedCheckpoint = this.checkpointStore.read(this.folders);
+			if (this.resumedCheckpoint != null) {
+				Logger.info(StringUtils.getString("Resuming repository read: ",
+						this.resumedCheckpoint.getAudioFilesCount(),
+						" files already read, last directory ",
+						this.resumedCheckpoint.getLastDirectory()));
 			}
+			this.checkpoint = new RepositoryCheckpoint(this.folders);
+			this.lastCheckpointTime = System.currentTimeMillis();
 		}
 	}
 
+	/**
+	 * Stores progress of this load if checkpoint interval has elapsed
+	 */
+	private void checkpointIfNeeded() {
+		if (this.checkpoint != null
+				&& System.currentTimeMillis() - this.lastCheckpointTime >= this.checkpointInterval * 1000L) {
+			this.checkpointStore.write(this.checkpoint);
+			this.lastCheckpointTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Removes checkpoint if load finished or stores last progress if it was
+	 * interrupted
+	 */
+	private void finishCheckpoints() {
+		if (this.checkpoint != null) {
+			if (this.interrupt) {
+				this.checkpointStore.write(this.checkpoint);
+			} else {
+				this.checkpointStore.delete();
+			}
+			this.checkpoint = null;
+			this.resumedCheckpoint = null;
+		}
+	}
+
+	/**
+	 * Reads contents of a directory. When refreshing, contents of directories
+	 * not changed since previous read are taken from their fingerprints, so
+	 * only modification time of directory is read from disk. The same applies
+	 * to directories already listed by a load being resumed
+	 * 
+	 * @param dir
+	 * @return
+	 */
+	private DirectoryContent listDirectory(final File dir) {
+		long start = System.nanoTime();
+		try {
+			DirectoryFingerprint fingerprint = null;
+			if (this.oldRepository != null) {
+				fingerprint = this.oldRepository
+						.getDirectoryFingerprint(FileUtils
+								.getNormalizedPath(dir));
+			} else if (this.resumedCheckpoint != null) {
+				fingerprint = this.resumedCheckpoint
+						.getDirectoryFingerprint(FileUtils
+								.getNormalizedPath(dir));
+			}
+			if (fingerprint != null && isUnchanged(dir, fingerprint)) {
+				return DirectoryContent.read(dir, fingerprint);
+			}
+			return DirectoryContent.read(dir, this.localAudioObjectValidator);
+		} finally {
+			this.statistics.add(RepositoryLoadStage.DIRECTORY_LISTING, start);
+		}
+	}
+
+	/**
+	 * Checks if a directory changed since its fingerprint was taken
+	 * 
+	 * @param dir
+	 * @param fingerprint
+	 * @return
+	 */
+	private boolean isUnchanged(final File dir,
+			final DirectoryFingerprint fingerprint) {
+		if (this.verifyDirectoryEntries) {
+			String[] children = dir.list();
+			return children != null
+					&& fingerprint.matches(dir.lastModified(), children);
+		}
+		return fingerprint.matches(dir.lastModified());
+	}
+
 	/**
 	 * Navigates directory loading audio files and directories
 	 * 
 	 * @param filler
 	 * @param relativeTo
 	 * @param dir
+	 * @param content
 	 */
 	private void navigateDir(final RepositoryFiller filler,
-			final File relativeTo, final File dir) {
+			final File relativeTo, final File dir,
+			final DirectoryContent content) {
 		if (!this.interrupt) {
+			if (content.getFingerprint() != null) {
+				this.repository.putDirectoryFingerprint(
+						FileUtils.getNormalizedPath(dir),
+						content.getFingerprint());
+				if (this.checkpoint != null) {
+					this.checkpoint.putDirectoryFingerprint(
+							FileUtils.getNormalizedPath(dir),
+							content.getFingerprint());
+				}
+			}
+
 			// Process directories
-			processDirectories(filler, dir, relativeTo);
+			processDirectories(filler, content.getDirectories(), relativeTo);
 
 			// Process audio files
-			processAudioFiles(filler, dir, relativeTo);
+			processAudioFiles(filler, dir, content.getAudioFiles(), relativeTo);
+
+			checkpointIfNeeded();
 		}
 	}
 
@@ -235,18 +551,33 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	 * Process directory
 	 * 
 	 * @param filler
-	 * @param dir
+	 * @param dirs
 	 * @param relativeTo
 	 */
 	private void processDirectories(final RepositoryFiller filler,
-			final File dir, final File relativeTo) {
-		// Directories
-		File[] dirs = dir.listFiles(this.directoryFileFilter);
-
-		// Process directories
-		if (dirs != null) {
+			final List<File> dirs, final File relativeTo) {
+		if (this.readerService == null) {
 			for (File directory : dirs) {
-				navigateDir(filler, relativeTo, directory);
+				navigateDir(filler, relativeTo, directory,
+						listDirectory(directory));
+			}
+		} else {
+			// List all directories in parallel but navigate them in order
+			List<Future<DirectoryContent>> contents = new ArrayList<Future<DirectoryContent>>(
+					dirs.size());
+			for (final File directory : dirs) {
+				contents.add(this.readerService
+						.submit(new Callable<DirectoryContent>() {
+							@Override
+							public DirectoryContent call() {
+								return listDirectory(directory);
+							}
+						}));
+			}
+			for (int i = 0; i < dirs.size() && !this.interrupt; i++) {
+				DirectoryContent content = getResult(contents.get(i));
+				navigateDir(filler, relativeTo, dirs.get(i),
+						content != null ? content : listDirectory(dirs.get(i)));
 			}
 		}
 	}
@@ -256,15 +587,14 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	 * 
 	 * @param filler
 	 * @param dir
+	 * @param audiofiles
 	 * @param relativeTo
 	 */
 	private void processAudioFiles(final RepositoryFiller filler,
-			final File dir, final File relativeTo) {
-		// Get audio files
-		File[] audiofiles = dir.listFiles(this.validLocalAudioObjectFileFilter);
-
+			final File dir, final List<ScannedAudioFile> audiofiles,
+			final File relativeTo) {
 		// Process audio files
-		if (audiofiles != null && audiofiles.length > 0) {
+		if (!audiofiles.isEmpty()) {
 			String pathToFile = FileUtils.getNormalizedPath(dir);
 			int lastChar = pathToFile.lastIndexOf('/') + 1;
 			final String relativePath;
@@ -274,19 +604,292 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 				relativePath = ".";
 			}
 
-			notifyCurrentPath(relativePath);
+			// Files read by reader threads are notified when added to
+			// repository, in the same order they were submitted
+			boolean submitted = this.readerService != null
+					&& !this.readTagsAfterFolderStructure;
+			if (!submitted) {
+				notifyCurrentPath(relativePath);
+			}
 
-			for (File audiofile : audiofiles) {
+			int filesLoadedBefore = this.filesLoaded;
+			List<ScannedAudioFile> sorted = ReadScheduler
+					.orderByName(audiofiles);
+			for (int i = 0; i < sorted.size(); i++) {
+				ScannedAudioFile audiofile = sorted.get(i);
 				if (!this.interrupt) {
-					processAudioFile(audiofile, filler, relativeTo,
-							relativePath);
+					if (this.readTagsAfterFolderStructure) {
+						addAudioFileToFolderStructure(audiofile, filler,
+								relativeTo, relativePath);
+					} else if (this.readerService == null) {
+						processAudioFile(readAudioFile(audiofile),
+								audiofile.getSize(), filler, relativeTo,
+								relativePath);
+					} else {
+						submitAudioFile(audiofile, filler, relativeTo,
+								relativePath, i == 0, i == sorted.size() - 1);
+					}
 				}
 			}
 
+			// Files only added to folder structure are notified later
+			if (!submitted && this.filesLoaded != filesLoadedBefore) {
+				notifyCurrentProgress();
+			}
+		}
+	}
+
+	/**
+	 * Adds an audio file to folder structure, so its tag is read later. If
+	 * file was already read and didn't change it's completely added
+	 * 
+	 * @param audiofile
+	 * @param filler
+	 * @param relativeTo
+	 * @param relativePath
+	 */
+	private void addAudioFileToFolderStructure(
+			final ScannedAudioFile audiofile, final RepositoryFiller filler,
+			final File relativeTo, final String relativePath) {
+		ILocalAudioObject audio = getUpToDateAudioFile(audiofile);
+		if (audio != null) {
+			processAudioFile(audio, audiofile.getSize(), filler, relativeTo,
+					relativePath);
+		} else {
+			audio = this.localAudioObjectFactory
+					.getUnreadLocalAudioObject(audiofile.getFile());
+			long start = System.nanoTime();
+			filler.addAudioFileToFolderStructure(audio, relativeTo,
+					relativePath, audiofile.getSize());
+			this.statistics.add(RepositoryLoadStage.FOLDER_STRUCTURE, start);
+			this.readScheduler.add(relativeTo, audio);
+		}
+	}
+
+	/**
+	 * Reads tags of audio files added to folder structure, in the order given
+	 * by read scheduler, and adds them to the rest of structures
+	 * 
+	 * @param filler
+	 */
+	private void readTags(final RepositoryFiller filler) {
+		final ReadScheduler scheduler = this.readScheduler;
+		for (final ScheduledRead read : this.readScheduler.getReadOrder()) {
+			if (this.interrupt) {
+				break;
+			}
+			if (this.readerService == null) {
+				addAudioFileTags(readLocalAudioObject(read.getAudio()), filler);
+				checkpointIfNeeded();
+			} else {
+				if (!acquireRead(read.getFolder())) {
+					break;
+				}
+				Future<ILocalAudioObject> future = this.readerService
+						.submit(new Callable<ILocalAudioObject>() {
+							@Override
+							public ILocalAudioObject call() {
+								ILocalAudioObject audio;
+								try {
+									audio = readLocalAudioObject(read.getAudio());
+								} finally {
+									scheduler.release(read.getFolder());
+								}
+								if (audio != null) {
+									fillAudioFileTags(audio, filler);
+								}
+								return audio;
+							}
+						});
+				this.pendingAudioFiles.add(new PendingAudioFile(future));
+				addPendingAudioFiles(filler, this.readerThreads
+						* Math.max(1, this.pendingFilesPerThread));
+				checkpointIfNeeded();
+			}
+		}
+		addPendingAudioFiles(filler, 0);
+	}
+
+	/**
+	 * Reads tag of an audio file added to folder structure. Called from loader
+	 * thread or from reader threads
+	 * 
+	 * @param audio
+	 * @return
+	 */
+	private ILocalAudioObject readLocalAudioObject(final ILocalAudioObject audio) {
+		long start = System.nanoTime();
+		ILocalAudioObject result = this.localAudioObjectFactory
+				.readLocalAudioObject(audio);
+		this.statistics.addTagReading(audio.getUrl(), start);
+		return result;
+	}
+
+	/**
+	 * Adds an audio file already in folder structure to the rest of
+	 * structures, once its tag has been read
+	 * 
+	 * @param audio
+	 * @param filler
+	 */
+	private void addAudioFileTags(final ILocalAudioObject audio,
+			final RepositoryFiller filler) {
+		fillAudioFileTags(audio, filler);
+		audioFileTagsAdded(audio);
+	}
+
+	/**
+	 * Adds an audio file already in folder structure to artist, genre and year
+	 * structures. Called from loader thread or from reader threads, as filler
+	 * can be used from several threads at the same time
+	 * 
+	 * @param audio
+	 * @param filler
+	 */
+	private void fillAudioFileTags(final ILocalAudioObject audio,
+			final RepositoryFiller filler) {
+		long start = System.nanoTime();
+		filler.addAudioFileTags(audio);
+		this.statistics.add(RepositoryLoadStage.REPOSITORY_FILLING, start);
+	}
+
+	/**
+	 * Notifies an audio file has been added to all structures. Called from
+	 * loader thread
+	 * 
+	 * @param audio
+	 */
+	private void audioFileTagsAdded(final ILocalAudioObject audio) {
+		notifyFileLoaded();
+		this.filesLoaded++;
+		if (this.checkpoint != null) {
+			this.checkpoint.addAudioFile(audio);
+		}
+		notifyCurrentAlbum(audio.getArtist(this.unknownObjectChecker),
+				audio.getAlbum(this.unknownObjectChecker));
+		if (this.tagsReadPerProgressNotification > 0
+				&& this.filesLoaded % this.tagsReadPerProgressNotification == 0) {
 			notifyCurrentProgress();
 		}
 	}
 
+	/**
+	 * Submits an audio file to be read by reader threads, and adds to
+	 * repository files already read if there are too many files pending
+	 * 
+	 * @param audiofile
+	 * @param filler
+	 * @param relativeTo
+	 * @param relativePath
+	 * @param firstInDirectory
+	 * @param lastInDirectory
+	 */
+	private void submitAudioFile(final ScannedAudioFile audiofile,
+			final RepositoryFiller filler, final File relativeTo,
+			final String relativePath, final boolean firstInDirectory,
+			final boolean lastInDirectory) {
+		final ReadScheduler scheduler = this.readScheduler;
+		if (!acquireRead(relativeTo)) {
+			return;
+		}
+		Future<ILocalAudioObject> future = this.readerService
+				.submit(new Callable<ILocalAudioObject>() {
+					@Override
+					public ILocalAudioObject call() {
+						try {
+							return readAudioFile(audiofile);
+						} finally {
+							scheduler.release(relativeTo);
+						}
+					}
+				});
+		this.pendingAudioFiles.add(new PendingAudioFile(future, audiofile
+				.getSize(), relativeTo, relativePath, firstInDirectory,
+				lastInDirectory));
+		addPendingAudioFiles(filler,
+				this.readerThreads * Math.max(1, this.pendingFilesPerThread));
+	}
+
+	/**
+	 * Waits until a file of given repository folder can be read. Called from
+	 * loader thread before submitting a read, so reader threads never wait for
+	 * other reads and can read files of other repository folders
+	 * 
+	 * @param folder
+	 * @return false if loader thread was interrupted while waiting
+	 */
+	private boolean acquireRead(final File folder) {
+		try {
+			this.readScheduler.acquire(folder);
+			return true;
+		} catch (InterruptedException e) {
+			// Keep interrupted status for code running this loader
+			Thread.currentThread().interrupt();
+			interruptLoad();
+			return false;
+		}
+	}
+
+	/**
+	 * Adds to repository files read by reader threads, in the same order they
+	 * were submitted, until no more than given number of files are pending.
+	 * This method is only called from loader thread, so files are notified in
+	 * order, and path and progress are notified when first and last file of
+	 * each directory are added. Files already in folder structure were added
+	 * to the rest of structures by reader threads
+	 * 
+	 * @param filler
+	 * @param maxPendingFiles
+	 */
+	private void addPendingAudioFiles(final RepositoryFiller filler,
+			final int maxPendingFiles) {
+		if (this.pendingAudioFiles != null) {
+			while (this.pendingAudioFiles.size() > maxPendingFiles
+					&& !this.interrupt) {
+				PendingAudioFile pending = this.pendingAudioFiles.poll();
+				ILocalAudioObject audio = getResult(pending.getFuture());
+				if (pending.isInFolderStructure()) {
+					if (audio != null) {
+						audioFileTagsAdded(audio);
+					}
+				} else {
+					if (pending.isFirstInDirectory()) {
+						notifyCurrentPath(pending.getRelativePath());
+					}
+					if (audio != null) {
+						processAudioFile(audio, pending.getSize(), filler,
+								pending.getRelativeTo(),
+								pending.getRelativePath());
+					}
+					if (pending.isLastInDirectory()) {
+						notifyCurrentProgress();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for result of a task executed by reader threads
+	 * 
+	 * @param <T>
+	 * @param future
+	 * @return result or null if task failed or was interrupted. If loader
+	 *         thread is interrupted load is interrupted too
+	 */
+	private <T> T getResult(final Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			// Keep interrupted status for code running this loader
+			Thread.currentThread().interrupt();
+			interruptLoad();
+		} catch (ExecutionException e) {
+			Logger.error(e.getCause());
+		}
+		return null;
+	}
+
 	/**
 	 * Actions needed to notify current relative path
 	 * 
@@ -299,6 +902,12 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	 */
 	protected abstract void notifyCurrentProgress();
 
+	/**
+	 * Actions needed to notify all audio files have been added to folder
+	 * structure, before reading their tags
+	 */
+	protected abstract void notifyFolderStructureLoaded();
+
 	/**
 	 * Actions needed to notify each file loaded
 	 */
@@ -313,41 +922,79 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	protected abstract void notifyCurrentAlbum(String artist, String album);
 
 	/**
-	 * Processes a single audio file
+	 * Reads a single audio file. Called from loader thread or from reader
+	 * threads
 	 * 
 	 * @param audiofile
-	 * @param filler
-	 * @param relativeTo
-	 * @param relativePath
+	 * @return
 	 */
-	private void processAudioFile(final File audiofile,
-			final RepositoryFiller filler, final File relativeTo,
-			final String relativePath) {
-		ILocalAudioObject audio = null;
-
-		// If a previous repository exists, check if file already was loaded.
-		// If so, compare modification date. If modification date is equal to
-		// last repository load
-		// don't read file again
+	private ILocalAudioObject readAudioFile(final ScannedAudioFile audiofile) {
+		ILocalAudioObject audio = getUpToDateAudioFile(audiofile);
+		if (audio != null) {
+			return audio;
+		}
+		long start = System.nanoTime();
+		audio = this.localAudioObjectFactory.getLocalAudioObject(audiofile
+				.getFile());
+		this.statistics.addTagReading(audiofile.getFile().getPath(), start);
+		return audio;
+	}
 
-		if (this.oldRepository == null) {
-			audio = this.localAudioObjectFactory.getLocalAudioObject(audiofile);
-		} else {
-			ILocalAudioObject oldAudioFile = this.oldRepository
-					.getFile(net.sourceforge.atunes.utils.FileUtils
-							.getPath(audiofile));
+	/**
+	 * If a previous repository exists, check if file already was loaded. If
+	 * so, compare modification date. If modification date is equal to last
+	 * repository load don't read file again. The same applies to files read by
+	 * a load being resumed
+	 * 
+	 * @param audiofile
+	 * @return audio file of previous repository or null if must be read
+	 */
+	private ILocalAudioObject getUpToDateAudioFile(
+			final ScannedAudioFile audiofile) {
+		if (this.oldRepository == null && this.resumedCheckpoint == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		try {
+			String path = net.sourceforge.atunes.utils.FileUtils
+					.getPath(audiofile.getFile());
+			ILocalAudioObject oldAudioFile = this.oldRepository != null ? this.oldRepository
+					.getFile(path) : this.resumedCheckpoint.getAudioFile(path);
 			if (oldAudioFile != null
-					&& this.fileManager.isUpToDate(oldAudioFile)) {
-				audio = oldAudioFile;
-			} else {
-				audio = this.localAudioObjectFactory
-						.getLocalAudioObject(audiofile);
+					&& this.fileManager.isUpToDate(oldAudioFile,
+							audiofile.getLastModified())) {
+				return oldAudioFile;
 			}
+			return null;
+		} finally {
+			this.statistics.add(RepositoryLoadStage.UP_TO_DATE_CHECK, start);
 		}
+	}
 
+	/**
+	 * Adds a single audio file to repository
+	 * 
+	 * @param audio
+	 * @param sizeInBytes
+	 * @param filler
+	 * @param relativeTo
+	 * @param relativePath
+	 */
+	private void processAudioFile(final ILocalAudioObject audio,
+			final long sizeInBytes, final RepositoryFiller filler,
+			final File relativeTo, final String relativePath) {
 		notifyFileLoaded();
 		this.filesLoaded++;
-		filler.addAudioFile(audio, relativeTo, relativePath);
+		long start = System.nanoTime();
+		filler.addAudioFileToFolderStructure(audio, relativeTo, relativePath,
+				sizeInBytes);
+		this.statistics.add(RepositoryLoadStage.FOLDER_STRUCTURE, start);
+		start = System.nanoTime();
+		filler.addAudioFileTags(audio);
+		this.statistics.add(RepositoryLoadStage.REPOSITORY_FILLING, start);
+		if (this.checkpoint != null) {
+			this.checkpoint.addAudioFile(audio);
+		}
 		notifyCurrentAlbum(audio.getArtist(this.unknownObjectChecker),
 				audio.getAlbum(this.unknownObjectChecker));
 	}
@@ -370,11 +1017,16 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 		Logger.info("Starting repository read");
 		Timer timer = new Timer();
 		timer.start();
+		this.statistics = new RepositoryLoadStatistics(this.slowestFilesCount);
+		if (this.repositoryLoadMonitor != null) {
+			this.repositoryLoadMonitor.loadStarted(this.statistics);
+		}
 		if (!this.folders.isEmpty()) {
 			loadRepository();
 		} else {
 			Logger.error("No folders selected for repository");
 		}
+		this.statistics.finish();
 		if (!this.interrupt) {
 			double time = timer.stop();
 			long files = this.repository.countFiles();
@@ -383,10 +1035,36 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 					files, " files, ", time, " seconds, ",
 					StringUtils.toString(averageFileTime, 4),
 					" seconds / file)"));
+			logStatistics();
+			this.listener.notifyLoadStatistics(this.statistics);
 			notifyFinish();
 		}
 	}
 
+	/**
+	 * Logs time spent in each stage of load
+	 */
+	private void logStatistics() {
+		for (RepositoryLoadStage stage : RepositoryLoadStage.values()) {
+			Logger.info(StringUtils.getString(stage, ": ",
+					this.statistics.getTime(stage), " ms, ",
+					this.statistics.getCount(stage), " times"));
+		}
+		Map<String, Integer> counts = this.statistics
+				.getTagReadingCountByFormat();
+		for (Map.Entry<String, Long> entry : this.statistics
+				.getTagReadingTimeByFormat().entrySet()) {
+			Logger.info(StringUtils.getString("Tags read from ",
+					entry.getKey(), " files: ", entry.getValue(), " ms, ",
+					counts.get(entry.getKey()), " files"));
+		}
+		for (Map.Entry<String, Long> entry : this.statistics.getSlowestFiles()
+				.entrySet()) {
+			Logger.debug("Slow tag read: ", entry.getKey(), " ",
+					entry.getValue(), " ms");
+		}
+	}
+
 	/**
 	 * @return the oldRepository
 	 */
@@ -394,4 +1072,79 @@ public abstract class AbstractRepositoryLoader implements IRepositoryLoader,
 	public IRepository getOldRepository() {
 		return this.oldRepository;
 	}
+
+	/**
+	 * An audio file submitted to reader threads: a new file to be added to
+	 * repository, or a file already in folder structure which tag is being
+	 * read
+	 */
+	private static final class PendingAudioFile {
+
+		private final Future<ILocalAudioObject> future;
+
+		private final long size;
+
+		private final File relativeTo;
+
+		private final String relativePath;
+
+		private final boolean firstInDirectory;
+
+		private final boolean lastInDirectory;
+
+		/**
+		 * @param future
+		 * @param size
+		 * @param relativeTo
+		 * @param relativePath
+		 * @param firstInDirectory
+		 * @param lastInDirectory
+		 */
+		PendingAudioFile(final Future<ILocalAudioObject> future,
+				final long size, final File relativeTo,
+				final String relativePath, final boolean firstInDirectory,
+				final boolean lastInDirectory) {
+			this.future = future;
+			this.size = size;
+			this.relativeTo = relativeTo;
+			this.relativePath = relativePath;
+			this.firstInDirectory = firstInDirectory;
+			this.lastInDirectory = lastInDirectory;
+		}
+
+		/**
+		 * @param future
+		 */
+		PendingAudioFile(final Future<ILocalAudioObject> future) {
+			this(future, 0, null, null, false, false);
+		}
+
+		boolean isInFolderStructure() {
+			return this.relativeTo == null;
+		}
+
+		Future<ILocalAudioObject> getFuture() {
+			return this.future;
+		}
+
+		long getSize() {
+			return this.size;
+		}
+
+		File getRelativeTo() {
+			return this.relativeTo;
+		}
+
+		String getRelativePath() {
+			return this.relativePath;
+		}
+
+		boolean isFirstInDirectory() {
+			return this.firstInDirectory;
+		}
+
+		boolean isLastInDirectory() {
+			return this.lastInDirectory;
+		}
+	}
 }
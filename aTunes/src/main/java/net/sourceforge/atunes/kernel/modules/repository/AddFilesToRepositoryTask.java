@@ -33,7 +33,6 @@ import net.sourceforge.atunes.model.ILocalAudioObject;
 import net.sourceforge.atunes.model.INavigationHandler;
 import net.sourceforge.atunes.model.IPlayListHandler;
 import net.sourceforge.atunes.model.IRepository;
-import net.sourceforge.atunes.model.IRepositoryHandler;
 import net.sourceforge.atunes.model.ITaskService;
 import net.sourceforge.atunes.utils.I18nUtils;
 import net.sourceforge.atunes.utils.Logger;
@@ -50,7 +49,7 @@ public class AddFilesToRepositoryTask {
 
 	private IFrame frame;
 
-	private IRepositoryHandler repositoryHandler;
+	private RepositoryHandler repositoryHandler;
 
 	private IBackgroundWorkerFactory backgroundWorkerFactory;
 
@@ -101,7 +100,7 @@ public class AddFilesToRepositoryTask {
 	/**
 	 * @param repositoryHandler
 	 */
-	public void setRepositoryHandler(final IRepositoryHandler repositoryHandler) {
+	public void setRepositoryHandler(final RepositoryHandler repositoryHandler) {
 		this.repositoryHandler = repositoryHandler;
 	}
 
@@ -115,11 +114,9 @@ public class AddFilesToRepositoryTask {
 	/**
 	 * Adds files to repository and refreshes it
 	 * 
-	 * @param repository
 	 * @param files
 	 */
-	public void execute(final IRepository repository,
-			final List<ILocalAudioObject> files) {
+	public void execute(final List<ILocalAudioObject> files) {
 		IBackgroundWorker<Void, Void> worker = this.backgroundWorkerFactory
 				.getWorker();
 		worker.setActionsBeforeBackgroundStarts(new Runnable() {
@@ -134,8 +131,7 @@ public class AddFilesToRepositoryTask {
 			@Override
 			public Void call() {
 				AddFilesToRepositoryTask.this.beanFactory.getBean(
-						RepositoryAddService.class).addFilesToRepository(
-						repository, files);
+						RepositoryAddService.class).addFilesToRepository(files);
 				return null;
 			}
 		});
@@ -143,7 +139,8 @@ public class AddFilesToRepositoryTask {
 
 			@Override
 			public void call(final Void result) {
-				processResult(repository, files);
+				processResult(AddFilesToRepositoryTask.this.repositoryHandler
+						.getRepository(), files);
 			}
 		});
 		worker.execute(this.taskService);
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
 
 import net.sourceforge.atunes.model.IAlbum;
@@ -51,6 +52,12 @@ public class Album implements IAlbum {
 	/** List of songs of this album. */
 	private transient Set<ILocalAudioObject> synchronizedAudioFiles;
 
+	/**
+	 * Immutable list of songs returned to callers, built when requested after
+	 * a change and kept until next change
+	 */
+	private transient volatile List<ILocalAudioObject> audioObjectsSnapshot;
+
 	private static TrackNumberComparator comparator = new TrackNumberComparator();
 
 	/**
@@ -71,11 +78,12 @@ public class Album implements IAlbum {
 	}
 
 	/**
-	 * Returns audio files
+	 * Returns audio files. Synchronized so threads adding first files of a
+	 * new album use the same set
 	 * 
 	 * @return
 	 */
-	private Set<ILocalAudioObject> getAudioFiles() {
+	private synchronized Set<ILocalAudioObject> getAudioFiles() {
 		// Need to use a synchronized set to avoid concurrency problems
 		// However as kryo serialization is tricky with synchronized collections
 		// use a non-synchronized collection with kryo
@@ -100,7 +108,12 @@ public class Album implements IAlbum {
 	 */
 	@Override
 	public void addAudioFile(final ILocalAudioObject file) {
-		getAudioFiles().add(file);
+		Set<ILocalAudioObject> files = getAudioFiles();
+		synchronized (files) {
+			files.add(file);
+			this.audioObjectsSnapshot = null;
+		}
+		audioObjectsChanged();
 	}
 
 	/**
@@ -136,13 +149,27 @@ public class Album implements IAlbum {
 	}
 
 	/**
-	 * Returns a list of songs of this album.
+	 * Returns a list of songs of this album. List can't be modified, and is
+	 * shared by all callers until album changes
 	 * 
 	 * @return the audio objects
 	 */
 	@Override
 	public List<ILocalAudioObject> getAudioObjects() {
-		return new ArrayList<ILocalAudioObject>(getAudioFiles());
+		List<ILocalAudioObject> snapshot = this.audioObjectsSnapshot;
+		if (snapshot == null) {
+			Set<ILocalAudioObject> files = getAudioFiles();
+			synchronized (files) {
+				snapshot = this.audioObjectsSnapshot;
+				if (snapshot == null) {
+					snapshot = Collections
+							.unmodifiableList(new ArrayList<ILocalAudioObject>(
+									files));
+					this.audioObjectsSnapshot = snapshot;
+				}
+			}
+		}
+		return snapshot;
 	}
 
 	/**
@@ -163,7 +190,22 @@ public class Album implements IAlbum {
 	 */
 	@Override
 	public void removeAudioFile(final ILocalAudioObject file) {
-		getAudioFiles().remove(file);
+		Set<ILocalAudioObject> files = getAudioFiles();
+		synchronized (files) {
+			files.remove(file);
+			this.audioObjectsSnapshot = null;
+		}
+		audioObjectsChanged();
+	}
+
+	/**
+	 * Discards list of songs of artist. Called out of lock of this album, as
+	 * artist gets lists of its albums while holding its own lock
+	 */
+	private void audioObjectsChanged() {
+		if (this.artist instanceof Artist) {
+			((Artist) this.artist).audioObjectsChanged();
+		}
 	}
 
 	/**
@@ -236,4 +278,19 @@ public class Album implements IAlbum {
 		return getAudioFiles().size();
 	}
 
+	/**
+	 * Returns a copy of this album for given artist, sharing its songs
+	 * 
+	 * @param artistOfCopy
+	 * @return
+	 */
+	Album copy(final IArtist artistOfCopy) {
+		Album copy = new Album(artistOfCopy, this.name);
+		Set<ILocalAudioObject> files = getAudioFiles();
+		synchronized (files) {
+			copy.audioFiles = new TreeSet<ILocalAudioObject>(
+					(SortedSet<ILocalAudioObject>) this.audioFiles);
+		}
+		return copy;
+	}
 }
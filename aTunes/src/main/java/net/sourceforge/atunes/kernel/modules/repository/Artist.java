@@ -21,6 +21,7 @@
 package net.sourceforge.atunes.kernel.modules.repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -35,7 +36,7 @@ import net.sourceforge.atunes.model.ILocalAudioObject;
  * @author fleax
  */
 
-public class Artist implements IArtist {
+public class Artist implements IArtist, VersionedNode {
 
     /**
 	 * 
@@ -48,6 +49,17 @@ public class Artist implements IArtist {
     /** List of IAlbum objects, indexed by name. */
     Map<String, IAlbum> albums;
 
+    /**
+     * Immutable list of songs of all albums returned to callers, built when
+     * requested after a change and kept until next change
+     */
+    private transient volatile List<ILocalAudioObject> audioObjectsSnapshot;
+
+    /**
+     * Version of repository this artist was created or copied for
+     */
+    private transient RepositoryVersion version;
+
     /**
      * Default constructor for serialization
      */
@@ -62,6 +74,8 @@ public class Artist implements IArtist {
      */
     public Artist(final String name) {
 	this.name = name;
+	// Created here so several threads can add albums to a new artist
+	this.albums = new ConcurrentHashMap<String, IAlbum>();
     }
 
     /**
@@ -73,6 +87,7 @@ public class Artist implements IArtist {
     @Override
     public void addAlbum(final IAlbum album) {
 	getAlbums().put(album.getName(), album);
+	audioObjectsChanged();
     }
 
     /**
@@ -124,17 +139,36 @@ public class Artist implements IArtist {
     }
 
     /**
-     * Returns a list of songs of this artist (all songs of all albums).
+     * Returns a list of songs of this artist (all songs of all albums). List
+     * can't be modified, and is shared by all callers until artist or any of
+     * its albums change
      * 
      * @return the audio objects
      */
     @Override
     public List<ILocalAudioObject> getAudioObjects() {
-	List<ILocalAudioObject> songs = new ArrayList<ILocalAudioObject>();
-	for (IAlbum album : getAlbums().values()) {
-	    songs.addAll(album.getAudioObjects());
+	List<ILocalAudioObject> snapshot = audioObjectsSnapshot;
+	if (snapshot == null) {
+	    synchronized (this) {
+		snapshot = audioObjectsSnapshot;
+		if (snapshot == null) {
+		    List<ILocalAudioObject> songs = new ArrayList<ILocalAudioObject>();
+		    for (IAlbum album : getAlbums().values()) {
+			songs.addAll(album.getAudioObjects());
+		    }
+		    snapshot = Collections.unmodifiableList(songs);
+		    audioObjectsSnapshot = snapshot;
+		}
+	    }
 	}
-	return songs;
+	return snapshot;
+    }
+
+    /**
+     * Discards list of songs, called when an album of this artist changes
+     */
+    synchronized void audioObjectsChanged() {
+	audioObjectsSnapshot = null;
     }
 
     /**
@@ -161,6 +195,7 @@ public class Artist implements IArtist {
     @Override
     public void removeAlbum(final IAlbum alb) {
 	getAlbums().remove(alb.getName());
+	audioObjectsChanged();
     }
 
     /**
@@ -205,4 +240,31 @@ public class Artist implements IArtist {
 	}
 	return size;
     }
+
+    @Override
+    public RepositoryVersion getVersion() {
+	return this.version;
+    }
+
+    @Override
+    public void setVersion(final RepositoryVersion version) {
+	this.version = version;
+    }
+
+    /**
+     * Returns a copy of this artist with copies of its albums, sharing songs
+     * 
+     * @param versionOfCopy
+     * @return
+     */
+    @Override
+    public Artist copy(final RepositoryVersion versionOfCopy) {
+	Artist copy = new Artist(this.name);
+	copy.version = versionOfCopy;
+	for (Map.Entry<String, IAlbum> album : getAlbums().entrySet()) {
+	    copy.albums.put(album.getKey(),
+		    ((Album) album.getValue()).copy(copy));
+	}
+	return copy;
+    }
 }
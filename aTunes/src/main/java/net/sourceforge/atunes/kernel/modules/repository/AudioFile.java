@@ -21,6 +21,7 @@
 package net.sourceforge.atunes.kernel.modules.repository;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 
 import net.sourceforge.atunes.model.ILocalAudioObject;
@@ -32,6 +33,8 @@ import net.sourceforge.atunes.utils.TimeUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.joda.time.base.BaseDateTime;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+
 /**
  * AudioFile class initializes audio files so that tags and audio information
  * can be retrieved by the tagging library. Provides information about bitrate,
@@ -39,11 +42,16 @@ import org.joda.time.base.BaseDateTime;
  * 
  * @author fleax
  */
+@DefaultSerializer(AudioFileSerializer.class)
 public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	private static final long serialVersionUID = -1139001443603556703L;
 
-	ITag tag;
+	/**
+	 * Tag, or null if it's released and must be read from its record. Volatile
+	 * so a tag read by any thread is safely published to others
+	 */
+	volatile ITag tag;
 	int duration;
 	long bitrate;
 	int frequency;
@@ -52,8 +60,26 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	private transient long fileSize;
 
-	/** The file on disk. */
-	String filePath;
+	/**
+	 * Records of repository cache where tag is stored, or null if tag has
+	 * changed since it was stored
+	 */
+	private transient TrackRecords trackRecords;
+
+	/** Index of record where tag is stored */
+	private transient int trackRecord;
+
+	/** If tag must be read from its record before using it */
+	transient boolean tagPending;
+
+	/**
+	 * Folder of file on disk, including last separator. Shared with other
+	 * files of the same folder
+	 */
+	String folderPath;
+
+	/** Name of file on disk. */
+	String fileName;
 
 	/**
 	 * Default constructor for serialization
@@ -68,7 +94,7 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 *            the file name
 	 */
 	public AudioFile(final String fileName) {
-		this.filePath = fileName;
+		setPath(fileName);
 	}
 
 	@Override
@@ -76,23 +102,27 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 		if (!(o instanceof AudioFile)) {
 			return false;
 		}
-		return ((AudioFile) o).getUrl().equals(getUrl());
+		AudioFile other = (AudioFile) o;
+		return other.fileName.equals(this.fileName)
+				&& other.folderPath.equals(this.folderPath);
 	}
 
 	@Override
 	public String getAlbum(final IUnknownObjectChecker checker) {
-		if (this.tag != null && this.tag.getAlbum() != null
-				&& !this.tag.getAlbum().isEmpty()) {
-			return this.tag.getAlbum();
+		ITag tag = getTag();
+		if (tag != null && tag.getAlbum() != null
+				&& !tag.getAlbum().isEmpty()) {
+			return tag.getAlbum();
 		}
 		return checker != null ? checker.getUnknownAlbum() : null;
 	}
 
 	@Override
 	public String getAlbumArtist(final IUnknownObjectChecker checker) {
-		if (this.tag != null && this.tag.getAlbumArtist() != null
-				&& !this.tag.getAlbumArtist().isEmpty()) {
-			return this.tag.getAlbumArtist();
+		ITag tag = getTag();
+		if (tag != null && tag.getAlbumArtist() != null
+				&& !tag.getAlbumArtist().isEmpty()) {
+			return tag.getAlbumArtist();
 		}
 		return checker != null ? checker.getUnknownArtist() : null;
 	}
@@ -106,9 +136,10 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	@Override
 	public String getArtist(final IUnknownObjectChecker checker) {
-		if (this.tag != null && this.tag.getArtist() != null
-				&& !this.tag.getArtist().isEmpty()) {
-			return this.tag.getArtist();
+		ITag tag = getTag();
+		if (tag != null && tag.getArtist() != null
+				&& !tag.getArtist().isEmpty()) {
+			return tag.getArtist();
 		}
 		return checker != null ? checker.getUnknownArtist() : null;
 	}
@@ -120,8 +151,9 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	@Override
 	public String getComposer() {
-		if (this.tag != null && this.tag.getComposer() != null) {
-			return this.tag.getComposer();
+		ITag tag = getTag();
+		if (tag != null && tag.getComposer() != null) {
+			return tag.getComposer();
 		}
 		return "";
 	}
@@ -137,7 +169,7 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 * @return the file on disk
 	 */
 	private File getFile() {
-		return this.filePath != null ? new File(this.filePath) : null;
+		return this.fileName != null ? new File(getUrl()) : null;
 	}
 
 	@Override
@@ -147,17 +179,19 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	@Override
 	public String getGenre(final IUnknownObjectChecker checker) {
-		if (this.tag != null && this.tag.getGenre() != null
-				&& !this.tag.getGenre().isEmpty()) {
-			return this.tag.getGenre();
+		ITag tag = getTag();
+		if (tag != null && tag.getGenre() != null
+				&& !tag.getGenre().isEmpty()) {
+			return tag.getGenre();
 		}
 		return checker != null ? checker.getUnknownGenre() : null;
 	}
 
 	@Override
 	public String getLyrics() {
-		if (this.tag != null && this.tag.getLyrics() != null) {
-			return this.tag.getLyrics();
+		ITag tag = getTag();
+		if (tag != null && tag.getLyrics() != null) {
+			return tag.getLyrics();
 		}
 		return "";
 	}
@@ -169,8 +203,9 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 */
 	@Override
 	public String getComment() {
-		if (this.tag != null && this.tag.getComment() != null) {
-			return this.tag.getComment();
+		ITag tag = getTag();
+		if (tag != null && tag.getComment() != null) {
+			return tag.getComment();
 		}
 		return "";
 	}
@@ -182,7 +217,7 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 */
 	@Override
 	public String getNameWithoutExtension() {
-		return FilenameUtils.getBaseName(this.filePath);
+		return FilenameUtils.getBaseName(this.fileName);
 	}
 
 	/**
@@ -192,7 +227,8 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 */
 	@Override
 	public int getStars() {
-		return this.tag != null ? this.tag.getStars() : 0;
+		ITag tag = getTag();
+		return tag != null ? tag.getStars() : 0;
 	}
 
 	/**
@@ -202,58 +238,135 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 */
 	@Override
 	public ITag getTag() {
+		ITag result = this.tag;
+		// Tag may have been released: check it again with lock
+		return result != null ? result : readTag();
+	}
+
+	/**
+	 * Reads tag from its record if it's pending
+	 * 
+	 * @return tag
+	 */
+	private synchronized ITag readTag() {
+		if (this.tagPending) {
+			this.tag = this.trackRecords.read(this.trackRecord);
+			this.tagPending = false;
+		}
 		return this.tag;
 	}
 
+	/**
+	 * Sets record where tag is stored, to be read when needed
+	 * 
+	 * @param records
+	 * @param index
+	 */
+	synchronized void setTrackRecord(final TrackRecords records,
+			final int index) {
+		this.trackRecords = records;
+		this.trackRecord = index;
+		this.tagPending = true;
+		this.tag = null;
+	}
+
+	/**
+	 * Changes record where tag is stored, if it's still stored in previous
+	 * one
+	 * 
+	 * @param previousRecords
+	 * @param records
+	 * @param index
+	 */
+	synchronized void moveTrackRecord(final TrackRecords previousRecords,
+			final TrackRecords records, final int index) {
+		if (this.trackRecords == previousRecords) {
+			this.trackRecords = records;
+			this.trackRecord = index;
+		}
+	}
+
+	/**
+	 * Releases tag if it's stored in a record, to be read again when needed
+	 */
+	synchronized void releaseTag() {
+		if (this.trackRecords != null) {
+			this.tagPending = true;
+			this.tag = null;
+		}
+	}
+
+	/**
+	 * Writes tag to track records, copying its record if it has not changed
+	 * 
+	 * @param writer
+	 * @return index of record written
+	 * @throws IOException
+	 */
+	synchronized int writeTag(final TrackRecords.Writer writer)
+			throws IOException {
+		if (this.trackRecords != null) {
+			return writer.copy(this, this.trackRecords, this.trackRecord);
+		}
+		return writer.add(this.tag);
+	}
+
 	@Override
 	public String getTitle() {
-		if (this.tag != null && this.tag.getTitle() != null) {
-			return this.tag.getTitle();
+		ITag tag = getTag();
+		if (tag != null && tag.getTitle() != null) {
+			return tag.getTitle();
 		}
 		return "";
 	}
 
 	@Override
 	public String getTitleOrFileName() {
-		if (this.tag != null && this.tag.getTitle() != null
-				&& !this.tag.getTitle().isEmpty()) {
-			return this.tag.getTitle();
+		ITag tag = getTag();
+		if (tag != null && tag.getTitle() != null
+				&& !tag.getTitle().isEmpty()) {
+			return tag.getTitle();
 		}
 		return getNameWithoutExtension();
 	}
 
 	@Override
 	public int getTrackNumber() {
-		if (this.tag != null) {
-			return this.tag.getTrackNumber();
+		ITag tag = getTag();
+		if (tag != null) {
+			return tag.getTrackNumber();
 		}
 		return 0;
 	}
 
 	@Override
 	public String getUrl() {
-		return this.filePath;
+		return this.fileName != null ? this.folderPath.concat(this.fileName)
+				: null;
 	}
 
 	@Override
 	public String getYear(final IUnknownObjectChecker checker) {
-		if (this.tag != null && this.tag.getYear() > 0) {
-			return Integer.toString(this.tag.getYear());
+		ITag tag = getTag();
+		if (tag != null && tag.getYear() > 0) {
+			return Integer.toString(tag.getYear());
 		}
 		return checker != null ? checker.getUnknownYear() : null;
 	}
 
 	@Override
 	public BaseDateTime getDate() {
-		if (this.tag != null) {
-			return this.tag.getDate();
+		ITag tag = getTag();
+		if (tag != null) {
+			return tag.getDate();
 		}
 		return null;
 	}
 
 	@Override
 	public int hashCode() {
-		return getUrl().hashCode();
+		// Same as hash code of url, without building it
+		return FilePaths.hashCode(this.folderPath, this.fileName);
 	}
 
 	/**
@@ -263,7 +376,8 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 */
 	@Override
 	public final boolean hasInternalPicture() {
-		return this.tag != null && this.tag.hasInternalImage();
+		ITag tag = getTag();
+		return tag != null && tag.hasInternalImage();
 	}
 
 	@Override
@@ -281,7 +395,12 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 		if (path == null) {
 			throw new IllegalArgumentException("Null path");
 		}
-		this.filePath = path;
+		setPath(path);
+	}
+
+	private void setPath(final String path) {
+		this.folderPath = FilePaths.getFolder(path);
+		this.fileName = FilePaths.getName(path);
 	}
 
 	/**
@@ -291,13 +410,15 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 	 *            the new tag
 	 */
 	@Override
-	public void setTag(final ITag tag) {
+	public synchronized void setTag(final ITag tag) {
 		this.tag = tag;
+		this.trackRecords = null;
+		this.tagPending = false;
 	}
 
 	@Override
 	public String toString() {
-		return this.filePath;
+		return getUrl();
 	}
 
 	@Override
@@ -307,13 +428,19 @@ public final class AudioFile implements ILocalAudioObject, Serializable {
 
 	@Override
 	public int compareTo(final ILocalAudioObject o) {
+		if (o instanceof AudioFile) {
+			AudioFile other = (AudioFile) o;
+			return FilePaths.compare(this.folderPath, this.fileName,
+					other.folderPath, other.fileName);
+		}
 		return getUrl().compareTo(o.getUrl());
 	}
 
 	@Override
 	public int getDiscNumber() {
-		if (this.tag != null && this.tag.getDiscNumber() >= 1) {
-			return this.tag.getDiscNumber();
+		ITag tag = getTag();
+		if (tag != null && tag.getDiscNumber() >= 1) {
+			return tag.getDiscNumber();
 		}
 		return 0;
 	}
@@ -0,0 +1,154 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.IOException;
+
+import net.sourceforge.atunes.model.ITag;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.esotericsoftware.kryo.serializers.FieldSerializer.CachedField;
+import com.esotericsoftware.kryo.util.ObjectMap;
+
+/**
+ * Serializes audio files with their tag. When writing or reading repository
+ * cache, tag is stored in track records and only index of record is
+ * serialized with file
+ * <p>
+ * Files written by previous versions, with whole path of file in one field,
+ * are read too
+ * </p>
+ * 
+ * @author alex
+ * 
+ */
+public class AudioFileSerializer extends Serializer<AudioFile> {
+
+	private final FieldSerializer<AudioFile> fieldSerializer;
+
+	private final FieldSerializer<PreviousAudioFile> previousFieldSerializer;
+
+	/**
+	 * @param kryo
+	 * @param type
+	 */
+	public AudioFileSerializer(final Kryo kryo, final Class<AudioFile> type) {
+		this.fieldSerializer = new FieldSerializer<AudioFile>(kryo, type);
+		this.fieldSerializer.removeField("tag");
+		this.previousFieldSerializer = new FieldSerializer<PreviousAudioFile>(
+				kryo, PreviousAudioFile.class);
+	}
+
+	@Override
+	public void write(final Kryo kryo, final Output output,
+			final AudioFile audioFile) {
+		this.fieldSerializer.write(kryo, output, audioFile);
+		TrackRecords.Writer writer = (TrackRecords.Writer) getContext(kryo)
+				.get(TrackRecords.Writer.class);
+		if (writer != null) {
+			try {
+				output.writeInt(audioFile.writeTag(writer), true);
+			} catch (IOException e) {
+				throw new KryoException(e);
+			}
+		} else {
+			kryo.writeClassAndObject(output, audioFile.getTag());
+		}
+	}
+
+	@Override
+	public AudioFile read(final Kryo kryo, final Input input,
+			final Class<AudioFile> type) {
+		if (KryoSerializerService.isReadingPreviousVersion(kryo)) {
+			return readPreviousVersion(kryo, input);
+		}
+		AudioFile audioFile = this.fieldSerializer.read(kryo, input, type);
+		TrackRecords records = (TrackRecords) getContext(kryo).get(
+				TrackRecords.class);
+		if (records != null) {
+			int index = input.readInt(true);
+			if (index >= records.size()) {
+				throw new KryoException("Invalid track record " + index);
+			}
+			audioFile.setTrackRecord(records, index);
+		} else {
+			audioFile.setTag((ITag) kryo.readClassAndObject(input));
+		}
+		return audioFile;
+	}
+
+	/**
+	 * Reads a file written by a previous version
+	 * 
+	 * @param kryo
+	 * @param input
+	 * @return file read
+	 */
+	@SuppressWarnings("rawtypes")
+	private AudioFile readPreviousVersion(final Kryo kryo, final Input input) {
+		PreviousAudioFile previous = new PreviousAudioFile();
+		for (CachedField field : this.previousFieldSerializer.getFields()) {
+			field.read(input, previous);
+		}
+		AudioFile audioFile = new AudioFile(previous.filePath);
+		// Fields don't reference file, so it's referenced once read
+		kryo.reference(audioFile);
+		audioFile.setTag(previous.tag);
+		audioFile.duration = previous.duration;
+		audioFile.bitrate = previous.bitrate;
+		audioFile.frequency = previous.frequency;
+		audioFile.readTime = previous.readTime;
+		audioFile.variableBitrate = previous.variableBitrate;
+		return audioFile;
+	}
+
+	/**
+	 * Kryo context holds track records being read or written, if any
+	 * 
+	 * @param kryo
+	 * @return context of kryo instance
+	 */
+	@SuppressWarnings("unchecked")
+	static ObjectMap<Object, Object> getContext(final Kryo kryo) {
+		return kryo.getContext();
+	}
+
+	/**
+	 * Fields of audio files as written by previous versions. Names and types
+	 * of fields are the ones of audio file then, and must not change
+	 */
+	public static final class PreviousAudioFile {
+
+		ITag tag;
+		int duration;
+		long bitrate;
+		int frequency;
+		long readTime;
+		boolean variableBitrate;
+		String filePath;
+	}
+}
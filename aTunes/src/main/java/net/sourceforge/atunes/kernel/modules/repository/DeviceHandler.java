@@ -65,6 +65,7 @@ import net.sourceforge.atunes.model.IProcessFactory;
 import net.sourceforge.atunes.model.IProcessListener;
 import net.sourceforge.atunes.model.IRepository;
 import net.sourceforge.atunes.model.IRepositoryHandler;
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
 import net.sourceforge.atunes.model.IRepositoryLoader;
 import net.sourceforge.atunes.model.IStateDevice;
 import net.sourceforge.atunes.model.IStateRepository;
@@ -627,6 +628,16 @@ public final class DeviceHandler extends AbstractHandler implements
 		// Nothing to do
 	}
 
+	@Override
+	public void notifyFolderStructureRead() {
+		// Nothing to do
+	}
+
+	@Override
+	public void notifyLoadStatistics(final IRepositoryLoadStatistics statistics) {
+		// Nothing to do
+	}
+
 	@Override
 	public void refreshDevice() {
 		if (isDeviceConnected()) {
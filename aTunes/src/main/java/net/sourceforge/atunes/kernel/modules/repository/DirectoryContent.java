@@ -0,0 +1,199 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
+
+/**
+ * Contents of a directory read by a repository loader: children directories
+ * and audio files
+ * 
+ * @author alex
+ * 
+ */
+final class DirectoryContent {
+
+	private final List<File> directories;
+
+	private final List<ScannedAudioFile> audioFiles;
+
+	private final DirectoryFingerprint fingerprint;
+
+	/**
+	 * @param directories
+	 * @param audioFiles
+	 * @param fingerprint
+	 */
+	DirectoryContent(final List<File> directories,
+			final List<ScannedAudioFile> audioFiles,
+			final DirectoryFingerprint fingerprint) {
+		this.directories = directories;
+		this.audioFiles = audioFiles;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Lists a directory only once, classifying its children as directories or
+	 * audio files. Modification time and size of audio files are read at the
+	 * same time
+	 * 
+	 * @param dir
+	 * @param localAudioObjectValidator
+	 * @return
+	 */
+	static DirectoryContent read(final File dir,
+			final ILocalAudioObjectValidator localAudioObjectValidator) {
+		return read(dir, localAudioObjectValidator, false);
+	}
+
+	/**
+	 * Lists a directory only once, classifying its children as directories or
+	 * audio files
+	 * 
+	 * @param dir
+	 * @param localAudioObjectValidator
+	 * @param stable
+	 *            true if modification time of directory is known to be stable,
+	 *            so fingerprint can always be taken, even if directory can't
+	 *            be listed
+	 * @return
+	 */
+	static DirectoryContent read(final File dir,
+			final ILocalAudioObjectValidator localAudioObjectValidator,
+			final boolean stable) {
+		// Read modification time before listing so any later change is
+		// detected in next refresh
+		long lastModified = dir.lastModified();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return new DirectoryContent(Collections.<File> emptyList(),
+					Collections.<ScannedAudioFile> emptyList(),
+					stable && lastModified > 0 ? takeFingerprint(lastModified,
+							new File[0], Collections.<File> emptyList(),
+							Collections.<ScannedAudioFile> emptyList()) : null);
+		}
+		List<File> directories = new ArrayList<File>();
+		List<ScannedAudioFile> audioFiles = new ArrayList<ScannedAudioFile>();
+		for (File file : files) {
+			// Check extension first as it does not need to access disk
+			if (localAudioObjectValidator.isOneOfValidFormats(file)
+					&& file.isFile()) {
+				audioFiles.add(new ScannedAudioFile(file, file.lastModified(),
+						file.length()));
+			} else if (file.isDirectory()) {
+				directories.add(file);
+			}
+		}
+		boolean canBeTaken = stable ? lastModified > 0 : DirectoryFingerprint
+				.canBeTaken(lastModified, System.currentTimeMillis());
+		return new DirectoryContent(directories, audioFiles,
+				canBeTaken ? takeFingerprint(lastModified, files, directories,
+						audioFiles) : null);
+	}
+
+	/**
+	 * Returns contents of a directory as stored in its fingerprint, without
+	 * accessing disk
+	 * 
+	 * @param dir
+	 * @param fingerprint
+	 * @return
+	 */
+	static DirectoryContent read(final File dir,
+			final DirectoryFingerprint fingerprint) {
+		String[] directoryNames = fingerprint.getDirectories();
+		List<File> directories = new ArrayList<File>(directoryNames.length);
+		for (String name : directoryNames) {
+			directories.add(new File(dir, name));
+		}
+		String[] audioFileNames = fingerprint.getAudioFiles();
+		List<ScannedAudioFile> audioFiles = new ArrayList<ScannedAudioFile>(
+				audioFileNames.length);
+		for (int i = 0; i < audioFileNames.length; i++) {
+			audioFiles.add(new ScannedAudioFile(
+					new File(dir, audioFileNames[i]), fingerprint
+							.getAudioFileLastModified(i), fingerprint
+							.getAudioFileSize(i)));
+		}
+		return new DirectoryContent(directories, audioFiles, fingerprint);
+	}
+
+	/**
+	 * Takes fingerprint of a directory just listed
+	 * 
+	 * @param lastModified
+	 * @param files
+	 * @param directories
+	 * @param audioFiles
+	 * @return fingerprint
+	 */
+	private static DirectoryFingerprint takeFingerprint(
+			final long lastModified, final File[] files,
+			final List<File> directories, final List<ScannedAudioFile> audioFiles) {
+		String[] children = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			children[i] = files[i].getName();
+		}
+		String[] directoryNames = new String[directories.size()];
+		for (int i = 0; i < directoryNames.length; i++) {
+			directoryNames[i] = directories.get(i).getName();
+		}
+		String[] audioFileNames = new String[audioFiles.size()];
+		long[] audioFilesLastModified = new long[audioFileNames.length];
+		long[] audioFilesSize = new long[audioFileNames.length];
+		for (int i = 0; i < audioFileNames.length; i++) {
+			ScannedAudioFile audioFile = audioFiles.get(i);
+			audioFileNames[i] = audioFile.getFile().getName();
+			audioFilesLastModified[i] = audioFile.getLastModified();
+			audioFilesSize[i] = audioFile.getSize();
+		}
+		return new DirectoryFingerprint(lastModified, children,
+				directoryNames, audioFileNames, audioFilesLastModified,
+				audioFilesSize);
+	}
+
+	/**
+	 * @return children directories
+	 */
+	List<File> getDirectories() {
+		return this.directories;
+	}
+
+	/**
+	 * @return audio files
+	 */
+	List<ScannedAudioFile> getAudioFiles() {
+		return this.audioFiles;
+	}
+
+	/**
+	 * @return fingerprint of directory or null if it could not be taken
+	 */
+	DirectoryFingerprint getFingerprint() {
+		return this.fingerprint;
+	}
+}
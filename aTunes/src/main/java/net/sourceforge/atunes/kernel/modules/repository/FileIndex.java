@@ -0,0 +1,274 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.atunes.model.ILocalAudioObject;
+
+/**
+ * Files of repository indexed by folder and then by name, so complete paths
+ * of files are not kept
+ * 
+ * @author alex
+ * 
+ */
+class FileIndex implements Serializable {
+
+	private static final long serialVersionUID = -6000529416423867366L;
+
+	volatile ConcurrentMap<String, ConcurrentMap<String, ILocalAudioObject>> filesByFolder;
+
+	/**
+	 * Maps of files created or copied for this index, when it was created
+	 * from index of a previous version sharing its maps, or null
+	 */
+	private transient ConcurrentMap<String, ConcurrentMap<String, ILocalAudioObject>> ownFolders;
+
+	/**
+	 * If map of folders is still the one of index of previous version
+	 */
+	private transient boolean sharedFolders;
+
+	/**
+	 * Number of files, counted first time needed after reading index from
+	 * cache
+	 */
+	private transient volatile AtomicInteger count;
+
+	FileIndex() {
+		// Count is left to be counted, as kryo uses this constructor too
+		this.filesByFolder = new ConcurrentHashMap<String, ConcurrentMap<String, ILocalAudioObject>>();
+	}
+
+	int count() {
+		return getCount().get();
+	}
+
+	ILocalAudioObject get(final String path) {
+		int nameIndex = FilePaths.getNameIndex(path);
+		ConcurrentMap<String, ILocalAudioObject> files = this.filesByFolder
+				.get(path.substring(0, nameIndex));
+		return files != null ? files.get(path.substring(nameIndex)) : null;
+	}
+
+	void put(final ILocalAudioObject file) {
+		// Get counter before changing index, so it's not counted twice
+		AtomicInteger c = getCount();
+		String folder;
+		String name;
+		if (file instanceof AudioFile) {
+			folder = ((AudioFile) file).folderPath;
+			name = ((AudioFile) file).fileName;
+		} else {
+			folder = FilePaths.getFolder(file.getUrl());
+			name = FilePaths.getName(file.getUrl());
+		}
+		ConcurrentMap<String, ILocalAudioObject> files = getFilesToChange(
+				folder, true);
+		if (files.put(name, file) == null) {
+			c.incrementAndGet();
+		}
+	}
+
+	void remove(final String path) {
+		AtomicInteger c = getCount();
+		int nameIndex = FilePaths.getNameIndex(path);
+		String folder = path.substring(0, nameIndex);
+		String name = path.substring(nameIndex);
+		ConcurrentMap<String, ILocalAudioObject> files = this.filesByFolder
+				.get(folder);
+		if (files == null || !files.containsKey(name)) {
+			return;
+		}
+		// Empty maps of folders are kept, as files might be added to them
+		// at the same time
+		files = getFilesToChange(folder, false);
+		if (files != null && files.remove(name) != null) {
+			c.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns map of files of a folder to be changed. If this index shares
+	 * maps with index of a previous version, map is copied first
+	 * 
+	 * @param folder
+	 * @param create
+	 *            if map must be created when folder has no map
+	 * @return map or null if not present and not created
+	 */
+	private ConcurrentMap<String, ILocalAudioObject> getFilesToChange(
+			final String folder, final boolean create) {
+		ConcurrentMap<String, ILocalAudioObject> files = this.filesByFolder
+				.get(folder);
+		ConcurrentMap<String, ConcurrentMap<String, ILocalAudioObject>> own = this.ownFolders;
+		if (own == null) {
+			if (files == null && create) {
+				files = new ConcurrentHashMap<String, ILocalAudioObject>(4);
+				ConcurrentMap<String, ILocalAudioObject> previous = this.filesByFolder
+						.putIfAbsent(folder, files);
+				if (previous != null) {
+					files = previous;
+				}
+			}
+			return files;
+		}
+		if (files != null && own.get(folder) == files) {
+			return files;
+		}
+		synchronized (own) {
+			if (this.sharedFolders) {
+				this.filesByFolder = new ConcurrentHashMap<String, ConcurrentMap<String, ILocalAudioObject>>(
+						this.filesByFolder);
+				this.sharedFolders = false;
+			}
+			files = this.filesByFolder.get(folder);
+			if (files != null && own.get(folder) == files) {
+				return files;
+			}
+			if (files != null) {
+				files = new ConcurrentHashMap<String, ILocalAudioObject>(files);
+			} else if (create) {
+				files = new ConcurrentHashMap<String, ILocalAudioObject>(4);
+			} else {
+				return null;
+			}
+			// Map is owned before being reachable, so it's not copied again
+			own.put(folder, files);
+			this.filesByFolder.put(folder, files);
+			return files;
+		}
+	}
+
+	/**
+	 * Returns a new index with the same files. Maps of files are shared with
+	 * this index, and new index copies the ones it changes, so this index
+	 * must not be changed anymore
+	 * 
+	 * @return
+	 */
+	FileIndex copy() {
+		FileIndex copy = new FileIndex();
+		copy.filesByFolder = this.filesByFolder;
+		copy.sharedFolders = true;
+		copy.ownFolders = new ConcurrentHashMap<String, ConcurrentMap<String, ILocalAudioObject>>();
+		copy.count = new AtomicInteger(count());
+		return copy;
+	}
+
+	/**
+	 * @return all files, as a view of index
+	 */
+	Collection<ILocalAudioObject> getAll() {
+		return new AbstractCollection<ILocalAudioObject>() {
+			@Override
+			public Iterator<ILocalAudioObject> iterator() {
+				return new FilesIterator();
+			}
+
+			@Override
+			public int size() {
+				return count();
+			}
+		};
+	}
+
+	/**
+	 * Returns files of a folder and its children folders. Only keys of
+	 * folders are compared, so files of other folders are not visited
+	 * 
+	 * @param folderPath
+	 * @return
+	 */
+	Collection<ILocalAudioObject> getInFolder(final String folderPath) {
+		String prefix = folderPath + '/';
+		Collection<ILocalAudioObject> result = new ArrayList<ILocalAudioObject>();
+		for (Map.Entry<String, ConcurrentMap<String, ILocalAudioObject>> folder : this.filesByFolder
+				.entrySet()) {
+			if (folder.getKey().startsWith(prefix)) {
+				result.addAll(folder.getValue().values());
+			}
+		}
+		return result;
+	}
+
+	private AtomicInteger getCount() {
+		AtomicInteger c = this.count;
+		if (c == null) {
+			synchronized (this) {
+				c = this.count;
+				if (c == null) {
+					int files = 0;
+					for (ConcurrentMap<String, ILocalAudioObject> folder : this.filesByFolder
+							.values()) {
+						files += folder.size();
+					}
+					c = new AtomicInteger(files);
+					this.count = c;
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Iterates files of all folders
+	 */
+	private final class FilesIterator implements Iterator<ILocalAudioObject> {
+
+		private final Iterator<ConcurrentMap<String, ILocalAudioObject>> folders = FileIndex.this.filesByFolder
+				.values().iterator();
+
+		private Iterator<ILocalAudioObject> files = Collections
+				.<ILocalAudioObject> emptyList().iterator();
+
+		@Override
+		public boolean hasNext() {
+			while (!this.files.hasNext() && this.folders.hasNext()) {
+				this.files = this.folders.next().values().iterator();
+			}
+			return this.files.hasNext();
+		}
+
+		@Override
+		public ILocalAudioObject next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.files.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -303,8 +303,14 @@ public class FileManager implements IFileManager {
 
 	@Override
 	public boolean isUpToDate(final ILocalAudioObject audioFile) {
-		return audioFile.getReadTime() > getAudioObjectFile(audioFile)
-				.lastModified();
+		return isUpToDate(audioFile, getAudioObjectFile(audioFile)
+				.lastModified());
+	}
+
+	@Override
+	public boolean isUpToDate(final ILocalAudioObject audioFile,
+			final long modificationTime) {
+		return audioFile.getReadTime() > modificationTime;
 	}
 
 	@Override
@@ -0,0 +1,123 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Splits paths of files in folder path and file name. Folder paths are
+ * shared, so files of the same folder keep only one copy of it
+ * 
+ * @author alex
+ * 
+ */
+final class FilePaths {
+
+	/**
+	 * Maximum number of folder paths shared
+	 */
+	private static final int MAX_FOLDERS = 100000;
+
+	private static final ConcurrentMap<String, String> FOLDERS = new ConcurrentHashMap<String, String>();
+
+	private FilePaths() {
+	}
+
+	/**
+	 * @param path
+	 * @return index where file name starts, after last separator
+	 */
+	static int getNameIndex(final String path) {
+		return Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+	}
+
+	/**
+	 * @param path
+	 * @return folder of path, including last separator, shared with other
+	 *         files of the same folder
+	 */
+	static String getFolder(final String path) {
+		String folder = path.substring(0, getNameIndex(path));
+		String shared = FOLDERS.get(folder);
+		if (shared == null) {
+			if (FOLDERS.size() >= MAX_FOLDERS) {
+				return folder;
+			}
+			shared = FOLDERS.putIfAbsent(folder, folder);
+			if (shared == null) {
+				shared = folder;
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * @param path
+	 * @return name of file
+	 */
+	static String getName(final String path) {
+		return path.substring(getNameIndex(path));
+	}
+
+	/**
+	 * Compares two paths given as folder and name as
+	 * <code>String.compareTo</code> would do with complete paths
+	 * 
+	 * @param folder1
+	 * @param name1
+	 * @param folder2
+	 * @param name2
+	 * @return comparison
+	 */
+	static int compare(final String folder1, final String name1,
+			final String folder2, final String name2) {
+		int length1 = folder1.length() + name1.length();
+		int length2 = folder2.length() + name2.length();
+		int length = Math.min(length1, length2);
+		for (int i = 0; i < length; i++) {
+			char c1 = charAt(folder1, name1, i);
+			char c2 = charAt(folder2, name2, i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * @param folder
+	 * @param name
+	 * @return hash code of complete path, equal to hash code of string
+	 */
+	static int hashCode(final String folder, final String name) {
+		int hash = folder.hashCode();
+		for (int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + name.charAt(i);
+		}
+		return hash;
+	}
+
+	private static char charAt(final String folder, final String name,
+			final int index) {
+		return index < folder.length() ? folder.charAt(index) : name
+				.charAt(index - folder.length());
+	}
+}
@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sourceforge.atunes.model.IFolder;
 import net.sourceforge.atunes.model.ILocalAudioObject;
@@ -37,7 +38,7 @@ import net.sourceforge.atunes.utils.StringUtils;
  * 
  * @author fleax
  */
-public class Folder implements IFolder {
+public class Folder implements IFolder, VersionedNode {
 
 	/**
 	 * 
@@ -56,6 +57,11 @@ public class Folder implements IFolder {
 	/** Folder that contains this folder. */
 	IFolder parentFolder;
 
+	/**
+	 * Version of repository this folder was created or copied for
+	 */
+	private transient RepositoryVersion version;
+
 	/**
 	 * Default constructor for serialization
 	 */
@@ -70,6 +76,8 @@ public class Folder implements IFolder {
 	 */
 	public Folder(final String name) {
 		this.name = name;
+		// Created here so several threads can add folders to a new folder
+		this.folders = new ConcurrentHashMap<String, IFolder>();
 	}
 
 	/**
@@ -92,8 +100,11 @@ public class Folder implements IFolder {
 	@Override
 	public void addFolder(final IFolder f) {
 		if (getFolders().containsKey(f.getName())) {
-			getFolders().get(f.getName()).getFolders().putAll(f.getFolders());
+			getFolder(f.getName()).getFolders().putAll(f.getFolders());
 		} else {
+			if (f instanceof Folder && ((Folder) f).version == null) {
+				((Folder) f).version = this.version;
+			}
 			getFolders().put(f.getName(), f);
 			f.setParentFolder(this);
 		}
@@ -143,7 +154,21 @@ public class Folder implements IFolder {
 	 */
 	@Override
 	public IFolder getFolder(final String folderName) {
-		return getFolders().get(folderName);
+		IFolder folder = getFolders().get(folderName);
+		RepositoryVersion building = this.version;
+		if (building != null && building.isBuilding()
+				&& folder instanceof Folder
+				&& ((Folder) folder).version != building) {
+			// Folder shared with previous version is copied to be changed
+			Folder copy = ((Folder) folder).copy(building);
+			copy.parentFolder = this;
+			if (!((ConcurrentMap<String, IFolder>) getFolders()).replace(
+					folderName, folder, copy)) {
+				return getFolder(folderName);
+			}
+			return copy;
+		}
+		return folder;
 	}
 
 	/**
@@ -299,4 +324,31 @@ public class Folder implements IFolder {
 	public boolean isLeaf() {
 		return getFolders().isEmpty();
 	}
+
+	@Override
+	public RepositoryVersion getVersion() {
+		return this.version;
+	}
+
+	@Override
+	public void setVersion(final RepositoryVersion version) {
+		this.version = version;
+	}
+
+	/**
+	 * Returns a copy of this folder sharing files and children folders, which
+	 * are copied when reached from copy. Copy has the same parent folder
+	 * 
+	 * @param versionOfCopy
+	 * @return
+	 */
+	@Override
+	public Folder copy(final RepositoryVersion versionOfCopy) {
+		Folder copy = new Folder(this.name);
+		copy.version = versionOfCopy;
+		copy.files = new ArrayList<ILocalAudioObject>(getFiles());
+		copy.folders.putAll(getFolders());
+		copy.parentFolder = this.parentFolder;
+		return copy;
+	}
 }
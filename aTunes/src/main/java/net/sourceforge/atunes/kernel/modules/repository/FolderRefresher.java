@@ -89,16 +89,18 @@ public class FolderRefresher {
 	/**
 	 * Refreshes folder
 	 * 
-	 * @param repository
 	 * @param folders
 	 */
-	public void refreshFolders(final IRepository repository,
-			final List<IFolder> folders) {
+	public void refreshFolders(final List<IFolder> folders) {
 		this.repositoryHandler.startTransaction();
-		for (IFolder folder : folders) {
-			refreshFolder(repository, folder);
+		try {
+			IRepository repository = this.repositoryHandler.getRepository();
+			for (IFolder folder : folders) {
+				refreshFolder(repository, folder);
+			}
+		} finally {
+			this.repositoryHandler.endTransaction();
 		}
-		this.repositoryHandler.endTransaction();
 	}
 
 	/**
@@ -125,8 +127,7 @@ public class FolderRefresher {
 			if (repository.getFile(path) == null) {
 				Logger.debug("Adding file: ", path);
 				this.beanFactory.getBean(RepositoryAddService.class)
-						.addFilesToRepository(repository,
-								Collections.singletonList(ao));
+						.addFilesToRepository(Collections.singletonList(ao));
 			}
 		}
 	}
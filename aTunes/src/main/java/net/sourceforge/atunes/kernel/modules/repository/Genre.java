@@ -30,7 +30,7 @@ import net.sourceforge.atunes.model.ILocalAudioObject;
  * This class represents a genre, with a name, and a set of artist of this
  * genre.
  */
-public class Genre implements IGenre {
+public class Genre implements IGenre, VersionedNode {
 
 	private static final long serialVersionUID = -6552057266561177152L;
 
@@ -40,6 +40,11 @@ public class Genre implements IGenre {
 	/** List of objects of this genre. */
 	List<ILocalAudioObject> audioFiles;
 
+	/**
+	 * Version of repository this genre was created or copied for
+	 */
+	private transient RepositoryVersion version;
+
 	/**
 	 * Default constructor for serialization
 	 */
@@ -132,4 +137,28 @@ public class Genre implements IGenre {
 	public int compareTo(final IGenre o) {
 		return this.name.compareToIgnoreCase(o.getName());
 	}
+
+	@Override
+	public RepositoryVersion getVersion() {
+		return this.version;
+	}
+
+	@Override
+	public void setVersion(final RepositoryVersion version) {
+		this.version = version;
+	}
+
+	/**
+	 * Returns a copy of this genre, sharing its objects
+	 * 
+	 * @param versionOfCopy
+	 * @return
+	 */
+	@Override
+	public Genre copy(final RepositoryVersion versionOfCopy) {
+		Genre copy = new Genre(this.name);
+		copy.version = versionOfCopy;
+		copy.audioFiles.addAll(this.audioFiles);
+		return copy;
+	}
 }
@@ -23,6 +23,7 @@ package net.sourceforge.atunes.kernel.modules.repository;
 import javax.swing.SwingUtilities;
 
 import net.sourceforge.atunes.model.IProgressDialog;
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
 import net.sourceforge.atunes.model.IRepositoryLoader;
 import net.sourceforge.atunes.model.IRepositoryLoaderListener;
 
@@ -54,6 +55,14 @@ final class ImportFoldersLoaderListener implements IRepositoryLoaderListener {
     public void notifyReadProgress() {
     }
 
+    @Override
+    public void notifyFolderStructureRead() {
+    }
+
+    @Override
+    public void notifyLoadStatistics(final IRepositoryLoadStatistics statistics) {
+    }
+
     @Override
     public void notifyFinishRefresh(final IRepositoryLoader loader) {
     }
@@ -59,8 +59,17 @@ public class LocalAudioObjectFactory implements ILocalAudioObjectFactory {
 
 	@Override
 	public ILocalAudioObject getLocalAudioObject(final File file) {
-		ILocalAudioObject audioObject = new AudioFile(
-				FileUtils.getNormalizedPath(file));
+		return readLocalAudioObject(getUnreadLocalAudioObject(file));
+	}
+
+	@Override
+	public ILocalAudioObject getUnreadLocalAudioObject(final File file) {
+		return new AudioFile(FileUtils.getNormalizedPath(file));
+	}
+
+	@Override
+	public ILocalAudioObject readLocalAudioObject(
+			final ILocalAudioObject audioObject) {
 		readAudioObject(audioObject);
 		return audioObject;
 	}
@@ -0,0 +1,205 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import net.sourceforge.atunes.model.ILocalAudioObject;
+
+/**
+ * Decides order of audio file reads of a repository loader and limits reads
+ * done at the same time from each repository folder, so reader threads don't
+ * make a disk or network share seek continuously. Each repository folder is
+ * considered a different device, as it's usually a different disk or share
+ * 
+ * @author alex
+ * 
+ */
+final class ReadScheduler {
+
+	private static final Comparator<ScannedAudioFile> SCANNED_FILE_COMPARATOR = new Comparator<ScannedAudioFile>() {
+		@Override
+		public int compare(final ScannedAudioFile o1, final ScannedAudioFile o2) {
+			return o1.getFile().getName().compareTo(o2.getFile().getName());
+		}
+	};
+
+	private static final Comparator<ILocalAudioObject> AUDIO_OBJECT_COMPARATOR = new Comparator<ILocalAudioObject>() {
+		@Override
+		public int compare(final ILocalAudioObject o1,
+				final ILocalAudioObject o2) {
+			return o1.getUrl().compareTo(o2.getUrl());
+		}
+	};
+
+	/**
+	 * Audio files pending to be read, by repository folder
+	 */
+	private final Map<File, List<ILocalAudioObject>> pendingReads = new LinkedHashMap<File, List<ILocalAudioObject>>();
+
+	/**
+	 * Permits to read from each repository folder. Created at start so map is
+	 * only read from loader and reader threads
+	 */
+	private final Map<File, Semaphore> permits = new HashMap<File, Semaphore>();
+
+	/**
+	 * @param folders
+	 *            repository folders
+	 * @param maxReadsPerFolder
+	 *            maximum number of reads at the same time from each
+	 *            repository folder, 0 or less for no limit
+	 */
+	ReadScheduler(final List<File> folders, final int maxReadsPerFolder) {
+		if (maxReadsPerFolder > 0) {
+			for (File folder : folders) {
+				this.permits.put(folder, new Semaphore(maxReadsPerFolder));
+			}
+		}
+	}
+
+	/**
+	 * Sorts audio files of a directory by name, which usually is the order
+	 * they were written to disk
+	 * 
+	 * @param audioFiles
+	 * @return audio files sorted
+	 */
+	static List<ScannedAudioFile> orderByName(
+			final List<ScannedAudioFile> audioFiles) {
+		List<ScannedAudioFile> sorted = new ArrayList<ScannedAudioFile>(
+				audioFiles);
+		Collections.sort(sorted, SCANNED_FILE_COMPARATOR);
+		return sorted;
+	}
+
+	/**
+	 * Adds an audio file to be read later
+	 * 
+	 * @param folder
+	 *            repository folder containing audio file
+	 * @param audio
+	 */
+	void add(final File folder, final ILocalAudioObject audio) {
+		List<ILocalAudioObject> reads = this.pendingReads.get(folder);
+		if (reads == null) {
+			reads = new ArrayList<ILocalAudioObject>();
+			this.pendingReads.put(folder, reads);
+		}
+		reads.add(audio);
+	}
+
+	/**
+	 * Returns audio files added and removes them from scheduler. Files of each
+	 * repository folder are sorted by path, so files of the same directory are
+	 * read together, and files of different repository folders alternate, so
+	 * all devices are read at the same time
+	 * 
+	 * @return reads in the order they must be done
+	 */
+	List<ScheduledRead> getReadOrder() {
+		List<ScheduledRead> order = new ArrayList<ScheduledRead>();
+		List<Iterator<ILocalAudioObject>> iterators = new ArrayList<Iterator<ILocalAudioObject>>();
+		List<File> folders = new ArrayList<File>();
+		for (Map.Entry<File, List<ILocalAudioObject>> entry : this.pendingReads
+				.entrySet()) {
+			Collections.sort(entry.getValue(), AUDIO_OBJECT_COMPARATOR);
+			iterators.add(entry.getValue().iterator());
+			folders.add(entry.getKey());
+		}
+		boolean pending = true;
+		while (pending) {
+			pending = false;
+			for (int i = 0; i < iterators.size(); i++) {
+				if (iterators.get(i).hasNext()) {
+					order.add(new ScheduledRead(folders.get(i), iterators
+							.get(i).next()));
+					pending = true;
+				}
+			}
+		}
+		this.pendingReads.clear();
+		return order;
+	}
+
+	/**
+	 * Waits until a file of given repository folder can be read. Called from
+	 * loader thread before submitting read to reader threads
+	 * 
+	 * @param folder
+	 * @throws InterruptedException
+	 */
+	void acquire(final File folder) throws InterruptedException {
+		Semaphore semaphore = this.permits.get(folder);
+		if (semaphore != null) {
+			semaphore.acquire();
+		}
+	}
+
+	/**
+	 * Notifies a read of a file of given repository folder finished. Called
+	 * from reader threads
+	 * 
+	 * @param folder
+	 */
+	void release(final File folder) {
+		Semaphore semaphore = this.permits.get(folder);
+		if (semaphore != null) {
+			semaphore.release();
+		}
+	}
+
+	/**
+	 * An audio file which tag must be read and its repository folder
+	 */
+	static final class ScheduledRead {
+
+		private final File folder;
+
+		private final ILocalAudioObject audio;
+
+		/**
+		 * @param folder
+		 * @param audio
+		 */
+		ScheduledRead(final File folder, final ILocalAudioObject audio) {
+			this.folder = folder;
+			this.audio = audio;
+		}
+
+		File getFolder() {
+			return this.folder;
+		}
+
+		ILocalAudioObject getAudio() {
+			return this.audio;
+		}
+	}
+}
@@ -28,7 +28,6 @@ import net.sourceforge.atunes.model.IBackgroundWorkerFactory;
 import net.sourceforge.atunes.model.IBeanFactory;
 import net.sourceforge.atunes.model.IFolder;
 import net.sourceforge.atunes.model.IFrame;
-import net.sourceforge.atunes.model.IRepository;
 import net.sourceforge.atunes.model.ITaskService;
 import net.sourceforge.atunes.utils.I18nUtils;
 import net.sourceforge.atunes.utils.StringUtils;
@@ -51,6 +50,15 @@ public final class RefreshFoldersTask {
 
 	private ITaskService taskService;
 
+	private RepositoryHandler repositoryHandler;
+
+	/**
+	 * @param repositoryHandler
+	 */
+	public void setRepositoryHandler(final RepositoryHandler repositoryHandler) {
+		this.repositoryHandler = repositoryHandler;
+	}
+
 	/**
 	 * @param taskService
 	 */
@@ -90,11 +98,9 @@ public final class RefreshFoldersTask {
 	/**
 	 * Executes task to refresh folders of repository
 	 * 
-	 * @param repository
 	 * @param folders
 	 */
-	public void execute(final IRepository repository,
-			final List<IFolder> folders) {
+	public void execute(final List<IFolder> folders) {
 		IBackgroundWorker<Void, Void> worker = this.backgroundWorkerFactory
 				.getWorker();
 		worker.setActionsBeforeBackgroundStarts(new Runnable() {
@@ -111,8 +117,8 @@ public final class RefreshFoldersTask {
 
 			@Override
 			public Void call() {
-				RefreshFoldersTask.this.folderRefresher.refreshFolders(
-						repository, folders);
+				RefreshFoldersTask.this.folderRefresher
+						.refreshFolders(folders);
 				return null;
 			}
 		});
@@ -122,7 +128,8 @@ public final class RefreshFoldersTask {
 			public void call(final Void result) {
 				RefreshFoldersTask.this.beanFactory.getBean(
 						RepositoryLoadedActions.class).repositoryReadCompleted(
-						repository);
+						RefreshFoldersTask.this.repositoryHandler
+								.getRepository());
 			}
 		});
 		worker.execute(this.taskService);
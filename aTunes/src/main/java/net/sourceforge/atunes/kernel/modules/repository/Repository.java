@@ -24,10 +24,14 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.sourceforge.atunes.model.DirectoryFingerprint;
 import net.sourceforge.atunes.model.IAlbum;
 import net.sourceforge.atunes.model.IArtist;
 import net.sourceforge.atunes.model.IFolder;
@@ -50,6 +54,11 @@ public class Repository implements Serializable, IRepository {
 
 	private static final long serialVersionUID = -8278937514875788175L;
 
+	/**
+	 * Last version number given to a repository
+	 */
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
 	/**
 	 * Root folders of repository
 	 */
@@ -68,7 +77,7 @@ public class Repository implements Serializable, IRepository {
 	/**
 	 * File structure
 	 */
-	RepositoryStructure<ILocalAudioObject> filesStructure;
+	FileIndex filesStructure;
 
 	/**
 	 * Artists structure
@@ -90,11 +99,53 @@ public class Repository implements Serializable, IRepository {
 	 */
 	RepositoryStructure<IYear> yearStructure;
 
+	/**
+	 * Directory fingerprints, used to skip unchanged directories when
+	 * refreshing
+	 */
+	RepositoryStructure<DirectoryFingerprint> fingerprintsStructure;
+
 	/**
 	 * State
 	 */
 	transient IStateRepository stateRepository;
 
+	/**
+	 * Albums indexed by "album (artist)", kept up to date when albums are
+	 * added or removed so album view doesn't need to build it. Not stored,
+	 * built from artists first time needed
+	 */
+	private transient volatile ConcurrentMap<String, IAlbum> albumsStructure;
+
+	/**
+	 * Read only view of albums structure returned to callers
+	 */
+	private transient Map<String, IAlbum> albumsStructureView;
+
+	/**
+	 * If albums structure is the one of previous version, copied before
+	 * being changed
+	 */
+	private transient volatile boolean albumsStructureShared;
+
+	/**
+	 * Version nodes created or copied for this repository belong to, while
+	 * it's being built from a previous one, or null if nodes are changed in
+	 * place
+	 */
+	private transient RepositoryVersion nodesVersion;
+
+	/**
+	 * Number identifying this repository object
+	 */
+	private transient long version;
+
+	/**
+	 * Changes made to this version, when it has been created from a previous
+	 * one
+	 */
+	private transient RepositoryJournalRecord changes;
+
 	/**
 	 * Instantiates a new repository.
 	 * 
@@ -107,11 +158,12 @@ public class Repository implements Serializable, IRepository {
 		for (File folder : folders) {
 			this.folders.add(folder.getAbsolutePath());
 		}
-		this.filesStructure = new RepositoryStructure<ILocalAudioObject>();
+		this.filesStructure = new FileIndex();
 		this.artistsStructure = new RepositoryStructure<IArtist>();
 		this.foldersStructure = new RepositoryStructure<IFolder>();
 		this.genresStructure = new RepositoryStructure<IGenre>();
 		this.yearStructure = new RepositoryStructure<IYear>();
+		this.fingerprintsStructure = new RepositoryStructure<DirectoryFingerprint>();
 		this.stateRepository = stateRepository;
 	}
 
@@ -121,6 +173,172 @@ public class Repository implements Serializable, IRepository {
 	Repository() {
 	}
 
+	/**
+	 * Returns a new version of this repository where changes can be made
+	 * without affecting readers of this one. Both versions share all
+	 * structures: new version copies a structure the first time it changes
+	 * it, and an artist, folder, genre or year the first time it's reached
+	 * from its structure or parent folder. Audio objects are never copied. No
+	 * more changes must be made to this version
+	 * 
+	 * @return
+	 */
+	synchronized Repository nextVersion() {
+		finishVersion();
+		Repository next = new Repository();
+		next.nodesVersion = new RepositoryVersion();
+		next.folders = new ArrayList<String>(this.folders);
+		next.totalSizeInBytes = this.totalSizeInBytes;
+		next.totalDurationInSeconds = this.totalDurationInSeconds;
+		next.filesStructure = this.filesStructure.copy();
+		next.artistsStructure = this.artistsStructure;
+		next.foldersStructure = this.foldersStructure;
+		next.genresStructure = this.genresStructure;
+		next.yearStructure = this.yearStructure;
+		next.fingerprintsStructure = this.fingerprintsStructure;
+		// Albums of artists copied are replaced in albums structure
+		next.albumsStructure = this.albumsStructure;
+		next.albumsStructureView = this.albumsStructureView;
+		next.albumsStructureShared = this.albumsStructure != null;
+		next.stateRepository = this.stateRepository;
+		next.changes = new RepositoryJournalRecord(getVersion(), this.changes);
+		return next;
+	}
+
+	/**
+	 * Called when no more changes are made to this version, so readers don't
+	 * copy nodes shared with previous version
+	 */
+	void finishVersion() {
+		RepositoryVersion building = this.nodesVersion;
+		if (building != null) {
+			building.finish();
+		}
+	}
+
+	/**
+	 * @return version whose nodes can be changed, or null if this repository
+	 *         is changed in place
+	 */
+	private RepositoryVersion getBuildingVersion() {
+		RepositoryVersion building = this.nodesVersion;
+		return building != null && building.isBuilding() ? building : null;
+	}
+
+	/**
+	 * @return artists structure to be changed, copied if it's shared with
+	 *         previous version
+	 */
+	private RepositoryStructure<IArtist> getArtistsToChange() {
+		RepositoryVersion building = getBuildingVersion();
+		if (building != null && this.artistsStructure.version != building) {
+			synchronized (this) {
+				if (this.artistsStructure.version != building) {
+					this.artistsStructure = this.artistsStructure
+							.copy(building);
+				}
+			}
+		}
+		return this.artistsStructure;
+	}
+
+	/**
+	 * @return folders structure to be changed, copied if it's shared with
+	 *         previous version
+	 */
+	private RepositoryStructure<IFolder> getFoldersToChange() {
+		RepositoryVersion building = getBuildingVersion();
+		if (building != null && this.foldersStructure.version != building) {
+			synchronized (this) {
+				if (this.foldersStructure.version != building) {
+					this.foldersStructure = this.foldersStructure
+							.copy(building);
+				}
+			}
+		}
+		return this.foldersStructure;
+	}
+
+	/**
+	 * @return genres structure to be changed, copied if it's shared with
+	 *         previous version
+	 */
+	private RepositoryStructure<IGenre> getGenresToChange() {
+		RepositoryVersion building = getBuildingVersion();
+		if (building != null && this.genresStructure.version != building) {
+			synchronized (this) {
+				if (this.genresStructure.version != building) {
+					this.genresStructure = this.genresStructure.copy(building);
+				}
+			}
+		}
+		return this.genresStructure;
+	}
+
+	/**
+	 * @return years structure to be changed, copied if it's shared with
+	 *         previous version
+	 */
+	private RepositoryStructure<IYear> getYearsToChange() {
+		RepositoryVersion building = getBuildingVersion();
+		if (building != null && this.yearStructure.version != building) {
+			synchronized (this) {
+				if (this.yearStructure.version != building) {
+					this.yearStructure = this.yearStructure.copy(building);
+				}
+			}
+		}
+		return this.yearStructure;
+	}
+
+	/**
+	 * @return fingerprints structure to be changed, copied if it's shared
+	 *         with previous version
+	 */
+	private RepositoryStructure<DirectoryFingerprint> getFingerprintsToChange() {
+		RepositoryVersion building = getBuildingVersion();
+		if (building != null
+				&& this.fingerprintsStructure.version != building) {
+			synchronized (this) {
+				if (this.fingerprintsStructure.version != building) {
+					this.fingerprintsStructure = this.fingerprintsStructure
+							.copy(building);
+				}
+			}
+		}
+		return this.fingerprintsStructure;
+	}
+
+	/**
+	 * @return number identifying this repository object, greater than zero
+	 */
+	synchronized long getVersion() {
+		if (this.version == 0) {
+			this.version = VERSIONS.incrementAndGet();
+		}
+		return this.version;
+	}
+
+	/**
+	 * Returns changes made to this version since it was created, and to
+	 * previous versions whose changes were not taken, and stops recording them
+	 * 
+	 * @return changes or null if this version was not created from a previous
+	 *         one or changes were already taken
+	 */
+	synchronized RepositoryJournalRecord takeChanges() {
+		RepositoryJournalRecord record = this.changes;
+		this.changes = null;
+		if (record != null) {
+			record = record.take();
+		}
+		if (record != null) {
+			record.setTotals(this.totalSizeInBytes,
+					this.totalDurationInSeconds);
+		}
+		return record;
+	}
+
 	@Override
 	public void setStateRepository(final IStateRepository stateRepository) {
 		this.stateRepository = stateRepository;
@@ -136,32 +354,32 @@ public class Repository implements Serializable, IRepository {
 	}
 
 	@Override
-	public void addDurationInSeconds(final long seconds) {
+	public synchronized void addDurationInSeconds(final long seconds) {
 		this.totalDurationInSeconds += seconds;
 	}
 
 	@Override
-	public void removeDurationInSeconds(final long seconds) {
+	public synchronized void removeDurationInSeconds(final long seconds) {
 		this.totalDurationInSeconds -= seconds;
 	}
 
 	@Override
-	public long getTotalDurationInSeconds() {
+	public synchronized long getTotalDurationInSeconds() {
 		return this.totalDurationInSeconds;
 	}
 
 	@Override
-	public void addSizeInBytes(final long bytes) {
+	public synchronized void addSizeInBytes(final long bytes) {
 		this.totalSizeInBytes += bytes;
 	}
 
 	@Override
-	public void removeSizeInBytes(final long bytes) {
+	public synchronized void removeSizeInBytes(final long bytes) {
 		this.totalSizeInBytes -= bytes;
 	}
 
 	@Override
-	public long getTotalSizeInBytes() {
+	public synchronized long getTotalSizeInBytes() {
 		return this.totalSizeInBytes;
 	}
 
@@ -178,11 +396,14 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public void validateRepository() throws InconsistentRepositoryException {
-		checkConsistency(this.filesStructure);
+		if (this.filesStructure == null) {
+			throw new InconsistentRepositoryException();
+		}
 		checkConsistency(this.artistsStructure);
 		checkConsistency(this.foldersStructure);
 		checkConsistency(this.genresStructure);
 		checkConsistency(this.yearStructure);
+		checkConsistency(this.fingerprintsStructure);
 		if (this.folders == null) {
 			throw new InconsistentRepositoryException();
 		}
@@ -214,20 +435,34 @@ public class Repository implements Serializable, IRepository {
 		return this.filesStructure.getAll();
 	}
 
+	@Override
+	public Collection<ILocalAudioObject> getFilesInFolder(
+			final String folderPath) {
+		return this.filesStructure.getInFolder(folderPath);
+	}
+
 	@Override
 	public ILocalAudioObject putFile(final ILocalAudioObject file) {
-		this.filesStructure.put(file.getUrl(), file);
+		this.filesStructure.put(file);
+		RepositoryJournalRecord record = this.changes;
+		if (record != null) {
+			record.putFile(file);
+		}
 		return file;
 	}
 
 	@Override
 	public void removeFile(final ILocalAudioObject file) {
-		this.filesStructure.remove(file.getUrl());
+		removeFile(file.getUrl());
 	}
 
 	@Override
 	public void removeFile(final String path) {
 		this.filesStructure.remove(path);
+		RepositoryJournalRecord record = this.changes;
+		if (record != null) {
+			record.removeFile(path);
+		}
 	}
 
 	// --------------------------------------- ARTIST OPERATIONS
@@ -252,12 +487,19 @@ public class Repository implements Serializable, IRepository {
 	public IArtist getArtist(final String artistName) {
 		if (artistName == null) {
 			return null;
-		} else if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			return this.artistsStructure.get(artistName);
-		} else {
-			return this.artistsStructure.get(artistName.toLowerCase());
 		}
+		String key = getKey(artistName);
+		if (getBuildingVersion() == null) {
+			return this.artistsStructure.get(key);
+		}
+		RepositoryStructure<IArtist> artists = getArtistsToChange();
+		IArtist artist = artists.get(key);
+		IArtist artistToChange = artists.getToChange(key);
+		if (artist != null && artistToChange != null
+				&& artistToChange != artist) {
+			replaceAlbums(artist, artistToChange);
+		}
+		return artistToChange;
 	}
 
 	@Override
@@ -267,25 +509,33 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public IArtist putArtist(final IArtist artist) {
-		if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			this.artistsStructure.put(artist.getName(), artist);
-		} else {
-			this.artistsStructure.put(artist.getName().toLowerCase(), artist);
-		}
+		getArtistsToChange().put(getKey(artist.getName()), artist);
 		return artist;
 	}
 
+	@Override
+	public IArtist putArtistIfAbsent(final IArtist artist) {
+		return getArtistsToChange().putIfAbsent(getKey(artist.getName()),
+				artist);
+	}
+
 	@Override
 	public void removeArtist(final IArtist artist) {
-		if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			this.artistsStructure.remove(artist.getName());
-		} else {
-			this.artistsStructure.remove(artist.getName().toLowerCase());
+		getArtistsToChange().remove(getKey(artist.getName()));
+		for (IAlbum album : artist.getAlbums().values()) {
+			removeAlbum(album);
 		}
 	}
 
+	/**
+	 * @param name
+	 * @return key used in artists and genres structures for given name
+	 */
+	private String getKey(final String name) {
+		return RepositoryStructure.getKey(name, this.stateRepository
+				.isKeyAlwaysCaseSensitiveInRepositoryStructure());
+	}
+
 	// -------------------------------- ALBUM OPERATIONS
 	// ----------------------------------------- //
 
@@ -296,16 +546,96 @@ public class Repository implements Serializable, IRepository {
 	 */
 	@Override
 	public Map<String, IAlbum> getAlbumStructure() {
-		Map<String, IAlbum> albumsStructure = new HashMap<String, IAlbum>();
-		Collection<IArtist> artistCollection = getArtists();
-		for (IArtist artist : artistCollection) {
-			for (IAlbum album : artist.getAlbums().values()) {
-				albumsStructure.put(
-						StringUtils.getString(album.getName(), " (",
-								album.getArtist(), ")"), album);
+		getAlbumsStructure();
+		return this.albumsStructureView;
+	}
+
+	@Override
+	public void putAlbum(final IAlbum album) {
+		getAlbumsStructureToChange().put(getAlbumKey(album), album);
+	}
+
+	@Override
+	public void removeAlbum(final IAlbum album) {
+		getAlbumsStructureToChange().remove(getAlbumKey(album), album);
+	}
+
+	/**
+	 * Replaces albums of an artist by the ones of its copy in albums
+	 * structure, if already built
+	 * 
+	 * @param artist
+	 * @param copy
+	 */
+	private void replaceAlbums(final IArtist artist, final IArtist copy) {
+		synchronized (this) {
+			if (this.albumsStructure == null) {
+				// Will be built from artists
+				return;
+			}
+		}
+		ConcurrentMap<String, IAlbum> structure = getAlbumsStructureToChange();
+		for (IAlbum album : copy.getAlbums().values()) {
+			IAlbum previous = artist.getAlbum(album.getName());
+			if (previous != null) {
+				structure.replace(getAlbumKey(album), previous, album);
+			}
+		}
+	}
+
+	/**
+	 * @return albums structure to be changed, copied if it's shared with
+	 *         previous version
+	 */
+	private ConcurrentMap<String, IAlbum> getAlbumsStructureToChange() {
+		ConcurrentMap<String, IAlbum> structure = getAlbumsStructure();
+		if (this.albumsStructureShared) {
+			synchronized (this) {
+				if (this.albumsStructureShared) {
+					ConcurrentMap<String, IAlbum> copy = new ConcurrentHashMap<String, IAlbum>(
+							this.albumsStructure);
+					this.albumsStructureView = Collections
+							.unmodifiableMap(copy);
+					this.albumsStructure = copy;
+					this.albumsStructureShared = false;
+				}
+				structure = this.albumsStructure;
 			}
 		}
-		return albumsStructure;
+		return structure;
+	}
+
+	/**
+	 * @return albums structure, built from artists if needed
+	 */
+	private ConcurrentMap<String, IAlbum> getAlbumsStructure() {
+		ConcurrentMap<String, IAlbum> structure = this.albumsStructure;
+		if (structure == null) {
+			synchronized (this) {
+				structure = this.albumsStructure;
+				if (structure == null) {
+					structure = new ConcurrentHashMap<String, IAlbum>();
+					for (IArtist artist : getArtists()) {
+						for (IAlbum album : artist.getAlbums().values()) {
+							structure.put(getAlbumKey(album), album);
+						}
+					}
+					this.albumsStructureView = Collections
+							.unmodifiableMap(structure);
+					this.albumsStructure = structure;
+				}
+			}
+		}
+		return structure;
+	}
+
+	/**
+	 * @param album
+	 * @return key of album in albums structure, shown in album view
+	 */
+	private static String getAlbumKey(final IAlbum album) {
+		return StringUtils.getString(album.getName(), " (", album.getArtist(),
+				")");
 	}
 
 	// -------------------------------- FOLDER OPERATIONS
@@ -323,7 +653,10 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public IFolder getFolder(final String path) {
-		return this.foldersStructure.get(path);
+		if (getBuildingVersion() == null) {
+			return this.foldersStructure.get(path);
+		}
+		return getFoldersToChange().getToChange(path);
 	}
 
 	@Override
@@ -333,10 +666,15 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public IFolder putFolder(final IFolder folder) {
-		this.foldersStructure.put(folder.getName(), folder);
+		getFoldersToChange().put(folder.getName(), folder);
 		return folder;
 	}
 
+	@Override
+	public IFolder putFolderIfAbsent(final IFolder folder) {
+		return getFoldersToChange().putIfAbsent(folder.getName(), folder);
+	}
+
 	// --------------------------------------------------- GENRE OPERATIONS
 	// ---------------------------------------------- //
 
@@ -357,33 +695,27 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public IGenre getGenre(final String genre) {
-		if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			return this.genresStructure.get(genre);
-		} else {
-			return this.genresStructure.get(genre.toLowerCase());
+		if (getBuildingVersion() == null) {
+			return this.genresStructure.get(getKey(genre));
 		}
+		return getGenresToChange().getToChange(getKey(genre));
 	}
 
 	@Override
 	public IGenre putGenre(final IGenre genre) {
-		if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			this.genresStructure.put(genre.getName(), genre);
-		} else {
-			this.genresStructure.put(genre.getName().toLowerCase(), genre);
-		}
+		getGenresToChange().put(getKey(genre.getName()), genre);
 		return genre;
 	}
 
+	@Override
+	public IGenre putGenreIfAbsent(final IGenre genre) {
+		return getGenresToChange().putIfAbsent(getKey(genre.getName()),
+				genre);
+	}
+
 	@Override
 	public void removeGenre(final IGenre genre) {
-		if (this.stateRepository
-				.isKeyAlwaysCaseSensitiveInRepositoryStructure()) {
-			this.genresStructure.remove(genre.getName());
-		} else {
-			this.genresStructure.remove(genre.getName().toLowerCase());
-		}
+		getGenresToChange().remove(getKey(genre.getName()));
 	}
 
 	// ----------------------------------------------- YEAR OPERATIONS
@@ -401,7 +733,10 @@ public class Repository implements Serializable, IRepository {
 
 	@Override
 	public IYear getYear(final String year) {
-		return this.yearStructure.get(year);
+		if (getBuildingVersion() == null) {
+			return this.yearStructure.get(year);
+		}
+		return getYearsToChange().getToChange(year);
 	}
 
 	@Override
@@ -412,13 +747,47 @@ public class Repository implements Serializable, IRepository {
 	@Override
 	public IYear putYear(final IYear year,
 			final IUnknownObjectChecker unknownObjectChecker) {
-		this.yearStructure.put(year.getName(unknownObjectChecker), year);
+		getYearsToChange().put(year.getName(unknownObjectChecker), year);
 		return year;
 	}
 
+	@Override
+	public IYear putYearIfAbsent(final IYear year,
+			final IUnknownObjectChecker unknownObjectChecker) {
+		return getYearsToChange().putIfAbsent(
+				year.getName(unknownObjectChecker), year);
+	}
+
 	@Override
 	public void removeYear(final IYear year,
 			final IUnknownObjectChecker unknownObjectChecker) {
-		this.yearStructure.remove(year.getName(unknownObjectChecker));
+		getYearsToChange().remove(year.getName(unknownObjectChecker));
+	}
+
+	// ----------------------------------------------- FINGERPRINT OPERATIONS
+	// --------------------------------------------------- //
+
+	@Override
+	public DirectoryFingerprint getDirectoryFingerprint(final String path) {
+		return this.fingerprintsStructure.get(path);
+	}
+
+	@Override
+	public void putDirectoryFingerprint(final String path,
+			final DirectoryFingerprint fingerprint) {
+		getFingerprintsToChange().put(path, fingerprint);
+		RepositoryJournalRecord record = this.changes;
+		if (record != null) {
+			record.putDirectoryFingerprint(path, fingerprint);
+		}
+	}
+
+	@Override
+	public void removeDirectoryFingerprint(final String path) {
+		getFingerprintsToChange().remove(path);
+		RepositoryJournalRecord record = this.changes;
+		if (record != null) {
+			record.putDirectoryFingerprint(path, null);
+		}
 	}
 }
@@ -101,15 +101,26 @@ public class RepositoryAddService {
 	/**
 	 * Add files to repository.
 	 * 
-	 * @param state
-	 * @param rep
 	 * @param files
-	 * @param localAudioObjectFactory
 	 */
-	public void addFilesToRepository(final IRepository rep,
-			final List<ILocalAudioObject> files) {
+	public void addFilesToRepository(final List<ILocalAudioObject> files) {
 		this.repositoryHandler.startTransaction();
+		try {
+			addFilesToRepositoryInsideTransaction(
+					this.repositoryHandler.getRepository(), files);
+		} finally {
+			this.repositoryHandler.endTransaction();
+		}
+	}
 
+	/**
+	 * Add files to repository. No transaction is created
+	 * 
+	 * @param rep
+	 * @param files
+	 */
+	protected void addFilesToRepositoryInsideTransaction(final IRepository rep,
+			final List<ILocalAudioObject> files) {
 		// Get folders where files are
 		Set<File> folders = this.fileManager.getFolders(files);
 		RepositoryFiller filler = new RepositoryFiller(rep,
@@ -118,8 +129,6 @@ public class RepositoryAddService {
 		for (File folder : folders) {
 			addFilesFromFolder(rep, files, filler, folder);
 		}
-
-		this.repositoryHandler.endTransaction();
 	}
 
 	/**
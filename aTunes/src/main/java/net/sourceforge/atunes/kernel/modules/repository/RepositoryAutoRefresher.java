@@ -30,7 +30,9 @@ import net.sourceforge.atunes.utils.StringUtils;
 import org.joda.time.DateTime;
 
 /**
- * Calls refresh automatically
+ * Calls refresh automatically, or watches repository folders to apply changes
+ * incrementally. Folders are checked often while they change, and less often
+ * while they don't, up to auto refresh interval
  * @author alex
  *
  */
@@ -44,6 +46,46 @@ public class RepositoryAutoRefresher implements Runnable {
 
 	private IStateRepository stateRepository;
 	
+	private RepositoryFolderWatcher repositoryFolderWatcher;
+	
+	/**
+	 * If true repository folders are watched instead of refreshing repository
+	 */
+	private boolean watchFolders;
+	
+	/**
+	 * Minimum seconds between checks of repository folders, used while
+	 * changes are found
+	 */
+	private int watchInterval;
+	
+	/**
+	 * Task checking folders currently scheduled, or null if folders are not
+	 * watched
+	 */
+	private FolderWatcherTask watcherTask;
+	
+	/**
+	 * @param repositoryFolderWatcher
+	 */
+	public void setRepositoryFolderWatcher(RepositoryFolderWatcher repositoryFolderWatcher) {
+		this.repositoryFolderWatcher = repositoryFolderWatcher;
+	}
+	
+	/**
+	 * @param watchFolders
+	 */
+	public void setWatchFolders(boolean watchFolders) {
+		this.watchFolders = watchFolders;
+	}
+	
+	/**
+	 * @param watchInterval
+	 */
+	public void setWatchInterval(int watchInterval) {
+		this.watchInterval = watchInterval;
+	}
+	
 	/**
 	 * @param stateRepository
 	 */
@@ -68,9 +110,15 @@ public class RepositoryAutoRefresher implements Runnable {
 	/**
 	 * Starts auto refresh
 	 */
-    public void start() {
+    public synchronized void start() {
     	stop();
-    	if (stateRepository.getAutoRepositoryRefreshTime() > 0) {
+    	if (stateRepository.getAutoRepositoryRefreshTime() > 0 && watchFolders) {
+    		long maxWatchInterval = Math.max(watchInterval, stateRepository.getAutoRepositoryRefreshTime() * 60L);
+    		Logger.info("Repository folders will be checked for changes every ", watchInterval, " to ", maxWatchInterval, " seconds");
+    		repositoryFolderWatcher.reset();
+    		watcherTask = new FolderWatcherTask(maxWatchInterval);
+    		watcherTask.schedule(watchInterval);
+    	} else if (stateRepository.getAutoRepositoryRefreshTime() > 0) {
     		Logger.info("Repository will refresh automatically every ", stateRepository.getAutoRepositoryRefreshTime(), " minutes");
     		task = taskService.submitPeriodically("RepositoryAutoRefresher", 30, stateRepository.getAutoRepositoryRefreshTime() * 60L, this);
     	} else {
@@ -81,7 +129,8 @@ public class RepositoryAutoRefresher implements Runnable {
     /**
      * Stops auto refresh
      */
-    public void stop() {
+    public synchronized void stop() {
+    	watcherTask = null;
     	if (task != null) {
     		Logger.info("Cancelling previous pending task for automatically refresh repository");
     		task.cancel(true);
@@ -95,4 +144,39 @@ public class RepositoryAutoRefresher implements Runnable {
             repositoryHandler.refreshRepository();
         }
     }
+    
+    /**
+     * Checks folders and schedules next check. Delay doubles each time no
+     * change is found, and goes back to minimum when changes are found
+     */
+    private final class FolderWatcherTask implements Runnable {
+    	
+    	private final long maxDelay;
+    	
+    	private long delay;
+    	
+    	private FolderWatcherTask(long maxDelay) {
+    		this.maxDelay = maxDelay;
+    	}
+    	
+    	/**
+    	 * Must be called holding lock of auto refresher
+    	 * @param nextDelay
+    	 */
+    	private void schedule(long nextDelay) {
+    		delay = nextDelay;
+    		task = taskService.submitOnce("RepositoryFolderWatcher", delay, this);
+    	}
+    	
+    	@Override
+    	public void run() {
+    		boolean changed = repositoryFolderWatcher.checkFolders();
+    		synchronized (RepositoryAutoRefresher.this) {
+    			// Not scheduled again if stopped or started again meanwhile
+    			if (watcherTask == this) {
+    				schedule(changed ? watchInterval : Math.min(delay * 2, maxDelay));
+    			}
+    		}
+    	}
+    }
 }
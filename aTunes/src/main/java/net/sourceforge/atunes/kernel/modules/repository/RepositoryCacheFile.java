@@ -0,0 +1,407 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.utils.ClosingUtils;
+import net.sourceforge.atunes.utils.FileUtils;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+import net.sourceforge.atunes.utils.Logger;
+import net.sourceforge.atunes.utils.StringUtils;
+import net.sourceforge.atunes.utils.Timer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * File where repository is stored. Tags of files are stored apart from rest
+ * of repository, in track records. File is memory mapped when read: repository
+ * structures are read at once, but tags are only read when used. Long lyrics
+ * and comments are kept in file even after their tags are read
+ * <p>
+ * File contains track records, directory of records, repository and a
+ * trailer with positions of directory and repository and checksum of
+ * repository
+ * </p>
+ * <p>
+ * A mapped file can't be renamed or deleted in some systems while its
+ * records are used, so every write creates a new generation of file, and
+ * previous ones are deleted once possible
+ * </p>
+ * 
+ * @author alex
+ * 
+ */
+public class RepositoryCacheFile {
+
+	private static final int MAGIC = 0x41545243;
+
+	/**
+	 * Size of positions of directory and repository, checksum of repository
+	 * and magic number
+	 */
+	private static final int TRAILER_BYTES = 24;
+
+	/**
+	 * Newest generations first
+	 */
+	private static final Comparator<File> NEWEST_FIRST = new Comparator<File>() {
+		@Override
+		public int compare(final File o1, final File o2) {
+			long g1 = getGeneration(o1);
+			long g2 = getGeneration(o2);
+			return g1 > g2 ? -1 : (g1 == g2 ? 0 : 1);
+		}
+	};
+
+	private IOSManager osManager;
+
+	private KryoFactory kryoFactory;
+
+	private KryoSerializerService kryoSerializerService;
+
+	private int minimumTextLength = 256;
+
+	/**
+	 * @param osManager
+	 */
+	public void setOsManager(final IOSManager osManager) {
+		this.osManager = osManager;
+	}
+
+	/**
+	 * @param kryoFactory
+	 */
+	public void setKryoFactory(final KryoFactory kryoFactory) {
+		this.kryoFactory = kryoFactory;
+	}
+
+	/**
+	 * @param kryoSerializerService
+	 *            where bytes written are counted
+	 */
+	public void setKryoSerializerService(
+			final KryoSerializerService kryoSerializerService) {
+		this.kryoSerializerService = kryoSerializerService;
+	}
+
+	/**
+	 * @param minimumTextLength
+	 *            length in bytes of shortest lyrics or comment kept in file
+	 *            instead of memory when tags are read
+	 */
+	public void setMinimumTextLength(final int minimumTextLength) {
+		this.minimumTextLength = minimumTextLength;
+	}
+
+	/**
+	 * Reads repository. Tags of files are read later from file when needed
+	 * 
+	 * @return repository or null if file doesn't exist or is not valid
+	 */
+	Repository read() {
+		List<File> files = getFiles();
+		if (files.isEmpty()) {
+			Logger.info("Repository cache not found: ",
+					getFile(0).getAbsolutePath());
+			return null;
+		}
+		for (File file : files) {
+			Repository repository = read(file);
+			if (repository != null) {
+				// Nothing is mapped yet from other generations
+				deleteFilesExcept(files, file);
+				return repository;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param file
+	 * @return repository read from given file or null if not valid
+	 */
+	private Repository read(final File file) {
+		Timer timer = new Timer();
+		timer.start();
+		RandomAccessFile f = null;
+		Kryo kryo = null;
+		try {
+			f = new RandomAccessFile(file, "r");
+			long length = f.length();
+			if (length < TRAILER_BYTES || length > Integer.MAX_VALUE) {
+				Logger.error(StringUtils.getString(
+						"Invalid repository cache size: ", length));
+				return null;
+			}
+			ByteBuffer buffer = f.getChannel().map(MapMode.READ_ONLY, 0,
+					length);
+			int trailer = (int) length - TRAILER_BYTES;
+			long directoryOffset = buffer.getLong(trailer);
+			long repositoryOffset = buffer.getLong(trailer + 8);
+			if (buffer.getInt(trailer + 20) != MAGIC || directoryOffset < 0
+					|| directoryOffset > repositoryOffset
+					|| repositoryOffset > trailer) {
+				Logger.info("Not a valid repository cache: ",
+						file.getAbsolutePath());
+				return null;
+			}
+			TrackRecords records = new TrackRecords(buffer,
+					(int) directoryOffset, this.kryoFactory.getKryo(),
+					this.minimumTextLength);
+
+			byte[] bytes = new byte[trailer - (int) repositoryOffset];
+			ByteBuffer repositoryBytes = buffer.duplicate();
+			repositoryBytes.position((int) repositoryOffset);
+			repositoryBytes.get(bytes);
+			if (getChecksum(bytes, bytes.length) != buffer.getInt(trailer + 16)) {
+				Logger.error(StringUtils.getString("Checksum error in file: ",
+						file.getAbsolutePath()));
+				return null;
+			}
+			kryo = this.kryoFactory.borrowKryo();
+			AudioFileSerializer.getContext(kryo).put(TrackRecords.class,
+					records);
+			Repository repository = kryo.readObject(new Input(bytes),
+					Repository.class);
+			Logger.info("Read repository cache with ", records.size(),
+					" track records (", timer.stop(), " seconds)");
+			return repository;
+		} catch (IOException e) {
+			Logger.error(e);
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+		} catch (KryoException e) {
+			Logger.error(e);
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(f);
+		}
+		return null;
+	}
+
+	/**
+	 * Writes repository to a new generation of file, renamed once completely
+	 * written. Previous generations are deleted if no longer mapped
+	 * 
+	 * @param repository
+	 * @return if write was successful
+	 */
+	boolean write(final Repository repository) {
+		List<File> previousFiles = getFiles();
+		File file = getFile(previousFiles.isEmpty() ? 1
+				: getGeneration(previousFiles.get(0)) + 1);
+		File temporaryFile = new File(file.getAbsolutePath() + ".tmp");
+		FileOutputStream fileStream = null;
+		TrackRecords.Writer writer = null;
+		Kryo recordsKryo = null;
+		Kryo kryo = null;
+		try {
+			fileStream = new FileOutputStream(temporaryFile);
+			DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream(fileStream, 65536));
+			recordsKryo = this.kryoFactory.borrowKryo();
+			writer = new TrackRecords.Writer(stream, recordsKryo);
+
+			// Tags are written to file while repository is written to memory
+			Output output = new Output(65536, -1);
+			kryo = this.kryoFactory.borrowKryo();
+			AudioFileSerializer.getContext(kryo).put(
+					TrackRecords.Writer.class, writer);
+			kryo.writeObject(output, repository);
+
+			long directoryOffset = writer.writeDirectory();
+			long repositoryOffset = stream.size();
+			stream.write(output.getBuffer(), 0, output.position());
+			stream.writeLong(directoryOffset);
+			stream.writeLong(repositoryOffset);
+			stream.writeInt(getChecksum(output.getBuffer(), output.position()));
+			stream.writeInt(MAGIC);
+			stream.flush();
+			fileStream.getFD().sync();
+		} catch (IOException e) {
+			Logger.error(e);
+			return false;
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+			return false;
+		} catch (KryoException e) {
+			Logger.error(e);
+			return false;
+		} finally {
+			this.kryoFactory.releaseKryo(recordsKryo);
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(fileStream);
+		}
+
+		// There is no file with new name, so nothing mapped is replaced
+		if (!temporaryFile.renameTo(file)) {
+			Logger.error("Could not rename ", FileUtils.getPath(temporaryFile));
+			temporaryFile.delete();
+			return false;
+		}
+		if (this.kryoSerializerService != null) {
+			this.kryoSerializerService.addBytesWritten(file.length());
+		}
+
+		// Files whose tags were copied from previous file use new one
+		TrackRecords records = readTrackRecords(file);
+		if (records != null) {
+			writer.moveCopiedFiles(records);
+		}
+		deleteFilesExcept(previousFiles, file);
+		return true;
+	}
+
+	/**
+	 * Deletes generations of file but given one. Files still mapped can't be
+	 * deleted in some systems: they are deleted on next read or write
+	 * 
+	 * @param files
+	 * @param file
+	 */
+	private void deleteFilesExcept(final List<File> files, final File file) {
+		for (File f : files) {
+			if (!f.equals(file) && !f.delete()) {
+				Logger.debug("Repository cache still in use: ",
+						f.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return track records of file or null if not valid
+	 */
+	private TrackRecords readTrackRecords(final File file) {
+		RandomAccessFile f = null;
+		try {
+			f = new RandomAccessFile(file, "r");
+			long length = f.length();
+			ByteBuffer buffer = f.getChannel().map(MapMode.READ_ONLY, 0,
+					length);
+			return new TrackRecords(buffer, (int) buffer.getLong((int) length
+					- TRAILER_BYTES), this.kryoFactory.getKryo(),
+					this.minimumTextLength);
+		} catch (IOException e) {
+			Logger.error(e);
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+		} finally {
+			ClosingUtils.close(f);
+		}
+		return null;
+	}
+
+	/**
+	 * @param bytes
+	 * @param length
+	 * @return checksum of given bytes
+	 */
+	private static int getChecksum(final byte[] bytes, final int length) {
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes, 0, length);
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * @return size in bytes of file
+	 */
+	long length() {
+		List<File> files = getFiles();
+		return files.isEmpty() ? 0 : files.get(0).length();
+	}
+
+	/**
+	 * @return generations of file where repository is stored, newest first
+	 */
+	List<File> getFiles() {
+		List<File> files = new ArrayList<File>();
+		File[] children = getFile(0).getParentFile().listFiles();
+		if (children != null) {
+			for (File child : children) {
+				if (getGeneration(child) >= 0) {
+					files.add(child);
+				}
+			}
+		}
+		Collections.sort(files, NEWEST_FIRST);
+		return files;
+	}
+
+	/**
+	 * @param generation
+	 * @return file where given generation of repository is stored. First
+	 *         generation is file named as in previous versions
+	 */
+	private File getFile(final long generation) {
+		String customRepositoryConfigFolder = this.osManager
+				.getCustomRepositoryConfigFolder();
+		if (customRepositoryConfigFolder == null) {
+			customRepositoryConfigFolder = this.osManager.getUserConfigFolder();
+		}
+		return new File(StringUtils.getString(customRepositoryConfigFolder,
+				this.osManager.getFileSeparator(),
+				Constants.CACHE_REPOSITORY_NAME,
+				generation > 0 ? "." + generation : ""));
+	}
+
+	/**
+	 * @param file
+	 * @return generation of repository stored in file or -1 if file is not
+	 *         a generation of repository
+	 */
+	private static long getGeneration(final File file) {
+		String name = file.getName();
+		if (name.equals(Constants.CACHE_REPOSITORY_NAME)) {
+			return 0;
+		}
+		String prefix = Constants.CACHE_REPOSITORY_NAME + ".";
+		if (!name.startsWith(prefix) || name.length() == prefix.length()
+				|| name.length() - prefix.length() > 18) {
+			return -1;
+		}
+		for (int i = prefix.length(); i < name.length(); i++) {
+			if (!Character.isDigit(name.charAt(i))) {
+				return -1;
+			}
+		}
+		return Long.parseLong(name.substring(prefix.length()));
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.utils.FileUtils;
+
+/**
+ * Progress of a repository read: audio files already read and fingerprints of
+ * directories already listed. Stored periodically so a read can be resumed if
+ * application is closed before it finishes
+ * 
+ * @author alex
+ * 
+ */
+public final class RepositoryCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = -2719281655209741052L;
+
+	private List<String> folders;
+
+	private List<ILocalAudioObject> audioFiles;
+
+	private Map<String, DirectoryFingerprint> fingerprints;
+
+	private String lastDirectory;
+
+	/**
+	 * Audio files by path, used to look up files from reader threads
+	 */
+	private transient Map<String, ILocalAudioObject> audioFilesByPath;
+
+	/**
+	 * Default constructor for serialization
+	 */
+	RepositoryCheckpoint() {
+	}
+
+	/**
+	 * @param folders
+	 *            repository folders being read
+	 */
+	RepositoryCheckpoint(final List<File> folders) {
+		this.folders = getPaths(folders);
+		this.audioFiles = new ArrayList<ILocalAudioObject>();
+		this.fingerprints = new HashMap<String, DirectoryFingerprint>();
+	}
+
+	/**
+	 * @param folders
+	 * @return if this checkpoint was taken reading given folders
+	 */
+	boolean isFor(final List<File> folders) {
+		return this.folders != null && this.folders.equals(getPaths(folders));
+	}
+
+	/**
+	 * Adds an audio file already read
+	 * 
+	 * @param audioFile
+	 */
+	void addAudioFile(final ILocalAudioObject audioFile) {
+		this.audioFiles.add(audioFile);
+	}
+
+	/**
+	 * Indexes audio files by path. Must be called after reading checkpoint and
+	 * before calling getAudioFile
+	 */
+	void indexAudioFiles() {
+		this.audioFilesByPath = new HashMap<String, ILocalAudioObject>(
+				this.audioFiles.size());
+		for (ILocalAudioObject audioFile : this.audioFiles) {
+			this.audioFilesByPath.put(audioFile.getUrl(), audioFile);
+		}
+	}
+
+	/**
+	 * @param path
+	 * @return audio file already read with given path or null
+	 */
+	ILocalAudioObject getAudioFile(final String path) {
+		return this.audioFilesByPath.get(path);
+	}
+
+	/**
+	 * @return number of audio files already read
+	 */
+	int getAudioFilesCount() {
+		return this.audioFiles.size();
+	}
+
+	/**
+	 * Adds fingerprint of a directory listed
+	 * 
+	 * @param path
+	 * @param fingerprint
+	 */
+	void putDirectoryFingerprint(final String path,
+			final DirectoryFingerprint fingerprint) {
+		this.fingerprints.put(path, fingerprint);
+		this.lastDirectory = path;
+	}
+
+	/**
+	 * @param path
+	 * @return fingerprint of directory or null
+	 */
+	DirectoryFingerprint getDirectoryFingerprint(final String path) {
+		return this.fingerprints.get(path);
+	}
+
+	/**
+	 * @return last directory listed when checkpoint was taken
+	 */
+	String getLastDirectory() {
+		return this.lastDirectory;
+	}
+
+	private static List<String> getPaths(final List<File> folders) {
+		List<String> paths = new ArrayList<String>();
+		for (File folder : folders) {
+			paths.add(FileUtils.getNormalizedPath(folder));
+		}
+		return paths;
+	}
+}
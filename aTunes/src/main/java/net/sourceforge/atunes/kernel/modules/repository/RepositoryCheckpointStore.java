@@ -0,0 +1,118 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+import net.sourceforge.atunes.utils.Logger;
+import net.sourceforge.atunes.utils.StringUtils;
+
+/**
+ * Stores checkpoints of repository read in a file next to repository cache
+ * 
+ * @author alex
+ * 
+ */
+public class RepositoryCheckpointStore {
+
+	private IOSManager osManager;
+
+	private KryoSerializerService kryoSerializerService;
+
+	/**
+	 * @param osManager
+	 */
+	public void setOsManager(final IOSManager osManager) {
+		this.osManager = osManager;
+	}
+
+	/**
+	 * @param kryoSerializerService
+	 */
+	public void setKryoSerializerService(
+			final KryoSerializerService kryoSerializerService) {
+		this.kryoSerializerService = kryoSerializerService;
+	}
+
+	/**
+	 * Reads checkpoint of a read of given folders
+	 * 
+	 * @param folders
+	 * @return checkpoint or null if there is no checkpoint for these folders
+	 */
+	RepositoryCheckpoint read(final List<File> folders) {
+		File file = getFile();
+		if (file.exists()) {
+			try {
+				RepositoryCheckpoint checkpoint = (RepositoryCheckpoint) this.kryoSerializerService
+						.readObjectFromFile(file.getAbsolutePath(),
+								RepositoryCheckpoint.class);
+				if (checkpoint != null && checkpoint.isFor(folders)) {
+					checkpoint.indexAudioFiles();
+					return checkpoint;
+				}
+			} catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes checkpoint. A previous checkpoint is only replaced when new one
+	 * has been completely written
+	 * 
+	 * @param checkpoint
+	 */
+	void write(final RepositoryCheckpoint checkpoint) {
+		this.kryoSerializerService.writeObjectToFile(
+				getFile().getAbsolutePath(), checkpoint);
+	}
+
+	/**
+	 * Removes checkpoint when read is finished
+	 */
+	void delete() {
+		File file = getFile();
+		if (file.exists() && !file.delete()) {
+			Logger.error("Could not delete ", file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return file where checkpoint is stored
+	 */
+	private File getFile() {
+		String customRepositoryConfigFolder = this.osManager
+				.getCustomRepositoryConfigFolder();
+		if (customRepositoryConfigFolder == null) {
+			customRepositoryConfigFolder = this.osManager.getUserConfigFolder();
+		}
+		return new File(StringUtils.getString(customRepositoryConfigFolder,
+				this.osManager.getFileSeparator(),
+				Constants.CACHE_REPOSITORY_CHECKPOINT_NAME));
+	}
+}
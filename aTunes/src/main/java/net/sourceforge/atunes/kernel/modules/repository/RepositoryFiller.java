@@ -38,13 +38,25 @@ import net.sourceforge.atunes.model.IYear;
 import org.apache.commons.lang.StringUtils;
 
 /**
- * A class responsible of load repository structure
+ * A class responsible of load repository structure. Audio files can be added
+ * from several threads at the same time using the same filler: nodes are
+ * created atomically and changes to a node are done holding one of a set of
+ * locks of the filler, chosen by node. A repository is only changed by one
+ * filler at a time, as loaders fill a new repository and other changes are
+ * done inside a transaction
  * 
  * @author fleax
  * 
  */
 final class RepositoryFiller {
 
+	/**
+	 * Number of locks used to update nodes, must be a power of two
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
 	private final IRepository repository;
 
 	private final IStateNavigation stateNavigation;
@@ -72,6 +84,9 @@ final class RepositoryFiller {
 		this.stateNavigation = stateNavigation;
 		this.unknownObjectChecker = unknownObjectChecker;
 		this.fileManager = fileManager;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			this.locks[i] = new Object();
+		}
 	}
 
 	/**
@@ -87,6 +102,46 @@ final class RepositoryFiller {
 		if (audioFile == null) {
 			throw new IllegalArgumentException("AudioFile is null");
 		}
+		addAudioFile(audioFile, repositoryFolderRoot,
+				relativePathToRepositoryFolderRoot,
+				this.fileManager.getFileSize(audioFile));
+	}
+
+	/**
+	 * Adds a new audio file with a relative path and which size has been
+	 * already read from disk
+	 * 
+	 * @param audioFile
+	 * @param repositoryFolderRoot
+	 * @param relativePathToRepositoryFolderRoot
+	 * @param sizeInBytes
+	 */
+	void addAudioFile(final ILocalAudioObject audioFile,
+			final File repositoryFolderRoot,
+			final String relativePathToRepositoryFolderRoot,
+			final long sizeInBytes) {
+		addAudioFileToFolderStructure(audioFile, repositoryFolderRoot,
+				relativePathToRepositoryFolderRoot, sizeInBytes);
+		addAudioFileTags(audioFile);
+	}
+
+	/**
+	 * Adds a new audio file with a relative path to file and folder
+	 * structures only, as its tag has not been read yet. When read, call
+	 * addAudioFileTags to add it to the rest of structures
+	 * 
+	 * @param audioFile
+	 * @param repositoryFolderRoot
+	 * @param relativePathToRepositoryFolderRoot
+	 * @param sizeInBytes
+	 */
+	void addAudioFileToFolderStructure(final ILocalAudioObject audioFile,
+			final File repositoryFolderRoot,
+			final String relativePathToRepositoryFolderRoot,
+			final long sizeInBytes) {
+		if (audioFile == null) {
+			throw new IllegalArgumentException("AudioFile is null");
+		}
 
 		if (repositoryFolderRoot == null) {
 			throw new IllegalArgumentException("RelativeTo file is null");
@@ -96,10 +151,24 @@ final class RepositoryFiller {
 			throw new IllegalArgumentException("Relative path is null");
 		}
 
-		addToRepository(audioFile);
-		addToArtistStructure(audioFile);
+		this.repository.putFile(audioFile);
+		this.repository.addSizeInBytes(sizeInBytes);
 		addToFolderStructure(repositoryFolderRoot,
 				relativePathToRepositoryFolderRoot, audioFile);
+	}
+
+	/**
+	 * Adds an audio file already in folder structure to artist, genre and
+	 * year structures, once its tag has been read
+	 * 
+	 * @param audioFile
+	 */
+	void addAudioFileTags(final ILocalAudioObject audioFile) {
+		if (audioFile == null) {
+			throw new IllegalArgumentException("AudioFile is null");
+		}
+		this.repository.addDurationInSeconds(audioFile.getDuration());
+		addToArtistStructure(audioFile);
 		addToGenreStructure(audioFile);
 		addToYearStructure(audioFile);
 	}
@@ -114,6 +183,9 @@ final class RepositoryFiller {
 			throw new IllegalArgumentException("AudioFile is null");
 		}
 
+		// Put again so change is recorded
+		this.repository.putFile(audioFile);
+
 		updateArtistStructure(oldTag, audioFile);
 		updateGenreStructure(oldTag, audioFile);
 		updateYearStructure(oldTag, audioFile);
@@ -124,14 +196,15 @@ final class RepositoryFiller {
 	}
 
 	/**
-	 * Adds basic information of given audio file to repository
+	 * Returns lock to hold while changing given node of repository
 	 * 
-	 * @param audioFile
+	 * @param node
+	 * @return
 	 */
-	private void addToRepository(final ILocalAudioObject audioFile) {
-		this.repository.putFile(audioFile);
-		this.repository.addSizeInBytes(this.fileManager.getFileSize(audioFile));
-		this.repository.addDurationInSeconds(audioFile.getDuration());
+	private Object getLock(final Object node) {
+		int hash = System.identityHashCode(node);
+		hash ^= hash >>> 16;
+		return this.locks[hash & (LOCK_STRIPES - 1)];
 	}
 
 	/**
@@ -157,17 +230,24 @@ final class RepositoryFiller {
 		// Create artist object if needed
 		IArtist artistObject = this.repository.getArtist(artist);
 		if (artistObject == null) {
-			artistObject = this.repository.putArtist(new Artist(artist));
+			artistObject = this.repository.putArtistIfAbsent(new Artist(
+					artist));
 		}
 
 		// Create album object if needed
 		IAlbum albumObject = artistObject.getAlbum(album);
 		if (albumObject == null) {
-			albumObject = new Album(artistObject, album);
-			artistObject.addAlbum(albumObject);
+			synchronized (getLock(artistObject)) {
+				albumObject = artistObject.getAlbum(album);
+				if (albumObject == null) {
+					albumObject = new Album(artistObject, album);
+					artistObject.addAlbum(albumObject);
+					this.repository.putAlbum(albumObject);
+				}
+			}
 		}
 
-		// Add file to album
+		// Add file to album, which set is already synchronized
 		albumObject.addAudioFile(audioFile);
 	}
 
@@ -181,9 +261,11 @@ final class RepositoryFiller {
 		String genre = audioFile.getGenre(this.unknownObjectChecker);
 		IGenre genreObject = this.repository.getGenre(genre);
 		if (genreObject == null) {
-			genreObject = this.repository.putGenre(new Genre(genre));
+			genreObject = this.repository.putGenreIfAbsent(new Genre(genre));
+		}
+		synchronized (getLock(genreObject)) {
+			genreObject.addAudioObject(audioFile);
 		}
-		genreObject.addAudioObject(audioFile);
 	}
 
 	/**
@@ -197,11 +279,13 @@ final class RepositoryFiller {
 
 		IYear yearObject = this.repository.getYear(year);
 		if (yearObject == null) {
-			yearObject = new Year(year);
-			this.repository.putYear(yearObject, this.unknownObjectChecker);
+			yearObject = this.repository.putYearIfAbsent(new Year(year),
+					this.unknownObjectChecker);
 		}
 
-		yearObject.addAudioObject(audioFile);
+		synchronized (getLock(yearObject)) {
+			yearObject.addAudioObject(audioFile);
+		}
 	}
 
 	/**
@@ -220,9 +304,8 @@ final class RepositoryFiller {
 				.getFolder(net.sourceforge.atunes.utils.FileUtils
 						.getPath(relativeTo));
 		if (relativeFolder == null) {
-			relativeFolder = new Folder(
-					net.sourceforge.atunes.utils.FileUtils.getPath(relativeTo));
-			this.repository.putFolder(relativeFolder);
+			relativeFolder = this.repository.putFolderIfAbsent(new Folder(
+					net.sourceforge.atunes.utils.FileUtils.getPath(relativeTo)));
 		}
 
 		String[] foldersInPath = relativePath.split("/");
@@ -231,12 +314,19 @@ final class RepositoryFiller {
 		for (String folderName : foldersInPath) {
 			f = parentFolder.getFolder(folderName);
 			if (f == null) {
-				f = new Folder(folderName);
-				parentFolder.addFolder(f);
+				synchronized (getLock(parentFolder)) {
+					f = parentFolder.getFolder(folderName);
+					if (f == null) {
+						f = new Folder(folderName);
+						parentFolder.addFolder(f);
+					}
+				}
 			}
 			parentFolder = f;
 		}
-		parentFolder.addAudioFile(file);
+		synchronized (getLock(parentFolder)) {
+			parentFolder.addAudioFile(file);
+		}
 	}
 
 	/**
@@ -272,16 +362,19 @@ final class RepositoryFiller {
 			final String artist, final String album,
 			final boolean albumArtistPresent, final IArtist a) {
 		IArtist artistObject = a;
-		IAlbum alb = artistObject.getAlbum(album);
-		if (alb != null) {
-			if (alb.size() == 1) {
-				artistObject.removeAlbum(alb);
-			} else {
-				alb.removeAudioFile(file);
-			}
+		synchronized (getLock(artistObject)) {
+			IAlbum alb = artistObject.getAlbum(album);
+			if (alb != null) {
+				if (alb.size() == 1) {
+					artistObject.removeAlbum(alb);
+					this.repository.removeAlbum(alb);
+				} else {
+					alb.removeAudioFile(file);
+				}
 
-			if (artistObject.size() <= 0) {
-				this.repository.removeArtist(artistObject);
+				if (artistObject.size() <= 0) {
+					this.repository.removeArtist(artistObject);
+				}
 			}
 		}
 		// If album artist field is present, audio file might still be
@@ -289,17 +382,20 @@ final class RepositoryFiller {
 		if (albumArtistPresent) {
 			artistObject = this.repository.getArtist(artist);
 			if (artistObject != null) {
-				alb = artistObject.getAlbum(album);
-				if (alb != null) {
-					if (alb.size() == 1) {
-						artistObject.removeAlbum(alb);
-					} else {
-						alb.removeAudioFile(file);
-					}
-					// Maybe needs to be set to 0 in case node gets
-					// deleted
-					if (artistObject.size() <= 1) {
-						this.repository.removeArtist(artistObject);
+				synchronized (getLock(artistObject)) {
+					IAlbum alb = artistObject.getAlbum(album);
+					if (alb != null) {
+						if (alb.size() == 1) {
+							artistObject.removeAlbum(alb);
+							this.repository.removeAlbum(alb);
+						} else {
+							alb.removeAudioFile(file);
+						}
+						// Maybe needs to be set to 0 in case node gets
+						// deleted
+						if (artistObject.size() <= 1) {
+							this.repository.removeArtist(artistObject);
+						}
 					}
 				}
 			}
@@ -344,10 +440,12 @@ final class RepositoryFiller {
 
 		IGenre g = this.repository.getGenre(genre);
 		if (g != null) {
-			g.removeAudioObject(file);
+			synchronized (getLock(g)) {
+				g.removeAudioObject(file);
 
-			if (g.size() <= 1) {
-				this.repository.removeGenre(g);
+				if (g.size() <= 1) {
+					this.repository.removeGenre(g);
+				}
 			}
 		}
 	}
@@ -372,10 +470,12 @@ final class RepositoryFiller {
 		// Remove from year structure if necessary
 		IYear y = this.repository.getYear(year);
 		if (y != null) {
-			y.removeAudioObject(file);
+			synchronized (getLock(y)) {
+				y.removeAudioObject(file);
 
-			if (y.size() <= 1) {
-				this.repository.removeYear(y, this.unknownObjectChecker);
+				if (y.size() <= 1) {
+					this.repository.removeYear(y, this.unknownObjectChecker);
+				}
 			}
 		}
 	}
@@ -0,0 +1,410 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.IBeanFactory;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.model.ILocalAudioObjectFactory;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
+import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.utils.FileUtils;
+import net.sourceforge.atunes.utils.Logger;
+
+/**
+ * Watches repository folders for changes and applies them to repository
+ * incrementally.
+ * 
+ * Each time it runs, modification time of every repository directory is
+ * compared with its fingerprint. Directories changed are only processed when
+ * their modification time didn't change since previous run, so a copy in
+ * progress is processed once finished. Audio files added, modified or removed
+ * in all changed directories are applied to repository in one transaction.
+ * When too many directories change at once, a full refresh is made instead
+ * 
+ * @author alex
+ * 
+ */
+public class RepositoryFolderWatcher implements Runnable {
+
+	private RepositoryHandler repositoryHandler;
+
+	private IBeanFactory beanFactory;
+
+	private ILocalAudioObjectFactory localAudioObjectFactory;
+
+	private ILocalAudioObjectValidator localAudioObjectValidator;
+
+	private IFileManager fileManager;
+
+	/**
+	 * Maximum number of changed directories applied incrementally. If more
+	 * directories change, repository is refreshed
+	 */
+	private int maxChangedDirectories;
+
+	/**
+	 * Modification time of directories found changed in previous run but not
+	 * processed yet
+	 */
+	private Map<String, Long> changedDirectories = new HashMap<String, Long>();
+
+	/**
+	 * @param repositoryHandler
+	 */
+	public void setRepositoryHandler(final RepositoryHandler repositoryHandler) {
+		this.repositoryHandler = repositoryHandler;
+	}
+
+	/**
+	 * @param beanFactory
+	 */
+	public void setBeanFactory(final IBeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	/**
+	 * @param localAudioObjectFactory
+	 */
+	public void setLocalAudioObjectFactory(
+			final ILocalAudioObjectFactory localAudioObjectFactory) {
+		this.localAudioObjectFactory = localAudioObjectFactory;
+	}
+
+	/**
+	 * @param localAudioObjectValidator
+	 */
+	public void setLocalAudioObjectValidator(
+			final ILocalAudioObjectValidator localAudioObjectValidator) {
+		this.localAudioObjectValidator = localAudioObjectValidator;
+	}
+
+	/**
+	 * @param fileManager
+	 */
+	public void setFileManager(final IFileManager fileManager) {
+		this.fileManager = fileManager;
+	}
+
+	/**
+	 * @param maxChangedDirectories
+	 */
+	public void setMaxChangedDirectories(final int maxChangedDirectories) {
+		this.maxChangedDirectories = maxChangedDirectories;
+	}
+
+	/**
+	 * Forgets changes found in previous runs
+	 */
+	public void reset() {
+		this.changedDirectories = new HashMap<String, Long>();
+	}
+
+	@Override
+	public void run() {
+		checkFolders();
+	}
+
+	/**
+	 * Checks repository folders once, applying changes found
+	 * 
+	 * @return true if any directory was found changed, either applied now or
+	 *         waiting to be applied in next run
+	 */
+	public boolean checkFolders() {
+		IRepository repository = this.repositoryHandler.getRepository();
+		if (repository == null || repository instanceof VoidRepository
+				|| this.repositoryHandler.isLoaderWorking()) {
+			return false;
+		}
+
+		Map<String, Long> changed = new HashMap<String, Long>();
+		List<File> stableDirectories = new ArrayList<File>();
+		for (File folder : repository.getRepositoryFolders()) {
+			findChangedDirectories(repository, folder, changed,
+					stableDirectories);
+		}
+		this.changedDirectories = changed;
+
+		if (stableDirectories.size() > this.maxChangedDirectories) {
+			Logger.info(stableDirectories.size(),
+					" directories changed, refreshing repository");
+			reset();
+			this.repositoryHandler.refreshRepository();
+		} else if (!stableDirectories.isEmpty()) {
+			applyChanges(repository, stableDirectories);
+		}
+		return !changed.isEmpty() || !stableDirectories.isEmpty();
+	}
+
+	/**
+	 * Navigates directories using fingerprints, only reading their
+	 * modification time
+	 * 
+	 * @param repository
+	 * @param dir
+	 * @param changed
+	 *            directories changed since fingerprint was taken
+	 * @param stableDirectories
+	 *            directories changed which didn't change since previous run
+	 */
+	private void findChangedDirectories(final IRepository repository,
+			final File dir, final Map<String, Long> changed,
+			final List<File> stableDirectories) {
+		String path = FileUtils.getNormalizedPath(dir);
+		DirectoryFingerprint fingerprint = repository
+				.getDirectoryFingerprint(path);
+		long lastModified = dir.lastModified();
+		if (lastModified == 0) {
+			// A directory removed is processed as a change in its parent
+			return;
+		}
+		if (fingerprint == null || !fingerprint.matches(lastModified)) {
+			Long previous = this.changedDirectories.get(path);
+			if (previous != null && previous.longValue() == lastModified) {
+				stableDirectories.add(dir);
+			} else {
+				changed.put(path, lastModified);
+			}
+		}
+		if (fingerprint != null) {
+			for (String name : fingerprint.getDirectories()) {
+				findChangedDirectories(repository, new File(dir, name),
+						changed, stableDirectories);
+			}
+		}
+	}
+
+	/**
+	 * Reads changed directories and applies changes to repository in one
+	 * transaction
+	 * 
+	 * @param repository
+	 * @param directories
+	 */
+	private void applyChanges(final IRepository repository,
+			final List<File> directories) {
+		RepositoryChanges changes = new RepositoryChanges();
+		for (File dir : directories) {
+			readChanges(repository, dir, changes);
+		}
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		if (changes.hasFileChanges()) {
+			Logger.info("Applying changes in repository folders: ",
+					changes.added.size(), " files added, ",
+					changes.refreshed.size(), " files modified, ",
+					changes.removed.size(), " files removed");
+		}
+		this.repositoryHandler.startTransaction();
+		try {
+			// Changes are applied to a new version of repository
+			IRepository nextVersion = this.repositoryHandler.getRepository();
+			for (Map.Entry<String, DirectoryFingerprint> fingerprint : changes.fingerprints
+					.entrySet()) {
+				nextVersion.putDirectoryFingerprint(fingerprint.getKey(),
+						fingerprint.getValue());
+			}
+			for (String removedPath : changes.removedFingerprints) {
+				nextVersion.removeDirectoryFingerprint(removedPath);
+			}
+			if (!changes.added.isEmpty()) {
+				this.beanFactory.getBean(RepositoryAddService.class)
+						.addFilesToRepositoryInsideTransaction(nextVersion,
+								changes.added);
+			}
+			LocalAudioObjectRefresher refresher = this.beanFactory
+					.getBean(LocalAudioObjectRefresher.class);
+			for (ILocalAudioObject file : changes.refreshed) {
+				refresher.refreshFile(nextVersion, file);
+			}
+			if (!changes.removed.isEmpty()) {
+				this.repositoryHandler.removeInsideTransaction(changes.removed);
+			}
+		} finally {
+			this.repositoryHandler.endTransaction();
+		}
+
+		if (changes.hasFileChanges()) {
+			this.beanFactory.getBean(RepositoryLoadedActions.class)
+					.repositoryReadCompleted(
+							this.repositoryHandler.getRepository());
+		}
+	}
+
+	/**
+	 * Compares contents of a directory with repository, and collects its new
+	 * fingerprint. New children directories are read too. As directory didn't
+	 * change since previous run its fingerprint is always taken, so it's not
+	 * read again until it changes
+	 * 
+	 * @param repository
+	 * @param dir
+	 * @param changes
+	 */
+	private void readChanges(final IRepository repository, final File dir,
+			final RepositoryChanges changes) {
+		String path = FileUtils.getNormalizedPath(dir);
+		DirectoryFingerprint fingerprint = repository
+				.getDirectoryFingerprint(path);
+		DirectoryContent content = DirectoryContent.read(dir,
+				this.localAudioObjectValidator, true);
+
+		Set<String> audioFiles = new HashSet<String>();
+		for (ScannedAudioFile audioFile : content.getAudioFiles()) {
+			String audioFilePath = FileUtils.getNormalizedPath(audioFile
+					.getFile());
+			audioFiles.add(audioFile.getFile().getName());
+			ILocalAudioObject ao = repository.getFile(audioFilePath);
+			if (ao == null) {
+				ao = this.localAudioObjectFactory.getLocalAudioObject(audioFile
+						.getFile());
+				if (ao != null) {
+					changes.added.add(ao);
+				}
+			} else if (!this.fileManager.isUpToDate(ao,
+					audioFile.getLastModified())) {
+				changes.refreshed.add(ao);
+			}
+		}
+
+		Set<String> directories = new HashSet<String>();
+		for (File child : content.getDirectories()) {
+			directories.add(child.getName());
+		}
+
+		if (fingerprint != null) {
+			for (String name : fingerprint.getAudioFiles()) {
+				if (!audioFiles.contains(name)) {
+					ILocalAudioObject ao = repository.getFile(FileUtils
+							.getNormalizedPath(new File(dir, name)));
+					if (ao != null) {
+						changes.removed.add(ao);
+					}
+				}
+			}
+			for (String name : fingerprint.getDirectories()) {
+				if (!directories.contains(name)) {
+					File removedDir = new File(dir, name);
+					addFilesInDirectory(repository, removedDir,
+							changes.removed);
+					addFingerprintsInDirectory(repository, removedDir,
+							changes.removedFingerprints);
+				}
+			}
+		}
+
+		if (content.getFingerprint() != null) {
+			changes.fingerprints.put(path, content.getFingerprint());
+		}
+
+		// Directories not known yet
+		List<String> knownDirectories = fingerprint != null ? Arrays
+				.asList(fingerprint.getDirectories()) : null;
+		for (File child : content.getDirectories()) {
+			if (knownDirectories == null
+					|| !knownDirectories.contains(child.getName())) {
+				readChanges(repository, child, changes);
+			}
+		}
+	}
+
+	/**
+	 * Adds to list all repository files in a directory and its children
+	 * directories
+	 * 
+	 * @param repository
+	 * @param dir
+	 * @param files
+	 */
+	private void addFilesInDirectory(final IRepository repository,
+			final File dir, final List<ILocalAudioObject> files) {
+		files.addAll(repository.getFilesInFolder(FileUtils
+				.getNormalizedPath(dir)));
+	}
+
+	/**
+	 * Adds to list paths of a directory and its children directories having a
+	 * fingerprint
+	 * 
+	 * @param repository
+	 * @param dir
+	 * @param paths
+	 */
+	private void addFingerprintsInDirectory(final IRepository repository,
+			final File dir, final List<String> paths) {
+		String path = FileUtils.getNormalizedPath(dir);
+		DirectoryFingerprint fingerprint = repository
+				.getDirectoryFingerprint(path);
+		if (fingerprint != null) {
+			paths.add(path);
+			for (String name : fingerprint.getDirectories()) {
+				addFingerprintsInDirectory(repository, new File(dir, name),
+						paths);
+			}
+		}
+	}
+
+	/**
+	 * Changes to be applied to repository
+	 */
+	private static final class RepositoryChanges {
+
+		private final List<ILocalAudioObject> added = new ArrayList<ILocalAudioObject>();
+
+		private final List<ILocalAudioObject> refreshed = new ArrayList<ILocalAudioObject>();
+
+		private final List<ILocalAudioObject> removed = new ArrayList<ILocalAudioObject>();
+
+		/**
+		 * Fingerprints of directories read, applied in the same transaction
+		 * as files
+		 */
+		private final Map<String, DirectoryFingerprint> fingerprints = new HashMap<String, DirectoryFingerprint>();
+
+		/**
+		 * Paths of directories removed, which fingerprints must be removed
+		 */
+		private final List<String> removedFingerprints = new ArrayList<String>();
+
+		boolean hasFileChanges() {
+			return !this.added.isEmpty() || !this.refreshed.isEmpty()
+					|| !this.removed.isEmpty();
+		}
+
+		boolean isEmpty() {
+			return !hasFileChanges() && this.fingerprints.isEmpty()
+					&& this.removedFingerprints.isEmpty();
+		}
+	}
+}
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import net.sourceforge.atunes.kernel.AbstractHandler;
 import net.sourceforge.atunes.model.IAlbum;
@@ -77,7 +78,27 @@ public final class RepositoryHandler extends AbstractHandler implements
 
 	private IStateService stateService;
 
-	private IRepository repository;
+	/**
+	 * Version of repository published to readers, not changed once published
+	 */
+	private volatile IRepository repository;
+
+	/**
+	 * Next version of repository, being changed by the transaction in progress
+	 * and only visible to the thread running it
+	 */
+	private IRepository nextRepository;
+
+	/**
+	 * Version of repository next version was created from
+	 */
+	private IRepository previousRepository;
+
+	/**
+	 * Held while a transaction is in progress, so transactions of different
+	 * threads are made one after another. Transactions can be nested
+	 */
+	private final ReentrantLock transactionLock = new ReentrantLock();
 
 	private RepositoryAutoRefresher repositoryRefresher;
 
@@ -150,6 +171,18 @@ public final class RepositoryHandler extends AbstractHandler implements
 		this.stateRepository = stateRepository;
 	}
 
+	/**
+	 * @return current repository: version being changed if calling thread is
+	 *         running a transaction, or last version published otherwise
+	 */
+	IRepository getRepository() {
+		if (this.transactionLock.isHeldByCurrentThread()
+				&& this.nextRepository != null) {
+			return this.nextRepository;
+		}
+		return this.repository;
+	}
+
 	/**
 	 * @param repository
 	 */
@@ -249,8 +282,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 
 	@Override
 	public void addAudioObjectsAndRefresh(final List<ILocalAudioObject> result) {
-		getBean(AddFilesToRepositoryTask.class)
-				.execute(this.repository, result);
+		getBean(AddFilesToRepositoryTask.class).execute(result);
 	}
 
 	/**
@@ -275,13 +307,13 @@ public final class RepositoryHandler extends AbstractHandler implements
 
 	@Override
 	public List<File> getFolders() {
-		return this.repository.getRepositoryFolders();
+		return getRepository().getRepositoryFolders();
 	}
 
 	@Override
 	public List<IAlbum> getAlbums() {
 		List<IAlbum> result = new ArrayList<IAlbum>();
-		Collection<IArtist> artists = this.repository.getArtists();
+		Collection<IArtist> artists = getRepository().getArtists();
 		for (IArtist a : artists) {
 			result.addAll(a.getAlbums().values());
 		}
@@ -292,7 +324,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public List<IArtist> getArtists() {
 		List<IArtist> result = new ArrayList<IArtist>();
-		result.addAll(this.repository.getArtists());
+		result.addAll(getRepository().getArtists());
 		Collections.sort(result);
 		return result;
 	}
@@ -300,7 +332,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public List<IGenre> getGenres() {
 		List<IGenre> result = new ArrayList<IGenre>();
-		result.addAll(this.repository.getGenres());
+		result.addAll(getRepository().getGenres());
 		Collections.sort(result);
 		return result;
 	}
@@ -308,44 +340,64 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public List<IYear> getYears() {
 		List<IYear> result = new ArrayList<IYear>();
-		result.addAll(this.repository.getYears());
+		result.addAll(getRepository().getYears());
 		Collections.sort(result);
 		return result;
 	}
 
 	@Override
 	public IArtist getArtist(final String name) {
-		return this.repository.getArtist(name);
+		return getRepository().getArtist(name);
 	}
 
 	@Override
 	public void removeArtist(final IArtist artist) {
-		this.repository.removeArtist(artist);
+		startTransaction();
+		try {
+			getRepository().removeArtist(artist);
+		} finally {
+			endTransaction();
+		}
+	}
+
+	@Override
+	public void removeAlbum(final IAlbum album) {
+		startTransaction();
+		try {
+			getRepository().removeAlbum(album);
+		} finally {
+			endTransaction();
+		}
 	}
 
 	@Override
 	public IGenre getGenre(final String genre) {
-		return this.repository.getGenre(genre);
+		return getRepository().getGenre(genre);
 	}
 
 	@Override
 	public void removeGenre(final IGenre genre) {
-		this.repository.removeGenre(genre);
+		startTransaction();
+		try {
+			getRepository().removeGenre(genre);
+		} finally {
+			endTransaction();
+		}
 	}
 
 	@Override
 	public ILocalAudioObject getFileIfLoaded(final String fileName) {
-		return this.repository.getFile(fileName);
+		return getRepository().getFile(fileName);
 	}
 
 	@Override
 	public int getFoldersCount() {
-		return this.repository.getRepositoryFolders().size();
+		return getRepository().getRepositoryFolders().size();
 	}
 
 	@Override
 	public File getRepositoryFolderContainingFile(final ILocalAudioObject file) {
-		for (File folder : this.repository.getRepositoryFolders()) {
+		for (File folder : getRepository().getRepositoryFolders()) {
 			if (file.getUrl().startsWith(
 					net.sourceforge.atunes.utils.FileUtils.getPath(folder))) {
 				return folder;
@@ -358,23 +410,23 @@ public final class RepositoryHandler extends AbstractHandler implements
 	public String getRepositoryPath() {
 		// TODO: Remove this method as now more than one folder can be added to
 		// repository
-		return this.repository.getRepositoryFolders().size() > 0 ? net.sourceforge.atunes.utils.FileUtils
-				.getPath(this.repository.getRepositoryFolders().get(0)) : "";
+		return getRepository().getRepositoryFolders().size() > 0 ? net.sourceforge.atunes.utils.FileUtils
+				.getPath(getRepository().getRepositoryFolders().get(0)) : "";
 	}
 
 	@Override
 	public long getRepositoryTotalSize() {
-		return this.repository.getTotalSizeInBytes();
+		return getRepository().getTotalSizeInBytes();
 	}
 
 	@Override
 	public int getNumberOfFiles() {
-		return this.repository.countFiles();
+		return getRepository().countFiles();
 	}
 
 	@Override
 	public Collection<ILocalAudioObject> getAudioFilesList() {
-		return this.repository.getFiles();
+		return getRepository().getFiles();
 	}
 
 	@Override
@@ -400,7 +452,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public boolean isRepository(final File folder) {
 		String path = net.sourceforge.atunes.utils.FileUtils.getPath(folder);
-		for (File folders : this.repository.getRepositoryFolders()) {
+		for (File folders : getRepository().getRepositoryFolders()) {
 			if (path.startsWith(net.sourceforge.atunes.utils.FileUtils
 					.getPath(folders))) {
 				return true;
@@ -420,23 +472,26 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public void refreshFiles(final List<ILocalAudioObject> files) {
 		startTransaction();
-		LocalAudioObjectRefresher refresher = getBean(LocalAudioObjectRefresher.class);
-		for (ILocalAudioObject file : files) {
-			refresher.refreshFile(this.repository, file);
+		try {
+			LocalAudioObjectRefresher refresher = getBean(LocalAudioObjectRefresher.class);
+			for (ILocalAudioObject file : files) {
+				refresher.refreshFile(getRepository(), file);
+			}
+		} finally {
+			endTransaction();
 		}
-		endTransaction();
 	}
 
 	@Override
 	public void refreshFolders(final List<IFolder> folders) {
-		getBean(RefreshFoldersTask.class).execute(this.repository, folders);
+		getBean(RefreshFoldersTask.class).execute(folders);
 	}
 
 	@Override
 	public void refreshRepository() {
 		if (!isRepositoryVoid()) {
 			this.currentRepositoryReader = getBean(RepositoryReader.class);
-			this.currentRepositoryReader.refresh(this.repository);
+			this.currentRepositoryReader.refresh(getRepository());
 		}
 	}
 
@@ -447,7 +502,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 					I18nUtils.getString("RELOAD_REPOSITORY_MESSAGE"));
 			this.currentRepositoryReader = getBean(RepositoryReader.class);
 			this.currentRepositoryReader
-					.newRepositoryWithFoldersReloaded(this.repository
+					.newRepositoryWithFoldersReloaded(getRepository()
 							.getRepositoryFolders());
 		}
 	}
@@ -455,8 +510,11 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public void removeFolders(final List<IFolder> foldersToRemove) {
 		startTransaction();
-		removeFoldersInsideTransaction(foldersToRemove);
-		endTransaction();
+		try {
+			removeFoldersInsideTransaction(foldersToRemove);
+		} finally {
+			endTransaction();
+		}
 	}
 
 	private void removeFoldersInsideTransaction(
@@ -470,9 +528,11 @@ public final class RepositoryHandler extends AbstractHandler implements
 			// Remove content
 			remove(folder.getAudioObjects());
 
-			// Remove from model
-			if (folder.getParentFolder() != null) {
-				folder.getParentFolder().removeFolder(folder);
+			// Remove from model, folder can belong to a previous version
+			IFolder folderOfVersion = getFolderOfCurrentVersion(folder);
+			if (folderOfVersion != null
+					&& folderOfVersion.getParentFolder() != null) {
+				folderOfVersion.getParentFolder().removeFolder(folderOfVersion);
 			}
 		}
 	}
@@ -484,12 +544,40 @@ public final class RepositoryHandler extends AbstractHandler implements
 		}
 
 		startTransaction();
-		removeInsideTransaction(filesToRemove);
-		endTransaction();
+		try {
+			removeInsideTransaction(filesToRemove);
+		} finally {
+			endTransaction();
+		}
+	}
+
+	/**
+	 * Returns folder of current version of repository with the same path as
+	 * given folder
+	 * 
+	 * @param folder
+	 * @return folder or null if it's not in current version
+	 */
+	private IFolder getFolderOfCurrentVersion(final IFolder folder) {
+		List<String> names = new ArrayList<String>();
+		IFolder f = folder;
+		while (f.getParentFolder() != null) {
+			names.add(f.getName());
+			f = f.getParentFolder();
+		}
+		IFolder result = getRepository().getFolder(f.getName());
+		for (int i = names.size() - 1; i >= 0 && result != null; i--) {
+			result = result.getFolder(names.get(i));
+		}
+		return result;
 	}
 
-	private void removeInsideTransaction(
-			final List<ILocalAudioObject> filesToRemove) {
+	/**
+	 * Removes files from repository. No transaction is created
+	 * 
+	 * @param filesToRemove
+	 */
+	void removeInsideTransaction(final List<ILocalAudioObject> filesToRemove) {
 		RepositoryRemover remover = getBean(RepositoryRemover.class);
 		for (ILocalAudioObject fileToRemove : filesToRemove) {
 			remover.deleteFile(fileToRemove);
@@ -506,9 +594,12 @@ public final class RepositoryHandler extends AbstractHandler implements
 		String oldName = this.fileManager.getPath(audioFile);
 		if (this.fileManager.rename(audioFile, name)) {
 			startTransaction();
-			this.repository.removeFile(oldName);
-			this.repository.putFile(audioFile);
-			endTransaction();
+			try {
+				getRepository().removeFile(oldName);
+				getRepository().putFile(audioFile);
+			} finally {
+				endTransaction();
+			}
 			this.navigationHandler.repositoryReloaded();
 			this.statisticsHandler.updateFileName(audioFile, oldName,
 					this.fileManager.getPath(audioFile));
@@ -521,14 +612,14 @@ public final class RepositoryHandler extends AbstractHandler implements
 	 * @return
 	 */
 	private boolean isRepositoryVoid() {
-		return this.repository instanceof VoidRepository;
+		return getRepository() instanceof VoidRepository;
 	}
 
 	@Override
 	public boolean addFolderToRepository() {
 		this.currentRepositoryReader = getBean(RepositoryReader.class);
 		return this.currentRepositoryReader
-				.addFolderToRepository(this.repository);
+				.addFolderToRepository(getRepository());
 	}
 
 	@Override
@@ -542,7 +633,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 		// Update status bar
 		getBean(ShowRepositoryDataHelper.class).showRepositoryAudioFileNumber(
 				getAudioFilesList().size(), getRepositoryTotalSize(),
-				this.repository.getTotalDurationInSeconds());
+				getRepository().getTotalDurationInSeconds());
 	}
 
 	@Override
@@ -569,14 +660,50 @@ public final class RepositoryHandler extends AbstractHandler implements
 		this.favoritesHandler.updateFavoritesAfterRepositoryChange(repository);
 	}
 
+	/**
+	 * Starts a transaction: changes are made to a new version of repository,
+	 * while readers keep using current one. Must be followed by a call to
+	 * endTransaction in the same thread
+	 */
 	protected final void startTransaction() {
-		this.transaction = new RepositoryTransaction(this.repository,
-				getBeanFactory().getBeans(IRepositoryListener.class));
+		this.transactionLock.lock();
+		if (this.transactionLock.getHoldCount() == 1) {
+			IRepository current = this.repository;
+			this.previousRepository = current;
+			this.nextRepository = current instanceof Repository ? ((Repository) current)
+					.nextVersion() : current;
+			this.transaction = new RepositoryTransaction(this.nextRepository,
+					getBeanFactory().getBeans(IRepositoryListener.class));
+		}
 	}
 
+	/**
+	 * Ends a transaction. When outermost transaction ends new version of
+	 * repository is published and listeners are notified
+	 */
 	protected final void endTransaction() {
-		if (this.transaction != null) {
-			this.transaction.finishTransaction();
+		try {
+			if (this.transactionLock.getHoldCount() == 1) {
+				IRepository next = this.nextRepository;
+				this.nextRepository = null;
+				if (next instanceof Repository) {
+					// Readers of new version must not copy its nodes
+					((Repository) next).finishVersion();
+				}
+				if (this.repository == this.previousRepository) {
+					this.repository = next;
+					if (this.transaction != null) {
+						this.transaction.finishTransaction();
+					}
+				} else {
+					// A new repository was read while transaction was in
+					// progress
+					Logger.info("Repository replaced, discarding changes of transaction");
+				}
+				this.previousRepository = null;
+			}
+		} finally {
+			this.transactionLock.unlock();
 		}
 	}
 
@@ -586,34 +713,45 @@ public final class RepositoryHandler extends AbstractHandler implements
 
 	@Override
 	public Map<String, ?> getDataForView(final ViewMode viewMode) {
-		return viewMode.getDataForView(this.repository);
+		return viewMode.getDataForView(getRepository());
 	}
 
 	@Override
 	public ILocalAudioObject getFile(final String fileName) {
-		return this.repository.getFile(fileName);
+		return getRepository().getFile(fileName);
 	}
 
 	@Override
 	public IYear getYear(final String year) {
-		return this.repository.getYear(year);
+		return getRepository().getYear(year);
 	}
 
 	@Override
 	public void removeYear(final IYear year) {
-		this.repository.removeYear(year, this.unknownObjectChecker);
+		startTransaction();
+		try {
+			getRepository().removeYear(year, this.unknownObjectChecker);
+		} finally {
+			endTransaction();
+		}
 	}
 
 	@Override
 	public void removeFile(final ILocalAudioObject file) {
-		this.repository.removeFile(file);
-		this.repository.removeSizeInBytes(this.fileManager.getFileSize(file));
-		this.repository.removeDurationInSeconds(file.getDuration());
+		startTransaction();
+		try {
+			getRepository().removeFile(file);
+			getRepository().removeSizeInBytes(
+					this.fileManager.getFileSize(file));
+			getRepository().removeDurationInSeconds(file.getDuration());
+		} finally {
+			endTransaction();
+		}
 	}
 
 	@Override
 	public IFolder getFolder(final String path) {
-		return this.repository.getFolder(path);
+		return getRepository().getFolder(path);
 	}
 
 	@Override
@@ -703,15 +841,20 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public void folderMoved(final IFolder sourceFolder, final File destination) {
 		startTransaction();
-		removeFoldersInsideTransaction(Collections.singletonList(sourceFolder));
-		getBean(RepositoryAddService.class)
-				.addFoldersToRepositoryInsideTransaction(this.repository,
-						Collections.singletonList(destination));
-		getBean(ShowRepositoryDataHelper.class).showRepositoryAudioFileNumber(
-				this.repository.getFiles().size(),
-				this.repository.getTotalSizeInBytes(),
-				this.repository.getTotalDurationInSeconds());
-		endTransaction();
+		try {
+			removeFoldersInsideTransaction(Collections
+					.singletonList(sourceFolder));
+			getBean(RepositoryAddService.class)
+					.addFoldersToRepositoryInsideTransaction(getRepository(),
+							Collections.singletonList(destination));
+			getBean(ShowRepositoryDataHelper.class)
+					.showRepositoryAudioFileNumber(
+							getRepository().getFiles().size(),
+							getRepository().getTotalSizeInBytes(),
+							getRepository().getTotalDurationInSeconds());
+		} finally {
+			endTransaction();
+		}
 	}
 
 	@Override
@@ -735,20 +878,20 @@ public final class RepositoryHandler extends AbstractHandler implements
 	@Override
 	public boolean existsArtist(final IArtist artist) {
 		if (artist != null) {
-			return this.repository.getArtist(artist.getName()) != null;
+			return getRepository().getArtist(artist.getName()) != null;
 		}
 		return false;
 	}
 
 	@Override
 	public boolean existsArtist(final String artist) {
-		return this.repository.getArtist(artist) != null;
+		return getRepository().getArtist(artist) != null;
 	}
 
 	@Override
 	public boolean existsAlbum(final IAlbum album) {
 		if (album != null) {
-			IArtist artist = this.repository.getArtist(album.getArtist()
+			IArtist artist = getRepository().getArtist(album.getArtist()
 					.getName());
 			if (artist != null) {
 				if (artist.getAlbum(album.getName()) != null) {
@@ -761,7 +904,7 @@ public final class RepositoryHandler extends AbstractHandler implements
 
 	@Override
 	public boolean existsAlbum(final String artistName, final String album) {
-		IArtist artist = this.repository.getArtist(artistName);
+		IArtist artist = getRepository().getArtist(artistName);
 		if (artist != null) {
 			if (artist.getAlbum(album) != null) {
 				return true;
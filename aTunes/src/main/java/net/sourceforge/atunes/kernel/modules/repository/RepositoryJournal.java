@@ -0,0 +1,67 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.utils.AbstractAppendLog;
+import net.sourceforge.atunes.utils.StringUtils;
+
+/**
+ * Log of changes made to repository after it was stored, kept in a file next
+ * to repository cache. Changes of each transaction are appended to file
+ * 
+ * @author alex
+ * 
+ */
+public class RepositoryJournal extends
+		AbstractAppendLog<RepositoryJournalRecord> {
+
+	private IOSManager osManager;
+
+	/**
+	 * Default constructor
+	 */
+	public RepositoryJournal() {
+		super(RepositoryJournalRecord.class);
+	}
+
+	/**
+	 * @param osManager
+	 */
+	public void setOsManager(final IOSManager osManager) {
+		this.osManager = osManager;
+	}
+
+	@Override
+	protected File getFile() {
+		String customRepositoryConfigFolder = this.osManager
+				.getCustomRepositoryConfigFolder();
+		if (customRepositoryConfigFolder == null) {
+			customRepositoryConfigFolder = this.osManager.getUserConfigFolder();
+		}
+		return new File(StringUtils.getString(customRepositoryConfigFolder,
+				this.osManager.getFileSeparator(),
+				Constants.CACHE_REPOSITORY_JOURNAL_NAME));
+	}
+}
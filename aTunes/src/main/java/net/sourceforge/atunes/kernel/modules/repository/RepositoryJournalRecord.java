@@ -0,0 +1,214 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+
+/**
+ * Changes made to repository in a transaction, appended to repository journal.
+ * Only final state of each file and fingerprint is kept, so applying a record
+ * more than once gives the same result
+ * 
+ * @author alex
+ * 
+ */
+class RepositoryJournalRecord implements Serializable {
+
+	private static final long serialVersionUID = 2871296349553874121L;
+
+	/**
+	 * Files added or changed, by path
+	 */
+	Map<String, ILocalAudioObject> files;
+
+	/**
+	 * Paths of files removed
+	 */
+	Set<String> removedFiles;
+
+	/**
+	 * Fingerprints changed, by path of directory, or null if removed
+	 */
+	Map<String, DirectoryFingerprint> fingerprints;
+
+	/**
+	 * Total size of repository after changes
+	 */
+	long totalSizeInBytes;
+
+	/**
+	 * Total duration of repository after changes
+	 */
+	long totalDurationInSeconds;
+
+	/**
+	 * Version of repository changes were made to
+	 */
+	private transient long previousVersion;
+
+	/**
+	 * Changes made to previous version, while they have not been taken
+	 */
+	private transient RepositoryJournalRecord previousRecord;
+
+	private transient boolean taken;
+
+	/**
+	 * Default constructor for serialization
+	 */
+	RepositoryJournalRecord() {
+	}
+
+	/**
+	 * @param previousVersion
+	 *            version of repository changes are made to
+	 * @param previousRecord
+	 *            changes made to previous version or null
+	 */
+	RepositoryJournalRecord(final long previousVersion,
+			final RepositoryJournalRecord previousRecord) {
+		this.files = new HashMap<String, ILocalAudioObject>();
+		this.removedFiles = new HashSet<String>();
+		this.fingerprints = new HashMap<String, DirectoryFingerprint>();
+		this.previousVersion = previousVersion;
+		this.previousRecord = previousRecord;
+	}
+
+	/**
+	 * Takes this record to be stored, with changes of previous versions not
+	 * taken yet: when a version is not stored, its changes are stored with
+	 * next one
+	 * 
+	 * @return record with all changes not taken, or null if this one was
+	 *         already taken
+	 */
+	synchronized RepositoryJournalRecord take() {
+		if (this.taken) {
+			return null;
+		}
+		this.taken = true;
+		RepositoryJournalRecord previous = this.previousRecord != null ? this.previousRecord
+				.take() : null;
+		this.previousRecord = null;
+		if (previous == null) {
+			return this;
+		}
+		previous.add(this);
+		return previous;
+	}
+
+	/**
+	 * Adds changes made after the ones of this record
+	 * 
+	 * @param record
+	 */
+	private synchronized void add(final RepositoryJournalRecord record) {
+		for (String path : record.removedFiles) {
+			this.files.remove(path);
+			this.removedFiles.add(path);
+		}
+		for (Map.Entry<String, ILocalAudioObject> file : record.files
+				.entrySet()) {
+			this.removedFiles.remove(file.getKey());
+			this.files.put(file.getKey(), file.getValue());
+		}
+		this.fingerprints.putAll(record.fingerprints);
+	}
+
+	/**
+	 * @return version of repository changes were made to
+	 */
+	long getPreviousVersion() {
+		return this.previousVersion;
+	}
+
+	/**
+	 * @param file
+	 *            file added or changed
+	 */
+	synchronized void putFile(final ILocalAudioObject file) {
+		String path = file.getUrl();
+		this.removedFiles.remove(path);
+		this.files.put(path, file);
+	}
+
+	/**
+	 * @param path
+	 *            path of file removed
+	 */
+	synchronized void removeFile(final String path) {
+		this.files.remove(path);
+		this.removedFiles.add(path);
+	}
+
+	/**
+	 * @param path
+	 * @param fingerprint
+	 *            fingerprint or null if removed
+	 */
+	synchronized void putDirectoryFingerprint(final String path,
+			final DirectoryFingerprint fingerprint) {
+		this.fingerprints.put(path, fingerprint);
+	}
+
+	/**
+	 * @param totalSizeInBytes
+	 * @param totalDurationInSeconds
+	 */
+	synchronized void setTotals(final long totalSizeInBytes,
+			final long totalDurationInSeconds) {
+		this.totalSizeInBytes = totalSizeInBytes;
+		this.totalDurationInSeconds = totalDurationInSeconds;
+	}
+
+	/**
+	 * Applies changes to files, fingerprints and totals of a repository. Rest
+	 * of structures must be built again from files
+	 * 
+	 * @param repository
+	 */
+	synchronized void applyTo(final Repository repository) {
+		for (String path : this.removedFiles) {
+			repository.filesStructure.remove(path);
+		}
+		for (ILocalAudioObject file : this.files.values()) {
+			repository.filesStructure.put(file);
+		}
+		for (Map.Entry<String, DirectoryFingerprint> fingerprint : this.fingerprints
+				.entrySet()) {
+			if (fingerprint.getValue() != null) {
+				repository.fingerprintsStructure.put(fingerprint.getKey(),
+						fingerprint.getValue());
+			} else {
+				repository.fingerprintsStructure.remove(fingerprint.getKey());
+			}
+		}
+		// Records are applied in order, so totals of last one are kept
+		repository.totalSizeInBytes = this.totalSizeInBytes;
+		repository.totalDurationInSeconds = this.totalDurationInSeconds;
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
+import net.sourceforge.atunes.model.RepositoryLoadStage;
+import net.sourceforge.atunes.utils.Logger;
+import net.sourceforge.atunes.utils.StringUtils;
+
+/**
+ * Publishes statistics of last repository load through JMX
+ * 
+ * @author alex
+ * 
+ */
+public class RepositoryLoadMonitor implements RepositoryLoadMonitorMBean {
+
+	private volatile IRepositoryLoadStatistics statistics = new RepositoryLoadStatistics(
+			0);
+
+	private String objectName;
+
+	/**
+	 * @param objectName
+	 *            name used to register this monitor in platform MBean server
+	 */
+	public void setObjectName(final String objectName) {
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Registers this monitor in platform MBean server
+	 */
+	public void initialize() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(this.objectName);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			Logger.error(e);
+		}
+	}
+
+	/**
+	 * Called by loaders when a load starts
+	 * 
+	 * @param statistics
+	 */
+	void loadStarted(final IRepositoryLoadStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	@Override
+	public long getTotalTime() {
+		return this.statistics.getTotalTime();
+	}
+
+	@Override
+	public long getDirectoryListingTime() {
+		return this.statistics.getTime(RepositoryLoadStage.DIRECTORY_LISTING);
+	}
+
+	@Override
+	public int getDirectoriesListed() {
+		return this.statistics.getCount(RepositoryLoadStage.DIRECTORY_LISTING);
+	}
+
+	@Override
+	public long getUpToDateCheckTime() {
+		return this.statistics.getTime(RepositoryLoadStage.UP_TO_DATE_CHECK);
+	}
+
+	@Override
+	public int getUpToDateChecks() {
+		return this.statistics.getCount(RepositoryLoadStage.UP_TO_DATE_CHECK);
+	}
+
+	@Override
+	public long getTagReadingTime() {
+		return this.statistics.getTime(RepositoryLoadStage.TAG_READING);
+	}
+
+	@Override
+	public int getTagsRead() {
+		return this.statistics.getCount(RepositoryLoadStage.TAG_READING);
+	}
+
+	@Override
+	public long getFolderStructureTime() {
+		return this.statistics.getTime(RepositoryLoadStage.FOLDER_STRUCTURE);
+	}
+
+	@Override
+	public long getRepositoryFillingTime() {
+		return this.statistics.getTime(RepositoryLoadStage.REPOSITORY_FILLING);
+	}
+
+	@Override
+	public int getFilesAdded() {
+		return this.statistics.getCount(RepositoryLoadStage.REPOSITORY_FILLING);
+	}
+
+	@Override
+	public String[] getTagReadingByFormat() {
+		Map<String, Integer> counts = this.statistics
+				.getTagReadingCountByFormat();
+		List<String> result = new ArrayList<String>();
+		for (Map.Entry<String, Long> entry : this.statistics
+				.getTagReadingTimeByFormat().entrySet()) {
+			result.add(StringUtils.getString(entry.getKey(), ": ",
+					entry.getValue(), " ms, ", counts.get(entry.getKey()),
+					" files"));
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public String[] getSlowestFiles() {
+		List<String> result = new ArrayList<String>();
+		for (Map.Entry<String, Long> entry : this.statistics.getSlowestFiles()
+				.entrySet()) {
+			result.add(StringUtils.getString(entry.getKey(), ": ",
+					entry.getValue(), " ms"));
+		}
+		return result.toArray(new String[result.size()]);
+	}
+}
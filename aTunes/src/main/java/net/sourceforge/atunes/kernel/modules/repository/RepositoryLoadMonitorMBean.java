@@ -0,0 +1,91 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+/**
+ * Management interface of repository load statistics
+ * 
+ * @author alex
+ * 
+ */
+public interface RepositoryLoadMonitorMBean {
+
+	/**
+	 * @return time of last (or current) load, in milliseconds
+	 */
+	long getTotalTime();
+
+	/**
+	 * @return time spent listing directories, in milliseconds
+	 */
+	long getDirectoryListingTime();
+
+	/**
+	 * @return directories listed
+	 */
+	int getDirectoriesListed();
+
+	/**
+	 * @return time spent checking if files are up to date, in milliseconds
+	 */
+	long getUpToDateCheckTime();
+
+	/**
+	 * @return files checked
+	 */
+	int getUpToDateChecks();
+
+	/**
+	 * @return time spent reading tags, in milliseconds
+	 */
+	long getTagReadingTime();
+
+	/**
+	 * @return tags read
+	 */
+	int getTagsRead();
+
+	/**
+	 * @return time spent adding files to folder structure, in milliseconds
+	 */
+	long getFolderStructureTime();
+
+	/**
+	 * @return time spent adding files to artist, album, genre and year
+	 *         structures, in milliseconds
+	 */
+	long getRepositoryFillingTime();
+
+	/**
+	 * @return files added to repository
+	 */
+	int getFilesAdded();
+
+	/**
+	 * @return time and number of tags read by file extension
+	 */
+	String[] getTagReadingByFormat();
+
+	/**
+	 * @return files which tags took more time to read, slowest first
+	 */
+	String[] getSlowestFiles();
+}
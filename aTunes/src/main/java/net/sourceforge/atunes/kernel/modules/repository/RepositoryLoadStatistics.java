@@ -0,0 +1,223 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
+import net.sourceforge.atunes.model.RepositoryLoadStage;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Collects times and counters of a repository load. Stages can be measured
+ * from loader and reader threads at the same time
+ * 
+ * @author alex
+ * 
+ */
+final class RepositoryLoadStatistics implements IRepositoryLoadStatistics {
+
+	private static final Comparator<SlowFile> BY_TIME = new Comparator<SlowFile>() {
+		@Override
+		public int compare(final SlowFile o1, final SlowFile o2) {
+			return o1.time < o2.time ? -1 : (o1.time == o2.time ? 0 : 1);
+		}
+	};
+
+	private final Map<RepositoryLoadStage, Counter> stages = new EnumMap<RepositoryLoadStage, Counter>(
+			RepositoryLoadStage.class);
+
+	private final ConcurrentMap<String, Counter> formats = new ConcurrentHashMap<String, Counter>();
+
+	/**
+	 * Slowest files found, with fastest of them at head
+	 */
+	private final PriorityQueue<SlowFile> slowestFiles;
+
+	private final int slowestFilesCount;
+
+	private final long startTime = System.nanoTime();
+
+	private volatile long finishTime;
+
+	/**
+	 * @param slowestFilesCount
+	 *            number of slowest files to keep
+	 */
+	RepositoryLoadStatistics(final int slowestFilesCount) {
+		for (RepositoryLoadStage stage : RepositoryLoadStage.values()) {
+			this.stages.put(stage, new Counter());
+		}
+		this.slowestFilesCount = slowestFilesCount;
+		this.slowestFiles = new PriorityQueue<SlowFile>(Math.max(1,
+				slowestFilesCount), BY_TIME);
+	}
+
+	/**
+	 * Adds time spent in a stage since given time
+	 * 
+	 * @param stage
+	 * @param start
+	 *            value of System.nanoTime when stage started
+	 */
+	void add(final RepositoryLoadStage stage, final long start) {
+		this.stages.get(stage).add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Adds time spent reading tag of a file since given time
+	 * 
+	 * @param path
+	 * @param start
+	 *            value of System.nanoTime when read started
+	 */
+	void addTagReading(final String path, final long start) {
+		long time = System.nanoTime() - start;
+		this.stages.get(RepositoryLoadStage.TAG_READING).add(time);
+		getFormatCounter(
+				FilenameUtils.getExtension(path).toLowerCase(Locale.ENGLISH))
+				.add(time);
+		if (this.slowestFilesCount > 0) {
+			synchronized (this.slowestFiles) {
+				if (this.slowestFiles.size() < this.slowestFilesCount) {
+					this.slowestFiles.offer(new SlowFile(path, time));
+				} else if (this.slowestFiles.peek().time < time) {
+					this.slowestFiles.poll();
+					this.slowestFiles.offer(new SlowFile(path, time));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks load as finished
+	 */
+	void finish() {
+		this.finishTime = System.nanoTime();
+	}
+
+	private Counter getFormatCounter(final String format) {
+		Counter counter = this.formats.get(format);
+		if (counter == null) {
+			Counter newCounter = new Counter();
+			counter = this.formats.putIfAbsent(format, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+
+	@Override
+	public long getTime(final RepositoryLoadStage stage) {
+		return this.stages.get(stage).getTime();
+	}
+
+	@Override
+	public int getCount(final RepositoryLoadStage stage) {
+		return this.stages.get(stage).getCount();
+	}
+
+	@Override
+	public Map<String, Long> getTagReadingTimeByFormat() {
+		Map<String, Long> result = new HashMap<String, Long>();
+		for (Map.Entry<String, Counter> entry : this.formats.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getTime());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Integer> getTagReadingCountByFormat() {
+		Map<String, Integer> result = new HashMap<String, Integer>();
+		for (Map.Entry<String, Counter> entry : this.formats.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getSlowestFiles() {
+		List<SlowFile> files;
+		synchronized (this.slowestFiles) {
+			files = new ArrayList<SlowFile>(this.slowestFiles);
+		}
+		Collections.sort(files, Collections.reverseOrder(BY_TIME));
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (SlowFile file : files) {
+			result.put(file.path, TimeUnit.NANOSECONDS.toMillis(file.time));
+		}
+		return result;
+	}
+
+	@Override
+	public long getTotalTime() {
+		long end = this.finishTime != 0 ? this.finishTime : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - this.startTime);
+	}
+
+	private static final class Counter {
+
+		private final AtomicLong time = new AtomicLong();
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		void add(final long nanos) {
+			this.time.addAndGet(nanos);
+			this.count.incrementAndGet();
+		}
+
+		long getTime() {
+			return TimeUnit.NANOSECONDS.toMillis(this.time.get());
+		}
+
+		int getCount() {
+			return this.count.get();
+		}
+	}
+
+	private static final class SlowFile {
+
+		private final String path;
+
+		private final long time;
+
+		SlowFile(final String path, final long time) {
+			this.path = path;
+			this.time = time;
+		}
+	}
+}
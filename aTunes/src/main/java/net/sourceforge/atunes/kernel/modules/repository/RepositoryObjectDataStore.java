@@ -20,45 +20,68 @@
 
 package net.sourceforge.atunes.kernel.modules.repository;
 
-import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
-import net.sourceforge.atunes.Constants;
-import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.ILocalAudioObject;
 import net.sourceforge.atunes.model.IObjectDataStore;
 import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.model.IStateNavigation;
 import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITaskService;
+import net.sourceforge.atunes.model.IUnknownObjectChecker;
 import net.sourceforge.atunes.model.InconsistentRepositoryException;
-import net.sourceforge.atunes.utils.KryoSerializerService;
+import net.sourceforge.atunes.utils.FileUtils;
 import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.StringUtils;
 
 /**
- * Data store for repository
+ * Data store for repository. Whole repository is stored from time to time,
+ * and changes made in transactions in between are appended to a journal
  * 
  * @author alex
  * 
  */
 public class RepositoryObjectDataStore implements IObjectDataStore<IRepository> {
 
-	private IOSManager osManager;
-
 	private IStateRepository stateRepository;
 
-	private KryoSerializerService kryoSerializerService;
+	private RepositoryCacheFile repositoryCacheFile;
+
+	private RepositoryJournal repositoryJournal;
+
+	private IStateNavigation stateNavigation;
+
+	private IUnknownObjectChecker unknownObjectChecker;
+
+	private IFileManager fileManager;
+
+	private ITaskService taskService;
 
 	/**
-	 * @param osManager
+	 * Journal is not written when it's bigger than this
 	 */
-	public void setOsManager(IOSManager osManager) {
-		this.osManager = osManager;
-	}
+	private long maxJournalSize = 1048576;
+
+	/**
+	 * Journal is not written when it's bigger than this percentage of size of
+	 * stored repository
+	 */
+	private int maxJournalPercentage = 25;
 
 	/**
-	 * @param kryoSerializerService
+	 * Version of repository whose state is stored in repository file and
+	 * journal, or 0 if there is none
 	 */
-	public void setKryoSerializerService(
-			KryoSerializerService kryoSerializerService) {
-		this.kryoSerializerService = kryoSerializerService;
+	private long storedVersion;
+
+	/**
+	 * @param repositoryCacheFile
+	 */
+	public void setRepositoryCacheFile(RepositoryCacheFile repositoryCacheFile) {
+		this.repositoryCacheFile = repositoryCacheFile;
 	}
 
 	/**
@@ -68,21 +91,69 @@ public class RepositoryObjectDataStore implements IObjectDataStore<IRepository>
 		this.stateRepository = stateRepository;
 	}
 
+	/**
+	 * @param repositoryJournal
+	 */
+	public void setRepositoryJournal(RepositoryJournal repositoryJournal) {
+		this.repositoryJournal = repositoryJournal;
+	}
+
+	/**
+	 * @param stateNavigation
+	 */
+	public void setStateNavigation(IStateNavigation stateNavigation) {
+		this.stateNavigation = stateNavigation;
+	}
+
+	/**
+	 * @param unknownObjectChecker
+	 */
+	public void setUnknownObjectChecker(
+			IUnknownObjectChecker unknownObjectChecker) {
+		this.unknownObjectChecker = unknownObjectChecker;
+	}
+
+	/**
+	 * @param fileManager
+	 */
+	public void setFileManager(IFileManager fileManager) {
+		this.fileManager = fileManager;
+	}
+
+	/**
+	 * @param taskService
+	 */
+	public void setTaskService(ITaskService taskService) {
+		this.taskService = taskService;
+	}
+
+	/**
+	 * @param maxJournalSize
+	 */
+	public void setMaxJournalSize(long maxJournalSize) {
+		this.maxJournalSize = maxJournalSize;
+	}
+
+	/**
+	 * @param maxJournalPercentage
+	 */
+	public void setMaxJournalPercentage(int maxJournalPercentage) {
+		this.maxJournalPercentage = maxJournalPercentage;
+	}
+
 	@Override
 	public IRepository read() {
 		IRepository result = null;
 		try {
-			Object objectRead = kryoSerializerService.readObjectFromFile(
-					getFileName(), Repository.class);
-			if (objectRead != null) {
-				result = (IRepository) objectRead;
-				result.setStateRepository(stateRepository);
+			Repository repository = repositoryCacheFile.read();
+			if (repository != null) {
+				repository.setStateRepository(stateRepository);
 
 				// Check repository integrity
-				result.validateRepository();
+				repository.validateRepository();
+
+				result = applyJournal(repository);
 			}
-		} catch (IOException e) {
-			Logger.error(e);
 		} catch (InconsistentRepositoryException e) {
 			Logger.error(e);
 		}
@@ -90,21 +161,173 @@ public class RepositoryObjectDataStore implements IObjectDataStore<IRepository>
 	}
 
 	/**
-	 * @return file name to store repository
+	 * Applies changes stored in journal to repository read
+	 * 
+	 * @param repository
+	 * @return repository with all changes
 	 */
-	private String getFileName() {
-		String customRepositoryConfigFolder = osManager
-				.getCustomRepositoryConfigFolder();
-		if (customRepositoryConfigFolder == null) {
-			customRepositoryConfigFolder = osManager.getUserConfigFolder();
+	private synchronized Repository applyJournal(final Repository repository) {
+		List<RepositoryJournalRecord> records = repositoryJournal.read();
+		boolean complete = repositoryJournal.isComplete();
+		if (records.isEmpty() && complete) {
+			storedVersion = repository.getVersion();
+			return repository;
+		}
+		if (!complete) {
+			// Changes appended after a damaged one would be lost
+			Logger.error("Repository journal was not completely read");
+		}
+
+		final Repository result = records.isEmpty() ? repository
+				: applyRecords(repository, records);
+		storedVersion = result.getVersion();
+
+		// Replace repository file and journal with repository with all changes
+		taskService.submitNow("Compact Repository Cache", new Runnable() {
+			@Override
+			public void run() {
+				compact(result);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Applies records of journal to repository read
+	 * 
+	 * @param repository
+	 * @param records
+	 * @return repository with changes of records
+	 */
+	private Repository applyRecords(final Repository repository,
+			final List<RepositoryJournalRecord> records) {
+		Logger.info("Applying ", records.size(),
+				" changes stored in repository journal");
+		for (RepositoryJournalRecord record : records) {
+			record.applyTo(repository);
+		}
+		Repository result = buildFromFiles(repository);
+
+		// Tags were read to build structures: keep only the ones used from now
+		for (ILocalAudioObject file : result.getFiles()) {
+			if (file instanceof AudioFile) {
+				((AudioFile) file).releaseTag();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new repository with files, fingerprints and totals of given
+	 * one, and rest of structures built from files
+	 * 
+	 * @param repository
+	 * @return
+	 */
+	private Repository buildFromFiles(final Repository repository) {
+		List<File> folders = repository.getRepositoryFolders();
+		List<String> folderPaths = new ArrayList<String>();
+		for (File folder : folders) {
+			folderPaths.add(FileUtils.getNormalizedPath(folder));
+		}
+
+		Repository result = new Repository(folders, stateRepository);
+		result.fingerprintsStructure.getStructure().putAll(
+				repository.fingerprintsStructure.getStructure());
+		RepositoryFiller filler = new RepositoryFiller(result,
+				stateNavigation, unknownObjectChecker, fileManager);
+		for (ILocalAudioObject file : repository.getFiles()) {
+			String path = file.getUrl();
+			int folderEnd = path.lastIndexOf('/');
+			for (int i = 0; i < folderPaths.size(); i++) {
+				String folderPath = folderPaths.get(i);
+				if (path.startsWith(folderPath)
+						&& path.length() > folderPath.length()
+						&& path.charAt(folderPath.length()) == '/') {
+					String relativePath = folderEnd > folderPath.length() ? path
+							.substring(folderPath.length() + 1, folderEnd)
+							: ".";
+					filler.addAudioFile(file, folders.get(i), relativePath, 0);
+					break;
+				}
+			}
+		}
+		// Sizes of files are not known, so totals of journal are kept
+		result.totalSizeInBytes = repository.getTotalSizeInBytes();
+		result.totalDurationInSeconds = repository.getTotalDurationInSeconds();
+		return result;
+	}
+
+	/**
+	 * Stores again a repository read, if there were no changes since it was
+	 * read, to remove journal
+	 * 
+	 * @param repository
+	 */
+	private synchronized void compact(final Repository repository) {
+		if (storedVersion == repository.getVersion()) {
+			writeAll(repository);
 		}
-		return StringUtils.getString(customRepositoryConfigFolder,
-				osManager.getFileSeparator(), Constants.CACHE_REPOSITORY_NAME);
 	}
 
 	@Override
-	public void write(IRepository repository) {
-		kryoSerializerService.writeObjectToFile(getFileName(), repository);
+	public synchronized void write(IRepository repository) {
+		if (!(repository instanceof Repository)) {
+			Logger.error(StringUtils.getString("Repository not stored: ",
+					repository));
+			return;
+		}
+		if (!appendToJournal((Repository) repository)) {
+			writeAll((Repository) repository);
+		}
+	}
+
+	/**
+	 * Appends changes of repository to journal, if previous version is the
+	 * one stored and journal is not too big
+	 * 
+	 * @param repository
+	 * @return if repository is stored after appending changes
+	 */
+	private boolean appendToJournal(final Repository repository) {
+		if (repository.getVersion() == storedVersion) {
+			// Already stored
+			return true;
+		}
+		RepositoryJournalRecord record = repository.takeChanges();
+		if (record == null || storedVersion == 0
+				|| record.getPreviousVersion() != storedVersion
+				|| isJournalFull()) {
+			return false;
+		}
+		if (repositoryJournal.append(record)) {
+			storedVersion = repository.getVersion();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return if journal is too big, so whole repository must be stored
+	 */
+	private boolean isJournalFull() {
+		long journalSize = repositoryJournal.length();
+		return journalSize > maxJournalSize
+				|| journalSize * 100 > repositoryCacheFile.length()
+						* maxJournalPercentage;
+	}
+
+	/**
+	 * Stores whole repository and removes journal
+	 * 
+	 * @param repository
+	 */
+	private void writeAll(Repository repository) {
+		storedVersion = 0;
+		if (repositoryCacheFile.write(repository)) {
+			repositoryJournal.delete();
+			storedVersion = repository.getVersion();
+		}
 	}
 
 	@Override
@@ -24,7 +24,6 @@ import java.io.File;
 import java.util.List;
 
 import net.sourceforge.atunes.gui.GuiUtils;
-import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
 
 /**
  * Executes repository load when loading a new repository
@@ -36,16 +35,6 @@ public class RepositoryReadLoader extends AbstractRepositoryLoader {
 
 	private int totalFilesToLoad;
 
-	private ILocalAudioObjectValidator localAudioObjectValidator;
-
-	/**
-	 * @param localAudioObjectValidator
-	 */
-	public void setLocalAudioObjectValidator(
-			final ILocalAudioObjectValidator localAudioObjectValidator) {
-		this.localAudioObjectValidator = localAudioObjectValidator;
-	}
-
 	@Override
 	protected void execute() {
 		Thread t = new Thread(this);
@@ -83,6 +72,11 @@ public class RepositoryReadLoader extends AbstractRepositoryLoader {
 		}
 	}
 
+	@Override
+	protected void notifyFolderStructureLoaded() {
+		getRepositoryLoaderListener().notifyFolderStructureRead();
+	}
+
 	@Override
 	protected void notifyFileLoaded() {
 		getRepositoryLoaderListener().notifyFileLoaded();
@@ -123,8 +117,8 @@ public class RepositoryReadLoader extends AbstractRepositoryLoader {
 			for (File element : list) {
 				if (element.isDirectory()) {
 					files = files + countFilesInDir(element);
-				} else if (this.localAudioObjectValidator
-						.isOneOfValidFormats(element)) {
+				} else if (getLocalAudioObjectValidator().isOneOfValidFormats(
+						element)) {
 					// Check before if it's directory as this method does not
 					// check it
 					files++;
@@ -42,6 +42,7 @@ import net.sourceforge.atunes.model.INavigationHandler;
 import net.sourceforge.atunes.model.IOSManager;
 import net.sourceforge.atunes.model.IRepository;
 import net.sourceforge.atunes.model.IRepositoryListener;
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
 import net.sourceforge.atunes.model.IRepositoryLoader;
 import net.sourceforge.atunes.model.IRepositoryLoaderListener;
 import net.sourceforge.atunes.model.IRepositoryProgressDialog;
@@ -96,6 +97,16 @@ public class RepositoryReader implements IRepositoryLoaderListener {
 
 	private ITaskService taskService;
 
+	private RepositoryCheckpointStore repositoryCheckpointStore;
+
+	/**
+	 * @param repositoryCheckpointStore
+	 */
+	public void setRepositoryCheckpointStore(
+			final RepositoryCheckpointStore repositoryCheckpointStore) {
+		this.repositoryCheckpointStore = repositoryCheckpointStore;
+	}
+
 	/**
 	 * @param taskService
 	 */
@@ -241,8 +252,13 @@ public class RepositoryReader implements IRepositoryLoaderListener {
 		this.repository = new Repository(folders, this.stateRepository);
 		// Change repository to allow user start listening objects while loading
 		this.repositoryHandler.setRepository(this.repository);
-		this.currentLoader = this.beanFactory
+		// Save folders before reading so if application is closed before read
+		// finishes, read is resumed in next execution
+		saveRepositoryFolders(folders);
+		RepositoryReadLoader loader = this.beanFactory
 				.getBean(RepositoryReadLoader.class);
+		loader.setCheckpointStore(this.repositoryCheckpointStore);
+		this.currentLoader = loader;
 		this.currentLoader.setRepositoryLoaderListener(this);
 		this.currentLoader.start(new RepositoryTransaction(this.repository,
 				this.beanFactory.getBeans(IRepositoryListener.class)), folders,
@@ -297,14 +313,7 @@ public class RepositoryReader implements IRepositoryLoaderListener {
 		getRepositoryProgressDialog().setProgressText("");
 		getRepositoryProgressDialog().setCurrentFolder("");
 
-		// Save folders: if repository config is lost application can reload
-		// data without asking user to select folders again
-		List<String> repositoryFolders = new ArrayList<String>();
-		for (File folder : this.repository.getRepositoryFolders()) {
-			repositoryFolders.add(net.sourceforge.atunes.utils.FileUtils
-					.getPath(folder));
-		}
-		this.stateRepository.setLastRepositoryFolders(repositoryFolders);
+		saveRepositoryFolders(this.repository.getRepositoryFolders());
 
 		getRepositoryProgressDialog().hideDialog();
 
@@ -313,6 +322,21 @@ public class RepositoryReader implements IRepositoryLoaderListener {
 		this.currentLoader = null;
 	}
 
+	/**
+	 * Save folders: if repository config is lost application can reload data
+	 * without asking user to select folders again
+	 * 
+	 * @param folders
+	 */
+	private void saveRepositoryFolders(final List<File> folders) {
+		List<String> repositoryFolders = new ArrayList<String>();
+		for (File folder : folders) {
+			repositoryFolders.add(net.sourceforge.atunes.utils.FileUtils
+					.getPath(folder));
+		}
+		this.stateRepository.setLastRepositoryFolders(repositoryFolders);
+	}
+
 	@Override
 	public void notifyFinishRefresh(final IRepositoryLoader loader) {
 		Logger.info("Repository refresh done");
@@ -369,6 +393,24 @@ public class RepositoryReader implements IRepositoryLoaderListener {
 		}
 	}
 
+	@Override
+	public void notifyFolderStructureRead() {
+		// Show folders and let user work with them while tags are read
+		notifyReadProgress();
+		GuiUtils.callInEventDispatchThread(new Runnable() {
+			@Override
+			public void run() {
+				doInBackground();
+			}
+		});
+	}
+
+	@Override
+	public void notifyLoadStatistics(final IRepositoryLoadStatistics statistics) {
+		// Statistics are logged by loader and published by repository load
+		// monitor
+	}
+
 	/**
 	 * Refreshes oldRepository
 	 */
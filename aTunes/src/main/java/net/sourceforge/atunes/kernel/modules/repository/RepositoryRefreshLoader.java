@@ -129,6 +129,11 @@ public class RepositoryRefreshLoader extends AbstractRepositoryLoader {
 		// Nothing to do
 	}
 
+	@Override
+	protected void notifyFolderStructureLoaded() {
+		// Nothing to do
+	}
+
 	@Override
 	protected void notifyFileLoaded() {
 		// Nothing to do
@@ -179,6 +179,7 @@ public class RepositoryRemover {
 			if (alb != null) {
 				if (alb.size() == 1) {
 					a.removeAlbum(alb);
+					this.repositoryHandler.removeAlbum(alb);
 				} else {
 					alb.removeAudioFile(file);
 				}
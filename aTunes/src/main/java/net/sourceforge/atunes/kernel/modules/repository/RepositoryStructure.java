@@ -24,6 +24,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Stores data organized by type T
@@ -38,11 +39,40 @@ public class RepositoryStructure<T> implements Serializable {
 	 */
 	private static final long serialVersionUID = 3802494024307120854L;
 
+	/**
+	 * Maximum number of lower case keys cached
+	 */
+	private static final int MAX_FOLDED_KEYS = 65536;
+
+	/**
+	 * Lower case version of names with upper case characters, so lookups
+	 * ignoring case don't create a new string every time. Shared by all
+	 * structures, as it only depends on names
+	 */
+	private static final ConcurrentMap<String, String> FOLDED_KEYS = new ConcurrentHashMap<String, String>();
+
 	Map<String, T> structure;
+
+	/**
+	 * Version of repository this structure was created or copied for
+	 */
+	transient RepositoryVersion version;
 	
 	RepositoryStructure() {
 		this.structure = new ConcurrentHashMap<String, T>();
 	}
+
+	/**
+	 * Returns a copy of this structure for given version, sharing its nodes
+	 * @param versionOfCopy
+	 * @return
+	 */
+	RepositoryStructure<T> copy(RepositoryVersion versionOfCopy) {
+		RepositoryStructure<T> copy = new RepositoryStructure<T>();
+		copy.structure.putAll(this.structure);
+		copy.version = versionOfCopy;
+		return copy;
+	}
 	
 	int count() {
 		return this.structure.size();
@@ -56,10 +86,44 @@ public class RepositoryStructure<T> implements Serializable {
 		return this.structure.get(key);
 	}
 	
+	/**
+	 * Returns node to be changed by version of this structure: a node shared
+	 * with a previous version is replaced by a copy first
+	 * @param key
+	 * @return node or null if not present
+	 */
+	@SuppressWarnings("unchecked")
+	T getToChange(String key) {
+		T value = this.structure.get(key);
+		if (value instanceof VersionedNode
+				&& ((VersionedNode) value).getVersion() != this.version) {
+			T copy = (T) ((VersionedNode) value).copy(this.version);
+			if (!((ConcurrentMap<String, T>) this.structure).replace(key,
+					value, copy)) {
+				return getToChange(key);
+			}
+			return copy;
+		}
+		return value;
+	}
+	
 	void put(String key, T value) {
+		setVersion(value);
 		this.structure.put(key, value);
 	}
 	
+	/**
+	 * Puts value if key is not present, atomically
+	 * @param key
+	 * @param value
+	 * @return value already present or given value if added
+	 */
+	T putIfAbsent(String key, T value) {
+		setVersion(value);
+		T previous = ((ConcurrentMap<String, T>) this.structure).putIfAbsent(key, value);
+		return previous != null ? previous : value;
+	}
+	
 	void remove(String key) {
 		this.structure.remove(key);
 	}
@@ -67,4 +131,39 @@ public class RepositoryStructure<T> implements Serializable {
 	Map<String, T> getStructure() {
 		return this.structure;
 	}
+
+	/**
+	 * Nodes created for a version are added to its structures
+	 * @param value
+	 */
+	private void setVersion(T value) {
+		if (this.version != null && value instanceof VersionedNode
+				&& ((VersionedNode) value).getVersion() == null) {
+			((VersionedNode) value).setVersion(this.version);
+		}
+	}
+
+	/**
+	 * Returns key used to store object with given name
+	 * @param name
+	 * @param caseSensitive
+	 * @return name or its lower case version, the same instance for equal names
+	 */
+	static String getKey(String name, boolean caseSensitive) {
+		if (caseSensitive) {
+			return name;
+		}
+		String folded = FOLDED_KEYS.get(name);
+		if (folded == null) {
+			// Returns same instance if name is already lower case
+			folded = name.toLowerCase();
+			if (folded != name && FOLDED_KEYS.size() < MAX_FOLDED_KEYS) {
+				String previous = FOLDED_KEYS.putIfAbsent(name, folded);
+				if (previous != null) {
+					folded = previous;
+				}
+			}
+		}
+		return folded;
+	}
 }
@@ -0,0 +1,49 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+/**
+ * Identifies a version of repository while it's being built. Nodes created or
+ * copied for that version reference it, so nodes shared with previous versions
+ * are copied the first time they are reached to be changed
+ * 
+ * @author alex
+ * 
+ */
+final class RepositoryVersion {
+
+	private volatile boolean building = true;
+
+	/**
+	 * @return if changes are still being made to this version
+	 */
+	boolean isBuilding() {
+		return this.building;
+	}
+
+	/**
+	 * Called when no more changes are made to this version, so its nodes are
+	 * not copied anymore when reached
+	 */
+	void finish() {
+		this.building = false;
+	}
+}
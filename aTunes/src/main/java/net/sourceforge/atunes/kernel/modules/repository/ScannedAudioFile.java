@@ -0,0 +1,71 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.File;
+
+/**
+ * An audio file found by a repository loader, with attributes read from disk
+ * when its directory was listed, so they don't need to be read again
+ * 
+ * @author alex
+ * 
+ */
+final class ScannedAudioFile {
+
+	private final File file;
+
+	private final long lastModified;
+
+	private final long size;
+
+	/**
+	 * @param file
+	 * @param lastModified
+	 * @param size
+	 */
+	ScannedAudioFile(final File file, final long lastModified, final long size) {
+		this.file = file;
+		this.lastModified = lastModified;
+		this.size = size;
+	}
+
+	/**
+	 * @return file
+	 */
+	File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return last modification time of file
+	 */
+	long getLastModified() {
+		return this.lastModified;
+	}
+
+	/**
+	 * @return size in bytes of file
+	 */
+	long getSize() {
+		return this.size;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.atunes.kernel.modules.tags.TagTextBuffer;
+import net.sourceforge.atunes.model.ITag;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Tags of files stored in repository cache, one record per file, found
+ * through a directory of offsets. Records are read from a memory mapped file
+ * when a file needs its tag for the first time. Long texts of tags are not
+ * read to memory, but kept in file
+ * 
+ * @author alex
+ * 
+ */
+class TrackRecords {
+
+	private final ByteBuffer buffer;
+
+	private final int directoryOffset;
+
+	private final int count;
+
+	private final Kryo kryo;
+
+	private final TagTextBuffer texts;
+
+	/**
+	 * @param buffer
+	 *            contents of repository cache file
+	 * @param directoryOffset
+	 *            position of directory: number of records followed by
+	 *            offset of every record and end of last one
+	 * @param kryo
+	 *            used to read records
+	 * @param minimumTextLength
+	 *            length in bytes of shortest text of tags kept in file
+	 * @throws IOException
+	 *             if directory is not valid
+	 */
+	TrackRecords(final ByteBuffer buffer, final int directoryOffset,
+			final Kryo kryo, final int minimumTextLength) throws IOException {
+		this.buffer = buffer;
+		this.directoryOffset = directoryOffset;
+		this.kryo = kryo;
+		this.texts = new TagTextBuffer(buffer, minimumTextLength);
+		AudioFileSerializer.getContext(kryo).put(TagTextBuffer.class,
+				this.texts);
+		if (directoryOffset + 4 > buffer.limit()) {
+			throw new IOException("Invalid track records directory");
+		}
+		this.count = buffer.getInt(directoryOffset);
+		if (this.count < 0
+				|| directoryOffset + 4 + 8L * (this.count + 1) > buffer.limit()
+				|| getOffset(this.count) > directoryOffset) {
+			throw new IOException("Invalid track records directory");
+		}
+	}
+
+	/**
+	 * @return number of records
+	 */
+	int size() {
+		return this.count;
+	}
+
+	/**
+	 * @param index
+	 * @return tag stored in record
+	 */
+	synchronized ITag read(final int index) {
+		try {
+			this.texts.setOffset(getOffset(index));
+			return (ITag) this.kryo.readClassAndObject(new Input(
+					getBytes(index)));
+		} catch (KryoException e) {
+			throw new IllegalStateException("Invalid track record " + index, e);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @return bytes of record, as written
+	 */
+	byte[] getBytes(final int index) {
+		if (index < 0 || index >= this.count) {
+			throw new IllegalArgumentException("Invalid track record " + index);
+		}
+		int offset = getOffset(index);
+		int length = getOffset(index + 1) - offset;
+		byte[] bytes = new byte[length];
+		ByteBuffer record = this.buffer.duplicate();
+		record.position(offset);
+		record.get(bytes);
+		return bytes;
+	}
+
+	private int getOffset(final int index) {
+		return (int) this.buffer.getLong(this.directoryOffset + 4 + 8 * index);
+	}
+
+	/**
+	 * Writes records and their directory. Tags already stored in other
+	 * records are copied without being read
+	 */
+	static class Writer {
+
+		private final DataOutputStream stream;
+
+		private final Kryo kryo;
+
+		private final Output output = new Output(4096, -1);
+
+		private final List<Long> offsets = new ArrayList<Long>();
+
+		private final List<AudioFile> copiedFiles = new ArrayList<AudioFile>();
+
+		private final List<TrackRecords> copiedFrom = new ArrayList<TrackRecords>();
+
+		private final List<Integer> copiedIndexes = new ArrayList<Integer>();
+
+		/**
+		 * @param stream
+		 *            where records are written, from its beginning
+		 * @param kryo
+		 *            used to write tags, different from the one writing
+		 *            repository
+		 */
+		Writer(final DataOutputStream stream, final Kryo kryo) {
+			this.stream = stream;
+			this.kryo = kryo;
+			this.offsets.add(0L);
+		}
+
+		/**
+		 * Writes a tag
+		 * 
+		 * @param tag
+		 * @return index of record
+		 * @throws IOException
+		 */
+		int add(final ITag tag) throws IOException {
+			this.output.clear();
+			this.kryo.writeClassAndObject(this.output, tag);
+			return addBytes(this.output.getBuffer(), this.output.position());
+		}
+
+		/**
+		 * Copies a record of other track records
+		 * 
+		 * @param audioFile
+		 *            file whose tag is stored in record
+		 * @param records
+		 * @param index
+		 * @return index of new record
+		 * @throws IOException
+		 */
+		int copy(final AudioFile audioFile, final TrackRecords records,
+				final int index) throws IOException {
+			byte[] bytes = records.getBytes(index);
+			int newIndex = addBytes(bytes, bytes.length);
+			this.copiedFiles.add(audioFile);
+			this.copiedFrom.add(records);
+			this.copiedIndexes.add(newIndex);
+			return newIndex;
+		}
+
+		private int addBytes(final byte[] bytes, final int length)
+				throws IOException {
+			int index = this.offsets.size() - 1;
+			this.stream.write(bytes, 0, length);
+			this.offsets.add(this.offsets.get(index) + length);
+			return index;
+		}
+
+		/**
+		 * Writes directory after records
+		 * 
+		 * @return position of directory
+		 * @throws IOException
+		 */
+		long writeDirectory() throws IOException {
+			long directoryOffset = this.offsets.get(this.offsets.size() - 1);
+			this.stream.writeInt(this.offsets.size() - 1);
+			for (Long offset : this.offsets) {
+				this.stream.writeLong(offset);
+			}
+			return directoryOffset;
+		}
+
+		/**
+		 * Makes files whose records were copied use the records written, so
+		 * previous ones can be released
+		 * 
+		 * @param records
+		 *            records written, once read
+		 */
+		void moveCopiedFiles(final TrackRecords records) {
+			for (int i = 0; i < this.copiedFiles.size(); i++) {
+				this.copiedFiles.get(i).moveTrackRecord(
+						this.copiedFrom.get(i), records,
+						this.copiedIndexes.get(i));
+			}
+		}
+	}
+}
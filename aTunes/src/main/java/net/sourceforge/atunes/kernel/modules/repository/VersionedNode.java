@@ -0,0 +1,52 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+/**
+ * Node of repository structures that can be shared by several versions of
+ * repository, and is copied by a version being built before changing it
+ * 
+ * @author alex
+ * 
+ */
+interface VersionedNode {
+
+	/**
+	 * @return version this node was created or copied for, or null if it was
+	 *         not created for a version being built
+	 */
+	RepositoryVersion getVersion();
+
+	/**
+	 * @param version
+	 *            version a new node is created for
+	 */
+	void setVersion(RepositoryVersion version);
+
+	/**
+	 * Returns a copy of this node for given version, sharing its audio objects
+	 * and, if any, its children nodes
+	 * 
+	 * @param version
+	 * @return
+	 */
+	Object copy(RepositoryVersion version);
+}
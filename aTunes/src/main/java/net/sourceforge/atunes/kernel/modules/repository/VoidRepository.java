@@ -26,6 +26,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.IAlbum;
 import net.sourceforge.atunes.model.IArtist;
 import net.sourceforge.atunes.model.IFolder;
 import net.sourceforge.atunes.model.IGenre;
@@ -103,6 +105,12 @@ public class VoidRepository implements IRepository {
 		return Collections.emptyList();
 	}
 
+	@Override
+	public Collection<ILocalAudioObject> getFilesInFolder(
+			final String folderPath) {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public ILocalAudioObject putFile(final ILocalAudioObject file) {
 		return null;
@@ -132,10 +140,23 @@ public class VoidRepository implements IRepository {
 		return null;
 	}
 
+	@Override
+	public IArtist putArtistIfAbsent(final IArtist artist) {
+		return null;
+	}
+
 	@Override
 	public void removeArtist(final IArtist artist) {
 	}
 
+	@Override
+	public void putAlbum(final IAlbum album) {
+	}
+
+	@Override
+	public void removeAlbum(final IAlbum album) {
+	}
+
 	@Override
 	public IFolder getFolder(final String path) {
 		return null;
@@ -151,6 +172,11 @@ public class VoidRepository implements IRepository {
 		return null;
 	}
 
+	@Override
+	public IFolder putFolderIfAbsent(final IFolder folder) {
+		return null;
+	}
+
 	@Override
 	public Collection<IGenre> getGenres() {
 		return null;
@@ -166,6 +192,11 @@ public class VoidRepository implements IRepository {
 		return null;
 	}
 
+	@Override
+	public IGenre putGenreIfAbsent(final IGenre genre) {
+		return null;
+	}
+
 	@Override
 	public void removeGenre(final IGenre genre) {
 	}
@@ -186,6 +217,12 @@ public class VoidRepository implements IRepository {
 		return null;
 	}
 
+	@Override
+	public IYear putYearIfAbsent(final IYear year,
+			final IUnknownObjectChecker unknownObjectChecker) {
+		return null;
+	}
+
 	@Override
 	public void removeYear(final IYear year,
 			final IUnknownObjectChecker unknownObjectChecker) {
@@ -219,4 +256,18 @@ public class VoidRepository implements IRepository {
 	@Override
 	public void removeFile(String path) {
 	}
+
+	@Override
+	public DirectoryFingerprint getDirectoryFingerprint(String path) {
+		return null;
+	}
+
+	@Override
+	public void putDirectoryFingerprint(String path,
+			DirectoryFingerprint fingerprint) {
+	}
+
+	@Override
+	public void removeDirectoryFingerprint(String path) {
+	}
 }
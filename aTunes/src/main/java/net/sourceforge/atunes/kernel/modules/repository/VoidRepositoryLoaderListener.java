@@ -20,6 +20,7 @@
 
 package net.sourceforge.atunes.kernel.modules.repository;
 
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
 import net.sourceforge.atunes.model.IRepositoryLoader;
 import net.sourceforge.atunes.model.IRepositoryLoaderListener;
 
@@ -69,4 +70,14 @@ class VoidRepositoryLoaderListener implements IRepositoryLoaderListener {
 	public void notifyReadProgress() {
 		// Nothing to do
 	}
+
+	@Override
+	public void notifyFolderStructureRead() {
+		// Nothing to do
+	}
+
+	@Override
+	public void notifyLoadStatistics(final IRepositoryLoadStatistics statistics) {
+		// Nothing to do
+	}
 }
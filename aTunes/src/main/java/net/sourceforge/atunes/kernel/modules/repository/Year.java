@@ -30,7 +30,7 @@ import net.sourceforge.atunes.model.IYear;
 /**
  * This class represents a year, with a set of artist of this year.
  */
-public class Year implements IYear {
+public class Year implements IYear, VersionedNode {
 
 	private static final long serialVersionUID = -8560986690062265343L;
 
@@ -40,6 +40,11 @@ public class Year implements IYear {
 	/** List of songs of this year. */
 	List<ILocalAudioObject> audioFiles;
 
+	/**
+	 * Version of repository this year was created or copied for
+	 */
+	private transient RepositoryVersion version;
+
 	/**
 	 * Default constructor for serialization
 	 */
@@ -129,4 +134,28 @@ public class Year implements IYear {
 			return this.getName(null).compareTo(o.getName(null));
 		}
 	}
+
+	@Override
+	public RepositoryVersion getVersion() {
+		return this.version;
+	}
+
+	@Override
+	public void setVersion(final RepositoryVersion version) {
+		this.version = version;
+	}
+
+	/**
+	 * Returns a copy of this year, sharing its objects
+	 * 
+	 * @param versionOfCopy
+	 * @return
+	 */
+	@Override
+	public Year copy(final RepositoryVersion versionOfCopy) {
+		Year copy = new Year(this.year);
+		copy.version = versionOfCopy;
+		copy.audioFiles.addAll(this.audioFiles);
+		return copy;
+	}
 }
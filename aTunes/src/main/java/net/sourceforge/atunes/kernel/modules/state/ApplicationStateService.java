@@ -22,7 +22,17 @@ package net.sourceforge.atunes.kernel.modules.state;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import net.sourceforge.atunes.Constants;
 import net.sourceforge.atunes.model.IBeanFactory;
@@ -35,17 +45,58 @@ import net.sourceforge.atunes.model.IRadio;
 import net.sourceforge.atunes.model.IRepository;
 import net.sourceforge.atunes.model.IStateService;
 import net.sourceforge.atunes.model.IStatistics;
+import net.sourceforge.atunes.model.ITaskService;
+import net.sourceforge.atunes.utils.KryoSerializerService;
 import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.XMLSerializerService;
 
 /**
  * This class is responsible of read, write and apply application state, and
  * caches.
+ * <p>
+ * Stores of caches can be delayed: changes made to a cache while its store is
+ * delayed are stored together, once. A cache is stored before being read, and
+ * all caches are stored when application finishes. Caches changed by their
+ * owners while store is delayed are copied when store is requested
+ * </p>
  */
-public final class ApplicationStateService implements IStateService {
+public final class ApplicationStateService implements IStateService,
+		ApplicationStateServiceMBean {
 
 	private XMLSerializerService xmlSerializerService;
 
+	private KryoSerializerService kryoSerializerService;
+
+	private ITaskService taskService;
+
+	/**
+	 * Seconds a store is delayed, 0 to store caches immediately
+	 */
+	private int writeDelay;
+
+	private String objectName;
+
+	/**
+	 * Delayed stores, by cache
+	 */
+	private final Map<String, Runnable> pendingWrites = new LinkedHashMap<String, Runnable>();
+
+	/**
+	 * If a store of delayed caches is scheduled
+	 */
+	private boolean flushScheduled;
+
+	/**
+	 * Caches are stored one at a time, in the order stores were requested
+	 */
+	private final Object writeLock = new Object();
+
+	private final AtomicLong writesRequested = new AtomicLong();
+
+	private final AtomicLong writesDone = new AtomicLong();
+
+	private final AtomicLong writesAvoided = new AtomicLong();
+
 	private IObjectDataStore<IRepository> repositoryObjectDataStore;
 
 	private IObjectDataStore<IRepository> deviceObjectDataStore;
@@ -132,28 +183,116 @@ public final class ApplicationStateService implements IStateService {
 		this.xmlSerializerService = xmlSerializerService;
 	}
 
+	/**
+	 * @param kryoSerializerService
+	 */
+	public void setKryoSerializerService(
+			final KryoSerializerService kryoSerializerService) {
+		this.kryoSerializerService = kryoSerializerService;
+	}
+
+	/**
+	 * @param taskService
+	 */
+	public void setTaskService(final ITaskService taskService) {
+		this.taskService = taskService;
+	}
+
+	/**
+	 * @param writeDelay
+	 *            seconds a store is delayed, 0 to store caches immediately
+	 */
+	public void setWriteDelay(final int writeDelay) {
+		this.writeDelay = writeDelay;
+	}
+
+	/**
+	 * @param objectName
+	 *            name used to register this service in platform MBean server
+	 */
+	public void setObjectName(final String objectName) {
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Registers this service in platform MBean server
+	 */
+	public void initialize() {
+		if (this.objectName != null) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(this.objectName);
+				if (!server.isRegistered(name)) {
+					server.registerMBean(this, name);
+				}
+			} catch (JMException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
 	@Override
 	public void persistFavoritesCache(final IFavorites favorites) {
-		this.favoritesObjectDataStore.write(favorites);
+		final IFavorites snapshot = snapshot(favorites);
+		write("Favorites", new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.favoritesObjectDataStore
+						.write(snapshot);
+			}
+		});
 	}
 
 	@Override
 	public void persistStatisticsCache(final IStatistics statistics) {
-		this.statisticsObjectDataStore.write(statistics);
+		write("Statistics", new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.statisticsObjectDataStore
+						.write(statistics);
+			}
+		});
 	}
 
 	@Override
 	public void persistPlayLists(final IListOfPlayLists listOfPlayLists) {
-		this.playListObjectDataStore.write(listOfPlayLists);
+		final IListOfPlayLists snapshot = snapshot(listOfPlayLists);
+		write("PlayLists", new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.playListObjectDataStore
+						.write(snapshot);
+			}
+		});
 	}
 
 	@Override
 	public void persistPodcastFeedCache(final List<IPodcastFeed> podcastFeeds) {
-		this.podcastObjectDataStore.write(podcastFeeds);
+		final List<IPodcastFeed> snapshot = snapshot(podcastFeeds);
+		write("PodcastFeeds", new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.podcastObjectDataStore
+						.write(snapshot);
+			}
+		});
 	}
 
 	@Override
 	public void persistRadioCache(final List<IRadio> radios) {
+		final List<IRadio> snapshot = snapshot(radios);
+		write("Radios", new Runnable() {
+			@Override
+			public void run() {
+				writeRadios(snapshot);
+			}
+		});
+	}
+
+	/**
+	 * @param radios
+	 */
+	private void writeRadios(final List<IRadio> radios) {
 		try {
 			this.xmlSerializerService.writeObjectToFile(radios, this.osManager
 					.getFilePath(getUserConfigFolder(), Constants.RADIO_CACHE));
@@ -165,38 +304,170 @@ public final class ApplicationStateService implements IStateService {
 
 	@Override
 	public void persistRepositoryCache(final IRepository repository) {
-		this.repositoryObjectDataStore.write(repository);
+		write("Repository", new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.repositoryObjectDataStore
+						.write(repository);
+			}
+		});
 	}
 
 	@Override
 	public void persistDeviceCache(final String deviceId,
 			final IRepository deviceRepository) {
-		this.deviceObjectDataStore.write(deviceId, deviceRepository);
+		write(getDeviceCache(deviceId), new Runnable() {
+			@Override
+			public void run() {
+				ApplicationStateService.this.deviceObjectDataStore.write(
+						deviceId, deviceRepository);
+			}
+		});
+	}
+
+	/**
+	 * Returns object to be stored. If store is delayed it's a copy, as object
+	 * can be changed by its owner until stored. Statistics are stored holding
+	 * their lock and repositories are not changed once persisted, so they are
+	 * not copied
+	 * 
+	 * @param <T>
+	 * @param object
+	 * @return object or its copy
+	 */
+	private <T> T snapshot(final T object) {
+		if (this.writeDelay <= 0) {
+			return object;
+		}
+		T copy = this.kryoSerializerService.copy(object);
+		return copy != null ? copy : object;
+	}
+
+	/**
+	 * Stores a cache, or delays store if configured
+	 * 
+	 * @param cache
+	 * @param store
+	 */
+	private void write(final String cache, final Runnable store) {
+		this.writesRequested.incrementAndGet();
+		if (this.writeDelay <= 0) {
+			store(store);
+			return;
+		}
+		synchronized (this.pendingWrites) {
+			if (this.pendingWrites.put(cache, store) != null) {
+				// Previous store not made: this one contains its changes
+				this.writesAvoided.incrementAndGet();
+			}
+			if (!this.flushScheduled) {
+				try {
+					this.taskService.submitOnce(
+							"Persist caches", this.writeDelay, new Runnable() {
+								@Override
+								public void run() {
+									// Stores are not made in scheduler thread
+									ApplicationStateService.this.taskService
+											.submitNow("Persist caches",
+													new Runnable() {
+														@Override
+														public void run() {
+															flushCaches();
+														}
+													});
+								}
+							});
+					this.flushScheduled = true;
+				} catch (RejectedExecutionException e) {
+					// Application is finishing: stored when finished
+					Logger.debug(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void flushCaches() {
+		synchronized (this.writeLock) {
+			List<Runnable> stores;
+			synchronized (this.pendingWrites) {
+				stores = new ArrayList<Runnable>(this.pendingWrites.values());
+				this.pendingWrites.clear();
+				this.flushScheduled = false;
+			}
+			for (Runnable store : stores) {
+				store(store);
+			}
+		}
+	}
+
+	/**
+	 * Stores now a cache if its store was delayed, so it can be read
+	 * 
+	 * @param cache
+	 */
+	private void flushCache(final String cache) {
+		synchronized (this.writeLock) {
+			Runnable store;
+			synchronized (this.pendingWrites) {
+				store = this.pendingWrites.remove(cache);
+			}
+			if (store != null) {
+				store(store);
+			}
+		}
+	}
+
+	/**
+	 * @param store
+	 */
+	private void store(final Runnable store) {
+		synchronized (this.writeLock) {
+			try {
+				store.run();
+			} catch (RuntimeException e) {
+				Logger.error(e);
+			}
+			this.writesDone.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @param deviceId
+	 * @return name of cache of device
+	 */
+	private String getDeviceCache(final String deviceId) {
+		return "Device " + deviceId;
 	}
 
 	@Override
 	public IFavorites retrieveFavoritesCache() {
+		flushCache("Favorites");
 		return this.favoritesObjectDataStore.read();
 	}
 
 	@Override
 	public IStatistics retrieveStatisticsCache() {
+		flushCache("Statistics");
 		return this.statisticsObjectDataStore.read();
 	}
 
 	@Override
 	public IListOfPlayLists retrievePlayListsCache() {
+		flushCache("PlayLists");
 		return this.playListObjectDataStore.read();
 	}
 
 	@Override
 	public List<IPodcastFeed> retrievePodcastFeedCache() {
+		flushCache("PodcastFeeds");
 		return this.podcastObjectDataStore.read();
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public List<IRadio> retrieveRadioCache() {
+		flushCache("Radios");
 		try {
 			return (List<IRadio>) this.xmlSerializerService
 					.readObjectFromFile(this.osManager.getFilePath(
@@ -211,11 +482,13 @@ public final class ApplicationStateService implements IStateService {
 
 	@Override
 	public IRepository retrieveRepositoryCache() {
+		flushCache("Repository");
 		return this.repositoryObjectDataStore.read();
 	}
 
 	@Override
 	public IRepository retrieveDeviceCache(final String deviceId) {
+		flushCache(getDeviceCache(deviceId));
 		return this.deviceObjectDataStore.read(deviceId);
 	}
 
@@ -227,4 +500,37 @@ public final class ApplicationStateService implements IStateService {
 	public void editPreferences() {
 		this.beanFactory.getBean(EditPreferencesDialogController.class).start();
 	}
+
+	@Override
+	public int getWriteDelay() {
+		return this.writeDelay;
+	}
+
+	@Override
+	public long getWritesRequested() {
+		return this.writesRequested.get();
+	}
+
+	@Override
+	public long getWritesDone() {
+		return this.writesDone.get();
+	}
+
+	@Override
+	public long getWritesAvoided() {
+		return this.writesAvoided.get();
+	}
+
+	@Override
+	public int getPendingWrites() {
+		synchronized (this.pendingWrites) {
+			return this.pendingWrites.size();
+		}
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return this.kryoSerializerService != null ? this.kryoSerializerService
+				.getBytesWritten() : 0;
+	}
 }
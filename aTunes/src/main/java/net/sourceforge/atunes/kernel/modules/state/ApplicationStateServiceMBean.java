@@ -0,0 +1,62 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.state;
+
+/**
+ * Management interface of application state service, with statistics of
+ * caches stored
+ * 
+ * @author alex
+ * 
+ */
+public interface ApplicationStateServiceMBean {
+
+	/**
+	 * @return seconds a store is delayed to store later changes together
+	 */
+	int getWriteDelay();
+
+	/**
+	 * @return stores of caches requested
+	 */
+	long getWritesRequested();
+
+	/**
+	 * @return stores of caches made
+	 */
+	long getWritesDone();
+
+	/**
+	 * @return stores not made as a later one of same cache was requested
+	 *         before they were made
+	 */
+	long getWritesAvoided();
+
+	/**
+	 * @return stores delayed not made yet
+	 */
+	int getPendingWrites();
+
+	/**
+	 * @return bytes written by object data stores
+	 */
+	long getBytesWritten();
+}
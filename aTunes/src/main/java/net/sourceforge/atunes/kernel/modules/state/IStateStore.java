@@ -57,6 +57,18 @@ interface IStateStore {
 	 */
 	public void storePasswordPreference(Preferences preferenceId, String value);
 
+	/**
+	 * Starts a transaction: preferences stored until it's committed are not
+	 * written to disk until then. Transactions can be nested
+	 */
+	public void beginTransaction();
+
+	/**
+	 * Commits a transaction started with beginTransaction, writing to disk
+	 * preferences stored if it's not nested in another one
+	 */
+	public void commitTransaction();
+
 	/**
 	 * Called when application finishes to save flush all data
 	 */
@@ -71,4 +71,18 @@ public class PreferenceHelper {
 		this.stateStore.storePasswordPreference(pref, value);
 	}
 
+	/**
+	 * Preferences set until transaction is committed are written at once
+	 */
+	void beginTransaction() {
+		this.stateStore.beginTransaction();
+	}
+
+	/**
+	 * Writes preferences set since transaction began
+	 */
+	void commitTransaction() {
+		this.stateStore.commitTransaction();
+	}
+
 }
@@ -20,16 +20,46 @@
 
 package net.sourceforge.atunes.kernel.modules.state;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import net.sf.ehcache.Element;
 import net.sourceforge.atunes.utils.AbstractCache;
 import net.sourceforge.atunes.utils.Logger;
 
+/**
+ * Preferences stored with ehcache. Elements are kept in memory once read, and
+ * changes made in a transaction are flushed to disk once when committed
+ * 
+ * @author alex
+ * 
+ */
 class PreferencesCache extends AbstractCache implements IStateStore {
 
+	/**
+	 * Element kept for preferences not stored
+	 */
+	private static final Element NOT_STORED = new Element("", null);
+
+	/**
+	 * Elements read or stored, by preference
+	 */
+	private final ConcurrentMap<String, Element> elements = new ConcurrentHashMap<String, Element>();
+
+	/**
+	 * Transactions started and not committed yet, guarded by this cache
+	 */
+	private int transactions;
+
+	/**
+	 * If there are changes not flushed, guarded by this cache
+	 */
+	private boolean changed;
+
 	@Override
 	public Object retrievePreference(final Preferences preferenceId,
 			final Object defaultValue) {
-		Element element = get(preferenceId.toString());
+		Element element = getElement(preferenceId.toString());
 		if (element == null) {
 			return defaultValue;
 		} else {
@@ -52,16 +82,14 @@ class PreferencesCache extends AbstractCache implements IStateStore {
 			pref = new Preference();
 			pref.setValue(value);
 		}
-		Element element = new Element(preferenceId.toString(), pref);
-		put(element);
-		flush();
+		putElement(new Element(preferenceId.toString(), pref));
 		Logger.debug("Stored Preference: ", preferenceId, " Value: ",
 				value != null ? value.toString() : null);
 	}
 
 	@Override
 	public String retrievePasswordPreference(final Preferences preferenceId) {
-		Element element = get(preferenceId.toString());
+		Element element = getElement(preferenceId.toString());
 		if (element == null) {
 			return null;
 		} else {
@@ -78,15 +106,67 @@ class PreferencesCache extends AbstractCache implements IStateStore {
 			return;
 		}
 
-		Element element = new Element(preferenceId.toString(),
-				value != null ? new PasswordPreference(value) : null);
-		put(element);
-		flush();
+		putElement(new Element(preferenceId.toString(),
+				value != null ? new PasswordPreference(value) : null));
 		Logger.debug("Stored Password Preference: ", preferenceId);
 	}
 
 	@Override
-	public void shutdown() {
+	public synchronized void beginTransaction() {
+		this.transactions++;
+	}
+
+	@Override
+	public synchronized void commitTransaction() {
+		if (this.transactions > 0) {
+			this.transactions--;
+		}
+		if (this.transactions == 0 && this.changed) {
+			flush();
+			this.changed = false;
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (this.changed) {
+			flush();
+			this.changed = false;
+		}
 		dispose();
 	}
+
+	/**
+	 * @param key
+	 * @return element of preference, read from ehcache first time, or null if
+	 *         not stored
+	 */
+	private Element getElement(final String key) {
+		Element element = this.elements.get(key);
+		if (element == null) {
+			element = get(key);
+			Element previous = this.elements.putIfAbsent(key,
+					element != null ? element : NOT_STORED);
+			if (previous != null) {
+				// Stored meanwhile
+				element = previous;
+			}
+		}
+		return element != NOT_STORED ? element : null;
+	}
+
+	/**
+	 * Puts element in ehcache, and flushes it if not in a transaction
+	 * 
+	 * @param element
+	 */
+	private synchronized void putElement(final Element element) {
+		put(element);
+		this.elements.put((String) element.getObjectKey(), element);
+		if (this.transactions > 0) {
+			this.changed = true;
+		} else {
+			flush();
+		}
+	}
 }
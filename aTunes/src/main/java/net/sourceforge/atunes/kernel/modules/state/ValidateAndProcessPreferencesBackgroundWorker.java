@@ -38,6 +38,15 @@ public class ValidateAndProcessPreferencesBackgroundWorker
 
 	private EditPreferencesDialog preferencesDialog;
 
+	private PreferenceHelper preferenceHelper;
+
+	/**
+	 * @param preferenceHelper
+	 */
+	public void setPreferenceHelper(final PreferenceHelper preferenceHelper) {
+		this.preferenceHelper = preferenceHelper;
+	}
+
 	/**
 	 * Validates panels and process preferences if valid
 	 * 
@@ -105,6 +114,21 @@ public class ValidateAndProcessPreferencesBackgroundWorker
 	 * @return true if application needs to be restarted to apply some changes
 	 */
 	private boolean processPreferences() {
+		// Preferences of all panels are written at once
+		preferenceHelper.beginTransaction();
+		try {
+			return applyPreferences();
+		} finally {
+			preferenceHelper.commitTransaction();
+		}
+	}
+
+	/**
+	 * Applies preferences of dirty panels
+	 * 
+	 * @return true if application needs to be restarted to apply some changes
+	 */
+	private boolean applyPreferences() {
 		boolean needRestart = false;
 		// Apply preferences from panels
 		for (AbstractPreferencesPanel p : panels) {
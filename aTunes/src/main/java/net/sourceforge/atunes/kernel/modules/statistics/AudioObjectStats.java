@@ -51,8 +51,17 @@ public class AudioObjectStats implements Serializable, IAudioObjectStatistics {
 
 	@Override
 	public void increaseStatistics() {
+		increaseStatistics(new DateTime());
+	}
+
+	/**
+	 * Counts a play made at given time
+	 * 
+	 * @param playTime
+	 */
+	void increaseStatistics(final DateTime playTime) {
 		this.timesPlayed++;
-		this.lastPlayed = new DateTime();
+		this.lastPlayed = playTime;
 	}
 
 	@Override
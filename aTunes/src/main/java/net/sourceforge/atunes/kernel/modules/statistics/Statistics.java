@@ -21,7 +21,9 @@
 package net.sourceforge.atunes.kernel.modules.statistics;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.sourceforge.atunes.model.IAudioObject;
@@ -48,6 +50,12 @@ public class Statistics implements Serializable, IStatistics {
 	RankList<String> artistsRanking;
 	Map<String, IAudioObjectStatistics> audioFilesStats;
 
+	/** Plays counted since statistics were stored */
+	private transient List<StatisticsPlay> plays;
+
+	/** If statistics were changed other than by plays since they were stored */
+	private transient boolean changed;
+
 	/**
 	 * Instantiates a new repository stats.
 	 */
@@ -166,4 +174,44 @@ public class Statistics implements Serializable, IStatistics {
 	public void setTotalPlays(final int totalPlays) {
 		this.totalPlays = totalPlays;
 	}
+
+	/**
+	 * Counts a play, which is kept until statistics are stored
+	 * 
+	 * @param play
+	 */
+	synchronized void addPlay(final StatisticsPlay play) {
+		play.number = this.totalPlays + 1;
+		play.applyTo(this);
+		if (this.plays == null) {
+			this.plays = new ArrayList<StatisticsPlay>();
+		}
+		this.plays.add(play);
+	}
+
+	/**
+	 * Marks statistics as changed other than by plays, so they must be stored
+	 * whole
+	 */
+	synchronized void setChanged() {
+		this.changed = true;
+	}
+
+	/**
+	 * Returns plays counted since last call, and stops keeping them
+	 * 
+	 * @return plays or null if statistics must be stored whole
+	 */
+	synchronized List<StatisticsPlay> takePlays() {
+		List<StatisticsPlay> result = this.plays;
+		if (result == null) {
+			result = new ArrayList<StatisticsPlay>();
+		}
+		if (this.changed) {
+			result = null;
+		}
+		this.plays = null;
+		this.changed = false;
+		return result;
+	}
 }
@@ -47,7 +47,7 @@ import net.sourceforge.atunes.model.RankList;
 public final class StatisticsHandler extends AbstractHandler implements
 		IStatisticsHandler {
 
-	private IStatistics statistics = new Statistics();
+	private Statistics statistics = new Statistics();
 
 	private StatsDialogController controller;
 
@@ -111,61 +111,32 @@ public final class StatisticsHandler extends AbstractHandler implements
 	 */
 	private void updateStatistics(final IAudioObject audioObject,
 			final String songPath) {
-		this.statistics.setTotalPlays(this.statistics.getTotalPlays() + 1);
-
-		IAudioObjectStatistics stats = getOrCreateAudioObjectStatistics(songPath);
-		stats.increaseStatistics();
-
-		updateAudioObjectRanking(songPath);
+		String artistToRank = null;
+		StatisticsAlbum albumToRank = null;
 
 		String artist = audioObject.getArtist(this.unknownObjectChecker);
 		IArtist a = this.repositoryHandler.getArtist(artist);
 
 		// Unknown artist -> don't fill artist stats
-		if (a == null || this.unknownObjectChecker.isUnknownArtist(a.getName())) {
-			return;
+		if (a != null && !this.unknownObjectChecker.isUnknownArtist(a.getName())) {
+			artistToRank = a.getName();
+			albumToRank = getAlbumToRank(audioObject, artist, a);
 		}
 
-		updateArtistRanking(a);
-		updateAlbumRanking(audioObject, artist, a);
-	}
-
-	/**
-	 * Returns audio object statistics or create a new one
-	 * 
-	 * @param songPath
-	 * @return
-	 */
-	private IAudioObjectStatistics getOrCreateAudioObjectStatistics(
-			final String songPath) {
-		IAudioObjectStatistics stats = this.statistics.getAudioFilesStats()
-				.get(songPath);
-		if (stats == null) {
-			stats = new AudioObjectStats();
-			this.statistics.getAudioFilesStats().put(songPath, stats);
-			this.statistics.setDifferentAudioFilesPlayed(this.statistics
-					.getDifferentAudioFilesPlayed() + 1);
-		}
-		return stats;
+		// Play is kept to be appended to play log when statistics are stored
+		this.statistics.addPlay(new StatisticsPlay(songPath, artistToRank,
+				albumToRank, System.currentTimeMillis()));
 	}
 
 	/**
-	 * Updates audio object ranking
-	 * 
-	 * @param songPath
-	 */
-	private void updateAudioObjectRanking(final String songPath) {
-		this.statistics.getAudioFilesRanking().addItem(songPath);
-	}
-
-	/**
-	 * Updates album ranking
+	 * Returns album to update in album ranking
 	 * 
 	 * @param audioObject
 	 * @param artist
 	 * @param a
+	 * @return album or null if unknown
 	 */
-	private void updateAlbumRanking(final IAudioObject audioObject,
+	private StatisticsAlbum getAlbumToRank(final IAudioObject audioObject,
 			final String artist, final IArtist a) {
 		String album = audioObject.getAlbum(this.unknownObjectChecker);
 
@@ -174,20 +145,10 @@ public final class StatisticsHandler extends AbstractHandler implements
 		// Unknown album -> don't fill album stats
 		if (alb == null
 				|| this.unknownObjectChecker.isUnknownAlbum(alb.getName())) {
-			return;
+			return null;
 		}
 
-		IStatisticsAlbum statisticsAlbum = new StatisticsAlbum(artist, album);
-		this.statistics.getAlbumsRanking().addItem(statisticsAlbum);
-	}
-
-	/**
-	 * Updates artist ranking
-	 * 
-	 * @param a
-	 */
-	private void updateArtistRanking(final IArtist a) {
-		this.statistics.getArtistsRanking().addItem(a.getName());
+		return new StatisticsAlbum(artist, album);
 	}
 
 	/**
@@ -275,7 +236,7 @@ public final class StatisticsHandler extends AbstractHandler implements
 	/**
 	 * @param statistics
 	 */
-	void setStatistics(final IStatistics statistics) {
+	void setStatistics(final Statistics statistics) {
 		this.statistics = statistics;
 	}
 
@@ -332,6 +293,7 @@ public final class StatisticsHandler extends AbstractHandler implements
 						new StatisticsAlbum(newArtist, album.getAlbum()));
 			}
 		}
+		this.statistics.setChanged();
 		storeStatistics();
 	}
 
@@ -347,6 +309,7 @@ public final class StatisticsHandler extends AbstractHandler implements
 						new StatisticsAlbum(artist, newAlbum));
 			}
 		}
+		this.statistics.setChanged();
 		storeStatistics();
 	}
 
@@ -358,6 +321,7 @@ public final class StatisticsHandler extends AbstractHandler implements
 		this.statistics.getAudioFilesStats().put(newAbsolutePath,
 				this.statistics.getAudioFilesStats().get(absolutePath));
 		this.statistics.getAudioFilesStats().remove(absolutePath);
+		this.statistics.setChanged();
 		storeStatistics();
 	}
 
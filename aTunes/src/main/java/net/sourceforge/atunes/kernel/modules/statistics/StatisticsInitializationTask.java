@@ -44,9 +44,9 @@ public final class StatisticsInitializationTask extends
 
 	@Override
 	public void setData(final IBeanFactory beanFactory) {
-		if (this.statistics != null) {
+		if (this.statistics instanceof Statistics) {
 			beanFactory.getBean(StatisticsHandler.class).setStatistics(
-					this.statistics);
+					(Statistics) this.statistics);
 		}
 	}
 }
\ No newline at end of file
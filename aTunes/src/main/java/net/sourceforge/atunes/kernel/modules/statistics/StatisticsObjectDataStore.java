@@ -20,7 +20,9 @@
 
 package net.sourceforge.atunes.kernel.modules.statistics;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import net.sourceforge.atunes.Constants;
 import net.sourceforge.atunes.model.IOSManager;
@@ -31,7 +33,8 @@ import net.sourceforge.atunes.utils.Logger;
 import net.sourceforge.atunes.utils.StringUtils;
 
 /**
- * Data store for statistics
+ * Data store for statistics. Whole statistics are stored from time to time,
+ * and plays counted in between are appended to a play log
  * 
  * @author alex
  * 
@@ -42,6 +45,25 @@ public class StatisticsObjectDataStore implements IObjectDataStore<IStatistics>
 
 	private KryoSerializerService kryoSerializerService;
 
+	private StatisticsPlayLog statisticsPlayLog;
+
+	/**
+	 * Play log is always written when it's smaller than this
+	 */
+	private long minPlayLogSize = 65536;
+
+	/**
+	 * Play log is not written when it's bigger than this percentage of size
+	 * of stored statistics
+	 */
+	private int maxPlayLogPercentage = 25;
+
+	/**
+	 * If statistics stored and play log contain all plays counted, so new
+	 * plays can be appended to log
+	 */
+	private boolean playLogValid;
+
 	/**
 	 * @param osManager
 	 */
@@ -57,8 +79,29 @@ public class StatisticsObjectDataStore implements IObjectDataStore<IStatistics>
 		this.kryoSerializerService = kryoSerializerService;
 	}
 
+	/**
+	 * @param statisticsPlayLog
+	 */
+	public void setStatisticsPlayLog(StatisticsPlayLog statisticsPlayLog) {
+		this.statisticsPlayLog = statisticsPlayLog;
+	}
+
+	/**
+	 * @param minPlayLogSize
+	 */
+	public void setMinPlayLogSize(long minPlayLogSize) {
+		this.minPlayLogSize = minPlayLogSize;
+	}
+
+	/**
+	 * @param maxPlayLogPercentage
+	 */
+	public void setMaxPlayLogPercentage(int maxPlayLogPercentage) {
+		this.maxPlayLogPercentage = maxPlayLogPercentage;
+	}
+
 	@Override
-	public IStatistics read() {
+	public synchronized IStatistics read() {
 		IStatistics result = null;
 		try {
 			result = (IStatistics) kryoSerializerService.readObjectFromFile(
@@ -66,6 +109,22 @@ public class StatisticsObjectDataStore implements IObjectDataStore<IStatistics>
 		} catch (IOException e) {
 			Logger.error(e);
 		}
+
+		List<StatisticsPlay> plays = statisticsPlayLog.read();
+		if (!plays.isEmpty()) {
+			Logger.info("Applying ", plays.size(),
+					" plays stored in statistics play log");
+			if (result == null) {
+				result = new Statistics();
+			}
+			// Plays already counted in statistics stored are ignored
+			for (StatisticsPlay play : plays) {
+				play.applyTo(result);
+			}
+		}
+		// Plays appended after a damaged one would be lost: whole statistics
+		// are stored first
+		playLogValid = statisticsPlayLog.isComplete();
 		return result;
 	}
 
@@ -78,8 +137,60 @@ public class StatisticsObjectDataStore implements IObjectDataStore<IStatistics>
 	}
 
 	@Override
-	public void write(IStatistics statistics) {
-		kryoSerializerService.writeObjectToFile(getFileName(), statistics);
+	public synchronized void write(IStatistics statistics) {
+		if (!appendToPlayLog(statistics)) {
+			writeAll(statistics);
+		}
+	}
+
+	/**
+	 * Appends plays counted since statistics were stored to play log, if
+	 * there were no other changes and log is not too big
+	 * 
+	 * @param statistics
+	 * @return if statistics are stored after appending plays
+	 */
+	private boolean appendToPlayLog(IStatistics statistics) {
+		List<StatisticsPlay> plays = statistics instanceof Statistics ? ((Statistics) statistics)
+				.takePlays() : null;
+		if (plays == null || !playLogValid || isPlayLogFull()) {
+			return false;
+		}
+		for (StatisticsPlay play : plays) {
+			if (!statisticsPlayLog.append(play)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return if play log is too big, so whole statistics must be stored
+	 */
+	private boolean isPlayLogFull() {
+		long playLogSize = statisticsPlayLog.length();
+		return playLogSize > minPlayLogSize
+				&& playLogSize * 100 > new File(getFileName()).length()
+						* maxPlayLogPercentage;
+	}
+
+	/**
+	 * Stores whole statistics and removes play log
+	 * 
+	 * @param statistics
+	 */
+	private void writeAll(IStatistics statistics) {
+		playLogValid = false;
+		boolean written;
+		// Plays are not counted while statistics are written
+		synchronized (statistics) {
+			written = kryoSerializerService.writeObjectToFile(getFileName(),
+					statistics);
+		}
+		if (written) {
+			statisticsPlayLog.delete();
+			playLogValid = true;
+		}
 	}
 
 	@Override
@@ -0,0 +1,117 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.statistics;
+
+import java.io.Serializable;
+
+import net.sourceforge.atunes.model.IAudioObjectStatistics;
+import net.sourceforge.atunes.model.IStatistics;
+
+import org.joda.time.DateTime;
+
+/**
+ * A play of an audio object, appended to statistics play log. Contains all
+ * needed to update statistics so they can be updated again from log
+ * 
+ * @author alex
+ * 
+ */
+class StatisticsPlay implements Serializable {
+
+	private static final long serialVersionUID = -4629473150364927510L;
+
+	String url;
+
+	/**
+	 * Artist to rank, null if unknown
+	 */
+	String artist;
+
+	/**
+	 * Album to rank, null if unknown
+	 */
+	StatisticsAlbum album;
+
+	long time;
+
+	/**
+	 * Total plays once this play is counted, so plays already counted in
+	 * statistics stored are not counted again
+	 */
+	int number;
+
+	/**
+	 * Default constructor for serialization
+	 */
+	StatisticsPlay() {
+	}
+
+	/**
+	 * @param url
+	 * @param artist
+	 *            artist to rank or null
+	 * @param album
+	 *            album to rank or null
+	 * @param time
+	 */
+	StatisticsPlay(final String url, final String artist,
+			final StatisticsAlbum album, final long time) {
+		this.url = url;
+		this.artist = artist;
+		this.album = album;
+		this.time = time;
+	}
+
+	/**
+	 * Updates statistics with this play, if not counted yet
+	 * 
+	 * @param statistics
+	 */
+	void applyTo(final IStatistics statistics) {
+		if (this.number <= statistics.getTotalPlays()) {
+			return;
+		}
+		statistics.setTotalPlays(statistics.getTotalPlays() + 1);
+
+		IAudioObjectStatistics stats = statistics.getAudioFilesStats().get(
+				this.url);
+		if (stats == null) {
+			stats = new AudioObjectStats();
+			statistics.getAudioFilesStats().put(this.url, stats);
+			statistics.setDifferentAudioFilesPlayed(statistics
+					.getDifferentAudioFilesPlayed() + 1);
+		}
+		if (stats instanceof AudioObjectStats) {
+			((AudioObjectStats) stats).increaseStatistics(new DateTime(
+					this.time));
+		} else {
+			stats.increaseStatistics();
+		}
+
+		statistics.getAudioFilesRanking().addItem(this.url);
+		if (this.artist != null) {
+			statistics.getArtistsRanking().addItem(this.artist);
+		}
+		if (this.album != null) {
+			statistics.getAlbumsRanking().addItem(this.album);
+		}
+	}
+}
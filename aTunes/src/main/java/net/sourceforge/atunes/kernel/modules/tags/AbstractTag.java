@@ -53,12 +53,18 @@ public abstract class AbstractTag implements Serializable, ITag {
 	/** The comment. */
 	String comment;
 
+	/** Comment kept in repository cache, or null if it's kept in tag */
+	transient TagText storedComment;
+
 	/** The genre. */
 	String genre;
 
 	/** The lyrics. */
 	String lyrics;
 
+	/** Lyrics kept in repository cache, or null if they are kept in tag */
+	transient TagText storedLyrics;
+
 	/** The composer. */
 	String composer;
 
@@ -96,7 +102,8 @@ public abstract class AbstractTag implements Serializable, ITag {
 
 	@Override
 	public String getComment() {
-		return this.comment;
+		TagText stored = this.storedComment;
+		return stored != null ? stored.getText() : this.comment;
 	}
 
 	@Override
@@ -111,7 +118,8 @@ public abstract class AbstractTag implements Serializable, ITag {
 
 	@Override
 	public String getLyrics() {
-		return this.lyrics;
+		TagText stored = this.storedLyrics;
+		return stored != null ? stored.getText() : this.lyrics;
 	}
 
 	@Override
@@ -158,6 +166,7 @@ public abstract class AbstractTag implements Serializable, ITag {
 	@Override
 	public void setComment(final String comment) {
 		this.comment = comment != null ? comment.trim() : "";
+		this.storedComment = null;
 	}
 
 	@Override
@@ -173,6 +182,7 @@ public abstract class AbstractTag implements Serializable, ITag {
 	@Override
 	public void setLyrics(final String lyrics) {
 		this.lyrics = lyrics != null ? lyrics : "";
+		this.storedLyrics = null;
 	}
 
 	@Override
@@ -20,9 +20,12 @@
 
 package net.sourceforge.atunes.kernel.modules.tags;
 
+import com.esotericsoftware.kryo.DefaultSerializer;
+
 /**
  * The default tag
  */
+@DefaultSerializer(TagSerializer.class)
 public class DefaultTag extends AbstractTag {
 
 	private static final long serialVersionUID = 6200185803652819029L;
@@ -113,7 +113,8 @@ final class EditTitlesDialogController extends
 	 */
 	public void editFiles(final IAlbum alb) {
 		this.album = alb;
-		List<ILocalAudioObject> filesToEdit = alb.getAudioObjects();
+		List<ILocalAudioObject> filesToEdit = new ArrayList<ILocalAudioObject>(
+				alb.getAudioObjects());
 		Collections.sort(filesToEdit);
 		this.model = new EditTitlesTableModel(filesToEdit, this.fileManager);
 		getComponentControlled().getTable().setModel(this.model);
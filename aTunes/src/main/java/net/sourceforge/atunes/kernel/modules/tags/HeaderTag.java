@@ -0,0 +1,223 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import net.sourceforge.atunes.utils.StringUtils;
+
+import org.jaudiotagger.tag.FieldKey;
+
+/**
+ * Tag values and audio properties read from file headers by
+ * HeaderTagReader
+ * 
+ * @author alex
+ * 
+ */
+final class HeaderTag {
+
+	private final Map<FieldKey, String> fields = new EnumMap<FieldKey, String>(
+			FieldKey.class);
+
+	private String date;
+
+	private String dayAndMonth;
+
+	private boolean dateFromYear;
+
+	private boolean commentWithoutDescription;
+
+	private boolean internalImage;
+
+	private boolean audioProperties;
+
+	private int duration;
+
+	private long bitrate;
+
+	private int frequency;
+
+	private boolean variableBitrate;
+
+	/**
+	 * Sets value of given field if it has no value yet, so first value found
+	 * in file is kept
+	 * 
+	 * @param field
+	 * @param value
+	 */
+	void putField(final FieldKey field, final String value) {
+		if (!StringUtils.isEmpty(value) && !this.fields.containsKey(field)) {
+			this.fields.put(field, value);
+		}
+	}
+
+	/**
+	 * Sets value of given field replacing previous one
+	 * 
+	 * @param field
+	 * @param value
+	 */
+	private void replaceField(final FieldKey field, final String value) {
+		if (!StringUtils.isEmpty(value)) {
+			this.fields.put(field, value);
+		}
+	}
+
+	/**
+	 * Sets comment. As there can be several comments, the first one without
+	 * description is preferred
+	 * 
+	 * @param description
+	 * @param value
+	 */
+	void putComment(final String description, final String value) {
+		if (!StringUtils.isEmpty(description)) {
+			putField(FieldKey.COMMENT, value);
+		} else if (!this.commentWithoutDescription
+				&& !StringUtils.isEmpty(value)) {
+			replaceField(FieldKey.COMMENT, value);
+			this.commentWithoutDescription = true;
+		}
+	}
+
+	/**
+	 * @param field
+	 * @return value of field or null
+	 */
+	String getField(final FieldKey field) {
+		return this.fields.get(field);
+	}
+
+	/**
+	 * @return date in RFC 3339 format (Vorbis DATE or ID3v2.4 TDRC)
+	 */
+	String getDate() {
+		return this.date;
+	}
+
+	/**
+	 * @param date
+	 */
+	void setDate(final String date) {
+		this.date = date;
+	}
+
+	/**
+	 * @return day and month in DDMM format (ID3v2.3 TDAT)
+	 */
+	String getDayAndMonth() {
+		return this.dayAndMonth;
+	}
+
+	/**
+	 * @param dayAndMonth
+	 */
+	void setDayAndMonth(final String dayAndMonth) {
+		this.dayAndMonth = dayAndMonth;
+	}
+
+	/**
+	 * @return if date must be built from year and day and month fields, as
+	 *         ID3v2.3 does
+	 */
+	boolean isDateFromYear() {
+		return this.dateFromYear;
+	}
+
+	/**
+	 * @param dateFromYear
+	 */
+	void setDateFromYear(final boolean dateFromYear) {
+		this.dateFromYear = dateFromYear;
+	}
+
+	/**
+	 * @return if tag contains an image
+	 */
+	boolean hasInternalImage() {
+		return this.internalImage;
+	}
+
+	/**
+	 * @param internalImage
+	 */
+	void setInternalImage(final boolean internalImage) {
+		this.internalImage = internalImage;
+	}
+
+	/**
+	 * @return if audio properties were read
+	 */
+	boolean hasAudioProperties() {
+		return this.audioProperties;
+	}
+
+	/**
+	 * Sets audio properties
+	 * 
+	 * @param duration
+	 *            in seconds
+	 * @param bitrate
+	 *            in kbps
+	 * @param frequency
+	 *            in Hz
+	 * @param variableBitrate
+	 */
+	void setAudioProperties(final int duration, final long bitrate,
+			final int frequency, final boolean variableBitrate) {
+		this.audioProperties = true;
+		this.duration = duration;
+		this.bitrate = bitrate;
+		this.frequency = frequency;
+		this.variableBitrate = variableBitrate;
+	}
+
+	/**
+	 * @return duration in seconds
+	 */
+	int getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * @return bitrate in kbps
+	 */
+	long getBitrate() {
+		return this.bitrate;
+	}
+
+	/**
+	 * @return frequency in Hz
+	 */
+	int getFrequency() {
+		return this.frequency;
+	}
+
+	/**
+	 * @return if bitrate is variable
+	 */
+	boolean isVariableBitrate() {
+		return this.variableBitrate;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.io.File;
+import java.util.List;
+
+import javax.swing.ImageIcon;
+
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
+import net.sourceforge.atunes.model.ITagAdapter;
+import net.sourceforge.atunes.model.LocalAudioObjectFormat;
+import net.sourceforge.atunes.utils.Logger;
+
+/**
+ * Tag adapter reading tags and audio properties only from file headers, which
+ * is much faster than reading whole file structure with JAudiotagger. Files
+ * with unsupported tag features are read with JAudiotagger adapter, which is
+ * also used to write tags and read images
+ * 
+ * @author alex
+ * 
+ */
+public class HeaderTagAdapter implements ITagAdapter {
+
+	private ILocalAudioObjectValidator localAudioObjectValidator;
+
+	private ITagAdapter jAudiotaggerTagAdapter;
+
+	private JAudiotaggerTagCreator jAudiotaggerTagCreator;
+
+	private LocalAudioObjectFormat[] formats = new LocalAudioObjectFormat[0];
+
+	private int maxFieldSize;
+
+	private int frameSearchSize;
+
+	/**
+	 * @param localAudioObjectValidator
+	 */
+	public void setLocalAudioObjectValidator(
+			final ILocalAudioObjectValidator localAudioObjectValidator) {
+		this.localAudioObjectValidator = localAudioObjectValidator;
+	}
+
+	/**
+	 * @param jAudiotaggerTagAdapter
+	 */
+	public void setjAudiotaggerTagAdapter(
+			final ITagAdapter jAudiotaggerTagAdapter) {
+		this.jAudiotaggerTagAdapter = jAudiotaggerTagAdapter;
+	}
+
+	/**
+	 * @param jAudiotaggerTagCreator
+	 */
+	public void setjAudiotaggerTagCreator(
+			final JAudiotaggerTagCreator jAudiotaggerTagCreator) {
+		this.jAudiotaggerTagCreator = jAudiotaggerTagCreator;
+	}
+
+	/**
+	 * Formats read with this adapter. Only MP3 and FLAC are supported
+	 * 
+	 * @param formats
+	 */
+	public void setFormats(final List<LocalAudioObjectFormat> formats) {
+		this.formats = formats.toArray(new LocalAudioObjectFormat[formats
+				.size()]);
+	}
+
+	/**
+	 * @param maxFieldSize
+	 *            biggest tag field or metadata block read, in bytes. Files
+	 *            with bigger fields are read with JAudiotagger
+	 */
+	public void setMaxFieldSize(final int maxFieldSize) {
+		this.maxFieldSize = maxFieldSize;
+	}
+
+	/**
+	 * @param frameSearchSize
+	 *            bytes after tag where first MPEG frame is searched
+	 */
+	public void setFrameSearchSize(final int frameSearchSize) {
+		this.frameSearchSize = frameSearchSize;
+	}
+
+	@Override
+	public boolean isFormatSupported(final ILocalAudioObject ao) {
+		return this.localAudioObjectValidator.isOneOfTheseFormats(ao,
+				this.formats);
+	}
+
+	@Override
+	public boolean isStoreRatingInFile() {
+		return this.jAudiotaggerTagAdapter.isStoreRatingInFile();
+	}
+
+	@Override
+	public void readData(final ILocalAudioObject ao, final boolean readRating,
+			final boolean readAudioProperties) {
+		HeaderTag headerTag = readHeaderTag(ao, readAudioProperties);
+		if (headerTag == null) {
+			this.jAudiotaggerTagAdapter.readData(ao, readRating,
+					readAudioProperties);
+		} else {
+			ao.setTag(this.jAudiotaggerTagCreator.createTag(headerTag,
+					readRating));
+			if (headerTag.hasAudioProperties()) {
+				ao.setDuration(headerTag.getDuration());
+				ao.setBitrate(headerTag.getBitrate());
+				ao.setFrequency(headerTag.getFrequency());
+				ao.setVariableBitrate(headerTag.isVariableBitrate());
+			}
+		}
+	}
+
+	/**
+	 * @param ao
+	 * @param readAudioProperties
+	 * @return tag read from headers or null if file must be read with
+	 *         JAudiotagger
+	 */
+	private HeaderTag readHeaderTag(final ILocalAudioObject ao,
+			final boolean readAudioProperties) {
+		HeaderTagReader reader = new HeaderTagReader(this.maxFieldSize,
+				this.frameSearchSize);
+		File file = new File(ao.getUrl());
+		try {
+			if (this.localAudioObjectValidator.isOneOfTheseFormats(ao,
+					LocalAudioObjectFormat.MP3)) {
+				return reader.readMP3(file, readAudioProperties);
+			} else if (this.localAudioObjectValidator.isOneOfTheseFormats(ao,
+					LocalAudioObjectFormat.FLAC)) {
+				return reader.readFlac(file, readAudioProperties);
+			}
+		} catch (Exception e) {
+			// Any error reading headers is handled by JAudiotagger
+			Logger.debug("Can't read headers of ", ao.getUrl(), ": ",
+					e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public void readRating(final ILocalAudioObject ao) {
+		this.jAudiotaggerTagAdapter.readRating(ao);
+	}
+
+	@Override
+	public ImageIcon getImage(final ILocalAudioObject ao, final int width,
+			final int height) {
+		return this.jAudiotaggerTagAdapter.getImage(ao, width, height);
+	}
+
+	@Override
+	public void deleteTags(final ILocalAudioObject file) {
+		this.jAudiotaggerTagAdapter.deleteTags(file);
+	}
+
+	@Override
+	public void writeTag(final ILocalAudioObject file,
+			final boolean shouldEditCover, final byte[] cover,
+			final String title, final String album, final String artist,
+			final int year, final String comment, final String genre,
+			final String lyrics, final String composer, final int track,
+			final int discNumber, final String albumArtist) {
+		this.jAudiotaggerTagAdapter.writeTag(file, shouldEditCover, cover,
+				title, album, artist, year, comment, genre, lyrics, composer,
+				track, discNumber, albumArtist);
+	}
+
+	@Override
+	public void modifyAlbum(final ILocalAudioObject file, final String album) {
+		this.jAudiotaggerTagAdapter.modifyAlbum(file, album);
+	}
+
+	@Override
+	public void modifyGenre(final ILocalAudioObject file, final String genre) {
+		this.jAudiotaggerTagAdapter.modifyGenre(file, genre);
+	}
+
+	@Override
+	public void modifyLyrics(final ILocalAudioObject file, final String lyrics) {
+		this.jAudiotaggerTagAdapter.modifyLyrics(file, lyrics);
+	}
+
+	@Override
+	public void modifyTitle(final ILocalAudioObject file, final String newTitle) {
+		this.jAudiotaggerTagAdapter.modifyTitle(file, newTitle);
+	}
+
+	@Override
+	public void modifyTrack(final ILocalAudioObject file, final Integer track) {
+		this.jAudiotaggerTagAdapter.modifyTrack(file, track);
+	}
+
+	@Override
+	public void modifyRating(final ILocalAudioObject audioObject,
+			final String starsToRating) {
+		this.jAudiotaggerTagAdapter.modifyRating(audioObject, starsToRating);
+	}
+}
@@ -0,0 +1,715 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.sourceforge.atunes.utils.ClosingUtils;
+
+import org.jaudiotagger.tag.FieldKey;
+
+/**
+ * Reads tags and audio properties of MP3 and FLAC files looking only at
+ * headers: ID3v2 frames (skipping pictures and unknown frames without reading
+ * them), ID3v1, first MPEG frame and Xing / VBRI headers, and FLAC metadata
+ * blocks. All reads are positional and bounded, so content of file is never
+ * read.
+ * 
+ * When file uses a feature not supported here (compressed or encrypted
+ * frames, whole tag unsynchronisation, fields bigger than limit...) null is
+ * returned, so file can be read with a full tag reader
+ * 
+ * @author alex
+ * 
+ */
+final class HeaderTagReader {
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final Charset UTF_16 = Charset.forName("UTF-16");
+	private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int ID3V2_HEADER_SIZE = 10;
+	private static final int ID3V1_SIZE = 128;
+
+	private static final int FLAC_BLOCK_HEADER_SIZE = 4;
+	private static final int FLAC_STREAMINFO = 0;
+	private static final int FLAC_VORBIS_COMMENT = 4;
+	private static final int FLAC_PICTURE = 6;
+	private static final int FLAC_INVALID = 127;
+	private static final int FLAC_STREAMINFO_SIZE = 34;
+
+	private static final Map<String, FieldKey> ID3V22_FRAMES = new HashMap<String, FieldKey>();
+	private static final Map<String, FieldKey> ID3V23_FRAMES = new HashMap<String, FieldKey>();
+	private static final Map<String, FieldKey> ID3V24_FRAMES = new HashMap<String, FieldKey>();
+	private static final Map<String, FieldKey> VORBIS_FIELDS = new HashMap<String, FieldKey>();
+
+	static {
+		ID3V22_FRAMES.put("TT2", FieldKey.TITLE);
+		ID3V22_FRAMES.put("TP1", FieldKey.ARTIST);
+		ID3V22_FRAMES.put("TAL", FieldKey.ALBUM);
+		ID3V22_FRAMES.put("TP2", FieldKey.ALBUM_ARTIST);
+		ID3V22_FRAMES.put("TCO", FieldKey.GENRE);
+		ID3V22_FRAMES.put("TRK", FieldKey.TRACK);
+		ID3V22_FRAMES.put("TYE", FieldKey.YEAR);
+		ID3V22_FRAMES.put("TCM", FieldKey.COMPOSER);
+		ID3V22_FRAMES.put("TPA", FieldKey.DISC_NO);
+		ID3V22_FRAMES.put("COM", FieldKey.COMMENT);
+		ID3V22_FRAMES.put("ULT", FieldKey.LYRICS);
+		ID3V22_FRAMES.put("POP", FieldKey.RATING);
+
+		ID3V23_FRAMES.put("TIT2", FieldKey.TITLE);
+		ID3V23_FRAMES.put("TPE1", FieldKey.ARTIST);
+		ID3V23_FRAMES.put("TALB", FieldKey.ALBUM);
+		ID3V23_FRAMES.put("TPE2", FieldKey.ALBUM_ARTIST);
+		ID3V23_FRAMES.put("TCON", FieldKey.GENRE);
+		ID3V23_FRAMES.put("TRCK", FieldKey.TRACK);
+		ID3V23_FRAMES.put("TCOM", FieldKey.COMPOSER);
+		ID3V23_FRAMES.put("TPOS", FieldKey.DISC_NO);
+		ID3V23_FRAMES.put("COMM", FieldKey.COMMENT);
+		ID3V23_FRAMES.put("USLT", FieldKey.LYRICS);
+		ID3V23_FRAMES.put("POPM", FieldKey.RATING);
+		ID3V24_FRAMES.putAll(ID3V23_FRAMES);
+		ID3V23_FRAMES.put("TYER", FieldKey.YEAR);
+		ID3V24_FRAMES.put("TDRC", FieldKey.YEAR);
+
+		VORBIS_FIELDS.put("TITLE", FieldKey.TITLE);
+		VORBIS_FIELDS.put("ARTIST", FieldKey.ARTIST);
+		VORBIS_FIELDS.put("ALBUM", FieldKey.ALBUM);
+		VORBIS_FIELDS.put("ALBUMARTIST", FieldKey.ALBUM_ARTIST);
+		VORBIS_FIELDS.put("GENRE", FieldKey.GENRE);
+		VORBIS_FIELDS.put("TRACKNUMBER", FieldKey.TRACK);
+		VORBIS_FIELDS.put("DATE", FieldKey.YEAR);
+		VORBIS_FIELDS.put("COMPOSER", FieldKey.COMPOSER);
+		VORBIS_FIELDS.put("DISCNUMBER", FieldKey.DISC_NO);
+		VORBIS_FIELDS.put("COMMENT", FieldKey.COMMENT);
+		VORBIS_FIELDS.put("LYRICS", FieldKey.LYRICS);
+		VORBIS_FIELDS.put("RATING", FieldKey.RATING);
+	}
+
+	private final int maxFieldSize;
+
+	private final int frameSearchSize;
+
+	/**
+	 * @param maxFieldSize
+	 *            biggest field or metadata block read, in bytes
+	 * @param frameSearchSize
+	 *            bytes after tag where first MPEG frame is searched
+	 */
+	HeaderTagReader(final int maxFieldSize, final int frameSearchSize) {
+		this.maxFieldSize = maxFieldSize;
+		this.frameSearchSize = frameSearchSize;
+	}
+
+	/**
+	 * Reads tag and, if requested, audio properties of a MP3 file
+	 * 
+	 * @param file
+	 * @param readAudioProperties
+	 * @return tag read or null if file must be read with a full tag reader
+	 * @throws IOException
+	 */
+	HeaderTag readMP3(final File file, final boolean readAudioProperties)
+			throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			HeaderTag tag = new HeaderTag();
+			long audioStart = readID3v2(channel, tag);
+			if (audioStart < 0) {
+				return null;
+			}
+			// As JAudiotagger does, ID3v1 is only used if there is no ID3v2
+			boolean id3v1 = readID3v1(channel, tag, audioStart == 0);
+			if (readAudioProperties) {
+				long audioEnd = channel.size() - (id3v1 ? ID3V1_SIZE : 0);
+				if (!readMPEGAudioProperties(channel, tag, audioStart,
+						audioEnd)) {
+					return null;
+				}
+			}
+			return tag;
+		} finally {
+			ClosingUtils.close(randomAccessFile);
+		}
+	}
+
+	/**
+	 * Reads tag and, if requested, audio properties of a FLAC file
+	 * 
+	 * @param file
+	 * @param readAudioProperties
+	 * @return tag read or null if file must be read with a full tag reader
+	 * @throws IOException
+	 */
+	HeaderTag readFlac(final File file, final boolean readAudioProperties)
+			throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			HeaderTag tag = new HeaderTag();
+			long position = getID3v2Size(read(channel, 0, ID3V2_HEADER_SIZE));
+			if (!matches(read(channel, position, 4), 0, "fLaC")) {
+				return null;
+			}
+			position += 4;
+			int sampleRate = 0;
+			long totalSamples = 0;
+			boolean last = false;
+			while (!last) {
+				ByteBuffer header = read(channel, position,
+						FLAC_BLOCK_HEADER_SIZE);
+				if (header.remaining() < FLAC_BLOCK_HEADER_SIZE) {
+					return null;
+				}
+				last = (header.get(0) & 0x80) != 0;
+				int type = header.get(0) & 0x7F;
+				int size = readInteger(header, 1, 3);
+				position += FLAC_BLOCK_HEADER_SIZE;
+				if (type == FLAC_STREAMINFO && size >= FLAC_STREAMINFO_SIZE) {
+					ByteBuffer info = read(channel, position,
+							FLAC_STREAMINFO_SIZE);
+					sampleRate = readInteger(info, 10, 3) >> 4;
+					totalSamples = ((long) (info.get(13) & 0x0F) << 32)
+							| (info.getInt(14) & 0xFFFFFFFFL);
+				} else if (type == FLAC_VORBIS_COMMENT) {
+					if (size > this.maxFieldSize
+							|| !readVorbisComment(
+									read(channel, position, size), tag)) {
+						return null;
+					}
+				} else if (type == FLAC_PICTURE) {
+					tag.setInternalImage(true);
+				} else if (type == FLAC_INVALID) {
+					return null;
+				}
+				position += size;
+			}
+			tag.setDate(tag.getField(FieldKey.YEAR));
+			if (readAudioProperties) {
+				if (sampleRate <= 0) {
+					return null;
+				}
+				double length = (double) totalSamples / sampleRate;
+				long bitrate = length > 0 ? Math
+						.round((channel.size() - position) * 8 / length / 1000)
+						: 0;
+				tag.setAudioProperties((int) length, bitrate,
+						sampleRate, true);
+			}
+			return tag;
+		} finally {
+			ClosingUtils.close(randomAccessFile);
+		}
+	}
+
+	/**
+	 * Reads ID3v2 tag at the beginning of file
+	 * 
+	 * @param channel
+	 * @param tag
+	 * @return position where tag ends, 0 if there is no tag, or -1 if tag
+	 *         can't be read here
+	 * @throws IOException
+	 */
+	private long readID3v2(final FileChannel channel, final HeaderTag tag)
+			throws IOException {
+		ByteBuffer header = read(channel, 0, ID3V2_HEADER_SIZE);
+		long tagEnd = getID3v2Size(header);
+		if (tagEnd == 0) {
+			return 0;
+		}
+		int version = header.get(3);
+		int flags = header.get(5) & 0xFF;
+		boolean unsynchronised = (flags & 0x80) != 0;
+		if (version < 2 || version > 4 || (version < 4 && unsynchronised)
+				|| (version == 2 && (flags & 0x40) != 0)) {
+			// Whole tag unsynchronisation changes frame positions and ID3v2.2
+			// compression is not supported
+			return -1;
+		}
+		long position = ID3V2_HEADER_SIZE;
+		if (version > 2 && (flags & 0x40) != 0) {
+			// Skip extended header
+			ByteBuffer extendedHeader = read(channel, position, 4);
+			if (extendedHeader.remaining() < 4) {
+				return -1;
+			}
+			position += version == 4 ? readSyncsafeInteger(extendedHeader, 0)
+					: 4 + extendedHeader.getInt(0);
+		}
+		long framesEnd = ID3V2_HEADER_SIZE + readSyncsafeInteger(header, 6);
+		if (!readID3v2Frames(channel, tag, version, unsynchronised, position,
+				framesEnd)) {
+			return -1;
+		}
+		if (version == 3) {
+			tag.setDateFromYear(true);
+		} else if (version == 4) {
+			tag.setDate(tag.getField(FieldKey.YEAR));
+		}
+		return tagEnd;
+	}
+
+	/**
+	 * @param header
+	 * @return size of ID3v2 tag, including header and footer, or 0 if there is
+	 *         no tag
+	 */
+	private long getID3v2Size(final ByteBuffer header) {
+		if (header.remaining() < ID3V2_HEADER_SIZE || !matches(header, 0, "ID3")) {
+			return 0;
+		}
+		boolean footer = header.get(3) == 4 && (header.get(5) & 0x10) != 0;
+		return ID3V2_HEADER_SIZE + readSyncsafeInteger(header, 6)
+				+ (footer ? ID3V2_HEADER_SIZE : 0);
+	}
+
+	private boolean readID3v2Frames(final FileChannel channel,
+			final HeaderTag tag, final int version,
+			final boolean unsynchronised, final long start, final long end)
+			throws IOException {
+		int headerSize = version == 2 ? 6 : 10;
+		int idLength = version == 2 ? 3 : 4;
+		long position = start;
+		while (position + headerSize <= end) {
+			ByteBuffer header = read(channel, position, headerSize);
+			if (header.remaining() < headerSize || header.get(0) == 0) {
+				// Padding
+				break;
+			}
+			String id = new String(header.array(), 0, idLength, ISO_8859_1);
+			if (!isValidFrameId(id)) {
+				return false;
+			}
+			int size;
+			int flags = 0;
+			if (version == 2) {
+				size = readInteger(header, 3, 3);
+			} else if (version == 3) {
+				size = header.getInt(4);
+				flags = header.get(9) & 0xFF;
+			} else {
+				size = readSyncsafeInteger(header, 4);
+				flags = header.get(9) & 0xFF;
+			}
+			position += headerSize;
+			if (size < 0 || position + size > end) {
+				return false;
+			}
+			if (!readID3v2Frame(channel, tag, version, id, flags,
+					unsynchronised, position, size)) {
+				return false;
+			}
+			position += size;
+		}
+		return true;
+	}
+
+	private boolean readID3v2Frame(final FileChannel channel,
+			final HeaderTag tag, final int version, final String id,
+			final int flags, final boolean unsynchronised,
+			final long position, final int size) throws IOException {
+		if ("APIC".equals(id) || "PIC".equals(id)) {
+			tag.setInternalImage(true);
+			return true;
+		}
+		boolean dayAndMonth = version == 3 && "TDAT".equals(id);
+		FieldKey field = getID3v2Frames(version).get(id);
+		if (size == 0 || (field == null && !dayAndMonth)) {
+			return true;
+		}
+		if (size > this.maxFieldSize) {
+			return false;
+		}
+		int prefix = 0;
+		boolean frameUnsynchronised = unsynchronised;
+		if (version == 3) {
+			if ((flags & 0xC0) != 0) {
+				// Compressed or encrypted
+				return false;
+			}
+			prefix += (flags & 0x20) != 0 ? 1 : 0;
+		} else if (version == 4) {
+			if ((flags & 0x0C) != 0) {
+				// Compressed or encrypted
+				return false;
+			}
+			prefix += (flags & 0x40) != 0 ? 1 : 0;
+			prefix += (flags & 0x01) != 0 ? 4 : 0;
+			frameUnsynchronised |= (flags & 0x02) != 0;
+		}
+		if (prefix >= size) {
+			return true;
+		}
+		ByteBuffer buffer = read(channel, position + prefix, size - prefix);
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		if (frameUnsynchronised) {
+			data = removeUnsynchronisation(data);
+		}
+		if (data.length == 0) {
+			return true;
+		}
+		int encoding = data[0];
+		if (field == FieldKey.COMMENT || field == FieldKey.LYRICS) {
+			// Encoding, language, description and text
+			int descriptionEnd = findTerminator(data, 4, encoding);
+			String description = decode(data, 4, descriptionEnd, encoding);
+			String text = decode(data, descriptionEnd
+					+ getTerminatorSize(encoding), encoding);
+			if (field == FieldKey.COMMENT) {
+				tag.putComment(description, text);
+			} else {
+				tag.putField(field, text);
+			}
+		} else if (field == FieldKey.RATING) {
+			// Email and rating
+			int emailEnd = findTerminator(data, 0, 0) + 1;
+			if (emailEnd < data.length) {
+				tag.putField(field, String.valueOf(data[emailEnd] & 0xFF));
+			}
+		} else if (dayAndMonth) {
+			tag.setDayAndMonth(decode(data, 1, encoding));
+		} else {
+			tag.putField(field, decode(data, 1, encoding));
+		}
+		return true;
+	}
+
+	private Map<String, FieldKey> getID3v2Frames(final int version) {
+		if (version == 2) {
+			return ID3V22_FRAMES;
+		}
+		return version == 3 ? ID3V23_FRAMES : ID3V24_FRAMES;
+	}
+
+	/**
+	 * Reads ID3v1 tag at the end of file
+	 * 
+	 * @param channel
+	 * @param tag
+	 * @param readFields
+	 * @return if file has an ID3v1 tag
+	 * @throws IOException
+	 */
+	private boolean readID3v1(final FileChannel channel, final HeaderTag tag,
+			final boolean readFields) throws IOException {
+		long size = channel.size();
+		if (size < ID3V1_SIZE) {
+			return false;
+		}
+		ByteBuffer buffer = read(channel, size - ID3V1_SIZE, ID3V1_SIZE);
+		if (buffer.remaining() < ID3V1_SIZE || !matches(buffer, 0, "TAG")) {
+			return false;
+		}
+		if (readFields) {
+			byte[] data = buffer.array();
+			tag.putField(FieldKey.TITLE, decodeID3v1(data, 3, 30));
+			tag.putField(FieldKey.ARTIST, decodeID3v1(data, 33, 30));
+			tag.putField(FieldKey.ALBUM, decodeID3v1(data, 63, 30));
+			tag.putField(FieldKey.YEAR, decodeID3v1(data, 93, 4));
+			if (data[125] == 0 && data[126] != 0) {
+				// ID3v1.1
+				tag.putComment(null, decodeID3v1(data, 97, 28));
+				tag.putField(FieldKey.TRACK, String.valueOf(data[126] & 0xFF));
+			} else {
+				tag.putComment(null, decodeID3v1(data, 97, 30));
+			}
+			int genre = data[127] & 0xFF;
+			if (genre != 0xFF) {
+				tag.putField(FieldKey.GENRE, String.valueOf(genre));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds first MPEG frame after tag and reads audio properties from it
+	 * 
+	 * @param channel
+	 * @param tag
+	 * @param audioStart
+	 * @param audioEnd
+	 * @return false if no frame was found
+	 * @throws IOException
+	 */
+	private boolean readMPEGAudioProperties(final FileChannel channel,
+			final HeaderTag tag, final long audioStart, final long audioEnd)
+			throws IOException {
+		ByteBuffer buffer = read(channel, audioStart, this.frameSearchSize);
+		byte[] data = buffer.array();
+		int length = buffer.remaining();
+		for (int i = 0; i + 4 <= length; i++) {
+			MPEGFrameHeader frame = MPEGFrameHeader.parse(data, i);
+			if (frame != null) {
+				// Check next frame to discard false synchronisations
+				int next = i + frame.getFrameLength();
+				if (next + 4 > length || MPEGFrameHeader.parse(data, next) != null) {
+					setMPEGAudioProperties(tag, frame, data, i, length,
+							audioEnd - audioStart - i);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void setMPEGAudioProperties(final HeaderTag tag,
+			final MPEGFrameHeader frame, final byte[] data, final int offset,
+			final int length, final long audioSize) {
+		int sampleRate = frame.getSampleRate();
+		int xing = offset + frame.getXingOffset();
+		int vbri = offset + MPEGFrameHeader.VBRI_OFFSET;
+		long frames = -1;
+		long bytes = -1;
+		boolean variableBitrate = false;
+		if (xing + 16 <= length
+				&& (matches(data, xing, "Xing") || matches(data, xing, "Info"))) {
+			int flags = readInteger(data, xing + 4, 4);
+			int position = xing + 8;
+			if ((flags & 0x01) != 0) {
+				frames = readInteger(data, position, 4) & 0xFFFFFFFFL;
+				position += 4;
+			}
+			if ((flags & 0x02) != 0) {
+				bytes = readInteger(data, position, 4) & 0xFFFFFFFFL;
+			}
+			variableBitrate = matches(data, xing, "Xing");
+		} else if (vbri + 18 <= length && matches(data, vbri, "VBRI")) {
+			bytes = readInteger(data, vbri + 10, 4) & 0xFFFFFFFFL;
+			frames = readInteger(data, vbri + 14, 4) & 0xFFFFFFFFL;
+			variableBitrate = true;
+		}
+		if (frames > 0) {
+			double duration = (double) frames * frame.getSamplesPerFrame()
+					/ sampleRate;
+			long size = bytes > 0 ? bytes : audioSize;
+			tag.setAudioProperties((int) duration,
+					Math.round(size * 8 / duration / 1000), sampleRate,
+					variableBitrate);
+		} else {
+			int bitrate = frame.getBitrate();
+			tag.setAudioProperties(
+					(int) (audioSize * 8d / (bitrate * 1000)),
+					bitrate, sampleRate, false);
+		}
+	}
+
+	/**
+	 * Reads Vorbis comment block
+	 * 
+	 * @param buffer
+	 * @param tag
+	 * @return false if block is not valid
+	 */
+	private boolean readVorbisComment(final ByteBuffer buffer,
+			final HeaderTag tag) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < 4) {
+			return false;
+		}
+		int vendorLength = buffer.getInt();
+		if (vendorLength < 0 || vendorLength + 4 > buffer.remaining()) {
+			return false;
+		}
+		buffer.position(buffer.position() + vendorLength);
+		int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			if (buffer.remaining() < 4) {
+				return false;
+			}
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				return false;
+			}
+			String comment = new String(buffer.array(), buffer.position(),
+					length, UTF_8);
+			buffer.position(buffer.position() + length);
+			int separator = comment.indexOf('=');
+			if (separator > 0) {
+				FieldKey field = VORBIS_FIELDS.get(comment.substring(0,
+						separator).toUpperCase(Locale.ENGLISH));
+				if (field != null) {
+					tag.putField(field, comment.substring(separator + 1));
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads up to length bytes at given position
+	 * 
+	 * @param channel
+	 * @param position
+	 * @param length
+	 * @return buffer ready to be read, with less bytes than requested if end
+	 *         of file was reached
+	 * @throws IOException
+	 */
+	private static ByteBuffer read(final FileChannel channel,
+			final long position, final int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static boolean isValidFrameId(final String id) {
+		for (int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if ((c < 'A' || c > 'Z') && (c < '0' || c > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] removeUnsynchronisation(final byte[] data) {
+		byte[] result = new byte[data.length];
+		int length = 0;
+		for (int i = 0; i < data.length; i++) {
+			result[length++] = data[i];
+			if (data[i] == (byte) 0xFF && i + 1 < data.length
+					&& data[i + 1] == 0) {
+				i++;
+			}
+		}
+		byte[] trimmed = new byte[length];
+		System.arraycopy(result, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	private static Charset getCharset(final int encoding) {
+		switch (encoding) {
+		case 1:
+			return UTF_16;
+		case 2:
+			return UTF_16BE;
+		case 3:
+			return UTF_8;
+		default:
+			return ISO_8859_1;
+		}
+	}
+
+	private static int getTerminatorSize(final int encoding) {
+		return encoding == 1 || encoding == 2 ? 2 : 1;
+	}
+
+	/**
+	 * @param data
+	 * @param offset
+	 * @param encoding
+	 * @return position of first string terminator after offset or length of
+	 *         data if there is none
+	 */
+	private static int findTerminator(final byte[] data, final int offset,
+			final int encoding) {
+		int step = getTerminatorSize(encoding);
+		for (int i = offset; i + step <= data.length; i += step) {
+			if (data[i] == 0 && (step == 1 || data[i + 1] == 0)) {
+				return i;
+			}
+		}
+		return data.length;
+	}
+
+	private static String decode(final byte[] data, final int offset,
+			final int encoding) {
+		return decode(data, offset, findTerminator(data, offset, encoding),
+				encoding);
+	}
+
+	private static String decode(final byte[] data, final int offset,
+			final int end, final int encoding) {
+		if (offset >= end) {
+			return null;
+		}
+		return new String(data, offset, end - offset, getCharset(encoding));
+	}
+
+	private static String decodeID3v1(final byte[] data, final int offset,
+			final int length) {
+		int end = offset;
+		while (end < offset + length && data[end] != 0) {
+			end++;
+		}
+		return new String(data, offset, end - offset, ISO_8859_1).trim();
+	}
+
+	private static boolean matches(final ByteBuffer buffer, final int offset,
+			final String id) {
+		return buffer.remaining() >= offset + id.length()
+				&& matches(buffer.array(), offset, id);
+	}
+
+	private static boolean matches(final byte[] data, final int offset,
+			final String id) {
+		if (offset + id.length() > data.length) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			if (data[offset + i] != id.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int readSyncsafeInteger(final ByteBuffer buffer,
+			final int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 7) | (buffer.get(offset + i) & 0x7F);
+		}
+		return value;
+	}
+
+	private static int readInteger(final ByteBuffer buffer, final int offset,
+			final int length) {
+		return readInteger(buffer.array(), offset, length);
+	}
+
+	private static int readInteger(final byte[] data, final int offset,
+			final int length) {
+		int value = 0;
+		for (int i = 0; i < length; i++) {
+			value = (value << 8) | (data[offset + i] & 0xFF);
+		}
+		return value;
+	}
+}
@@ -93,13 +93,51 @@ public class JAudiotaggerTagCreator {
 			iTag.setAlbumArtist(getFirstTagValue(tag, FieldKey.ALBUM_ARTIST));
 			setInternalImage(iTag, tag);
 			setDate(iTag, tag);
-			setDiscNumber(iTag, tag);
+			setDiscNumber(iTag, getFirstTagValue(tag, FieldKey.DISC_NO));
 			if (readRating) {
 				iTag.setStars(this.ratingsToStars
 						.ratingToStars(getFirstTagValue(tag, FieldKey.RATING)));
 			}
 		}
-		return iTag;
+		return this.tagFactory.poolValues(iTag);
+	}
+
+	/**
+	 * Creates tag from values read by HeaderTagReader. Values are processed
+	 * as the ones read with JAudiotagger, so both give the same tag
+	 * 
+	 * @param headerTag
+	 * @param readRating
+	 * @return
+	 */
+	ITag createTag(final HeaderTag headerTag, final boolean readRating) {
+		ITag iTag = this.tagFactory.getNewTag();
+		iTag.setAlbum(headerTag.getField(FieldKey.ALBUM));
+		iTag.setArtist(headerTag.getField(FieldKey.ARTIST));
+		iTag.setComment(headerTag.getField(FieldKey.COMMENT));
+		setGenreFromTag(iTag, headerTag.getField(FieldKey.GENRE),
+				this.genresHelper);
+		iTag.setTitle(headerTag.getField(FieldKey.TITLE));
+		setTrackNumberFromTag(iTag, headerTag.getField(FieldKey.TRACK));
+		setYearFromTag(iTag, headerTag.getField(FieldKey.YEAR));
+		iTag.setLyrics(headerTag.getField(FieldKey.LYRICS));
+		iTag.setComposer(headerTag.getField(FieldKey.COMPOSER));
+		iTag.setAlbumArtist(headerTag.getField(FieldKey.ALBUM_ARTIST));
+		iTag.setInternalImage(headerTag.hasInternalImage());
+		if (headerTag.getDate() != null) {
+			iTag.setDate(DateUtils.parseRFC3339Date(headerTag.getDate()));
+		} else if (headerTag.isDateFromYear()) {
+			setDateFromID3v23Tag(iTag, headerTag.getField(FieldKey.YEAR),
+					headerTag.getDayAndMonth());
+		} else {
+			iTag.setDate((DateTime) null);
+		}
+		setDiscNumber(iTag, headerTag.getField(FieldKey.DISC_NO));
+		if (readRating) {
+			iTag.setStars(this.ratingsToStars.ratingToStars(headerTag
+					.getField(FieldKey.RATING)));
+		}
+		return this.tagFactory.poolValues(iTag);
 	}
 
 	/**
@@ -133,7 +171,8 @@ public class JAudiotaggerTagCreator {
 			iTag.setDate(DateUtils.parseRFC3339Date(getFirstTagValue(tag,
 					"TDRC")));
 		} else if (tag instanceof org.jaudiotagger.tag.id3.ID3v23Tag) {
-			setDateFromID3v23Tag(iTag, tag);
+			setDateFromID3v23Tag(iTag, getFirstTagValue(tag, "TYER"),
+					getFirstTagValue(tag, "TDAT"));
 		} else {
 			iTag.setDate((DateTime) null);
 		}
@@ -239,18 +278,17 @@ public class JAudiotaggerTagCreator {
 
 	/**
 	 * @param iTag
-	 * @param tag
+	 * @param yearPart
+	 * @param dateMonthPart
 	 */
-	private void setDateFromID3v23Tag(final ITag iTag,
-			final org.jaudiotagger.tag.Tag tag) {
+	private void setDateFromID3v23Tag(final ITag iTag, final String yearPart,
+			final String dateMonthPart) {
 		// Set date from fields tag TYER and date/month tag TDAT
 		DateMidnight c = null;
-		String yearPart = getFirstTagValue(tag, "TYER");
 		if (!StringUtils.isEmpty(yearPart)) {
 			try {
 				c = new DateMidnight().withYear(Integer.parseInt(yearPart))
 						.withMonthOfYear(1).withDayOfMonth(1);
-				String dateMonthPart = getFirstTagValue(tag, "TDAT");
 				if (!StringUtils.isEmpty(dateMonthPart)
 						&& dateMonthPart.length() >= 4) {
 					c = c.withMonthOfYear(
@@ -275,12 +313,10 @@ public class JAudiotaggerTagCreator {
 	 * Sets disc number
 	 * 
 	 * @param iTag
-	 * @param tag
+	 * @param discNumberStr
 	 */
-	private void setDiscNumber(final ITag iTag,
-			final org.jaudiotagger.tag.Tag tag) {
+	private void setDiscNumber(final ITag iTag, final String discNumberStr) {
 		// Disc Number
-		String discNumberStr = getFirstTagValue(tag, FieldKey.DISC_NO);
 		if (discNumberStr != null && !discNumberStr.trim().equals("")) {
 			// try to get disc number parsing string
 			try {
@@ -0,0 +1,155 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+/**
+ * Header of a MPEG audio frame
+ * 
+ * @author alex
+ * 
+ */
+final class MPEGFrameHeader {
+
+	/**
+	 * Offset of VBRI header from start of frame
+	 */
+	static final int VBRI_OFFSET = 36;
+
+	private static final int[][] BITRATES = {
+			// MPEG 1 layer I, II, III
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416,
+					448 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320,
+					384 },
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+			// MPEG 2 and 2.5 layer I, II, III
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224,
+					256 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+	private static final int[][] SAMPLE_RATES = {
+	// MPEG 1, 2 and 2.5
+			{ 44100, 48000, 32000 }, { 22050, 24000, 16000 },
+			{ 11025, 12000, 8000 } };
+
+	private static final int MONO = 3;
+
+	private final boolean mpeg1;
+
+	private final int layer;
+
+	private final int bitrate;
+
+	private final int sampleRate;
+
+	private final boolean padding;
+
+	private final boolean mono;
+
+	private MPEGFrameHeader(final boolean mpeg1, final int layer,
+			final int bitrate, final int sampleRate, final boolean padding,
+			final boolean mono) {
+		this.mpeg1 = mpeg1;
+		this.layer = layer;
+		this.bitrate = bitrate;
+		this.sampleRate = sampleRate;
+		this.padding = padding;
+		this.mono = mono;
+	}
+
+	/**
+	 * Parses frame header at given offset
+	 * 
+	 * @param data
+	 * @param offset
+	 * @return frame header or null if there is no valid frame header at offset
+	 */
+	static MPEGFrameHeader parse(final byte[] data, final int offset) {
+		if (offset + 4 > data.length || (data[offset] & 0xFF) != 0xFF
+				|| (data[offset + 1] & 0xE0) != 0xE0) {
+			return null;
+		}
+		int version = (data[offset + 1] >> 3) & 0x03;
+		int layer = 4 - ((data[offset + 1] >> 1) & 0x03);
+		int bitrateIndex = (data[offset + 2] >> 4) & 0x0F;
+		int sampleRateIndex = (data[offset + 2] >> 2) & 0x03;
+		// Reserved values and free format are not valid
+		if (version == 1 || layer == 4 || bitrateIndex == 0
+				|| bitrateIndex == 15 || sampleRateIndex == 3) {
+			return null;
+		}
+		boolean mpeg1 = version == 3;
+		int versionIndex = mpeg1 ? 0 : (version == 2 ? 1 : 2);
+		return new MPEGFrameHeader(mpeg1, layer,
+				BITRATES[(mpeg1 ? 0 : 3) + layer - 1][bitrateIndex],
+				SAMPLE_RATES[versionIndex][sampleRateIndex],
+				(data[offset + 2] & 0x02) != 0,
+				((data[offset + 3] >> 6) & 0x03) == MONO);
+	}
+
+	/**
+	 * @return bitrate in kbps
+	 */
+	int getBitrate() {
+		return this.bitrate;
+	}
+
+	/**
+	 * @return sample rate in Hz
+	 */
+	int getSampleRate() {
+		return this.sampleRate;
+	}
+
+	/**
+	 * @return samples per frame
+	 */
+	int getSamplesPerFrame() {
+		if (this.layer == 1) {
+			return 384;
+		}
+		return this.layer == 2 || this.mpeg1 ? 1152 : 576;
+	}
+
+	/**
+	 * @return length of frame in bytes, including header
+	 */
+	int getFrameLength() {
+		if (this.layer == 1) {
+			return (12000 * this.bitrate / this.sampleRate + (this.padding ? 1
+					: 0)) * 4;
+		}
+		return getSamplesPerFrame() / 8 * 1000 * this.bitrate
+				/ this.sampleRate + (this.padding ? 1 : 0);
+	}
+
+	/**
+	 * @return offset of Xing or Info header from start of frame (after side
+	 *         information)
+	 */
+	int getXingOffset() {
+		if (this.mpeg1) {
+			return this.mono ? 4 + 17 : 4 + 32;
+		}
+		return this.mono ? 4 + 9 : 4 + 17;
+	}
+}
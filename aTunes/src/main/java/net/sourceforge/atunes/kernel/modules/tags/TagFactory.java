@@ -48,6 +48,15 @@ public class TagFactory {
 
 	private RatingsToStars ratingsToStars;
 
+	private TagValuePool tagValuePool;
+
+	/**
+	 * @param tagValuePool
+	 */
+	public void setTagValuePool(final TagValuePool tagValuePool) {
+		this.tagValuePool = tagValuePool;
+	}
+
 	/**
 	 * @param ratingsToStars
 	 */
@@ -101,7 +110,25 @@ public class TagFactory {
 		setComposerFromProperties(properties, tag, newTag);
 		setAlbumArtistFromProperties(properties, tag, newTag);
 		setRatingFromProperties(properties, tag, newTag);
-		return newTag;
+		return poolValues(newTag);
+	}
+
+	/**
+	 * Replaces values repeated in many tags (artist, album, album artist,
+	 * genre and composer) by instances shared through tag value pool
+	 * 
+	 * @param tag
+	 * @return same tag
+	 */
+	ITag poolValues(final ITag tag) {
+		if (this.tagValuePool != null) {
+			tag.setArtist(this.tagValuePool.get(tag.getArtist()));
+			tag.setAlbum(this.tagValuePool.get(tag.getAlbum()));
+			tag.setAlbumArtist(this.tagValuePool.get(tag.getAlbumArtist()));
+			tag.setGenre(this.tagValuePool.get(tag.getGenre()));
+			tag.setComposer(this.tagValuePool.get(tag.getComposer()));
+		}
+		return tag;
 	}
 
 	/**
@@ -0,0 +1,148 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.nio.charset.Charset;
+
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+/**
+ * Serializes tags. Comment and lyrics are written after other fields, as
+ * their bytes, so when a tag text buffer is set in kryo context long ones are
+ * kept in that buffer instead of being read to memory
+ * <p>
+ * Tags written by previous versions, with comment and lyrics among other
+ * fields, are read too
+ * </p>
+ * 
+ * @author alex
+ * 
+ */
+public class TagSerializer extends Serializer<AbstractTag> {
+
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private final FieldSerializer<AbstractTag> fieldSerializer;
+
+	private final FieldSerializer<AbstractTag> previousFieldSerializer;
+
+	/**
+	 * @param kryo
+	 * @param type
+	 */
+	public TagSerializer(final Kryo kryo, final Class<AbstractTag> type) {
+		this.fieldSerializer = new FieldSerializer<AbstractTag>(kryo, type);
+		this.fieldSerializer.removeField("comment");
+		this.fieldSerializer.removeField("lyrics");
+		this.previousFieldSerializer = new FieldSerializer<AbstractTag>(kryo,
+				type);
+	}
+
+	@Override
+	public void write(final Kryo kryo, final Output output,
+			final AbstractTag tag) {
+		this.fieldSerializer.write(kryo, output, tag);
+		writeText(output, tag.comment, tag.storedComment);
+		writeText(output, tag.lyrics, tag.storedLyrics);
+	}
+
+	@Override
+	public AbstractTag read(final Kryo kryo, final Input input,
+			final Class<AbstractTag> type) {
+		if (KryoSerializerService.isReadingPreviousVersion(kryo)) {
+			return this.previousFieldSerializer.read(kryo, input, type);
+		}
+		AbstractTag tag = this.fieldSerializer.read(kryo, input, type);
+		TagTextBuffer texts = (TagTextBuffer) kryo.getContext().get(
+				TagTextBuffer.class);
+		int length = readLength(input);
+		if (isKeptInBuffer(texts, length)) {
+			tag.storedComment = texts.getText(input.position(), length);
+			input.skip(length);
+		} else {
+			tag.comment = readText(input, length);
+		}
+		length = readLength(input);
+		if (isKeptInBuffer(texts, length)) {
+			tag.storedLyrics = texts.getText(input.position(), length);
+			input.skip(length);
+		} else {
+			tag.lyrics = readText(input, length);
+		}
+		return tag;
+	}
+
+	/**
+	 * Writes length of text in bytes plus one, or 0 if null, and its bytes
+	 * 
+	 * @param output
+	 * @param text
+	 * @param storedText
+	 *            used instead of text if not null
+	 */
+	private void writeText(final Output output, final String text,
+			final TagText storedText) {
+		byte[] bytes;
+		if (storedText != null) {
+			bytes = storedText.getBytes();
+		} else if (text != null) {
+			bytes = text.getBytes(CHARSET);
+		} else {
+			output.writeInt(0, true);
+			return;
+		}
+		output.writeInt(bytes.length + 1, true);
+		output.writeBytes(bytes);
+	}
+
+	/**
+	 * @param input
+	 * @return length in bytes of text, or -1 if null
+	 */
+	private int readLength(final Input input) {
+		return input.readInt(true) - 1;
+	}
+
+	/**
+	 * @param input
+	 * @param length
+	 * @return text read
+	 */
+	private String readText(final Input input, final int length) {
+		return length >= 0 ? new String(input.readBytes(length), CHARSET)
+				: null;
+	}
+
+	/**
+	 * @param texts
+	 * @param length
+	 * @return if a text of given length is kept in buffer tag is read from
+	 */
+	private boolean isKeptInBuffer(final TagTextBuffer texts, final int length) {
+		return texts != null && length >= texts.getMinimumLength();
+	}
+}
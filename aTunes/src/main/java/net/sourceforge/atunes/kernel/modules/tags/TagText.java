@@ -0,0 +1,71 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Long text of a tag kept in the buffer the tag was read from. Text is
+ * decoded every time it's used
+ * 
+ * @author alex
+ * 
+ */
+final class TagText {
+
+	private final ByteBuffer buffer;
+
+	private final int position;
+
+	private final int length;
+
+	/**
+	 * @param buffer
+	 * @param position
+	 *            position of text in buffer
+	 * @param length
+	 *            length of text in bytes
+	 */
+	TagText(final ByteBuffer buffer, final int position, final int length) {
+		this.buffer = buffer;
+		this.position = position;
+		this.length = length;
+	}
+
+	/**
+	 * @return text
+	 */
+	String getText() {
+		return new String(getBytes(), TagSerializer.CHARSET);
+	}
+
+	/**
+	 * @return text encoded as stored
+	 */
+	byte[] getBytes() {
+		byte[] bytes = new byte[this.length];
+		// Duplicate, so text can be read from any thread
+		ByteBuffer text = this.buffer.duplicate();
+		text.position(this.position);
+		text.get(bytes);
+		return bytes;
+	}
+}
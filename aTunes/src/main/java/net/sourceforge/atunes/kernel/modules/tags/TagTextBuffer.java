@@ -0,0 +1,76 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffer where tags being read are stored. When set in context of kryo
+ * instance reading tags, long texts of tags are kept in buffer instead of
+ * being read to memory
+ * 
+ * @author alex
+ * 
+ */
+public final class TagTextBuffer {
+
+	private final ByteBuffer buffer;
+
+	private final int minimumLength;
+
+	private int offset;
+
+	/**
+	 * @param buffer
+	 *            not changed while texts are used
+	 * @param minimumLength
+	 *            length in bytes of shortest text kept in buffer
+	 */
+	public TagTextBuffer(final ByteBuffer buffer, final int minimumLength) {
+		this.buffer = buffer;
+		this.minimumLength = minimumLength;
+	}
+
+	/**
+	 * @param offset
+	 *            position in buffer of bytes being read
+	 */
+	public void setOffset(final int offset) {
+		this.offset = offset;
+	}
+
+	/**
+	 * @return length in bytes of shortest text kept in buffer
+	 */
+	int getMinimumLength() {
+		return this.minimumLength;
+	}
+
+	/**
+	 * @param position
+	 *            position of text in bytes being read
+	 * @param length
+	 * @return text kept in buffer
+	 */
+	TagText getText(final int position, final int length) {
+		return new TagText(this.buffer, this.offset + position, length);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.sourceforge.atunes.utils.Logger;
+
+/**
+ * Pool of tag values shared by all tags read, so tags of tracks of the same
+ * album share the same artist, album, genre... instances instead of keeping
+ * a copy each one. Pool is bounded: when full, new values are no longer
+ * added but values already in pool are still shared
+ * 
+ * @author alex
+ * 
+ */
+public class TagValuePool implements TagValuePoolMBean {
+
+	/**
+	 * Approximate size of a String object and its char array without
+	 * characters
+	 */
+	private static final int STRING_OVERHEAD_BYTES = 40;
+
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final AtomicLong lookups = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong savedBytes = new AtomicLong();
+
+	private int maxSize;
+
+	private String objectName;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of different values kept
+	 */
+	public void setMaxSize(final int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param objectName
+	 *            name used to register this pool in platform MBean server
+	 */
+	public void setObjectName(final String objectName) {
+		this.objectName = objectName;
+	}
+
+	/**
+	 * Registers this pool in platform MBean server
+	 */
+	public void initialize() {
+		if (this.objectName != null) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(this.objectName);
+				if (!server.isRegistered(name)) {
+					server.registerMBean(this, name);
+				}
+			} catch (JMException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns instance of given value kept in pool, adding it if not present
+	 * and pool is not full
+	 * 
+	 * @param value
+	 * @return value in pool or given value
+	 */
+	public String get(final String value) {
+		if (value == null || value.isEmpty()) {
+			return value;
+		}
+		this.lookups.incrementAndGet();
+		String pooled = this.values.get(value);
+		if (pooled == null) {
+			if (this.size.get() >= this.maxSize) {
+				return value;
+			}
+			pooled = this.values.putIfAbsent(value, value);
+			if (pooled == null) {
+				this.size.incrementAndGet();
+				return value;
+			}
+		}
+		if (pooled != value) {
+			this.hits.incrementAndGet();
+			this.savedBytes.addAndGet(STRING_OVERHEAD_BYTES + 2L
+					* value.length());
+		}
+		return pooled;
+	}
+
+	/**
+	 * Removes all values from pool
+	 */
+	public void clear() {
+		this.values.clear();
+		this.size.set(0);
+	}
+
+	@Override
+	public int getSize() {
+		return this.size.get();
+	}
+
+	@Override
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	@Override
+	public long getLookups() {
+		return this.lookups.get();
+	}
+
+	@Override
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	@Override
+	public long getEstimatedSavedBytes() {
+		return this.savedBytes.get();
+	}
+}
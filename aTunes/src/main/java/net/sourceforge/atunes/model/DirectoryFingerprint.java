@@ -0,0 +1,179 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.model;
+
+import java.io.Serializable;
+
+/**
+ * Contents of a repository directory as they were when it was last read:
+ * modification time of directory, names of its children, and modification
+ * time and size of its audio files.
+ * 
+ * While modification time of a directory does not change, no child has been
+ * added, removed or renamed, so it can be used instead of listing directory
+ * again
+ * 
+ * @author alex
+ * 
+ */
+public final class DirectoryFingerprint implements Serializable {
+
+	private static final long serialVersionUID = 5710389268473612214L;
+
+	/**
+	 * Modification times closer than this to the moment a directory is read
+	 * can't be trusted: directory could change again in the same tick of file
+	 * system clock (up to 2 seconds in FAT)
+	 */
+	private static final long MODIFICATION_TIME_GRANULARITY = 2000;
+
+	long lastModified;
+
+	int childCount;
+
+	long hash;
+
+	String[] directories;
+
+	String[] audioFiles;
+
+	long[] audioFilesLastModified;
+
+	long[] audioFilesSize;
+
+	/**
+	 * Default constructor for serialization
+	 */
+	DirectoryFingerprint() {
+	}
+
+	/**
+	 * @param lastModified
+	 *            modification time of directory
+	 * @param children
+	 *            names of all children of directory
+	 * @param directories
+	 *            names of children directories
+	 * @param audioFiles
+	 *            names of audio files
+	 * @param audioFilesLastModified
+	 *            modification time of each audio file
+	 * @param audioFilesSize
+	 *            size in bytes of each audio file
+	 */
+	public DirectoryFingerprint(final long lastModified,
+			final String[] children, final String[] directories,
+			final String[] audioFiles, final long[] audioFilesLastModified,
+			final long[] audioFilesSize) {
+		this.lastModified = lastModified;
+		this.childCount = children.length;
+		this.hash = hash(children);
+		this.directories = directories;
+		this.audioFiles = audioFiles;
+		this.audioFilesLastModified = audioFilesLastModified;
+		this.audioFilesSize = audioFilesSize;
+	}
+
+	/**
+	 * Returns if a fingerprint can be taken from a directory with given
+	 * modification time, read at given time
+	 * 
+	 * @param lastModified
+	 * @param readTime
+	 * @return
+	 */
+	public static boolean canBeTaken(final long lastModified,
+			final long readTime) {
+		return lastModified > 0
+				&& readTime - lastModified > MODIFICATION_TIME_GRANULARITY;
+	}
+
+	/**
+	 * Returns a hash of names of children of a directory, not depending on
+	 * order of names
+	 * 
+	 * @param children
+	 * @return
+	 */
+	public static long hash(final String[] children) {
+		long hash = 0;
+		for (String child : children) {
+			long h = child.hashCode() * 0x9E3779B97F4A7C15L;
+			hash += h ^ (h >>> 32);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns if directory didn't change since fingerprint was taken
+	 * 
+	 * @param lastModified
+	 *            current modification time of directory
+	 * @return
+	 */
+	public boolean matches(final long lastModified) {
+		return lastModified > 0 && this.lastModified == lastModified;
+	}
+
+	/**
+	 * Returns if directory didn't change since fingerprint was taken
+	 * 
+	 * @param lastModified
+	 *            current modification time of directory
+	 * @param children
+	 *            current names of all children of directory
+	 * @return
+	 */
+	public boolean matches(final long lastModified, final String[] children) {
+		return matches(lastModified) && this.childCount == children.length
+				&& this.hash == hash(children);
+	}
+
+	/**
+	 * @return names of children directories
+	 */
+	public String[] getDirectories() {
+		return this.directories;
+	}
+
+	/**
+	 * @return names of audio files
+	 */
+	public String[] getAudioFiles() {
+		return this.audioFiles;
+	}
+
+	/**
+	 * @param index
+	 * @return modification time of audio file
+	 */
+	public long getAudioFileLastModified(final int index) {
+		return this.audioFilesLastModified[index];
+	}
+
+	/**
+	 * @param index
+	 * @return size in bytes of audio file
+	 */
+	public long getAudioFileSize(final int index) {
+		return this.audioFilesSize[index];
+	}
+}
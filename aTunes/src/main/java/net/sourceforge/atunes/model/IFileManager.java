@@ -173,6 +173,16 @@ public interface IFileManager {
 	 */
 	boolean isUpToDate(ILocalAudioObject audioFile);
 
+	/**
+	 * Checks if is up to date, using a modification time of file already read
+	 * from disk
+	 * 
+	 * @param audioFile
+	 * @param modificationTime
+	 * @return true, if is up to date
+	 */
+	boolean isUpToDate(ILocalAudioObject audioFile, long modificationTime);
+
 	/**
 	 * OS-dependent name
 	 * 
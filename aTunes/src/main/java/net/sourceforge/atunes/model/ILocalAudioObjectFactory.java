@@ -36,6 +36,22 @@ public interface ILocalAudioObjectFactory {
 	 */
 	ILocalAudioObject getLocalAudioObject(File file);
 	
+	/**
+	 * Returns local audio object for given file without reading its tag and
+	 * properties, which can be read later with readLocalAudioObject
+	 * @param file
+	 * @return
+	 */
+	ILocalAudioObject getUnreadLocalAudioObject(File file);
+	
+	/**
+	 * Reads tag and properties of an audio object returned by
+	 * getUnreadLocalAudioObject
+	 * @param audioObject
+	 * @return
+	 */
+	ILocalAudioObject readLocalAudioObject(ILocalAudioObject audioObject);
+	
 	/**
 	 * Refreshes audio object
 	 * @param audioObject
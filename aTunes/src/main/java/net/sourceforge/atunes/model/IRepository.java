@@ -129,6 +129,15 @@ public interface IRepository {
 	 */
 	public Collection<ILocalAudioObject> getFiles();
 
+	/**
+	 * Gets files in a folder and its children folders
+	 * 
+	 * @param folderPath
+	 *            normalized path of folder
+	 * @return
+	 */
+	public Collection<ILocalAudioObject> getFilesInFolder(String folderPath);
+
 	/**
 	 * Puts a new file
 	 * 
@@ -181,6 +190,15 @@ public interface IRepository {
 	 */
 	public IArtist putArtist(IArtist artist);
 
+	/**
+	 * Adds an artist to repository if there is no artist with the same name.
+	 * Safe to call from several threads at the same time
+	 * 
+	 * @param artist
+	 * @return artist already in repository or given artist if added
+	 */
+	public IArtist putArtistIfAbsent(IArtist artist);
+
 	/**
 	 * Removes artist from repository
 	 * 
@@ -188,6 +206,22 @@ public interface IRepository {
 	 */
 	public void removeArtist(IArtist artist);
 
+	/**
+	 * Adds album to album structure. Must be called when an album is added to
+	 * an artist of repository
+	 * 
+	 * @param album
+	 */
+	public void putAlbum(IAlbum album);
+
+	/**
+	 * Removes album from album structure. Must be called when an album is
+	 * removed from an artist of repository
+	 * 
+	 * @param album
+	 */
+	public void removeAlbum(IAlbum album);
+
 	/**
 	 * Returns folder
 	 * 
@@ -211,6 +245,15 @@ public interface IRepository {
 	 */
 	public IFolder putFolder(IFolder folder);
 
+	/**
+	 * Puts folder if there is no folder with the same name. Safe to call from
+	 * several threads at the same time
+	 * 
+	 * @param folder
+	 * @return folder already in repository or given folder if added
+	 */
+	public IFolder putFolderIfAbsent(IFolder folder);
+
 	/**
 	 * Returns all genres
 	 * 
@@ -234,6 +277,15 @@ public interface IRepository {
 	 */
 	public IGenre putGenre(IGenre genre);
 
+	/**
+	 * Adds a genre to repository if there is no genre with the same name. Safe
+	 * to call from several threads at the same time
+	 * 
+	 * @param genre
+	 * @return genre already in repository or given genre if added
+	 */
+	public IGenre putGenreIfAbsent(IGenre genre);
+
 	/**
 	 * Removes genre from repository
 	 * 
@@ -265,6 +317,17 @@ public interface IRepository {
 	 */
 	public IYear putYear(IYear year, IUnknownObjectChecker unknownObjectChecker);
 
+	/**
+	 * Puts a year if there is no year with the same name. Safe to call from
+	 * several threads at the same time
+	 * 
+	 * @param year
+	 * @param unknownObjectChecker
+	 * @return year already in repository or given year if added
+	 */
+	public IYear putYearIfAbsent(IYear year,
+			IUnknownObjectChecker unknownObjectChecker);
+
 	/**
 	 * Removes a year
 	 * 
@@ -309,4 +372,29 @@ public interface IRepository {
 	 */
 	public Map<String, ?> getArtistStructure();
 
+	/**
+	 * Returns fingerprint of a directory taken when repository was read
+	 * 
+	 * @param path
+	 * @return fingerprint or null if directory was not read or could not be
+	 *         fingerprinted
+	 */
+	public DirectoryFingerprint getDirectoryFingerprint(String path);
+
+	/**
+	 * Puts fingerprint of a directory
+	 * 
+	 * @param path
+	 * @param fingerprint
+	 */
+	public void putDirectoryFingerprint(String path,
+			DirectoryFingerprint fingerprint);
+
+	/**
+	 * Removes fingerprint of a directory no longer found
+	 * 
+	 * @param path
+	 */
+	public void removeDirectoryFingerprint(String path);
+
 }
\ No newline at end of file
@@ -80,6 +80,13 @@ public interface IRepositoryHandler extends IHandler,
 	 */
 	public void removeArtist(IArtist artist);
 
+	/**
+	 * Removes album from album structure
+	 * 
+	 * @param album
+	 */
+	public void removeAlbum(IAlbum album);
+
 	/**
 	 * Returns genre with given name
 	 * 
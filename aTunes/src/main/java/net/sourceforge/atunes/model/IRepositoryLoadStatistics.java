@@ -0,0 +1,68 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.model;
+
+import java.util.Map;
+
+/**
+ * Times and counters of a repository load. When files are read by several
+ * threads, times of each stage are the sum of time spent by all threads
+ * 
+ * @author alex
+ * 
+ */
+public interface IRepositoryLoadStatistics {
+
+	/**
+	 * @param stage
+	 * @return time spent in stage, in milliseconds
+	 */
+	long getTime(RepositoryLoadStage stage);
+
+	/**
+	 * @param stage
+	 * @return number of times stage has been executed (directories listed,
+	 *         files read...)
+	 */
+	int getCount(RepositoryLoadStage stage);
+
+	/**
+	 * @return time spent reading tags, in milliseconds, by file extension
+	 */
+	Map<String, Long> getTagReadingTimeByFormat();
+
+	/**
+	 * @return number of tags read by file extension
+	 */
+	Map<String, Integer> getTagReadingCountByFormat();
+
+	/**
+	 * @return paths of files which tags took more time to read, with their
+	 *         time in milliseconds, slowest first
+	 */
+	Map<String, Long> getSlowestFiles();
+
+	/**
+	 * @return time since load started until it finished (or until now if
+	 *         still running), in milliseconds
+	 */
+	long getTotalTime();
+}
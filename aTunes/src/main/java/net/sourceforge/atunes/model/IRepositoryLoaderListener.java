@@ -82,4 +82,17 @@ public interface IRepositoryLoaderListener {
      * Notify read progress (not refresh)
      */
     public void notifyReadProgress();
+
+    /**
+     * Notify all audio files have been added to folder structure, while
+     * their tags are still being read (not refresh)
+     */
+    public void notifyFolderStructureRead();
+
+    /**
+     * Notify times and counters of each stage of a finished load
+     * 
+     * @param statistics
+     */
+    public void notifyLoadStatistics(IRepositoryLoadStatistics statistics);
 }
@@ -85,6 +85,12 @@ public interface IStateService {
 	 */
 	public void persistDeviceCache(String deviceId, IRepository deviceRepository);
 
+	/**
+	 * Stores now caches whose store was delayed. Called when application
+	 * finishes
+	 */
+	public void flushCaches();
+
 	/**
 	 * Reads favorites cache.
 	 * 
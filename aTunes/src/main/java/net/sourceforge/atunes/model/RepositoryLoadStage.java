@@ -0,0 +1,55 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.model;
+
+/**
+ * Stages of repository load which time is measured
+ * 
+ * @author alex
+ * 
+ */
+public enum RepositoryLoadStage {
+
+	/**
+	 * Listing contents of directories
+	 */
+	DIRECTORY_LISTING,
+
+	/**
+	 * Checking if files of previous repository are up to date
+	 */
+	UP_TO_DATE_CHECK,
+
+	/**
+	 * Reading tags and audio properties of files
+	 */
+	TAG_READING,
+
+	/**
+	 * Adding files to file and folder structures
+	 */
+	FOLDER_STRUCTURE,
+
+	/**
+	 * Adding files to artist, album, genre and year structures
+	 */
+	REPOSITORY_FILLING
+}
@@ -0,0 +1,132 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A log of objects appended to a file, read in the order they were appended
+ * 
+ * @author alex
+ * 
+ * @param <T>
+ *            type of objects of log
+ */
+public abstract class AbstractAppendLog<T> {
+
+	private final Class<T> type;
+
+	private KryoSerializerService kryoSerializerService;
+
+	private volatile boolean complete = true;
+
+	/**
+	 * @param type
+	 *            class of objects of log
+	 */
+	protected AbstractAppendLog(final Class<T> type) {
+		this.type = type;
+	}
+
+	/**
+	 * @param kryoSerializerService
+	 */
+	public void setKryoSerializerService(
+			final KryoSerializerService kryoSerializerService) {
+		this.kryoSerializerService = kryoSerializerService;
+	}
+
+	/**
+	 * Reads all objects of log. If an object was not completely written or
+	 * is damaged, objects after it are lost, and log is truncated so objects
+	 * appended later can be read
+	 * 
+	 * @return objects in the order they were appended
+	 */
+	public List<T> read() {
+		List<T> objects = new ArrayList<T>();
+		File file = getFile();
+		this.complete = true;
+		if (file.exists()) {
+			try {
+				AppendedObjects appendedObjects = this.kryoSerializerService
+						.readAppendedObjects(file.getAbsolutePath(), this.type);
+				for (Object object : appendedObjects.getObjects()) {
+					objects.add(this.type.cast(object));
+				}
+				if (!appendedObjects.isComplete()) {
+					this.complete = false;
+					this.kryoSerializerService.truncateFile(
+							file.getAbsolutePath(),
+							appendedObjects.getValidLength());
+				}
+			} catch (IOException e) {
+				Logger.error(e);
+				this.complete = false;
+			}
+		}
+		return objects;
+	}
+
+	/**
+	 * @return false if last read found objects that could not be read
+	 */
+	public boolean isComplete() {
+		return this.complete;
+	}
+
+	/**
+	 * Appends an object to log
+	 * 
+	 * @param object
+	 * @return if object was written
+	 */
+	public boolean append(final T object) {
+		return this.kryoSerializerService.appendObjectToFile(getFile()
+				.getAbsolutePath(), object);
+	}
+
+	/**
+	 * @return size in bytes of log
+	 */
+	public long length() {
+		return getFile().length();
+	}
+
+	/**
+	 * Removes log, when all its objects have been stored elsewhere
+	 */
+	public void delete() {
+		File file = getFile();
+		if (file.exists() && !file.delete()) {
+			Logger.error("Could not delete ", file.getAbsolutePath());
+		}
+		this.complete = true;
+	}
+
+	/**
+	 * @return file where log is stored
+	 */
+	protected abstract File getFile();
+}
@@ -0,0 +1,75 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.utils;
+
+import java.util.List;
+
+/**
+ * Objects read from a file where they were appended, and how much of file
+ * could be read
+ * 
+ * @author alex
+ * 
+ */
+public final class AppendedObjects {
+
+	private final List<Object> objects;
+
+	private final long validLength;
+
+	private final long fileLength;
+
+	/**
+	 * @param objects
+	 * @param validLength
+	 *            bytes of file read until last object read
+	 * @param fileLength
+	 */
+	AppendedObjects(final List<Object> objects, final long validLength,
+			final long fileLength) {
+		this.objects = objects;
+		this.validLength = validLength;
+		this.fileLength = fileLength;
+	}
+
+	/**
+	 * @return objects read, in the order they were appended
+	 */
+	public List<Object> getObjects() {
+		return this.objects;
+	}
+
+	/**
+	 * @return bytes of file read until last object read. Objects appended
+	 *         after this position can't be read
+	 */
+	public long getValidLength() {
+		return this.validLength;
+	}
+
+	/**
+	 * @return true if all file was read, false if an object was not
+	 *         completely written or damaged
+	 */
+	public boolean isComplete() {
+		return this.validLength == this.fileLength;
+	}
+}
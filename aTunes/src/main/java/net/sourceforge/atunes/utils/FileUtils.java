@@ -106,6 +106,68 @@ public final class FileUtils {
 		return path;
 	}
 
+	/**
+	 * Replaces a file with other one, completely written before. Where
+	 * supported file is renamed over target, so target is always complete.
+	 * Where not, target is renamed to its backup file first, and backup is
+	 * deleted once replaced, so one of both is always complete
+	 * 
+	 * @param source
+	 * @param target
+	 * @return if file was replaced
+	 */
+	public static boolean replaceFile(final File source, final File target) {
+		if (source.renameTo(target)) {
+			return true;
+		}
+		// Rename doesn't replace files in some systems
+		File backup = getBackupFile(target);
+		backup.delete();
+		if (target.renameTo(backup)) {
+			if (source.renameTo(target)) {
+				backup.delete();
+				return true;
+			}
+			backup.renameTo(target);
+		}
+		Logger.error("Could not replace ", getPath(target));
+		return false;
+	}
+
+	/**
+	 * Completes a replace of a file interrupted after file was renamed to
+	 * its backup: source was completely written then, so it's renamed to file
+	 * 
+	 * @param source
+	 *            file replacing given one
+	 * @param file
+	 * @return if file exists
+	 */
+	public static boolean recoverReplacedFile(final File source,
+			final File file) {
+		if (file.exists()) {
+			return true;
+		}
+		File backup = getBackupFile(file);
+		if (!backup.exists()) {
+			return false;
+		}
+		Logger.info("Completing replace of ", getPath(file));
+		if (source.renameTo(file) || backup.renameTo(file)) {
+			return true;
+		}
+		Logger.error("Could not recover ", getPath(file));
+		return false;
+	}
+
+	/**
+	 * @param file
+	 * @return file where given one is kept while replaced
+	 */
+	public static File getBackupFile(final File file) {
+		return new File(StringUtils.getString(file.getAbsolutePath(), ".bak"));
+	}
+
 	/**
 	 * This method is needed as File.canWrite seems to fail with network shares,
 	 * returning always true
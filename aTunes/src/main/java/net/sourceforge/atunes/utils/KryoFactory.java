@@ -21,23 +21,42 @@
 package net.sourceforge.atunes.utils;
 
 import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.joda.time.DateMidnight;
 import org.joda.time.DateTime;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.serializers.CollectionSerializer;
+import com.esotericsoftware.kryo.serializers.MapSerializer;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
 
 /**
- * A factory of Kryo objects
+ * A factory of Kryo objects. Classes are registered in the same order in all
+ * instances, and a few instances are kept to be reused
  * 
  * @author alex
  * 
  */
 public class KryoFactory {
 
+	/** Number of instances kept to be reused */
+	private static final int POOL_SIZE = 4;
+
 	private List<String> classes;
 
+	private volatile List<Class<?>> registeredClasses;
+
+	private final BlockingQueue<Kryo> pool = new ArrayBlockingQueue<Kryo>(
+			POOL_SIZE);
+
 	/**
 	 * @param classes
 	 */
@@ -46,23 +65,132 @@ public class KryoFactory {
 	}
 
 	/**
-	 * Returns a kryo instance for serialization
+	 * Returns a new kryo instance for serialization, to be used by caller
+	 * only
 	 * 
 	 * @return
 	 * @throws ClassNotFoundException
 	 */
 	public Kryo getKryo() throws ClassNotFoundException {
 		// Kryo is not thread safe so return a new instance in each call
-		Kryo kryo = new Kryo();
+		Kryo kryo = new Kryo(new PooledClassResolver(),
+				new MapReferenceResolver());
 		kryo.register(DateMidnight.class, new DateSerializer());
 		kryo.register(DateTime.class, new DateSerializer());
 		kryo.register(File.class, new FileSerializer());
 		kryo.register(String.class, new StringInternSerializer());
 
-		for (String clazz : this.classes) {
-			kryo.register(Class.forName(clazz));
+		for (Class<?> clazz : getRegisteredClasses()) {
+			kryo.register(clazz);
 		}
 
 		return kryo;
 	}
+
+	/**
+	 * Returns a kryo instance for serialization, reusing one released before
+	 * if possible. Must be released with releaseKryo when finished
+	 * 
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public Kryo borrowKryo() throws ClassNotFoundException {
+		Kryo kryo = this.pool.poll();
+		return kryo != null ? kryo : getKryo();
+	}
+
+	/**
+	 * Returns an instance taken with borrowKryo, so it can be reused
+	 * 
+	 * @param kryo
+	 *            instance or null
+	 */
+	public void releaseKryo(final Kryo kryo) {
+		if (kryo != null) {
+			kryo.reset();
+			kryo.getContext().clear();
+			// References map grows with largest object written, and is cleared
+			// after each object, so don't keep it
+			kryo.setReferenceResolver(new MapReferenceResolver());
+			((PooledClassResolver) kryo.getClassResolver()).resetSerializers();
+			this.pool.offer(kryo);
+		}
+	}
+
+	/**
+	 * @return classes to register, loaded first time needed
+	 * @throws ClassNotFoundException
+	 */
+	private List<Class<?>> getRegisteredClasses() throws ClassNotFoundException {
+		List<Class<?>> result = this.registeredClasses;
+		if (result == null) {
+			result = new ArrayList<Class<?>>();
+			for (String clazz : this.classes) {
+				result.add(Class.forName(clazz));
+			}
+			this.registeredClasses = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Class resolver that allows to clear state kept by serializers of
+	 * registered classes, so instance can be reused
+	 */
+	private static final class PooledClassResolver extends
+			DefaultClassResolver {
+
+		/**
+		 * Fields where collection and map serializers keep element types.
+		 * Kryo 2.19 only sets them in setGenerics, which can't be used to
+		 * clear them, so they are cleared directly
+		 */
+		private static final Field[] GENERIC_FIELDS = new Field[] {
+				getGenericField(CollectionSerializer.class, "genericType"),
+				getGenericField(MapSerializer.class, "keyGenericType"),
+				getGenericField(MapSerializer.class, "valueGenericType") };
+
+		/**
+		 * Clears element types kept by collection and map serializers when
+		 * a collection was empty or null, which would be used with next
+		 * object
+		 */
+		void resetSerializers() {
+			try {
+				for (Registration registration : this.classToRegistration
+						.values()) {
+					Serializer<?> serializer = registration.getSerializer();
+					for (Field field : GENERIC_FIELDS) {
+						if (field.getDeclaringClass().isInstance(serializer)) {
+							field.set(serializer, null);
+						}
+					}
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * @param serializerClass
+		 * @param name
+		 * @return field where element type is kept
+		 * @throws IllegalStateException
+		 *             if field is not found, as when kryo is upgraded, so
+		 *             instances are never reused with element types of
+		 *             previous objects
+		 */
+		private static Field getGenericField(final Class<?> serializerClass,
+				final String name) {
+			try {
+				Field field = serializerClass.getDeclaredField(name);
+				field.setAccessible(true);
+				return field;
+			} catch (NoSuchFieldException e) {
+				throw new IllegalStateException(StringUtils.getString(
+						serializerClass.getName(), " has no field ", name,
+						", kryo instances can't be reused"), e);
+			}
+		}
+	}
 }
@@ -20,16 +20,47 @@
 
 package net.sourceforge.atunes.utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.ObjectMap;
 
 /**
  * Serialization service based on Kryo serialization
+ * <p>
+ * Objects are written to a temporary file which replaces previous one once
+ * completely written, so a failed write keeps previous file. Files start with
+ * a magic number and flags, and end with a checksum of contents, checked
+ * before reading. Files written by previous versions, without them, can be
+ * read too
+ * </p>
+ * <p>
+ * When a file is missing or damaged, its temporary or backup file is read
+ * instead, as left by a replace not completed
+ * </p>
  * 
  * @author alex
  * 
@@ -37,8 +68,29 @@ import com.esotericsoftware.kryo.io.Output;
  */
 public class KryoSerializerService {
 
+	private static final int MAGIC = 0x41544B53;
+
+	private static final int FLAG_COMPRESSED = 1;
+
+	/** Size of magic number and flags */
+	private static final int HEADER_BYTES = 5;
+
+	/** Size of checksum */
+	private static final int TRAILER_BYTES = 8;
+
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Key of kryo context while reading a file written by a previous version
+	 */
+	private static final String PREVIOUS_VERSION = "previousVersion";
+
 	private KryoFactory kryoFactory;
 
+	private int compressionLevel;
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
 	/**
 	 * @param kryoFactory
 	 */
@@ -46,6 +98,32 @@ public class KryoSerializerService {
 		this.kryoFactory = kryoFactory;
 	}
 
+	/**
+	 * @param compressionLevel
+	 *            deflate level used to compress files written, or 0 to write
+	 *            them uncompressed
+	 */
+	public void setCompressionLevel(final int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return bytes written to files since application started
+	 */
+	public long getBytesWritten() {
+		return this.bytesWritten.get();
+	}
+
+	/**
+	 * Counts bytes written to a file by other means, to be included in bytes
+	 * written
+	 * 
+	 * @param bytes
+	 */
+	public void addBytesWritten(final long bytes) {
+		this.bytesWritten.addAndGet(bytes);
+	}
+
 	/**
 	 * Reads an object from a file
 	 * 
@@ -60,22 +138,46 @@ public class KryoSerializerService {
 	 */
 	public Object readObjectFromFile(final String filename, final Class<?> clazz)
 			throws IOException {
-		Input input = null;
+		File file = new File(filename);
+		File temporaryFile = getTemporaryFile(file);
+		FileUtils.recoverReplacedFile(temporaryFile, file);
+		Object object = readObject(file, clazz);
+		for (File otherFile : new File[] { temporaryFile,
+				FileUtils.getBackupFile(file) }) {
+			if (object == null && otherFile.exists()) {
+				Logger.info("Reading ", otherFile.getAbsolutePath(),
+						" instead of ", filename);
+				object = readObject(otherFile, clazz);
+			}
+		}
+		return object;
+	}
+
+	/**
+	 * @param file
+	 * @param clazz
+	 * @return object read or null if file doesn't exist or can't be read
+	 */
+	private Object readObject(final File file, final Class<?> clazz) {
+		InputStream stream = null;
+		Kryo kryo = null;
 		Timer timer = new Timer();
 		try {
 			Logger.info("Reading serialized object: ", clazz.getName(),
-					" from file: ", filename);
+					" from file: ", file.getAbsolutePath());
 			timer.start();
-			input = new Input(new FileInputStream(filename));
-			return this.kryoFactory.getKryo().readObject(input, clazz);
+			kryo = this.kryoFactory.borrowKryo();
+			stream = openForRead(file, kryo);
+			return kryo.readObject(new Input(stream, BUFFER_SIZE), clazz);
 		} catch (FileNotFoundException e) {
 			Logger.info(e.getMessage());
 		} catch (Exception e) {
 			Logger.error(e);
 		} finally {
-			Logger.info(StringUtils.getString("Reading ", clazz.getName(),
-					" done (", timer.stop(), " seconds)"));
-			ClosingUtils.close(input);
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(stream);
+			logThroughput("Reading ", clazz.getName(), file.length(),
+					timer.stop());
 		}
 		return null;
 	}
@@ -88,19 +190,447 @@ public class KryoSerializerService {
 	 * @return if write was successful
 	 */
 	public boolean writeObjectToFile(final String filename, final Object object) {
-		Output output = null;
+		File file = new File(filename);
+		File temporaryFile = getTemporaryFile(file);
+		FileOutputStream fileStream = null;
+		Deflater deflater = null;
+		Kryo kryo = null;
+		Timer timer = new Timer();
+		timer.start();
 		try {
-			output = new Output(new FileOutputStream(filename));
-			this.kryoFactory.getKryo().writeObject(output, object);
+			fileStream = new FileOutputStream(temporaryFile);
+			DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream(fileStream, BUFFER_SIZE));
+			stream.writeInt(MAGIC);
+			stream.writeByte(this.compressionLevel > 0 ? FLAG_COMPRESSED : 0);
+			CRC32 checksum = new CRC32();
+			OutputStream contents = new CheckedOutputStream(stream, checksum);
+			if (this.compressionLevel > 0) {
+				deflater = new Deflater(this.compressionLevel);
+				contents = new DeflaterOutputStream(contents, deflater,
+						BUFFER_SIZE);
+			}
+			kryo = this.kryoFactory.borrowKryo();
+			Output output = new Output(contents, BUFFER_SIZE);
+			kryo.writeObject(output, object);
 			output.flush();
+			if (deflater != null) {
+				((DeflaterOutputStream) contents).finish();
+			}
+			stream.writeLong(checksum.getValue());
+			stream.flush();
+			fileStream.getFD().sync();
+		} catch (IOException e) {
+			Logger.error(e);
+			return false;
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+			return false;
+		} catch (KryoException e) {
+			Logger.error(e);
+			return false;
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+			if (deflater != null) {
+				deflater.end();
+			}
+			ClosingUtils.close(fileStream);
+		}
+		if (!FileUtils.replaceFile(temporaryFile, file)) {
+			return false;
+		}
+		long length = file.length();
+		this.bytesWritten.addAndGet(length);
+		logThroughput("Writing ", object.getClass().getName(), length,
+				timer.stop());
+		return true;
+	}
+
+	/**
+	 * @param file
+	 * @return file written before replacing given one
+	 */
+	private File getTemporaryFile(final File file) {
+		return new File(StringUtils.getString(file.getAbsolutePath(), ".tmp"));
+	}
+
+	/**
+	 * Returns a copy of an object made serializing it, so copy can be stored
+	 * later while object keeps changing
+	 * 
+	 * @param <T>
+	 * @param object
+	 * @return copy, or null if object could not be copied
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T copy(final T object) {
+		Kryo kryo = null;
+		try {
+			kryo = this.kryoFactory.borrowKryo();
+			Output output = new Output(BUFFER_SIZE, -1);
+			kryo.writeClassAndObject(output, object);
+			return (T) kryo.readClassAndObject(new Input(output.getBuffer(),
+					0, output.position()));
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+			return null;
+		} catch (KryoException e) {
+			Logger.error(e);
+			return null;
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+		}
+	}
+
+	/**
+	 * Returns if objects being read were written by a previous version, so
+	 * serializers of classes whose fields changed must read fields as they
+	 * were written then
+	 * 
+	 * @param kryo
+	 *            instance reading
+	 * @return true if file being read was written by a previous version
+	 */
+	public static boolean isReadingPreviousVersion(final Kryo kryo) {
+		return kryo.getContext().get(PREVIOUS_VERSION) != null;
+	}
+
+	/**
+	 * Opens a file to read its object, after checking its checksum
+	 * 
+	 * @param file
+	 * @param kryo
+	 *            instance that will read object, marked when file was
+	 *            written by a previous version
+	 * @return stream positioned at beginning of object
+	 * @throws IOException
+	 *             if file can't be read or is damaged
+	 */
+	private InputStream openForRead(final File file, final Kryo kryo)
+			throws IOException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file),
+				BUFFER_SIZE);
+		boolean opened = false;
+		try {
+			DataInputStream input = new DataInputStream(stream);
+			stream.mark(HEADER_BYTES);
+			if (file.length() < HEADER_BYTES + TRAILER_BYTES
+					|| input.readInt() != MAGIC) {
+				// Written by a previous version
+				stream.reset();
+				getContext(kryo).put(PREVIOUS_VERSION, Boolean.TRUE);
+				opened = true;
+				return stream;
+			}
+			int flags = input.readByte();
+			checkChecksum(file);
+			opened = true;
+			if ((flags & FLAG_COMPRESSED) != 0) {
+				return new InflaterInputStream(stream);
+			}
+			return stream;
+		} finally {
+			if (!opened) {
+				ClosingUtils.close(stream);
+			}
+		}
+	}
+
+	/**
+	 * Checks that checksum stored at end of file is the one of its contents
+	 * 
+	 * @param file
+	 * @throws IOException
+	 *             if it's not
+	 */
+	private void checkChecksum(final File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), BUFFER_SIZE));
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			input.readFully(buffer, 0, HEADER_BYTES);
+			CRC32 checksum = new CRC32();
+			long remaining = file.length() - HEADER_BYTES - TRAILER_BYTES;
+			while (remaining > 0) {
+				int read = input.read(buffer, 0,
+						(int) Math.min(buffer.length, remaining));
+				if (read < 0) {
+					throw new EOFException();
+				}
+				checksum.update(buffer, 0, read);
+				remaining -= read;
+			}
+			if (input.readLong() != checksum.getValue()) {
+				throw new IOException(StringUtils.getString(
+						"Checksum error in file: ", file.getAbsolutePath()));
+			}
+		} finally {
+			ClosingUtils.close(input);
+		}
+	}
+
+	/**
+	 * @param kryo
+	 * @return context of kryo instance
+	 */
+	@SuppressWarnings("unchecked")
+	private static ObjectMap<Object, Object> getContext(final Kryo kryo) {
+		return kryo.getContext();
+	}
+
+	/**
+	 * Logs time and throughput of a read or write
+	 * 
+	 * @param operation
+	 * @param className
+	 * @param bytes
+	 * @param seconds
+	 */
+	private void logThroughput(final String operation, final String className,
+			final long bytes, final double seconds) {
+		Logger.info(StringUtils.getString(operation, className, " done (",
+				seconds, " seconds, ",
+				StringUtils.fromByteToMegaOrGiga(bytes), ", ", StringUtils
+						.toString(seconds > 0 ? bytes / seconds
+								/ FileUtils.MEGABYTE : 0, 1), " MB/s)"));
+	}
+
+	/**
+	 * Appends an object to a file, preceded by its length and checksum so a
+	 * partially written object can be detected when reading. Data is synced
+	 * to disk before returning
+	 * 
+	 * @param filename
+	 * @param object
+	 * @return if write was successful
+	 */
+	public boolean appendObjectToFile(final String filename,
+			final Object object) {
+		FileOutputStream stream = null;
+		Kryo kryo = null;
+		try {
+			File file = new File(filename);
+			FileUtils.recoverReplacedFile(getTemporaryFile(file), file);
+			kryo = this.kryoFactory.borrowKryo();
+			byte[] record = toRecord(kryo, object);
+			stream = new FileOutputStream(filename, true);
+			stream.write(record);
+			stream.getFD().sync();
+			this.bytesWritten.addAndGet(record.length);
 			return true;
 		} catch (IOException e) {
 			Logger.error(e);
 		} catch (ClassNotFoundException e) {
 			Logger.error(e);
 		} finally {
-			ClosingUtils.close(output);
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(stream);
 		}
 		return false;
 	}
+
+	/**
+	 * Writes objects to a file, replacing it, in the same format used by
+	 * appendObjectToFile, so more objects can be appended later
+	 * 
+	 * @param filename
+	 * @param objects
+	 * @return if write was successful
+	 */
+	public boolean writeObjectsToFile(final String filename,
+			final List<?> objects) {
+		File file = new File(filename);
+		File temporaryFile = getTemporaryFile(file);
+		FileOutputStream fileStream = null;
+		Kryo kryo = null;
+		Timer timer = new Timer();
+		timer.start();
+		try {
+			fileStream = new FileOutputStream(temporaryFile);
+			OutputStream stream = new BufferedOutputStream(fileStream,
+					BUFFER_SIZE);
+			kryo = this.kryoFactory.borrowKryo();
+			for (Object object : objects) {
+				stream.write(toRecord(kryo, object));
+			}
+			stream.flush();
+			fileStream.getFD().sync();
+		} catch (IOException e) {
+			Logger.error(e);
+			return false;
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+			return false;
+		} catch (KryoException e) {
+			Logger.error(e);
+			return false;
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(fileStream);
+		}
+		if (!FileUtils.replaceFile(temporaryFile, file)) {
+			return false;
+		}
+		long length = file.length();
+		this.bytesWritten.addAndGet(length);
+		logThroughput("Writing ", StringUtils.getString(objects.size(),
+				" objects"), length, timer.stop());
+		return true;
+	}
+
+	/**
+	 * Returns a checksum of serialized form of an object, to know if object
+	 * changed since it was written
+	 * 
+	 * @param object
+	 * @return checksum, or -1 if object could not be serialized
+	 */
+	public long getChecksum(final Object object) {
+		Kryo kryo = null;
+		try {
+			kryo = this.kryoFactory.borrowKryo();
+			Output buffer = new Output(4096, -1);
+			kryo.writeObject(buffer, object);
+			CRC32 checksum = new CRC32();
+			checksum.update(buffer.getBuffer(), 0, buffer.position());
+			// Length is included to make collisions less likely
+			return (long) buffer.position() << 32 | checksum.getValue();
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+		} catch (KryoException e) {
+			Logger.error(e);
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+		}
+		return -1;
+	}
+
+	/**
+	 * Serializes an object preceded by its length and checksum
+	 * 
+	 * @param kryo
+	 * @param object
+	 * @return bytes to write
+	 */
+	private byte[] toRecord(final Kryo kryo, final Object object) {
+		Output buffer = new Output(4096, -1);
+		kryo.writeObject(buffer, object);
+		int length = buffer.position();
+		CRC32 checksum = new CRC32();
+		checksum.update(buffer.getBuffer(), 0, length);
+		Output output = new Output(8 + length);
+		output.writeInt(length);
+		output.writeInt((int) checksum.getValue());
+		output.writeBytes(buffer.getBuffer(), 0, length);
+		return output.toBytes();
+	}
+
+	/**
+	 * Reads all objects appended to a file. Reading stops at first object not
+	 * completely written or damaged
+	 * 
+	 * @param filename
+	 * @param clazz
+	 *            class of objects
+	 * @return objects read, empty if file doesn't exist
+	 * @throws IOException
+	 */
+	public List<Object> readObjectsFromFile(final String filename,
+			final Class<?> clazz) throws IOException {
+		return readAppendedObjects(filename, clazz).getObjects();
+	}
+
+	/**
+	 * Reads all objects appended to a file, and how much of file could be
+	 * read. Reading stops at first object not completely written or damaged:
+	 * objects appended after it can't be read unless file is truncated first
+	 * 
+	 * @param filename
+	 * @param clazz
+	 *            class of objects
+	 * @return objects read, empty and complete if file doesn't exist
+	 * @throws IOException
+	 */
+	public AppendedObjects readAppendedObjects(final String filename,
+			final Class<?> clazz) throws IOException {
+		List<Object> objects = new ArrayList<Object>();
+		File file = new File(filename);
+		FileUtils.recoverReplacedFile(getTemporaryFile(file), file);
+		long fileLength = file.length();
+		long validLength = 0;
+		DataInputStream input = null;
+		Kryo kryo = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(filename), BUFFER_SIZE));
+			kryo = this.kryoFactory.borrowKryo();
+			while (validLength < fileLength) {
+				byte[] bytes;
+				int storedChecksum;
+				try {
+					int length = input.readInt();
+					if (length < 0 || length > fileLength) {
+						Logger.error(StringUtils.getString(
+								"Invalid object length in file: ", filename));
+						break;
+					}
+					bytes = new byte[length];
+					storedChecksum = input.readInt();
+					input.readFully(bytes);
+				} catch (EOFException e) {
+					Logger.error(StringUtils.getString(
+							"Object not completely written in file: ",
+							filename));
+					break;
+				}
+				CRC32 checksum = new CRC32();
+				checksum.update(bytes);
+				if ((int) checksum.getValue() != storedChecksum) {
+					// Objects after a damaged one are discarded too
+					Logger.error(StringUtils.getString(
+							"Checksum error in file: ", filename));
+					break;
+				}
+				try {
+					objects.add(kryo.readObject(new Input(bytes), clazz));
+				} catch (KryoException e) {
+					Logger.error(e);
+					break;
+				}
+				validLength += 8 + bytes.length;
+			}
+		} catch (FileNotFoundException e) {
+			Logger.info(e.getMessage());
+		} catch (ClassNotFoundException e) {
+			Logger.error(e);
+		} finally {
+			this.kryoFactory.releaseKryo(kryo);
+			ClosingUtils.close(input);
+		}
+		return new AppendedObjects(objects, validLength, fileLength);
+	}
+
+	/**
+	 * Truncates a file where objects are appended, so objects appended later
+	 * are not written after a damaged one
+	 * 
+	 * @param filename
+	 * @param length
+	 *            valid length of file
+	 * @return if file was truncated
+	 */
+	public boolean truncateFile(final String filename, final long length) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(filename, "rw");
+			file.setLength(length);
+			file.getFD().sync();
+			return true;
+		} catch (IOException e) {
+			Logger.error(e);
+			return false;
+		} finally {
+			ClosingUtils.close(file);
+		}
+	}
 }
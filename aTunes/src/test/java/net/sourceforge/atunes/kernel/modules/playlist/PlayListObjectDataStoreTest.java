@@ -0,0 +1,342 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.playlist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.kernel.modules.radio.Radio;
+import net.sourceforge.atunes.kernel.modules.repository.AudioFile;
+import net.sourceforge.atunes.kernel.modules.tags.DefaultTag;
+import net.sourceforge.atunes.kernel.modules.tags.TagFactory;
+import net.sourceforge.atunes.model.IAudioObject;
+import net.sourceforge.atunes.model.IListOfPlayLists;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IPlayList;
+import net.sourceforge.atunes.model.IStatePlayer;
+import net.sourceforge.atunes.model.ITag;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+public class PlayListObjectDataStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IStatePlayer statePlayer;
+
+	private KryoSerializerService kryoSerializerService;
+
+	private PlayListObjectDataStore sut;
+
+	private File recordsFile;
+
+	@Before
+	public void init() {
+		KryoFactory kryoFactory = new KryoFactory();
+		kryoFactory.setClasses(new ArrayList<String>());
+		this.kryoSerializerService = new KryoSerializerService();
+		this.kryoSerializerService.setKryoFactory(kryoFactory);
+		this.statePlayer = mock(IStatePlayer.class);
+		this.sut = newDataStore(mockOsManager());
+		this.recordsFile = new File(this.folder.getRoot(),
+				Constants.PLAYLISTS_RECORDS_FILE);
+	}
+
+	private PlayListObjectDataStore newDataStore(final IOSManager osManager) {
+		PlayListObjectDataStore dataStore = new PlayListObjectDataStore();
+		dataStore.setOsManager(osManager);
+		dataStore.setKryoSerializerService(this.kryoSerializerService);
+		return dataStore;
+	}
+
+	private IPlayList newPlayList(final String name, final int radios) {
+		List<IAudioObject> audioObjects = new ArrayList<IAudioObject>();
+		for (int i = 0; i < radios; i++) {
+			audioObjects.add(new Radio(name + i, "http://radio/" + name + i,
+					"label"));
+		}
+		PlayList playList = new PlayList(audioObjects, this.statePlayer);
+		playList.setName(name);
+		return playList;
+	}
+
+	private IListOfPlayLists newListOfPlayLists(final int selected,
+			final IPlayList... playLists) {
+		ListOfPlayLists list = new ListOfPlayLists();
+		List<IPlayList> lists = new ArrayList<IPlayList>();
+		Collections.addAll(lists, playLists);
+		list.setPlayLists(lists);
+		list.setSelectedPlayList(selected);
+		return list;
+	}
+
+	private void assertStored(final IListOfPlayLists expected) {
+		IListOfPlayLists read = newDataStore(mockOsManager()).read();
+		assertEquals(expected.getSelectedPlayList(), read.getSelectedPlayList());
+		assertEquals(expected.getPlayLists().size(), read.getPlayLists().size());
+		for (int i = 0; i < expected.getPlayLists().size(); i++) {
+			IPlayList playList = expected.getPlayLists().get(i);
+			IPlayList readPlayList = read.getPlayLists().get(i);
+			assertEquals(playList.getName(), readPlayList.getName());
+			assertEquals(playList.size(), readPlayList.size());
+		}
+	}
+
+	private IOSManager mockOsManager() {
+		IOSManager osManager = mock(IOSManager.class);
+		when(osManager.getUserConfigFolder()).thenReturn(
+				this.folder.getRoot().getAbsolutePath());
+		when(osManager.getFileSeparator()).thenReturn(File.separator);
+		return osManager;
+	}
+
+	@Test
+	public void testOnlyChangedPlayListAppended() {
+		IPlayList changed = newPlayList("b", 20);
+		IListOfPlayLists list = newListOfPlayLists(1, newPlayList("a", 20),
+				changed, newPlayList("c", 20));
+		this.sut.write(list);
+		long written = this.recordsFile.length();
+
+		changed.add(20, new Radio("new", "http://radio/new", "label"));
+		this.sut.write(list);
+		long appended = this.recordsFile.length() - written;
+
+		assertTrue(appended > 0);
+		assertTrue(appended < written / 2);
+		assertStored(list);
+	}
+
+	@Test
+	public void testNothingAppendedIfNotChanged() {
+		IListOfPlayLists list = newListOfPlayLists(0, newPlayList("a", 5),
+				newPlayList("b", 5));
+		this.sut.write(list);
+		long written = this.recordsFile.length();
+
+		this.sut.write(list);
+
+		assertEquals(written, this.recordsFile.length());
+	}
+
+	@Test
+	public void testPlayListRemovedAndSelectionChanged() {
+		IPlayList first = newPlayList("a", 5);
+		IPlayList second = newPlayList("b", 5);
+		this.sut.write(newListOfPlayLists(1, first, second,
+				newPlayList("c", 5)));
+
+		IListOfPlayLists list = newListOfPlayLists(0, first, second);
+		this.sut.write(list);
+
+		assertStored(list);
+	}
+
+	@Test
+	public void testCompactedWhenTooManyRecordsReplaced() {
+		this.sut.setMinReplacedSize(0);
+		IPlayList changed = newPlayList("a", 10);
+		IListOfPlayLists list = newListOfPlayLists(0, changed,
+				newPlayList("b", 10));
+		this.sut.write(list);
+		long written = this.recordsFile.length();
+
+		for (int i = 0; i < 5; i++) {
+			changed.add(0, new Radio("new" + i, "http://radio/new", "label"));
+			this.sut.write(list);
+		}
+
+		// Each record appended takes about half of size written first
+		assertTrue(this.recordsFile.length() < written * 3);
+		assertStored(list);
+	}
+
+	@Test
+	public void testWrittenAgainAfterDamagedRecord() throws IOException {
+		IPlayList changed = newPlayList("b", 5);
+		IListOfPlayLists list = newListOfPlayLists(0, newPlayList("a", 5),
+				changed);
+		this.sut.write(list);
+		changed.add(0, new Radio("new", "http://radio/new", "label"));
+		this.sut.write(list);
+
+		// Last record appended was not completely written
+		RandomAccessFile file = new RandomAccessFile(this.recordsFile, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+
+		PlayListObjectDataStore dataStore = newDataStore(mockOsManager());
+		IListOfPlayLists read = dataStore.read();
+		assertEquals(5, read.getPlayLists().get(1).size());
+		IListOfPlayLists edited = newListOfPlayLists(0, read.getPlayLists()
+				.get(0), newPlayList("b", 7));
+		dataStore.write(edited);
+
+		assertStored(edited);
+	}
+
+	@Test
+	public void testUnreadableRecordsFileKept() throws IOException {
+		FileOutputStream stream = new FileOutputStream(this.recordsFile);
+		stream.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		stream.close();
+
+		assertNull(this.sut.read());
+		assertFalse(this.recordsFile.exists());
+		assertTrue(new File(this.recordsFile.getAbsolutePath() + ".damaged")
+				.exists());
+	}
+
+	@Test
+	public void testPreviousFileReadAndReplaced() {
+		IListOfPlayLists list = newListOfPlayLists(1, newPlayList("a", 5),
+				newPlayList("b", 5));
+		File previousFile = new File(this.folder.getRoot(),
+				Constants.PLAYLISTS_FILE);
+		this.kryoSerializerService.writeObjectToFile(
+				previousFile.getAbsolutePath(), list);
+
+		IListOfPlayLists read = this.sut.read();
+		assertEquals(2, read.getPlayLists().size());
+		this.sut.write(read);
+
+		assertFalse(previousFile.exists());
+		assertStored(list);
+	}
+
+	@Test
+	public void testFilesOfPlayListsOfPreviousVersionRead() throws Exception {
+		List<String> classes = new ArrayList<String>();
+		classes.add(AudioFile.class.getName());
+		classes.add(DefaultTag.class.getName());
+		KryoFactory kryoFactory = new KryoFactory();
+		kryoFactory.setClasses(classes);
+		this.kryoSerializerService.setKryoFactory(kryoFactory);
+
+		AudioFile file = new AudioFile("/music/Artist/01.mp3");
+		ITag tag = new TagFactory().getNewTag();
+		tag.setTitle("Title");
+		file.setTag(tag);
+		file.setDuration(100);
+		List<IAudioObject> audioObjects = new ArrayList<IAudioObject>();
+		audioObjects.add(file);
+		audioObjects.add(new Radio("radio", "http://radio/", "label"));
+		audioObjects.add(file);
+		PlayList playList = new PlayList(audioObjects, this.statePlayer);
+		playList.setName("a");
+
+		// Written as previous versions did, without header and with whole
+		// path of files
+		Kryo kryo = kryoFactory.getKryo();
+		kryo.register(AudioFile.class, new PreviousAudioFileSerializer(kryo));
+		kryo.register(DefaultTag.class, new FieldSerializer<DefaultTag>(kryo,
+				DefaultTag.class));
+		Output output = new Output(new FileOutputStream(new File(
+				this.folder.getRoot(), Constants.PLAYLISTS_FILE)));
+		kryo.writeObject(output, newListOfPlayLists(0, playList));
+		output.close();
+
+		IPlayList read = this.sut.read().getPlayLists().get(0);
+		assertEquals(3, read.size());
+		assertEquals("/music/Artist/01.mp3", read.get(0).getUrl());
+		assertEquals("Title", read.get(0).getTitle());
+		assertEquals(100, read.get(0).getDuration());
+		assertEquals("radio", read.get(1).getTitle());
+		assertSame(read.get(0), read.get(2));
+
+		// Written again in current version
+		this.sut.write(newListOfPlayLists(0, read));
+		IPlayList readAgain = newDataStore(mockOsManager()).read()
+				.getPlayLists().get(0);
+		assertEquals("/music/Artist/01.mp3", readAgain.get(2).getUrl());
+		assertEquals("Title", readAgain.get(2).getTitle());
+	}
+
+	/**
+	 * Fields of audio files as written by previous versions
+	 */
+	public static final class PreviousAudioFile {
+
+		ITag tag;
+		int duration;
+		long bitrate;
+		int frequency;
+		long readTime;
+		boolean variableBitrate;
+		String filePath;
+	}
+
+	/**
+	 * Writes audio files as previous versions did
+	 */
+	private static class PreviousAudioFileSerializer extends
+			Serializer<AudioFile> {
+
+		private final FieldSerializer<PreviousAudioFile> fieldSerializer;
+
+		PreviousAudioFileSerializer(final Kryo kryo) {
+			this.fieldSerializer = new FieldSerializer<PreviousAudioFile>(
+					kryo, PreviousAudioFile.class);
+		}
+
+		@Override
+		public void write(final Kryo kryo, final Output output,
+				final AudioFile audioFile) {
+			PreviousAudioFile previous = new PreviousAudioFile();
+			previous.tag = audioFile.getTag();
+			previous.duration = audioFile.getDuration();
+			previous.filePath = audioFile.getUrl();
+			this.fieldSerializer.write(kryo, output, previous);
+		}
+
+		@Override
+		public AudioFile read(final Kryo kryo, final Input input,
+				final Class<AudioFile> type) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.playlist;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ScheduledFuture;
+
+import net.sourceforge.atunes.model.IListOfPlayLists;
+import net.sourceforge.atunes.model.IStateService;
+import net.sourceforge.atunes.model.ITaskService;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class PlayListPersistorTest {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void testPersistedFromTaskOnceChangesStop() {
+		ITaskService taskService = mock(ITaskService.class);
+		ScheduledFuture first = mock(ScheduledFuture.class);
+		ScheduledFuture second = mock(ScheduledFuture.class);
+		when(
+				taskService.submitOnce(anyString(), anyLong(),
+						any(Runnable.class))).thenReturn(first, second);
+		IStateService stateService = mock(IStateService.class);
+		PlayListPersistor sut = new PlayListPersistor();
+		sut.setTaskService(taskService);
+		sut.setStateService(stateService);
+		IListOfPlayLists listOfPlayLists = mock(IListOfPlayLists.class);
+
+		sut.persistPlayLists(listOfPlayLists);
+		sut.persistPlayLists(listOfPlayLists);
+
+		verify(first).cancel(false);
+		verify(second, never()).cancel(false);
+		verify(stateService, never()).persistPlayLists(listOfPlayLists);
+
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		verify(taskService, times(2)).submitOnce(
+				anyString(), anyLong(), task.capture());
+		task.getValue().run();
+		verify(stateService).persistPlayLists(listOfPlayLists);
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.atunes.model.ArtistViewMode;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.model.ILocalAudioObjectFactory;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
+import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.model.IRepositoryLoadStatistics;
+import net.sourceforge.atunes.model.IRepositoryLoaderListener;
+import net.sourceforge.atunes.model.IRepositoryTransaction;
+import net.sourceforge.atunes.model.IStateNavigation;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.IUnknownObjectChecker;
+import net.sourceforge.atunes.model.RepositoryLoadStage;
+import net.sourceforge.atunes.utils.FileUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class AbstractRepositoryLoaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<File> folders;
+
+	@Before
+	public void init() throws IOException {
+		for (int artist = 0; artist < 5; artist++) {
+			for (int album = 0; album < 4; album++) {
+				File albumFolder = new File(this.folder.getRoot(),
+						"artist" + artist + "/album" + album);
+				albumFolder.mkdirs();
+				for (int track = 0; track < 10; track++) {
+					new File(albumFolder, "track" + track + ".mp3")
+							.createNewFile();
+				}
+				new File(albumFolder, "cover.jpg").createNewFile();
+			}
+		}
+		this.folders = new ArrayList<File>();
+		this.folders.add(this.folder.getRoot());
+	}
+
+	@Test
+	public void testSequentialLoad() {
+		IRepository repository = load(1);
+		assertEquals(200, repository.countFiles());
+		assertEquals(200,
+				repository.getFolder(FileUtils.getPath(this.folder.getRoot()))
+						.size());
+	}
+
+	@Test
+	public void testParallelLoad() {
+		IRepository repository = load(4);
+		assertEquals(200, repository.countFiles());
+		assertEquals(200,
+				repository.getFolder(FileUtils.getPath(this.folder.getRoot()))
+						.size());
+	}
+
+	@Test
+	public void testParallelLoadNotifiesFilesAdded() {
+		TestRepositoryLoader sut = createLoader(4);
+		load(sut, null, 200);
+		// Path and progress are notified when files of each directory are
+		// added, not when they are submitted to reader threads
+		assertEquals(20, sut.filesNotifiedAtPath.size());
+		assertEquals(20, sut.filesNotifiedAtProgress.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i * 10, sut.filesNotifiedAtPath.get(i).intValue());
+			assertEquals((i + 1) * 10, sut.filesNotifiedAtProgress.get(i)
+					.intValue());
+		}
+	}
+
+	@Test
+	public void testReadTagsAfterFolderStructure() {
+		TestRepositoryLoader sut = createLoader(4);
+		sut.setReadTagsAfterFolderStructure(true);
+		sut.setTagsReadPerProgressNotification(50);
+		IRepository repository = load(sut, null, 200);
+		assertEquals(0, sut.filesLoadedBeforeReadingTags);
+		assertEquals(4, sut.progressNotifications);
+		assertEquals(200, repository.countFiles());
+		assertEquals(200, repository.getArtist("Unknown").getAlbum("Unknown")
+				.size());
+	}
+
+	@Test
+	public void testReadsPerFolder() {
+		TestRepositoryLoader sut = createLoader(4);
+		sut.setReadTagsAfterFolderStructure(true);
+		sut.setReadsPerFolder(1);
+		final AtomicInteger reads = new AtomicInteger();
+		final AtomicInteger maxReads = new AtomicInteger();
+		ILocalAudioObjectFactory factory = mock(ILocalAudioObjectFactory.class);
+		when(factory.getUnreadLocalAudioObject(any(File.class))).then(
+				new Answer<ILocalAudioObject>() {
+					@Override
+					public ILocalAudioObject answer(
+							final InvocationOnMock invocation) {
+						return new AudioFile(FileUtils
+								.getNormalizedPath((File) invocation
+										.getArguments()[0]));
+					}
+				});
+		when(factory.readLocalAudioObject(any(ILocalAudioObject.class))).then(
+				new Answer<ILocalAudioObject>() {
+					@Override
+					public ILocalAudioObject answer(
+							final InvocationOnMock invocation)
+							throws InterruptedException {
+						int current = reads.incrementAndGet();
+						if (current > maxReads.get()) {
+							maxReads.set(current);
+						}
+						Thread.sleep(1);
+						reads.decrementAndGet();
+						return (ILocalAudioObject) invocation.getArguments()[0];
+					}
+				});
+		sut.setLocalAudioObjectFactory(factory);
+		assertEquals(200, load(sut, null, 200).countFiles());
+		assertEquals(1, maxReads.get());
+	}
+
+	@Test
+	public void testRefreshSkipsUnchangedDirectories() throws IOException {
+		long lastModified = System.currentTimeMillis() - 60000;
+		setLastModified(this.folder.getRoot(), lastModified);
+		IRepository oldRepository = load(4);
+
+		// File added but directory modification time restored: not read
+		File unchanged = new File(this.folder.getRoot(), "artist0/album0");
+		new File(unchanged, "track10.mp3").createNewFile();
+		unchanged.setLastModified(lastModified);
+		// File added to a modified directory
+		File changed = new File(this.folder.getRoot(), "artist1/album0");
+		new File(changed, "track10.mp3").createNewFile();
+		changed.setLastModified(lastModified + 10000);
+
+		IRepository repository = load(4, oldRepository, 201);
+		assertEquals(201, repository.countFiles());
+		assertEquals(null, repository.getFile(FileUtils
+				.getNormalizedPath(new File(unchanged, "track10.mp3"))));
+	}
+
+	@Test
+	public void testRefreshVerifyingDirectoryEntries() throws IOException {
+		long lastModified = System.currentTimeMillis() - 60000;
+		setLastModified(this.folder.getRoot(), lastModified);
+		IRepository oldRepository = load(1);
+
+		File unchanged = new File(this.folder.getRoot(), "artist0/album0");
+		new File(unchanged, "track10.mp3").createNewFile();
+		unchanged.setLastModified(lastModified);
+
+		TestRepositoryLoader sut = createLoader(1);
+		sut.setVerifyDirectoryEntries(true);
+		assertEquals(201, load(sut, oldRepository, 201).countFiles());
+	}
+
+	@Test
+	public void testLoadStatistics() {
+		TestRepositoryLoader sut = createLoader(4);
+		sut.setReadTagsAfterFolderStructure(true);
+		sut.setSlowestFilesCount(5);
+		RepositoryLoadMonitor monitor = new RepositoryLoadMonitor();
+		sut.setRepositoryLoadMonitor(monitor);
+		IRepositoryLoaderListener listener = mock(IRepositoryLoaderListener.class);
+		sut.setRepositoryLoaderListener(listener);
+		load(sut, null, 200);
+
+		ArgumentCaptor<IRepositoryLoadStatistics> statistics = ArgumentCaptor
+				.forClass(IRepositoryLoadStatistics.class);
+		verify(listener).notifyLoadStatistics(statistics.capture());
+		// Root, 5 artists and 20 albums
+		assertEquals(26,
+				statistics.getValue().getCount(
+						RepositoryLoadStage.DIRECTORY_LISTING));
+		assertEquals(200,
+				statistics.getValue().getCount(RepositoryLoadStage.TAG_READING));
+		assertEquals(200,
+				statistics.getValue().getCount(
+						RepositoryLoadStage.FOLDER_STRUCTURE));
+		assertEquals(200,
+				statistics.getValue().getCount(
+						RepositoryLoadStage.REPOSITORY_FILLING));
+		assertEquals(0,
+				statistics.getValue().getCount(
+						RepositoryLoadStage.UP_TO_DATE_CHECK));
+		assertEquals(Integer.valueOf(200), statistics.getValue()
+				.getTagReadingCountByFormat().get("mp3"));
+		assertEquals(5, statistics.getValue().getSlowestFiles().size());
+		assertEquals(200, monitor.getTagsRead());
+		assertEquals(5, monitor.getSlowestFiles().length);
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() {
+		MemoryCheckpointStore store = new MemoryCheckpointStore();
+
+		TestRepositoryLoader interrupted = createLoader(1);
+		interrupted.setCheckpointStore(store);
+		interrupted.interruptAfter = 50;
+		IRepositoryTransaction transaction = mock(IRepositoryTransaction.class);
+		interrupted.start(transaction, this.folders, null, new Repository(
+				this.folders, mock(IStateRepository.class)));
+		assertEquals(50, store.checkpoint.getAudioFilesCount());
+
+		TestRepositoryLoader sut = createLoader(4);
+		sut.setCheckpointStore(store);
+		IFileManager fileManager = mock(IFileManager.class);
+		when(fileManager.isUpToDate(any(ILocalAudioObject.class), anyLong()))
+				.thenReturn(true);
+		sut.setFileManager(fileManager);
+		IRepositoryLoaderListener listener = mock(IRepositoryLoaderListener.class);
+		sut.setRepositoryLoaderListener(listener);
+		assertEquals(200, load(sut, null, 200).countFiles());
+
+		ArgumentCaptor<IRepositoryLoadStatistics> statistics = ArgumentCaptor
+				.forClass(IRepositoryLoadStatistics.class);
+		verify(listener).notifyLoadStatistics(statistics.capture());
+		assertEquals(150,
+				statistics.getValue().getCount(RepositoryLoadStage.TAG_READING));
+		assertNull(store.checkpoint);
+	}
+
+	private void setLastModified(final File dir, final long lastModified) {
+		for (File file : dir.listFiles()) {
+			if (file.isDirectory()) {
+				setLastModified(file, lastModified);
+			}
+		}
+		dir.setLastModified(lastModified);
+	}
+
+	private IRepository load(final int readerThreads) {
+		return load(readerThreads, null, 200);
+	}
+
+	private IRepository load(final int readerThreads,
+			final IRepository oldRepository, final int expectedFiles) {
+		return load(createLoader(readerThreads), oldRepository, expectedFiles);
+	}
+
+	private IRepository load(final TestRepositoryLoader sut,
+			final IRepository oldRepository, final int expectedFiles) {
+		IStateRepository stateRepository = mock(IStateRepository.class);
+		IRepository repository = new Repository(this.folders, stateRepository);
+		IRepositoryTransaction transaction = mock(IRepositoryTransaction.class);
+		sut.start(transaction, this.folders, oldRepository, repository);
+		verify(transaction).finishTransaction();
+		assertEquals(expectedFiles, sut.filesNotified);
+		return repository;
+	}
+
+	private TestRepositoryLoader createLoader(final int readerThreads) {
+		TestRepositoryLoader sut = new TestRepositoryLoader();
+		sut.setReaderThreads(readerThreads);
+		sut.setPendingFilesPerThread(2);
+		IStateNavigation stateNavigation = mock(IStateNavigation.class);
+		when(stateNavigation.getArtistViewMode()).thenReturn(
+				ArtistViewMode.ARTIST);
+		sut.setStateNavigation(stateNavigation);
+		IUnknownObjectChecker unknownObjectChecker = mock(IUnknownObjectChecker.class);
+		when(unknownObjectChecker.getUnknownArtist()).thenReturn("Unknown");
+		when(unknownObjectChecker.getUnknownAlbum()).thenReturn("Unknown");
+		when(unknownObjectChecker.getUnknownGenre()).thenReturn("Unknown");
+		when(unknownObjectChecker.getUnknownYear()).thenReturn("Unknown");
+		sut.setUnknownObjectChecker(unknownObjectChecker);
+		sut.setFileManager(mock(IFileManager.class));
+		sut.setLocalAudioObjectFactory(new ILocalAudioObjectFactory() {
+			@Override
+			public ILocalAudioObject getLocalAudioObject(final File file) {
+				return new AudioFile(FileUtils.getNormalizedPath(file));
+			}
+
+			@Override
+			public ILocalAudioObject getUnreadLocalAudioObject(final File file) {
+				return new AudioFile(FileUtils.getNormalizedPath(file));
+			}
+
+			@Override
+			public ILocalAudioObject readLocalAudioObject(
+					final ILocalAudioObject audioObject) {
+				return audioObject;
+			}
+
+			@Override
+			public ILocalAudioObject refreshAudioObject(
+					final ILocalAudioObject audioObject) {
+				return audioObject;
+			}
+		});
+		ILocalAudioObjectValidator localAudioObjectValidator = mock(ILocalAudioObjectValidator.class);
+		when(localAudioObjectValidator.isOneOfValidFormats(any(File.class)))
+				.then(new Answer<Boolean>() {
+					@Override
+					public Boolean answer(final InvocationOnMock invocation) {
+						return ((File) invocation.getArguments()[0]).getName()
+								.endsWith(".mp3");
+					}
+				});
+		sut.setLocalAudioObjectValidator(localAudioObjectValidator);
+		return sut;
+	}
+
+	private static class MemoryCheckpointStore extends
+			RepositoryCheckpointStore {
+
+		private RepositoryCheckpoint checkpoint;
+
+		@Override
+		RepositoryCheckpoint read(final List<File> folders) {
+			if (this.checkpoint != null) {
+				this.checkpoint.indexAudioFiles();
+			}
+			return this.checkpoint;
+		}
+
+		@Override
+		void write(final RepositoryCheckpoint checkpoint) {
+			this.checkpoint = checkpoint;
+		}
+
+		@Override
+		void delete() {
+			this.checkpoint = null;
+		}
+	}
+
+	private static class TestRepositoryLoader extends AbstractRepositoryLoader {
+
+		private int filesNotified;
+
+		private int filesLoadedBeforeReadingTags = -1;
+
+		private int progressNotifications;
+
+		private int interruptAfter;
+
+		private final List<Integer> filesNotifiedAtPath = new ArrayList<Integer>();
+
+		private final List<Integer> filesNotifiedAtProgress = new ArrayList<Integer>();
+
+		@Override
+		protected void execute() {
+			run();
+		}
+
+		@Override
+		protected void runTasksBeforeLoadRepository() {
+		}
+
+		@Override
+		protected void notifyCurrentPath(final String relativePath) {
+			this.filesNotifiedAtPath.add(this.filesNotified);
+		}
+
+		@Override
+		protected void notifyCurrentProgress() {
+			this.progressNotifications++;
+			this.filesNotifiedAtProgress.add(this.filesNotified);
+		}
+
+		@Override
+		protected void notifyFolderStructureLoaded() {
+			this.filesLoadedBeforeReadingTags = getFilesLoaded();
+		}
+
+		@Override
+		protected void notifyFileLoaded() {
+			this.filesNotified++;
+			if (this.filesNotified == this.interruptAfter) {
+				interruptLoad();
+			}
+		}
+
+		@Override
+		protected void notifyCurrentAlbum(final String artist,
+				final String album) {
+		}
+
+		@Override
+		protected void notifyFinishLoader() {
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import net.sourceforge.atunes.model.IAlbum;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+
+import org.junit.Test;
+
+public class ArtistTest {
+
+	private ILocalAudioObject track(final int trackNumber) {
+		ILocalAudioObject ao = mock(ILocalAudioObject.class);
+		when(ao.getTrackNumber()).thenReturn(trackNumber);
+		return ao;
+	}
+
+	@Test
+	public void testSnapshotsSharedUntilChange() {
+		Artist artist = new Artist("Artist");
+		IAlbum album = new Album(artist, "Album");
+		artist.addAlbum(album);
+		ILocalAudioObject first = track(1);
+		album.addAudioFile(first);
+
+		List<ILocalAudioObject> albumList = album.getAudioObjects();
+		List<ILocalAudioObject> artistList = artist.getAudioObjects();
+		assertSame(albumList, album.getAudioObjects());
+		assertSame(artistList, artist.getAudioObjects());
+		assertEquals(1, artistList.size());
+
+		album.addAudioFile(track(2));
+		assertNotSame(albumList, album.getAudioObjects());
+		assertEquals(2, album.getAudioObjects().size());
+		assertEquals(2, artist.getAudioObjects().size());
+		// Old snapshots don't change
+		assertEquals(1, artistList.size());
+
+		album.removeAudioFile(first);
+		assertEquals(1, artist.getAudioObjects().size());
+		artist.removeAlbum(album);
+		assertEquals(0, artist.getAudioObjects().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotNotModifiable() {
+		Artist artist = new Artist("Artist");
+		artist.addAlbum(new Album(artist, "Album"));
+		artist.getAudioObjects().add(track(1));
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.atunes.kernel.modules.statistics.AudioObjectStats;
+import net.sourceforge.atunes.kernel.modules.statistics.Statistics;
+import net.sourceforge.atunes.kernel.modules.statistics.StatisticsAlbum;
+import net.sourceforge.atunes.kernel.modules.tags.TagFactory;
+import net.sourceforge.atunes.model.IAudioObjectStatistics;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITag;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+
+/**
+ * Measures read and write throughput of object stores with a generated
+ * repository: repository cache, device repository and checkpoints (whole
+ * repository serialized), play lists and statistics. Kryo serialized
+ * stores are measured uncompressed and compressed
+ * 
+ * Usage: ObjectDataStoreBenchmark folder [tracks] [rounds]
+ */
+public final class ObjectDataStoreBenchmark {
+
+	private ObjectDataStoreBenchmark() {
+	}
+
+	public static void main(final String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out
+					.println("Usage: ObjectDataStoreBenchmark folder [tracks] [rounds]");
+			return;
+		}
+		LogManager.getRootLogger().setLevel(Level.OFF);
+		File folder = new File(args[0]);
+		int tracks = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		KryoFactory kryoFactory = new KryoFactory();
+		kryoFactory.setClasses(new ArrayList<String>());
+		IOSManager osManager = mock(IOSManager.class);
+		when(osManager.getUserConfigFolder()).thenReturn(
+				folder.getAbsolutePath());
+		when(osManager.getFileSeparator()).thenReturn(File.separator);
+		RepositoryCacheFile cacheFile = new RepositoryCacheFile();
+		cacheFile.setOsManager(osManager);
+		cacheFile.setKryoFactory(kryoFactory);
+		KryoSerializerService service = new KryoSerializerService();
+		service.setKryoFactory(kryoFactory);
+
+		Repository repository = createRepository(tracks);
+		List<AudioFile> playList = new ArrayList<AudioFile>();
+		Statistics statistics = new Statistics();
+		Map<String, IAudioObjectStatistics> stats = new HashMap<String, IAudioObjectStatistics>();
+		for (AudioFile file : getFiles(repository)) {
+			if (playList.size() < 1000) {
+				playList.add(file);
+			}
+			if (stats.size() < tracks / 5) {
+				// Played as statistics handler does
+				AudioObjectStats fileStats = new AudioObjectStats();
+				fileStats.increaseStatistics();
+				stats.put(file.getUrl(), fileStats);
+				statistics.getAudioFilesRanking().addItem(file.getUrl());
+				ITag tag = file.getTag();
+				statistics.getAlbumsRanking().addItem(
+						new StatisticsAlbum(tag.getArtist(), tag.getAlbum()));
+				statistics.getArtistsRanking().addItem(tag.getArtist());
+			}
+		}
+		statistics.setAudioFilesStats(stats);
+		statistics.setDifferentAudioFilesPlayed(stats.size());
+		statistics.setTotalPlays(stats.size());
+		System.out.println(tracks + " tracks");
+
+		for (int round = 1; round <= rounds; round++) {
+			System.out.println("Round " + round);
+			long start = System.nanoTime();
+			cacheFile.write(repository);
+			long writeTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			cacheFile.read();
+			print("Repository cache", cacheFile.length(), writeTime,
+					System.nanoTime() - start);
+
+			for (int level : new int[] { 0, 1 }) {
+				service.setCompressionLevel(level);
+				String suffix = level > 0 ? " (compressed)" : "";
+				measure(service, new File(folder, "device.dat"), repository,
+						"Device repository" + suffix);
+				measure(service, new File(folder, "playlists.dat"),
+						playList, "Play lists" + suffix);
+				measure(service, new File(folder, "statistics.dat"),
+						statistics, "Statistics" + suffix);
+			}
+		}
+	}
+
+	private static void measure(final KryoSerializerService service,
+			final File file, final Object object, final String name)
+			throws Exception {
+		long start = System.nanoTime();
+		service.writeObjectToFile(file.getAbsolutePath(), object);
+		long writeTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		service.readObjectFromFile(file.getAbsolutePath(), object.getClass());
+		print(name, file.length(), writeTime, System.nanoTime() - start);
+	}
+
+	private static void print(final String name, final long bytes,
+			final long writeTime, final long readTime) {
+		System.out.println("  " + name + ": " + bytes / 1024 + " KB, write "
+				+ writeTime / 1000000 + " ms (" + throughput(bytes, writeTime)
+				+ " MB/s), read " + readTime / 1000000 + " ms ("
+				+ throughput(bytes, readTime) + " MB/s)");
+	}
+
+	private static long throughput(final long bytes, final long nanos) {
+		return nanos > 0 ? bytes * 1000000000L / nanos / 1048576 : 0;
+	}
+
+	private static List<AudioFile> getFiles(final Repository repository) {
+		List<AudioFile> files = new ArrayList<AudioFile>();
+		for (Object file : repository.getFiles()) {
+			files.add((AudioFile) file);
+		}
+		return files;
+	}
+
+	private static Repository createRepository(final int tracks) {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		TagFactory tagFactory = new TagFactory();
+		for (int a = 0; a * 100 < tracks; a++) {
+			Artist artist = new Artist("Artist " + a);
+			repository.putArtist(artist);
+			for (int b = 0; b < 10 && a * 100 + b * 10 < tracks; b++) {
+				Album album = new Album(artist, "Album " + b);
+				artist.addAlbum(album);
+				for (int t = 0; t < 10 && a * 100 + b * 10 + t < tracks; t++) {
+					AudioFile file = new AudioFile("/music/Artist " + a
+							+ "/Album " + b + "/" + t + ".mp3");
+					ITag tag = tagFactory.getNewTag();
+					tag.setArtist(artist.getName());
+					tag.setAlbum(album.getName());
+					tag.setTitle("Title " + t);
+					tag.setTrackNumber(t + 1);
+					tag.setGenre("Rock");
+					tag.setYear(2000 + a % 20);
+					file.setTag(tag);
+					file.setDuration(200);
+					file.setBitrate(320);
+					file.setFrequency(44100);
+					repository.putFile(file);
+					album.addAudioFile(file);
+				}
+			}
+		}
+		return repository;
+	}
+}
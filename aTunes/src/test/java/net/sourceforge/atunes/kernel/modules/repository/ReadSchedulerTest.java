@@ -0,0 +1,68 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.atunes.kernel.modules.repository.ReadScheduler.ScheduledRead;
+
+import org.junit.Test;
+
+public class ReadSchedulerTest {
+
+	@Test
+	public void testReadOrder() {
+		File disk1 = new File("/disk1");
+		File disk2 = new File("/disk2");
+		List<File> folders = new ArrayList<File>();
+		folders.add(disk1);
+		folders.add(disk2);
+		ReadScheduler sut = new ReadScheduler(folders, 1);
+		sut.add(disk1, new AudioFile("/disk1/b/2.mp3"));
+		sut.add(disk1, new AudioFile("/disk1/a/1.mp3"));
+		sut.add(disk1, new AudioFile("/disk1/b/1.mp3"));
+		sut.add(disk2, new AudioFile("/disk2/a/1.mp3"));
+
+		List<ScheduledRead> order = sut.getReadOrder();
+		assertEquals(4, order.size());
+		assertEquals("/disk1/a/1.mp3", order.get(0).getAudio().getUrl());
+		assertEquals(disk1, order.get(0).getFolder());
+		assertEquals("/disk2/a/1.mp3", order.get(1).getAudio().getUrl());
+		assertEquals(disk2, order.get(1).getFolder());
+		assertEquals("/disk1/b/1.mp3", order.get(2).getAudio().getUrl());
+		assertEquals("/disk1/b/2.mp3", order.get(3).getAudio().getUrl());
+		assertEquals(0, sut.getReadOrder().size());
+	}
+
+	@Test
+	public void testOrderByName() {
+		List<ScannedAudioFile> files = new ArrayList<ScannedAudioFile>();
+		files.add(new ScannedAudioFile(new File("/a/track2.mp3"), 0, 0));
+		files.add(new ScannedAudioFile(new File("/a/track1.mp3"), 0, 0));
+		List<ScannedAudioFile> sorted = ReadScheduler.orderByName(files);
+		assertEquals("track1.mp3", sorted.get(0).getFile().getName());
+		assertEquals("track2.mp3", sorted.get(1).getFile().getName());
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITaskService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class RepositoryAutoRefresherTest {
+
+	private ITaskService taskService;
+
+	private RepositoryFolderWatcher watcher;
+
+	private RepositoryAutoRefresher sut;
+
+	@Before
+	public void init() {
+		this.taskService = mock(ITaskService.class);
+		this.watcher = mock(RepositoryFolderWatcher.class);
+		IStateRepository stateRepository = mock(IStateRepository.class);
+		when(stateRepository.getAutoRepositoryRefreshTime()).thenReturn(1);
+		this.sut = new RepositoryAutoRefresher();
+		this.sut.setTaskService(this.taskService);
+		this.sut.setStateRepository(stateRepository);
+		this.sut.setRepositoryFolderWatcher(this.watcher);
+		this.sut.setWatchFolders(true);
+		this.sut.setWatchInterval(10);
+	}
+
+	/**
+	 * Runs task scheduled last
+	 * 
+	 * @param scheduled
+	 *            number of tasks scheduled until now
+	 */
+	private void runScheduled(final int scheduled) {
+		ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+		verify(this.taskService, times(scheduled)).submitOnce(
+				eq("RepositoryFolderWatcher"), anyLong(), task.capture());
+		task.getValue().run();
+	}
+
+	@Test
+	public void testWatchIntervalGrowsUntilChangesFound() {
+		when(this.watcher.checkFolders()).thenReturn(false, false, false,
+				false, true);
+		this.sut.start();
+		for (int i = 1; i <= 5; i++) {
+			runScheduled(i);
+		}
+
+		ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+		verify(this.taskService, times(6)).submitOnce(
+				eq("RepositoryFolderWatcher"), delays.capture(),
+				any(Runnable.class));
+		assertEquals(Arrays.asList(10L, 20L, 40L, 60L, 60L, 10L),
+				delays.getAllValues());
+	}
+
+	@Test
+	public void testNotScheduledAgainWhenStopped() {
+		this.sut.start();
+		this.sut.stop();
+		runScheduled(1);
+
+		verify(this.taskService, times(1)).submitOnce(
+				eq("RepositoryFolderWatcher"), anyLong(), any(Runnable.class));
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.kernel.modules.tags.TagFactory;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITag;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryCacheFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private KryoFactory kryoFactory;
+
+	private RepositoryCacheFile sut;
+
+	@Before
+	public void init() {
+		IOSManager osManager = mock(IOSManager.class);
+		when(osManager.getUserConfigFolder()).thenReturn(
+				this.folder.getRoot().getAbsolutePath());
+		when(osManager.getFileSeparator()).thenReturn(File.separator);
+		this.kryoFactory = new KryoFactory();
+		List<String> classes = new ArrayList<String>();
+		classes.add(AudioFile.class.getName());
+		this.kryoFactory.setClasses(classes);
+		this.sut = new RepositoryCacheFile();
+		this.sut.setOsManager(osManager);
+		this.sut.setKryoFactory(this.kryoFactory);
+	}
+
+	private Repository createRepository() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		Artist artist = new Artist("Artist");
+		repository.putArtist(artist);
+		Album album = new Album(artist, "Album");
+		artist.addAlbum(album);
+		for (int i = 1; i <= 3; i++) {
+			AudioFile file = new AudioFile("/music/Artist/Album/0" + i
+					+ ".mp3");
+			ITag tag = new TagFactory().getNewTag();
+			tag.setTitle("Title " + i);
+			tag.setTrackNumber(i);
+			file.setTag(tag);
+			file.setDuration(i * 100);
+			repository.putFile(file);
+			album.addAudioFile(file);
+		}
+		return repository;
+	}
+
+	@Test
+	public void testTagsReadWhenUsed() {
+		assertNull(this.sut.read());
+		assertTrue(this.sut.write(createRepository()));
+
+		Repository read = this.sut.read();
+		read.setStateRepository(mock(IStateRepository.class));
+		assertEquals(3, read.countFiles());
+		AudioFile file = (AudioFile) read.getFile("/music/Artist/Album/02.mp3");
+		assertSame(file, read.getArtist("Artist").getAlbum("Album")
+				.getAudioObjects().get(1));
+		assertEquals(200, file.getDuration());
+		assertTrue(file.tagPending);
+		assertEquals("Title 2", file.getTitle());
+		assertFalse(file.tagPending);
+		assertTrue(((AudioFile) read.getFile("/music/Artist/Album/01.mp3")).tagPending);
+
+		file.releaseTag();
+		assertTrue(file.tagPending);
+		assertEquals(2, file.getTrackNumber());
+	}
+
+	@Test
+	public void testTagsCopiedWhenWrittenAgain() {
+		assertTrue(this.sut.write(createRepository()));
+		Repository read = this.sut.read();
+		AudioFile changed = (AudioFile) read
+				.getFile("/music/Artist/Album/03.mp3");
+		ITag tag = new TagFactory().getNewTag();
+		tag.setTitle("New title");
+		changed.setTag(tag);
+
+		assertTrue(this.sut.write(read));
+		// Files not used still read their tags from file, now from new one
+		AudioFile notUsed = (AudioFile) read
+				.getFile("/music/Artist/Album/01.mp3");
+		assertTrue(notUsed.tagPending);
+		assertEquals("Title 1", notUsed.getTitle());
+
+		Repository readAgain = this.sut.read();
+		assertEquals("Title 1", readAgain.getFile("/music/Artist/Album/01.mp3")
+				.getTitle());
+		assertEquals("New title",
+				readAgain.getFile("/music/Artist/Album/03.mp3").getTitle());
+	}
+
+	@Test
+	public void testWrittenAgainWhileRecordsOfPreviousFileReferenced() {
+		assertTrue(this.sut.write(createRepository()));
+		File previousFile = this.sut.getFiles().get(0);
+		AudioFile referenced = (AudioFile) this.sut.read().getFile(
+				"/music/Artist/Album/01.mp3");
+		assertTrue(referenced.tagPending);
+
+		// Referenced file is not part of repository written, so it keeps
+		// reading its tag from previous file
+		Repository repository = createRepository();
+		ITag tag = new TagFactory().getNewTag();
+		tag.setTitle("New title");
+		((AudioFile) repository.getFile("/music/Artist/Album/01.mp3"))
+				.setTag(tag);
+		assertTrue(this.sut.write(repository));
+
+		List<File> files = this.sut.getFiles();
+		assertEquals(1, files.size());
+		assertFalse(previousFile.equals(files.get(0)));
+		assertEquals("Title 1", referenced.getTitle());
+		assertEquals("New title",
+				this.sut.read().getFile("/music/Artist/Album/01.mp3")
+						.getTitle());
+	}
+
+	@Test
+	public void testPreviousFileNotDeletedIgnoredAndDeletedLater()
+			throws IOException {
+		assertTrue(this.sut.write(createRepository()));
+		// Previous version of file, not deleted when it was replaced
+		File previousFile = new File(this.folder.getRoot(),
+				Constants.CACHE_REPOSITORY_NAME);
+		assertTrue(previousFile.createNewFile());
+		assertEquals(2, this.sut.getFiles().size());
+
+		Repository read = this.sut.read();
+		assertNotNull(read);
+		assertEquals("Title 1", read.getFile("/music/Artist/Album/01.mp3")
+				.getTitle());
+		assertFalse(previousFile.exists());
+		assertEquals(1, this.sut.getFiles().size());
+	}
+
+	@Test
+	public void testLongTextsKeptWhenWrittenAgainAndOutOfRepositoryCache()
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("Line ").append(i).append('\n');
+		}
+		String lyrics = sb.toString();
+		Repository repository = createRepository();
+		repository.getFile("/music/Artist/Album/01.mp3").getTag()
+				.setLyrics(lyrics);
+		assertTrue(this.sut.write(repository));
+
+		Repository read = this.sut.read();
+		AudioFile file = (AudioFile) read.getFile("/music/Artist/Album/01.mp3");
+		assertEquals(lyrics, file.getLyrics());
+		// Written again with tag read
+		assertTrue(this.sut.write(read));
+		assertEquals(lyrics,
+				this.sut.read().getFile("/music/Artist/Album/01.mp3")
+						.getLyrics());
+
+		// Files stored out of repository cache keep their texts
+		List<AudioFile> files = new ArrayList<AudioFile>();
+		files.add(file);
+		KryoSerializerService kryo = new KryoSerializerService();
+		kryo.setKryoFactory(this.kryoFactory);
+		String fileName = new File(this.folder.getRoot(), "files.dat")
+				.getAbsolutePath();
+		assertTrue(kryo.writeObjectToFile(fileName, files));
+		for (File cacheFile : this.sut.getFiles()) {
+			assertTrue(cacheFile.delete());
+		}
+		@SuppressWarnings("unchecked")
+		List<AudioFile> filesRead = (List<AudioFile>) kryo.readObjectFromFile(
+				fileName, ArrayList.class);
+		assertEquals(lyrics, filesRead.get(0).getLyrics());
+	}
+
+	@Test
+	public void testTagsSerializedWithFilesOutOfRepositoryCache()
+			throws IOException {
+		assertTrue(this.sut.write(createRepository()));
+		List<AudioFile> files = new ArrayList<AudioFile>();
+		files.add((AudioFile) this.sut.read().getFile(
+				"/music/Artist/Album/01.mp3"));
+
+		KryoSerializerService kryo = new KryoSerializerService();
+		kryo.setKryoFactory(this.kryoFactory);
+		String fileName = new File(this.folder.getRoot(), "files.dat")
+				.getAbsolutePath();
+		assertTrue(kryo.writeObjectToFile(fileName, files));
+		@SuppressWarnings("unchecked")
+		List<AudioFile> read = (List<AudioFile>) kryo.readObjectFromFile(
+				fileName, ArrayList.class);
+		assertFalse(read.get(0).tagPending);
+		assertEquals("Title 1", read.get(0).getTitle());
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.atunes.kernel.modules.tags.TagFactory;
+import net.sourceforge.atunes.model.ArtistViewMode;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.IStateNavigation;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITag;
+import net.sourceforge.atunes.model.IUnknownObjectChecker;
+
+import org.junit.Test;
+
+public class RepositoryFillerTest {
+
+	private static final int THREADS = 8;
+
+	private static final int FILES_PER_THREAD = 500;
+
+	@Test
+	public void testConcurrentFill() throws Exception {
+		final File root = new File("/music");
+		List<File> folders = new ArrayList<File>();
+		folders.add(root);
+		final Repository repository = new Repository(folders,
+				mock(IStateRepository.class));
+		IStateNavigation stateNavigation = mock(IStateNavigation.class);
+		when(stateNavigation.getArtistViewMode()).thenReturn(
+				ArtistViewMode.ARTIST);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		// Threads share the filler, as reader threads of a loader do
+		final RepositoryFiller filler = new RepositoryFiller(repository,
+				stateNavigation, mock(IUnknownObjectChecker.class),
+				mock(IFileManager.class));
+		for (int i = 0; i < THREADS; i++) {
+			final List<AudioFile> files = createAudioFiles(i);
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (AudioFile file : files) {
+						filler.addAudioFile(file, root, "artist/album", 1);
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+
+		int files = THREADS * FILES_PER_THREAD;
+		assertEquals(files, repository.countFiles());
+		assertEquals(files, repository.getTotalSizeInBytes());
+		assertEquals(10, repository.countArtists());
+		int albumFiles = 0;
+		for (int artist = 0; artist < 10; artist++) {
+			assertEquals(5, repository.getArtist("artist" + artist).getAlbums()
+					.size());
+			albumFiles += repository.getArtist("artist" + artist)
+					.getAudioObjects().size();
+		}
+		assertEquals(files, albumFiles);
+		assertEquals(50, repository.getAlbumStructure().size());
+		assertEquals(files / 2, repository.getGenre("genre0").size());
+		assertEquals(files / 2, repository.getYear("2001").size());
+		assertEquals(1, repository.getFolders().size());
+		assertEquals(files, repository.getFolder(root.getPath())
+				.getFolder("artist").getFolder("album").size());
+	}
+
+	private List<AudioFile> createAudioFiles(final int thread) {
+		TagFactory tagFactory = new TagFactory();
+		List<AudioFile> files = new ArrayList<AudioFile>();
+		for (int i = 0; i < FILES_PER_THREAD; i++) {
+			ITag tag = tagFactory.getNewTag();
+			tag.setArtist("artist" + i % 10);
+			tag.setAlbum("album" + i / 10 % 5);
+			tag.setGenre("genre" + i % 2);
+			tag.setYear(2000 + i % 2);
+			AudioFile file = new AudioFile("/music/artist/album/" + thread
+					+ "_" + i + ".mp3");
+			file.setTag(tag);
+			files.add(file);
+		}
+		return files;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.atunes.model.DirectoryFingerprint;
+import net.sourceforge.atunes.model.IBeanFactory;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.model.ILocalAudioObjectFactory;
+import net.sourceforge.atunes.model.ILocalAudioObjectValidator;
+import net.sourceforge.atunes.model.INavigationHandler;
+import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.utils.FileUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class RepositoryFolderWatcherTest {
+
+	/**
+	 * Modification time of directories when fingerprints are taken
+	 */
+	private static final long TIME = 1000000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File root;
+
+	private File album;
+
+	private Repository repository;
+
+	private RepositoryHandler repositoryHandler;
+
+	private RepositoryAddService addService;
+
+	private LocalAudioObjectRefresher refresher;
+
+	private RepositoryRemover remover;
+
+	private RepositoryReader reader;
+
+	private IFileManager fileManager;
+
+	private ILocalAudioObjectValidator validator;
+
+	private RepositoryFolderWatcher watcher;
+
+	@Before
+	public void init() throws IOException {
+		this.root = this.folder.newFolder("music");
+		this.album = new File(this.root, "Album");
+		this.album.mkdir();
+		new File(this.album, "01.mp3").createNewFile();
+		new File(this.album, "02.mp3").createNewFile();
+
+		this.validator = mock(ILocalAudioObjectValidator.class);
+		when(this.validator.isOneOfValidFormats(any(File.class))).thenAnswer(
+				new Answer<Boolean>() {
+					@Override
+					public Boolean answer(final InvocationOnMock invocation) {
+						return ((File) invocation.getArguments()[0]).getName()
+								.endsWith(".mp3");
+					}
+				});
+		this.repository = new Repository(Collections.singletonList(this.root),
+				mock(IStateRepository.class));
+		this.repository.putFile(new AudioFile(new File(this.album, "01.mp3")
+				.getAbsolutePath()));
+		this.repository.putFile(new AudioFile(new File(this.album, "02.mp3")
+				.getAbsolutePath()));
+		setLastModified(this.album, TIME);
+		setLastModified(this.root, TIME);
+		takeFingerprint(this.root);
+		takeFingerprint(this.album);
+
+		this.addService = mock(RepositoryAddService.class);
+		this.refresher = mock(LocalAudioObjectRefresher.class);
+		this.remover = mock(RepositoryRemover.class);
+		this.reader = mock(RepositoryReader.class);
+		IBeanFactory beanFactory = mock(IBeanFactory.class);
+		when(beanFactory.getBean(RepositoryRemover.class)).thenReturn(
+				this.remover);
+		when(beanFactory.getBean(RepositoryReader.class)).thenReturn(
+				this.reader);
+		when(beanFactory.getBean(RepositoryAddService.class)).thenReturn(
+				this.addService);
+		when(beanFactory.getBean(LocalAudioObjectRefresher.class)).thenReturn(
+				this.refresher);
+		when(beanFactory.getBean(RepositoryLoadedActions.class)).thenReturn(
+				mock(RepositoryLoadedActions.class));
+		ILocalAudioObjectFactory factory = mock(ILocalAudioObjectFactory.class);
+		when(factory.getLocalAudioObject(any(File.class))).thenAnswer(
+				new Answer<ILocalAudioObject>() {
+					@Override
+					public ILocalAudioObject answer(
+							final InvocationOnMock invocation) {
+						return new AudioFile(((File) invocation.getArguments()[0])
+								.getAbsolutePath());
+					}
+				});
+		this.fileManager = mock(IFileManager.class);
+		when(this.fileManager.isUpToDate(any(ILocalAudioObject.class), anyLong()))
+				.thenReturn(true);
+
+		this.repositoryHandler = new RepositoryHandler();
+		this.repositoryHandler.setNavigationHandler(mock(INavigationHandler.class));
+		this.repositoryHandler.setBeanFactory(beanFactory);
+		this.repositoryHandler.setRepository(this.repository);
+
+		this.watcher = new RepositoryFolderWatcher();
+		this.watcher.setRepositoryHandler(this.repositoryHandler);
+		this.watcher.setBeanFactory(beanFactory);
+		this.watcher.setLocalAudioObjectFactory(factory);
+		this.watcher.setLocalAudioObjectValidator(this.validator);
+		this.watcher.setFileManager(this.fileManager);
+		this.watcher.setMaxChangedDirectories(10);
+	}
+
+	private void setLastModified(final File dir, final long lastModified) {
+		assertTrue(dir.setLastModified(lastModified));
+	}
+
+	private void takeFingerprint(final File dir) {
+		this.repository.putDirectoryFingerprint(FileUtils
+				.getNormalizedPath(dir),
+				DirectoryContent.read(dir, this.validator, true)
+						.getFingerprint());
+	}
+
+	private IRepository getRepository() {
+		return this.repositoryHandler.getRepository();
+	}
+
+	private DirectoryFingerprint getFingerprint(final File dir) {
+		return getRepository().getDirectoryFingerprint(FileUtils
+				.getNormalizedPath(dir));
+	}
+
+	private ILocalAudioObject getFile(final File file) {
+		return this.repository.getFile(FileUtils.getNormalizedPath(file));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<ILocalAudioObject> captureFiles(
+			final ArgumentCaptor<List> captor) {
+		return captor.getValue();
+	}
+
+	@Test
+	public void testNothingAppliedWithoutChanges() {
+		this.watcher.run();
+		this.watcher.run();
+		assertSame(this.repository, getRepository());
+	}
+
+	@Test
+	public void testAddedFileAppliedWhenDirectoryStable() throws IOException {
+		File added = new File(this.album, "03.mp3");
+		added.createNewFile();
+		setLastModified(this.album, TIME + 10000);
+
+		// Directory could still be changing
+		this.watcher.run();
+		assertSame(this.repository, getRepository());
+
+		this.watcher.run();
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(this.addService).addFilesToRepositoryInsideTransaction(
+				any(Repository.class), captor.capture());
+		List<ILocalAudioObject> files = captureFiles(captor);
+		assertEquals(1, files.size());
+		assertEquals(added.getAbsolutePath(), files.get(0).getUrl());
+		assertNotSame(this.repository, getRepository());
+		assertTrue(getFingerprint(this.album).matches(TIME + 10000));
+	}
+
+	@Test
+	public void testChangingDirectoryNotApplied() throws IOException {
+		new File(this.album, "03.mp3").createNewFile();
+		setLastModified(this.album, TIME + 10000);
+		this.watcher.run();
+		new File(this.album, "04.mp3").createNewFile();
+		setLastModified(this.album, TIME + 20000);
+		this.watcher.run();
+		assertSame(this.repository, getRepository());
+
+		this.watcher.run();
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(this.addService).addFilesToRepositoryInsideTransaction(
+				any(Repository.class), captor.capture());
+		assertEquals(2, captureFiles(captor).size());
+	}
+
+	@Test
+	public void testModifiedFileRefreshed() {
+		ILocalAudioObject modified = getFile(new File(this.album, "01.mp3"));
+		when(this.fileManager.isUpToDate(eq(modified), anyLong()))
+				.thenReturn(false);
+		setLastModified(this.album, TIME + 10000);
+
+		this.watcher.run();
+		this.watcher.run();
+		verify(this.refresher).refreshFile(getRepository(), modified);
+		verify(this.addService, never()).addFilesToRepositoryInsideTransaction(
+				any(Repository.class), anyListOf(ILocalAudioObject.class));
+	}
+
+	@Test
+	public void testRemovedFileRemoved() {
+		File removed = new File(this.album, "02.mp3");
+		ILocalAudioObject ao = getFile(removed);
+		assertTrue(removed.delete());
+		setLastModified(this.album, TIME + 10000);
+
+		this.watcher.run();
+		this.watcher.run();
+		verify(this.remover).deleteFile(ao);
+		verify(this.remover, never()).deleteFile(
+				getFile(new File(this.album, "01.mp3")));
+		assertTrue(getFingerprint(this.album).matches(TIME + 10000));
+	}
+
+	@Test
+	public void testRemovedDirectoryFingerprintsRemoved() throws IOException {
+		File cd = new File(this.album, "CD1");
+		cd.mkdir();
+		File inCd = new File(cd, "03.mp3");
+		inCd.createNewFile();
+		this.repository.putFile(new AudioFile(inCd.getAbsolutePath()));
+		setLastModified(cd, TIME);
+		setLastModified(this.album, TIME);
+		takeFingerprint(this.album);
+		takeFingerprint(cd);
+		ILocalAudioObject removed = getFile(inCd);
+
+		assertTrue(inCd.delete());
+		assertTrue(cd.delete());
+		for (File file : this.album.listFiles()) {
+			file.delete();
+		}
+		assertTrue(this.album.delete());
+		setLastModified(this.root, TIME + 10000);
+
+		this.watcher.run();
+		this.watcher.run();
+		verify(this.remover).deleteFile(removed);
+		verify(this.remover).deleteFile(
+				getFile(new File(this.album, "01.mp3")));
+		verify(this.remover).deleteFile(
+				getFile(new File(this.album, "02.mp3")));
+		assertNull(getFingerprint(this.album));
+		assertNull(getFingerprint(cd));
+		assertEquals(0, getFingerprint(this.root).getDirectories().length);
+
+		// Nothing left to apply
+		IRepository applied = getRepository();
+		this.watcher.run();
+		this.watcher.run();
+		assertSame(applied, getRepository());
+	}
+
+	@Test
+	public void testNewDirectoryNotReadAgain() throws IOException {
+		// Modification time is too recent to take a fingerprint while reading
+		// repository, but it didn't change between runs
+		File dir = new File(this.root, "New");
+		dir.mkdir();
+		new File(dir, "01.mp3").createNewFile();
+		setLastModified(this.root, TIME + 10000);
+
+		this.watcher.run();
+		this.watcher.run();
+		verify(this.addService).addFilesToRepositoryInsideTransaction(
+				any(Repository.class), anyListOf(ILocalAudioObject.class));
+		assertNotNull(getFingerprint(dir));
+
+		IRepository applied = getRepository();
+		this.watcher.run();
+		this.watcher.run();
+		assertSame(applied, getRepository());
+	}
+
+	@Test
+	public void testRepositoryRefreshedWhenTooManyDirectoriesChanged() {
+		this.watcher.setMaxChangedDirectories(1);
+		setLastModified(this.album, TIME + 10000);
+		setLastModified(this.root, TIME + 10000);
+
+		this.watcher.run();
+		verify(this.reader, never()).refresh(any(IRepository.class));
+		this.watcher.run();
+		verify(this.reader).refresh(this.repository);
+		assertSame(this.repository, getRepository());
+	}
+}
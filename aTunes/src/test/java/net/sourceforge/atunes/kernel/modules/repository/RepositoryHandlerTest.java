@@ -21,18 +21,26 @@
 package net.sourceforge.atunes.kernel.modules.repository;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import net.sourceforge.atunes.model.IArtist;
+import net.sourceforge.atunes.model.IBeanFactory;
 import net.sourceforge.atunes.model.ILocalAudioObject;
 import net.sourceforge.atunes.model.INavigationHandler;
 import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.model.IRepositoryListener;
+import net.sourceforge.atunes.model.IStateRepository;
 import net.sourceforge.atunes.model.ITrackInfo;
 
 import org.junit.Before;
@@ -147,4 +155,58 @@ public class RepositoryHandlerTest {
 		verify(t1).setAvailable(true);
 		verify(t2).setAvailable(false);
 	}
+
+	@Test
+	public void testTransactionPublishesNewVersion() throws InterruptedException {
+		IBeanFactory beanFactory = mock(IBeanFactory.class);
+		IRepositoryListener listener = mock(IRepositoryListener.class);
+		when(beanFactory.getBeans(IRepositoryListener.class)).thenReturn(
+				Collections.singletonList(listener));
+		this.sut.setBeanFactory(beanFactory);
+		final Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		this.sut.setRepository(repository);
+
+		this.sut.startTransaction();
+		this.sut.startTransaction();
+		final IRepository nextVersion = this.sut.getRepository();
+		assertNotSame(repository, nextVersion);
+		nextVersion.putFile(new AudioFile("/music/01.mp3"));
+
+		// Other threads keep reading published version
+		final List<IRepository> read = new ArrayList<IRepository>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				read.add(RepositoryHandlerTest.this.sut.getRepository());
+			}
+		};
+		reader.start();
+		reader.join();
+		assertSame(repository, read.get(0));
+
+		// Nested transaction doesn't publish
+		this.sut.endTransaction();
+		assertSame(nextVersion, this.sut.getRepository());
+		this.sut.endTransaction();
+		assertSame(nextVersion, this.sut.getRepository());
+		assertEquals(0, repository.countFiles());
+		assertEquals(1, nextVersion.countFiles());
+		verify(listener).repositoryChanged(nextVersion);
+	}
+
+	@Test
+	public void testRemoveOutsideTransactionPublishesNewVersion() {
+		this.sut.setBeanFactory(mock(IBeanFactory.class));
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		IArtist artist = repository.putArtistIfAbsent(new Artist("Artist"));
+		this.sut.setRepository(repository);
+
+		this.sut.removeArtist(artist);
+		assertNotSame(repository, this.sut.getRepository());
+		assertNull(this.sut.getRepository().getArtist("Artist"));
+		// Published version is not changed
+		assertSame(artist, repository.getArtist("Artist"));
+	}
 }
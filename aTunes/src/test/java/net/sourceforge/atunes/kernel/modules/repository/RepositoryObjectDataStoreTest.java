@@ -0,0 +1,241 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.model.IFileManager;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IRepository;
+import net.sourceforge.atunes.model.IStateNavigation;
+import net.sourceforge.atunes.model.IStateRepository;
+import net.sourceforge.atunes.model.ITaskService;
+import net.sourceforge.atunes.model.IUnknownObjectChecker;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+public class RepositoryObjectDataStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IOSManager osManager;
+
+	private KryoFactory kryoFactory;
+
+	private KryoSerializerService kryoSerializerService;
+
+	private ITaskService taskService;
+
+	private File journalFile;
+
+	@Before
+	public void init() {
+		this.osManager = mock(IOSManager.class);
+		when(this.osManager.getUserConfigFolder()).thenReturn(
+				this.folder.getRoot().getAbsolutePath());
+		when(this.osManager.getFileSeparator()).thenReturn(File.separator);
+		this.kryoFactory = new KryoFactory();
+		this.kryoFactory.setClasses(new ArrayList<String>());
+		this.kryoSerializerService = new KryoSerializerService();
+		this.kryoSerializerService.setKryoFactory(this.kryoFactory);
+		this.taskService = mock(ITaskService.class);
+		this.journalFile = new File(this.folder.getRoot(),
+				Constants.CACHE_REPOSITORY_JOURNAL_NAME);
+	}
+
+	private RepositoryObjectDataStore newStore() {
+		RepositoryJournal journal = new RepositoryJournal();
+		journal.setOsManager(this.osManager);
+		journal.setKryoSerializerService(this.kryoSerializerService);
+		IUnknownObjectChecker checker = mock(IUnknownObjectChecker.class);
+		when(checker.getUnknownArtist()).thenReturn("Unknown Artist");
+		when(checker.getUnknownAlbum()).thenReturn("Unknown Album");
+		when(checker.getUnknownGenre()).thenReturn("Unknown Genre");
+		when(checker.getUnknownYear()).thenReturn("Unknown Year");
+		RepositoryCacheFile cacheFile = new RepositoryCacheFile();
+		cacheFile.setOsManager(this.osManager);
+		cacheFile.setKryoFactory(this.kryoFactory);
+		RepositoryObjectDataStore store = new RepositoryObjectDataStore();
+		store.setRepositoryCacheFile(cacheFile);
+		store.setStateRepository(mock(IStateRepository.class));
+		store.setRepositoryJournal(journal);
+		store.setStateNavigation(mock(IStateNavigation.class));
+		store.setUnknownObjectChecker(checker);
+		store.setFileManager(mock(IFileManager.class));
+		store.setTaskService(this.taskService);
+		return store;
+	}
+
+	private Repository newRepository() {
+		File root = new File(this.folder.getRoot(), "music");
+		Repository repository = new Repository(Collections.singletonList(root),
+				mock(IStateRepository.class));
+		repository.putFile(new AudioFile(new File(root, "Album/01.mp3")
+				.getAbsolutePath()));
+		repository.putFile(new AudioFile(new File(root, "Album/02.mp3")
+				.getAbsolutePath()));
+		return repository;
+	}
+
+	@Test
+	public void testChangesAppendedToJournal() {
+		RepositoryObjectDataStore store = newStore();
+		Repository repository = newRepository();
+		store.write(repository);
+		assertFalse(this.journalFile.exists());
+
+		Repository next = repository.nextVersion();
+		String added = new File(this.folder.getRoot(), "music/Other/01.mp3")
+				.getAbsolutePath();
+		String removed = new File(this.folder.getRoot(), "music/Album/01.mp3")
+				.getAbsolutePath();
+		next.putFile(new AudioFile(added));
+		next.removeFile(removed);
+		store.write(next);
+		assertTrue(this.journalFile.exists());
+
+		IRepository read = newStore().read();
+		assertEquals(2, read.countFiles());
+		assertNotNull(read.getFile(added));
+		assertNull(read.getFile(removed));
+		// Structures are built again from files
+		assertEquals(1, read.countArtists());
+		verify(this.taskService).submitNow(anyString(), any(Runnable.class));
+	}
+
+	@Test
+	public void testChangesOfVersionNotStoredAppendedWithNextOne() {
+		RepositoryObjectDataStore store = newStore();
+		Repository repository = newRepository();
+		store.write(repository);
+
+		String removed = new File(this.folder.getRoot(), "music/Album/01.mp3")
+				.getAbsolutePath();
+		String added = new File(this.folder.getRoot(), "music/Other/01.mp3")
+				.getAbsolutePath();
+		Repository next = repository.nextVersion();
+		next.removeFile(removed);
+		// Only last version is stored
+		Repository last = next.nextVersion();
+		last.putFile(new AudioFile(added));
+		store.write(last);
+		assertTrue(this.journalFile.exists());
+
+		IRepository read = newStore().read();
+		assertEquals(2, read.countFiles());
+		assertNull(read.getFile(removed));
+		assertNotNull(read.getFile(added));
+	}
+
+	@Test
+	public void testTotalsOfLastChangesRead() {
+		RepositoryObjectDataStore store = newStore();
+		Repository repository = newRepository();
+		repository.addSizeInBytes(100);
+		repository.addDurationInSeconds(10);
+		store.write(repository);
+
+		Repository next = repository.nextVersion();
+		next.putFile(new AudioFile(new File(this.folder.getRoot(),
+				"music/Other/01.mp3").getAbsolutePath()));
+		next.addSizeInBytes(50);
+		next.addDurationInSeconds(5);
+		store.write(next);
+		Repository last = next.nextVersion();
+		last.removeFile(new File(this.folder.getRoot(), "music/Album/01.mp3")
+				.getAbsolutePath());
+		last.removeSizeInBytes(30);
+		last.removeDurationInSeconds(3);
+		store.write(last);
+
+		IRepository read = newStore().read();
+		assertEquals(120, read.getTotalSizeInBytes());
+		assertEquals(12, read.getTotalDurationInSeconds());
+	}
+
+	@Test
+	public void testCompactedWhenFirstRecordDamaged() throws IOException {
+		RepositoryObjectDataStore store = newStore();
+		Repository repository = newRepository();
+		store.write(repository);
+		Repository next = repository.nextVersion();
+		next.removeFile(new File(this.folder.getRoot(), "music/Album/01.mp3")
+				.getAbsolutePath());
+		store.write(next);
+
+		// Only record of journal was not completely written
+		RandomAccessFile file = new RandomAccessFile(this.journalFile, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+
+		ArgumentCaptor<Runnable> compact = ArgumentCaptor
+				.forClass(Runnable.class);
+		store = newStore();
+		assertEquals(2, store.read().countFiles());
+		verify(this.taskService).submitNow(anyString(), compact.capture());
+		compact.getValue().run();
+		assertFalse(this.journalFile.exists());
+	}
+
+	@Test
+	public void testWholeRepositoryStoredWhenJournalFull() {
+		RepositoryObjectDataStore store = newStore();
+		store.setMaxJournalSize(0);
+		Repository repository = newRepository();
+		store.write(repository);
+
+		Repository next = repository.nextVersion();
+		next.removeFile(new File(this.folder.getRoot(), "music/Album/01.mp3")
+				.getAbsolutePath());
+		store.write(next);
+		assertTrue(this.journalFile.exists());
+
+		Repository last = next.nextVersion();
+		last.removeFile(new File(this.folder.getRoot(), "music/Album/02.mp3")
+				.getAbsolutePath());
+		store.write(last);
+		assertFalse(this.journalFile.exists());
+		assertEquals(0, newStore().read().countFiles());
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package net.sourceforge.atunes.kernel.modules.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.Collections;
+
+import net.sourceforge.atunes.model.IAlbum;
+import net.sourceforge.atunes.model.ILocalAudioObject;
+import net.sourceforge.atunes.model.IStateRepository;
+
+import org.junit.Test;
+
+public class RepositoryTest {
+
+	@Test
+	public void testAlbumStructure() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		Artist artist = new Artist("Artist");
+		repository.putArtist(artist);
+		IAlbum album1 = new Album(artist, "Album 1");
+		IAlbum album2 = new Album(artist, "Album 2");
+		artist.addAlbum(album1);
+		repository.putAlbum(album1);
+		artist.addAlbum(album2);
+		repository.putAlbum(album2);
+
+		assertSame(album1, repository.getAlbumStructure().get("Album 1 (Artist)"));
+		assertSame(repository.getAlbumStructure(),
+				repository.getAlbumStructure());
+
+		artist.removeAlbum(album1);
+		repository.removeAlbum(album1);
+		assertEquals(1, repository.getAlbumStructure().size());
+
+		repository.removeArtist(artist);
+		assertTrue(repository.getAlbumStructure().isEmpty());
+	}
+
+	@Test
+	public void testAlbumStructureBuiltFromArtists() {
+		// As happens with a repository read from cache
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		Artist artist = new Artist("Artist");
+		repository.putArtist(artist);
+		artist.addAlbum(new Album(artist, "Album"));
+		assertEquals(1, repository.getAlbumStructure().size());
+	}
+
+	@Test
+	public void testCaseInsensitiveKeys() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		Artist artist = new Artist("The Artist");
+		repository.putArtist(artist);
+		assertSame(artist, repository.getArtist(new String("THE ARTIST")));
+		assertSame(artist, repository.getArtist("the artist"));
+		assertTrue(repository.getArtistStructure().containsKey("the artist"));
+		// Lower case key is created once
+		assertSame(RepositoryStructure.getKey("The Artist", false),
+				RepositoryStructure.getKey(new String("The Artist"), false));
+		assertSame(artist.getName(),
+				RepositoryStructure.getKey(artist.getName(), true));
+		repository.removeArtist(new Artist("the ARTIST"));
+		assertEquals(0, repository.countArtists());
+	}
+
+	@Test
+	public void testFilesIndexedByFolder() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		AudioFile file1 = new AudioFile("/music/Artist/Album/01.mp3");
+		AudioFile file2 = new AudioFile("/music/Artist/Album/02.mp3");
+		AudioFile file3 = new AudioFile("/music/Artist/Other/01.mp3");
+		repository.putFile(file1);
+		repository.putFile(file2);
+		repository.putFile(file3);
+		repository.putFile(new AudioFile("/music/Artist/Album/01.mp3"));
+
+		// Files of the same folder share folder path
+		assertSame(file1.folderPath, file2.folderPath);
+		assertEquals("/music/Artist/Album/02.mp3", file2.getUrl());
+		assertEquals(file2.getUrl().hashCode(), file2.hashCode());
+		assertTrue(file1.compareTo(file3) < 0);
+		assertTrue(file2.compareTo(file1) > 0);
+
+		assertEquals(3, repository.countFiles());
+		assertEquals(3, repository.getFiles().size());
+		int iterated = 0;
+		for (ILocalAudioObject file : repository.getFiles()) {
+			assertSame(file, repository.getFile(file.getUrl()));
+			iterated++;
+		}
+		assertEquals(3, iterated);
+
+		repository.removeFile(file1);
+		repository.removeFile("/music/Artist/Other/01.mp3");
+		repository.removeFile("/music/Artist/Missing/01.mp3");
+		assertEquals(1, repository.countFiles());
+		assertSame(file2, repository.getFile("/music/Artist/Album/02.mp3"));
+	}
+
+	@Test
+	public void testNextVersion() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		AudioFile file = new AudioFile("/music/Artist/Album/01.mp3");
+		repository.putFile(file);
+		repository.addSizeInBytes(100);
+		Artist artist = new Artist("Artist");
+		repository.putArtist(artist);
+		Album album = new Album(artist, "Album");
+		album.addAudioFile(file);
+		artist.addAlbum(album);
+		Genre genre = new Genre("Genre");
+		genre.addAudioObject(file);
+		repository.putGenre(genre);
+		Folder root = new Folder("/music");
+		Folder folder = new Folder("Artist");
+		root.addFolder(folder);
+		folder.addAudioFile(file);
+		repository.putFolder(root);
+
+		Repository next = repository.nextVersion();
+		assertSame(file, next.getFile("/music/Artist/Album/01.mp3"));
+		assertEquals(100, next.getTotalSizeInBytes());
+		IAlbum albumOfNext = next.getArtist("Artist").getAlbum("Album");
+		assertNotSame(album, albumOfNext);
+		assertSame(next.getArtist("Artist"), albumOfNext.getArtist());
+		assertSame(file, albumOfNext.getAudioObjects().get(0));
+		assertSame(next.getFolder("/music"), next.getFolder("/music")
+				.getFolder("Artist").getParentFolder());
+
+		// Changes in next version are not seen in previous one
+		next.removeFile(file);
+		next.removeSizeInBytes(100);
+		albumOfNext.removeAudioFile(file);
+		next.getGenre("Genre").removeAudioObject(file);
+		next.getFolder("/music").getFolder("Artist").removeAudioFile(file);
+		assertNull(next.getFile(file.getUrl()));
+		assertSame(file, repository.getFile(file.getUrl()));
+		assertEquals(100, repository.getTotalSizeInBytes());
+		assertEquals(1, album.size());
+		assertEquals(1, artist.getAudioObjects().size());
+		assertEquals(1, genre.size());
+		assertEquals(1, root.getAudioObjects().size());
+	}
+
+	@Test
+	public void testNextVersionCopiesOnlyNodesChanged() {
+		Repository repository = new Repository(
+				Collections.<File> emptyList(), mock(IStateRepository.class));
+		AudioFile file1 = new AudioFile("/music/Artist 1/01.mp3");
+		AudioFile file2 = new AudioFile("/music/Artist 2/01.mp3");
+		repository.putFile(file1);
+		repository.putFile(file2);
+		Artist artist1 = new Artist("Artist 1");
+		Album album1 = new Album(artist1, "Album");
+		album1.addAudioFile(file1);
+		artist1.addAlbum(album1);
+		repository.putArtist(artist1);
+		Artist artist2 = new Artist("Artist 2");
+		Album album2 = new Album(artist2, "Album");
+		album2.addAudioFile(file2);
+		artist2.addAlbum(album2);
+		repository.putArtist(artist2);
+		Folder root = new Folder("/music");
+		Folder folder1 = new Folder("Artist 1");
+		Folder folder2 = new Folder("Artist 2");
+		root.addFolder(folder1);
+		root.addFolder(folder2);
+		folder1.addAudioFile(file1);
+		repository.putFolder(root);
+		assertEquals(2, repository.getAlbumStructure().size());
+
+		Repository next = repository.nextVersion();
+		// Structures are shared until changed
+		assertSame(repository.getArtistStructure(), next.getArtistStructure());
+		assertSame(repository.getAlbumStructure(), next.getAlbumStructure());
+
+		AudioFile added = new AudioFile("/music/Artist 1/02.mp3");
+		next.putFile(added);
+		next.getArtist("Artist 1").getAlbum("Album").addAudioFile(added);
+		next.getFolder("/music").getFolder("Artist 1").addAudioFile(added);
+
+		// Only nodes reached are copied
+		assertNotSame(artist1, next.getArtistStructure().get("artist 1"));
+		assertSame(artist2, next.getArtistStructure().get("artist 2"));
+		assertSame(folder2,
+				next.getFolderStructure().get("/music").getFolders()
+						.get("Artist 2"));
+		assertSame(
+				repository.filesStructure.filesByFolder.get("/music/Artist 2/"),
+				next.filesStructure.filesByFolder.get("/music/Artist 2/"));
+
+		// Albums structure is updated with albums of artists copied
+		assertEquals(2, next.getAlbumStructure().get("Album (Artist 1)")
+				.size());
+		assertSame(album2, next.getAlbumStructure().get("Album (Artist 2)"));
+		assertSame(album1,
+				repository.getAlbumStructure().get("Album (Artist 1)"));
+		assertEquals(1, album1.size());
+		assertEquals(1, folder1.getAudioObjects().size());
+		assertNull(repository.getFile(added.getUrl()));
+		assertEquals(3, next.countFiles());
+
+		// Nodes are not copied by readers once version is finished
+		next.finishVersion();
+		assertSame(artist2, next.getArtist("Artist 2"));
+		assertSame(folder2, next.getFolder("/music").getFolder("Artist 2"));
+	}
+}
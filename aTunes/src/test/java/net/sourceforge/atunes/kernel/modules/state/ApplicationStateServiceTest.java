@@ -0,0 +1,152 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+
+import net.sourceforge.atunes.kernel.modules.favorites.Favorites;
+import net.sourceforge.atunes.kernel.modules.repository.AudioFile;
+import net.sourceforge.atunes.model.IFavorites;
+import net.sourceforge.atunes.model.IObjectDataStore;
+import net.sourceforge.atunes.model.IStatistics;
+import net.sourceforge.atunes.model.ITaskService;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ApplicationStateServiceTest {
+
+	private ApplicationStateService sut;
+
+	private ITaskService taskService;
+
+	private IObjectDataStore<IFavorites> favoritesObjectDataStore;
+
+	private IObjectDataStore<IStatistics> statisticsObjectDataStore;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void init() {
+		this.taskService = mock(ITaskService.class);
+		this.favoritesObjectDataStore = mock(IObjectDataStore.class);
+		this.statisticsObjectDataStore = mock(IObjectDataStore.class);
+		this.sut = new ApplicationStateService();
+		this.sut.setTaskService(this.taskService);
+		this.sut.setFavoritesObjectDataStore(this.favoritesObjectDataStore);
+		this.sut.setStatisticsObjectDataStore(this.statisticsObjectDataStore);
+		KryoFactory kryoFactory = new KryoFactory();
+		kryoFactory.setClasses(new ArrayList<String>());
+		KryoSerializerService kryoSerializerService = new KryoSerializerService();
+		kryoSerializerService.setKryoFactory(kryoFactory);
+		this.sut.setKryoSerializerService(kryoSerializerService);
+		this.sut.setWriteDelay(2);
+	}
+
+	@Test
+	public void testWritesCoalesced() {
+		IStatistics statistics = mock(IStatistics.class);
+		this.sut.persistStatisticsCache(statistics);
+		this.sut.persistStatisticsCache(statistics);
+		this.sut.persistStatisticsCache(statistics);
+		this.sut.persistFavoritesCache(new TestFavorites());
+
+		verify(this.statisticsObjectDataStore, never()).write(
+				any(IStatistics.class));
+		verify(this.taskService, times(1)).submitOnce(anyString(), anyLong(),
+				any(Runnable.class));
+		assertEquals(2, this.sut.getPendingWrites());
+
+		this.sut.flushCaches();
+
+		verify(this.statisticsObjectDataStore, times(1)).write(statistics);
+		verify(this.favoritesObjectDataStore, times(1)).write(
+				any(IFavorites.class));
+		assertEquals(4, this.sut.getWritesRequested());
+		assertEquals(2, this.sut.getWritesDone());
+		assertEquals(2, this.sut.getWritesAvoided());
+		assertEquals(0, this.sut.getPendingWrites());
+	}
+
+	@Test
+	public void testDelayedWriteStoresCopy() {
+		Favorites favorites = new TestFavorites();
+		favorites.addSong(new AudioFile("/music/01.mp3"));
+		this.sut.persistFavoritesCache(favorites);
+		// Changed by its owner before being stored
+		favorites.addSong(new AudioFile("/music/02.mp3"));
+
+		this.sut.flushCaches();
+
+		ArgumentCaptor<IFavorites> stored = ArgumentCaptor
+				.forClass(IFavorites.class);
+		verify(this.favoritesObjectDataStore).write(stored.capture());
+		assertNotSame(favorites, stored.getValue());
+		assertEquals(1, stored.getValue().getFavoriteSongs().size());
+		assertEquals("/music/01.mp3", stored.getValue().getFavoriteSongs()
+				.get(0).getUrl());
+	}
+
+	@Test
+	public void testPendingWriteStoredBeforeRead() {
+		IStatistics statistics = mock(IStatistics.class);
+		when(this.statisticsObjectDataStore.read()).thenReturn(statistics);
+		this.sut.persistStatisticsCache(statistics);
+
+		assertSame(statistics, this.sut.retrieveStatisticsCache());
+
+		verify(this.statisticsObjectDataStore, times(1)).write(statistics);
+		assertEquals(0, this.sut.getPendingWrites());
+	}
+
+	@Test
+	public void testWriteNotDelayed() {
+		this.sut.setWriteDelay(0);
+		IStatistics statistics = mock(IStatistics.class);
+		this.sut.persistStatisticsCache(statistics);
+
+		verify(this.statisticsObjectDataStore, times(1)).write(statistics);
+		verify(this.taskService, never()).submitOnce(anyString(), anyLong(),
+				any(Runnable.class));
+	}
+
+	/**
+	 * Favorites created outside their package
+	 */
+	static class TestFavorites extends Favorites {
+
+		private static final long serialVersionUID = 1L;
+	}
+}
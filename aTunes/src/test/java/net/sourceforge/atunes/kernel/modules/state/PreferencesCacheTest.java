@@ -0,0 +1,112 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.ehcache.Element;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreferencesCacheTest {
+
+	private Map<Serializable, Element> stored;
+
+	private int reads;
+
+	private int flushes;
+
+	private PreferencesCache sut;
+
+	@Before
+	public void init() {
+		this.stored = new HashMap<Serializable, Element>();
+		this.sut = new PreferencesCache() {
+			@Override
+			protected void put(final Element element) {
+				PreferencesCacheTest.this.stored.put(element.getKey(), element);
+			}
+
+			@Override
+			protected Element get(final Serializable key) {
+				PreferencesCacheTest.this.reads++;
+				return PreferencesCacheTest.this.stored.get(key);
+			}
+
+			@Override
+			protected void flush() {
+				PreferencesCacheTest.this.flushes++;
+			}
+		};
+	}
+
+	@Test
+	public void testStoreFlushed() {
+		this.sut.storePreference(Preferences.LOCALE, "en");
+		this.sut.storePasswordPreference(Preferences.LASTFM_PASSWORD, "pass");
+
+		assertEquals(2, this.flushes);
+		assertEquals("en", this.sut.retrievePreference(Preferences.LOCALE,
+				null));
+		assertEquals("pass",
+				this.sut.retrievePasswordPreference(Preferences.LASTFM_PASSWORD));
+	}
+
+	@Test
+	public void testTransactionFlushedOnce() {
+		this.sut.beginTransaction();
+		this.sut.storePreference(Preferences.LOCALE, "en");
+		this.sut.beginTransaction();
+		this.sut.storePreference(Preferences.SHOW_STATUS_BAR, true);
+		this.sut.commitTransaction();
+		this.sut.storePasswordPreference(Preferences.LASTFM_PASSWORD, "pass");
+
+		assertEquals(0, this.flushes);
+		assertEquals(true, this.sut.retrievePreference(
+				Preferences.SHOW_STATUS_BAR, false));
+
+		this.sut.commitTransaction();
+
+		assertEquals(1, this.flushes);
+		assertEquals(3, this.stored.size());
+	}
+
+	@Test
+	public void testReadOnce() {
+		this.stored.put(Preferences.LOCALE.toString(), new Element(
+				Preferences.LOCALE.toString(), null));
+
+		assertNull(this.sut.retrievePreference(Preferences.LOCALE, "en"));
+		assertNull(this.sut.retrievePreference(Preferences.LOCALE, "en"));
+		assertEquals("es",
+				this.sut.retrievePreference(Preferences.SHOW_STATUS_BAR, "es"));
+		assertEquals("es",
+				this.sut.retrievePreference(Preferences.SHOW_STATUS_BAR, "es"));
+
+		assertEquals(2, this.reads);
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import net.sourceforge.atunes.Constants;
+import net.sourceforge.atunes.model.IOSManager;
+import net.sourceforge.atunes.model.IStatistics;
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StatisticsObjectDataStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IOSManager osManager;
+
+	private KryoSerializerService kryoSerializerService;
+
+	private File statisticsFile;
+
+	private File playLogFile;
+
+	@Before
+	public void init() {
+		this.osManager = mock(IOSManager.class);
+		when(this.osManager.getUserConfigFolder()).thenReturn(
+				this.folder.getRoot().getAbsolutePath());
+		when(this.osManager.getFileSeparator()).thenReturn(File.separator);
+		KryoFactory kryoFactory = new KryoFactory();
+		kryoFactory.setClasses(new ArrayList<String>());
+		this.kryoSerializerService = new KryoSerializerService();
+		this.kryoSerializerService.setKryoFactory(kryoFactory);
+		this.statisticsFile = new File(this.folder.getRoot(),
+				Constants.CACHE_STATISTICS_NAME);
+		this.playLogFile = new File(this.folder.getRoot(),
+				Constants.CACHE_STATISTICS_PLAY_LOG_NAME);
+	}
+
+	private StatisticsObjectDataStore newStore() {
+		StatisticsPlayLog playLog = new StatisticsPlayLog();
+		playLog.setOsManager(this.osManager);
+		playLog.setKryoSerializerService(this.kryoSerializerService);
+		StatisticsObjectDataStore store = new StatisticsObjectDataStore();
+		store.setOsManager(this.osManager);
+		store.setKryoSerializerService(this.kryoSerializerService);
+		store.setStatisticsPlayLog(playLog);
+		return store;
+	}
+
+	private void play(final Statistics statistics, final String url) {
+		statistics.addPlay(new StatisticsPlay(url, "Artist",
+				new StatisticsAlbum("Artist", "Album"), 1000));
+	}
+
+	@Test
+	public void testPlaysAppendedToPlayLog() {
+		assertNull(newStore().read());
+		// Statistics not read are stored whole first
+		StatisticsObjectDataStore store = newStore();
+		Statistics statistics = new Statistics();
+		play(statistics, "a.mp3");
+		store.write(statistics);
+		assertTrue(this.statisticsFile.exists());
+		assertFalse(this.playLogFile.exists());
+
+		long statisticsLength = this.statisticsFile.length();
+		play(statistics, "a.mp3");
+		play(statistics, "b.mp3");
+		store.write(statistics);
+		assertTrue(this.playLogFile.exists());
+		assertEquals(statisticsLength, this.statisticsFile.length());
+
+		IStatistics read = newStore().read();
+		assertEquals(3, read.getTotalPlays());
+		assertEquals(2, read.getDifferentAudioFilesPlayed());
+		assertEquals(2, read.getAudioFilesStats().get("a.mp3")
+				.getTimesPlayed());
+		assertEquals(1000, read.getAudioFilesStats().get("b.mp3")
+				.getLastPlayed().getMillis());
+		assertEquals(Integer.valueOf(3),
+				read.getArtistsRanking().getCount("Artist"));
+	}
+
+	@Test
+	public void testPlaysAlreadyStoredNotCountedAgain() {
+		StatisticsObjectDataStore store = newStore();
+		store.read();
+		Statistics statistics = new Statistics();
+		play(statistics, "a.mp3");
+		store.write(statistics);
+		File previousPlayLog = new File(this.folder.getRoot(), "plays.old");
+		assertTrue(this.playLogFile.renameTo(previousPlayLog));
+
+		// Play log not removed after statistics were stored whole
+		play(statistics, "b.mp3");
+		statistics.setChanged();
+		store.write(statistics);
+		assertFalse(this.playLogFile.exists());
+		assertTrue(previousPlayLog.renameTo(this.playLogFile));
+
+		IStatistics read = newStore().read();
+		assertEquals(2, read.getTotalPlays());
+		assertEquals(1, read.getAudioFilesStats().get("a.mp3")
+				.getTimesPlayed());
+	}
+
+	@Test
+	public void testWholeStatisticsStoredAfterDamagedPlay() throws IOException {
+		StatisticsObjectDataStore store = newStore();
+		Statistics statistics = new Statistics();
+		play(statistics, "a.mp3");
+		store.write(statistics);
+		play(statistics, "b.mp3");
+		play(statistics, "c.mp3");
+		store.write(statistics);
+
+		// Last play appended was not completely written
+		RandomAccessFile file = new RandomAccessFile(this.playLogFile, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+
+		store = newStore();
+		Statistics read = (Statistics) store.read();
+		assertEquals(2, read.getTotalPlays());
+		play(read, "d.mp3");
+		store.write(read);
+		assertFalse(this.playLogFile.exists());
+
+		read = (Statistics) newStore().read();
+		assertEquals(3, read.getTotalPlays());
+		assertEquals(1, read.getAudioFilesStats().get("d.mp3")
+				.getTimesPlayed());
+	}
+
+	@Test
+	public void testWholeStatisticsStoredWhenPlayLogFull() {
+		StatisticsObjectDataStore store = newStore();
+		store.setMinPlayLogSize(0);
+		store.setMaxPlayLogPercentage(0);
+		store.read();
+		Statistics statistics = new Statistics();
+		play(statistics, "a.mp3");
+		store.write(statistics);
+		assertTrue(this.playLogFile.exists());
+
+		play(statistics, "b.mp3");
+		store.write(statistics);
+		assertFalse(this.playLogFile.exists());
+		assertEquals(2, newStore().read().getTotalPlays());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+
+/**
+ * Compares time needed to read tags and audio properties of MP3 and FLAC files
+ * of a folder with JAudiotagger and with HeaderTagReader.
+ * 
+ * Usage: HeaderTagReaderBenchmark folder [rounds]
+ * 
+ * Run it twice to compare with warm disk cache
+ */
+public final class HeaderTagReaderBenchmark {
+
+	private HeaderTagReaderBenchmark() {
+	}
+
+	public static void main(final String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: HeaderTagReaderBenchmark folder [rounds]");
+			return;
+		}
+		LogManager.getLogManager().getLogger("").setLevel(Level.OFF);
+		List<File> files = new ArrayList<File>();
+		addFiles(new File(args[0]), files);
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		System.out.println(files.size() + " files");
+
+		HeaderTagReader reader = new HeaderTagReader(262144, 16384);
+		for (int round = 1; round <= rounds; round++) {
+			long start = System.nanoTime();
+			int fallbacks = 0;
+			for (File file : files) {
+				HeaderTag tag = file.getName().toLowerCase().endsWith(".flac") ? reader
+						.readFlac(file, true) : reader.readMP3(file, true);
+				if (tag == null) {
+					fallbacks++;
+				}
+			}
+			long headerTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (File file : files) {
+				try {
+					AudioFile audioFile = AudioFileIO.read(file);
+					audioFile.getTag();
+					audioFile.getAudioHeader();
+				} catch (Exception e) {
+					// Not measured
+				}
+			}
+			long jaudiotaggerTime = System.nanoTime() - start;
+
+			System.out.println("Round " + round + ": headers "
+					+ headerTime / 1000000 + " ms (" + fallbacks
+					+ " files need full reader), JAudiotagger "
+					+ jaudiotaggerTime / 1000000 + " ms");
+		}
+	}
+
+	private static void addFiles(final File folder, final List<File> files) {
+		File[] children = folder.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				String name = child.getName().toLowerCase();
+				if (child.isDirectory()) {
+					addFiles(child, files);
+				} else if (name.endsWith(".mp3") || name.endsWith(".flac")) {
+					files.add(child);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeaderTagReaderTest {
+
+	private static final byte[] MPEG1_LAYER3_128_44100 = new byte[] {
+			(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00 };
+
+	private static final int FRAME_LENGTH = 417;
+
+	private final HeaderTagReader sut = new HeaderTagReader(1024, 4096);
+
+	@Test
+	public void testID3v23AndConstantBitrate() throws Exception {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		writeID3v23Frame(frames, "TIT2", 0, text(0, "Title"));
+		writeID3v23Frame(frames, "TPE1", 0, text(0, "Artist"));
+		writeID3v23Frame(frames, "TALB", 0, text(1, "Album"));
+		writeID3v23Frame(frames, "TRCK", 0, text(0, "3/10"));
+		writeID3v23Frame(frames, "TYER", 0, text(0, "2004"));
+		writeID3v23Frame(frames, "TDAT", 0, text(0, "0305"));
+		writeID3v23Frame(frames, "TCON", 0, text(0, "(17)"));
+		writeID3v23Frame(frames, "COMM", 0, comment("Description", "Other"));
+		writeID3v23Frame(frames, "COMM", 0, comment("", "Comment"));
+		// Picture is bigger than max field size, but it's not read
+		writeID3v23Frame(frames, "APIC", 0, new byte[10000]);
+
+		File file = createMP3(id3v2(3, frames.toByteArray(), 100), 100, null);
+		HeaderTag tag = this.sut.readMP3(file, true);
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Title", tag.getField(FieldKey.TITLE));
+		Assert.assertEquals("Artist", tag.getField(FieldKey.ARTIST));
+		Assert.assertEquals("Album", tag.getField(FieldKey.ALBUM));
+		Assert.assertEquals("3/10", tag.getField(FieldKey.TRACK));
+		Assert.assertEquals("2004", tag.getField(FieldKey.YEAR));
+		Assert.assertEquals("(17)", tag.getField(FieldKey.GENRE));
+		Assert.assertEquals("Comment", tag.getField(FieldKey.COMMENT));
+		Assert.assertEquals("0305", tag.getDayAndMonth());
+		Assert.assertTrue(tag.isDateFromYear());
+		Assert.assertTrue(tag.hasInternalImage());
+		Assert.assertTrue(tag.hasAudioProperties());
+		Assert.assertEquals(2, tag.getDuration());
+		Assert.assertEquals(128, tag.getBitrate());
+		Assert.assertEquals(44100, tag.getFrequency());
+		Assert.assertFalse(tag.isVariableBitrate());
+
+		AudioFile audioFile = AudioFileIO.read(file);
+		Assert.assertEquals(audioFile.getTag().getFirst(FieldKey.TITLE),
+				tag.getField(FieldKey.TITLE));
+		Assert.assertEquals(audioFile.getTag().getFirst(FieldKey.ALBUM),
+				tag.getField(FieldKey.ALBUM));
+		Assert.assertEquals(audioFile.getAudioHeader().getTrackLength(),
+				tag.getDuration());
+		Assert.assertEquals(audioFile.getAudioHeader().getSampleRateAsNumber(),
+				tag.getFrequency());
+		Assert.assertEquals(audioFile.getAudioHeader().getBitRateAsNumber(),
+				tag.getBitrate());
+	}
+
+	@Test
+	public void testID3v24AndXingHeader() throws Exception {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		writeID3v24Frame(frames, "TIT2", 0, text(3, "Título"));
+		writeID3v24Frame(frames, "TDRC", 0, text(0, "2010-02-03"));
+		// Unsynchronised frame with data length indicator
+		writeID3v24Frame(frames, "TPE1", 0x03, new byte[] { 0, 0, 0, 8, 0,
+				'A', (byte) 0xFF, 0x00, (byte) 0xE0, 'B' });
+
+		byte[] xing = new byte[16];
+		ByteBuffer.wrap(xing).put("Xing".getBytes("ISO-8859-1")).putInt(3)
+				.putInt(1000).putInt(500000);
+		File file = createMP3(id3v2(4, frames.toByteArray(), 0), 10, xing);
+		HeaderTag tag = this.sut.readMP3(file, true);
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Título", tag.getField(FieldKey.TITLE));
+		Assert.assertEquals("AÿàB", tag.getField(FieldKey.ARTIST));
+		Assert.assertEquals("2010-02-03", tag.getField(FieldKey.YEAR));
+		Assert.assertEquals("2010-02-03", tag.getDate());
+		Assert.assertFalse(tag.hasInternalImage());
+		Assert.assertEquals(26, tag.getDuration());
+		Assert.assertEquals(153, tag.getBitrate());
+		Assert.assertTrue(tag.isVariableBitrate());
+	}
+
+	@Test
+	public void testID3v1() throws Exception {
+		byte[] id3v1 = new byte[128];
+		System.arraycopy("TAG".getBytes("ISO-8859-1"), 0, id3v1, 0, 3);
+		System.arraycopy("Title".getBytes("ISO-8859-1"), 0, id3v1, 3, 5);
+		System.arraycopy("1999".getBytes("ISO-8859-1"), 0, id3v1, 93, 4);
+		id3v1[126] = 7;
+		id3v1[127] = 17;
+		File file = createMP3(new byte[0], 10, null, id3v1);
+
+		HeaderTag tag = this.sut.readMP3(file, false);
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Title", tag.getField(FieldKey.TITLE));
+		Assert.assertNull(tag.getField(FieldKey.ARTIST));
+		Assert.assertEquals("1999", tag.getField(FieldKey.YEAR));
+		Assert.assertEquals("7", tag.getField(FieldKey.TRACK));
+		Assert.assertEquals("17", tag.getField(FieldKey.GENRE));
+		Assert.assertFalse(tag.hasAudioProperties());
+	}
+
+	@Test
+	public void testUnsupportedFeaturesAreLeftToFullReader() throws Exception {
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		// Compressed frame
+		writeID3v23Frame(frames, "TIT2", 0x80, text(0, "Title"));
+		Assert.assertNull(this.sut.readMP3(
+				createMP3(id3v2(3, frames.toByteArray(), 0), 10, null), true));
+
+		frames.reset();
+		// Field bigger than max field size
+		writeID3v23Frame(frames, "USLT", 0, new byte[2000]);
+		Assert.assertNull(this.sut.readMP3(
+				createMP3(id3v2(3, frames.toByteArray(), 0), 10, null), true));
+
+		// No MPEG frame
+		Assert.assertNull(this.sut.readMP3(createMP3(new byte[0], 0, null),
+				true));
+	}
+
+	@Test
+	public void testFlac() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write("fLaC".getBytes("ISO-8859-1"));
+
+		byte[] streamInfo = new byte[34];
+		// 44100 Hz, 2 channels, 16 bits, 441000 samples
+		streamInfo[10] = 0x0A;
+		streamInfo[11] = (byte) 0xC4;
+		streamInfo[12] = 0x42;
+		streamInfo[13] = (byte) 0xF0;
+		ByteBuffer.wrap(streamInfo, 14, 4).putInt(441000);
+		writeFlacBlock(out, 0, false, streamInfo);
+
+		writeFlacBlock(out, 6, false, new byte[100]);
+
+		ByteArrayOutputStream comments = new ByteArrayOutputStream();
+		writeVorbisString(comments, "vendor");
+		comments.write(littleEndian(3));
+		writeVorbisString(comments, "title=Song");
+		writeVorbisString(comments, "ARTIST=Band");
+		writeVorbisString(comments, "Date=2001");
+		writeFlacBlock(out, 4, true, comments.toByteArray());
+		out.write(new byte[10000]);
+
+		File file = write(out.toByteArray(), ".flac");
+		HeaderTag tag = this.sut.readFlac(file, true);
+
+		Assert.assertNotNull(tag);
+		Assert.assertEquals("Song", tag.getField(FieldKey.TITLE));
+		Assert.assertEquals("Band", tag.getField(FieldKey.ARTIST));
+		Assert.assertEquals("2001", tag.getField(FieldKey.YEAR));
+		Assert.assertEquals("2001", tag.getDate());
+		Assert.assertTrue(tag.hasInternalImage());
+		Assert.assertEquals(10, tag.getDuration());
+		Assert.assertEquals(44100, tag.getFrequency());
+		Assert.assertEquals(8, tag.getBitrate());
+
+		AudioFile audioFile = AudioFileIO.read(file);
+		Assert.assertEquals(audioFile.getTag().getFirst(FieldKey.TITLE),
+				tag.getField(FieldKey.TITLE));
+		Assert.assertEquals(audioFile.getAudioHeader().getTrackLength(),
+				tag.getDuration());
+		Assert.assertEquals(audioFile.getAudioHeader().getBitRateAsNumber(),
+				tag.getBitrate());
+	}
+
+	private File createMP3(final byte[] tag, final int frames,
+			final byte[] xing) throws IOException {
+		return createMP3(tag, frames, xing, new byte[0]);
+	}
+
+	private File createMP3(final byte[] tag, final int frames,
+			final byte[] xing, final byte[] end) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(tag);
+		for (int i = 0; i < frames; i++) {
+			byte[] frame = new byte[FRAME_LENGTH];
+			System.arraycopy(MPEG1_LAYER3_128_44100, 0, frame, 0, 4);
+			if (i == 0 && xing != null) {
+				System.arraycopy(xing, 0, frame, 36, xing.length);
+			}
+			out.write(frame);
+		}
+		out.write(end);
+		return write(out.toByteArray(), ".mp3");
+	}
+
+	private File write(final byte[] data, final String extension)
+			throws IOException {
+		File file = File.createTempFile("header", extension);
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private byte[] id3v2(final int version, final byte[] frames,
+			final int padding) {
+		int size = frames.length + padding;
+		ByteBuffer buffer = ByteBuffer.allocate(10 + size);
+		buffer.put(new byte[] { 'I', 'D', '3', (byte) version, 0, 0 });
+		buffer.put(syncsafe(size));
+		buffer.put(frames);
+		return buffer.array();
+	}
+
+	private void writeID3v23Frame(final ByteArrayOutputStream out,
+			final String id, final int flags, final byte[] data)
+			throws IOException {
+		out.write(id.getBytes("ISO-8859-1"));
+		out.write(ByteBuffer.allocate(4).putInt(data.length).array());
+		out.write(new byte[] { 0, (byte) flags });
+		out.write(data);
+	}
+
+	private void writeID3v24Frame(final ByteArrayOutputStream out,
+			final String id, final int flags, final byte[] data)
+			throws IOException {
+		out.write(id.getBytes("ISO-8859-1"));
+		out.write(syncsafe(data.length));
+		out.write(new byte[] { 0, (byte) flags });
+		out.write(data);
+	}
+
+	private byte[] syncsafe(final int value) {
+		return new byte[] { (byte) ((value >> 21) & 0x7F),
+				(byte) ((value >> 14) & 0x7F), (byte) ((value >> 7) & 0x7F),
+				(byte) (value & 0x7F) };
+	}
+
+	private byte[] text(final int encoding, final String text)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(encoding);
+		out.write(text.getBytes(encoding == 1 ? "UTF-16"
+				: (encoding == 3 ? "UTF-8" : "ISO-8859-1")));
+		return out.toByteArray();
+	}
+
+	private byte[] comment(final String description, final String text)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0);
+		out.write("eng".getBytes("ISO-8859-1"));
+		out.write(description.getBytes("ISO-8859-1"));
+		out.write(0);
+		out.write(text.getBytes("ISO-8859-1"));
+		return out.toByteArray();
+	}
+
+	private void writeFlacBlock(final ByteArrayOutputStream out,
+			final int type, final boolean last, final byte[] data)
+			throws IOException {
+		out.write(last ? type | 0x80 : type);
+		out.write(ByteBuffer.allocate(4).putInt(data.length).array(), 1, 3);
+		out.write(data);
+	}
+
+	private void writeVorbisString(final ByteArrayOutputStream out,
+			final String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.write(littleEndian(bytes.length));
+		out.write(bytes);
+	}
+
+	private byte[] littleEndian(final int value) {
+		return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(value).array();
+	}
+}
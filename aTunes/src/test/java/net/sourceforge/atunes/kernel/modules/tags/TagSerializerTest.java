@@ -0,0 +1,132 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.atunes.utils.KryoFactory;
+import net.sourceforge.atunes.utils.KryoSerializerService;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+
+public class TagSerializerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private KryoFactory kryoFactory;
+
+	private String lyrics;
+
+	@Before
+	public void init() {
+		this.kryoFactory = new KryoFactory();
+		List<String> classes = new ArrayList<String>();
+		classes.add(DefaultTag.class.getName());
+		this.kryoFactory.setClasses(classes);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("Line ").append(i).append('\n');
+		}
+		this.lyrics = sb.toString();
+	}
+
+	private DefaultTag createTag() {
+		DefaultTag tag = new DefaultTag();
+		tag.setTitle("Title");
+		tag.setComment("Comment");
+		tag.setLyrics(this.lyrics);
+		return tag;
+	}
+
+	private byte[] write(final Kryo kryo, final Object object) {
+		Output output = new Output(4096, -1);
+		kryo.writeClassAndObject(output, object);
+		return output.toBytes();
+	}
+
+	@Test
+	public void testLongTextsKeptInBuffer() throws Exception {
+		Kryo kryo = this.kryoFactory.getKryo();
+		byte[] record = write(kryo, createTag());
+		// Record stored after other bytes
+		ByteBuffer buffer = ByteBuffer.allocate(10 + record.length);
+		buffer.position(10);
+		buffer.put(record);
+		TagTextBuffer texts = new TagTextBuffer(buffer, 256);
+		texts.setOffset(10);
+		kryo.getContext().put(TagTextBuffer.class, texts);
+
+		DefaultTag read = (DefaultTag) kryo.readClassAndObject(new Input(
+				record));
+		assertEquals("Title", read.getTitle());
+		assertEquals("Comment", read.getComment());
+		assertNull(read.storedComment);
+		assertNull(read.lyrics);
+		assertNotNull(read.storedLyrics);
+		assertEquals(this.lyrics, read.getLyrics());
+
+		// Written anywhere else with its texts
+		Kryo otherKryo = this.kryoFactory.getKryo();
+		DefaultTag copy = (DefaultTag) otherKryo
+				.readClassAndObject(new Input(write(otherKryo, read)));
+		assertNull(copy.storedLyrics);
+		assertEquals(this.lyrics, copy.lyrics);
+		assertEquals("Comment", copy.getComment());
+	}
+
+	@Test
+	public void testTagOfPreviousVersionRead() throws Exception {
+		// Written as previous versions did, without header and with all
+		// fields in the same order
+		File file = new File(this.folder.getRoot(), "tag.dat");
+		Kryo kryo = this.kryoFactory.getKryo();
+		kryo.register(DefaultTag.class, new FieldSerializer<DefaultTag>(kryo,
+				DefaultTag.class));
+		Output output = new Output(new FileOutputStream(file));
+		kryo.writeObject(output, createTag());
+		output.close();
+
+		KryoSerializerService kryoSerializerService = new KryoSerializerService();
+		kryoSerializerService.setKryoFactory(this.kryoFactory);
+		DefaultTag read = (DefaultTag) kryoSerializerService
+				.readObjectFromFile(file.getAbsolutePath(), DefaultTag.class);
+		assertEquals("Title", read.getTitle());
+		assertEquals("Comment", read.getComment());
+		assertEquals(this.lyrics, read.getLyrics());
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.kernel.modules.tags;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import net.sourceforge.atunes.model.ITag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TagValuePoolTest {
+
+	private TagValuePool sut;
+
+	@Before
+	public void init() {
+		this.sut = new TagValuePool();
+		this.sut.setMaxSize(2);
+	}
+
+	@Test
+	public void testSharedValues() {
+		String artist = new String("Artist");
+		assertSame(artist, this.sut.get(artist));
+		assertSame(artist, this.sut.get(new String("Artist")));
+		assertNull(this.sut.get(null));
+		assertEquals(1, this.sut.getSize());
+		assertEquals(2, this.sut.getLookups());
+		assertEquals(1, this.sut.getHits());
+		assertEquals(52, this.sut.getEstimatedSavedBytes());
+	}
+
+	@Test
+	public void testBounded() {
+		String first = this.sut.get(new String("1"));
+		this.sut.get(new String("2"));
+		String third = new String("3");
+		assertSame(third, this.sut.get(third));
+		assertNotSame(third, this.sut.get(new String("3")));
+		assertEquals(2, this.sut.getSize());
+		// Values already in pool are still shared
+		assertSame(first, this.sut.get(new String("1")));
+	}
+
+	@Test
+	public void testTagFactoryPoolsValues() {
+		TagFactory tagFactory = new TagFactory();
+		tagFactory.setTagValuePool(this.sut);
+		ITag tag1 = tagFactory.getNewTag();
+		tag1.setArtist(new String("Artist"));
+		tag1.setAlbum(new String("Album"));
+		ITag tag2 = tagFactory.getNewTag();
+		tag2.setArtist(new String("Artist"));
+		tag2.setAlbum(new String("Album"));
+		tagFactory.poolValues(tag1);
+		tagFactory.poolValues(tag2);
+		assertSame(tag1.getArtist(), tag2.getArtist());
+		assertSame(tag1.getAlbum(), tag2.getAlbum());
+	}
+}
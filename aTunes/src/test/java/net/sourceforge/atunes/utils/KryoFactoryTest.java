@@ -0,0 +1,78 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class KryoFactoryTest {
+
+	private KryoFactory sut;
+
+	@Before
+	public void init() {
+		this.sut = new KryoFactory();
+		this.sut.setClasses(new ArrayList<String>());
+	}
+
+	private Object writeAndRead(final Kryo kryo, final Object object) {
+		Output output = new Output(1024, -1);
+		kryo.writeObject(output, object);
+		return kryo.readObject(new Input(output.toBytes()), object.getClass());
+	}
+
+	@Test
+	public void testReusedForCollectionsOfOtherElementTypes() throws Exception {
+		Kryo kryo = this.sut.borrowKryo();
+		Holder holder = (Holder) writeAndRead(kryo, new Holder());
+		assertTrue(holder.values.isEmpty());
+		assertTrue(holder.map.isEmpty());
+		this.sut.releaseKryo(kryo);
+
+		// Element types of empty collections written before are not used
+		assertSame(kryo, this.sut.borrowKryo());
+		List<Integer> list = new ArrayList<Integer>(Arrays.asList(1, 2, 3));
+		assertEquals(list, writeAndRead(kryo, list));
+		Map<Integer, Long> map = new HashMap<Integer, Long>();
+		map.put(1, 2L);
+		assertEquals(map, writeAndRead(kryo, map));
+		this.sut.releaseKryo(kryo);
+	}
+
+	public static class Holder {
+		ArrayList<String> values = new ArrayList<String>();
+		HashMap<String, String> map = new HashMap<String, String>();
+	}
+}
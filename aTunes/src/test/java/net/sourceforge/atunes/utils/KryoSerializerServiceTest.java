@@ -0,0 +1,249 @@
+/*
+ * aTunes
+ * Copyright (C) Alex Aranda, Sylvain Gaudard and contributors
+ *
+ * See http://www.atunes.org/wiki/index.php?title=Contributing for information about contributors
+ *
+ * http://www.atunes.org
+ * http://sourceforge.net/projects/atunes
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package net.sourceforge.atunes.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateMidnight;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esotericsoftware.kryo.io.Output;
+
+public class KryoSerializerServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private KryoFactory kryoFactory;
+
+	private KryoSerializerService sut;
+
+	private String fileName;
+
+	@Before
+	public void init() {
+		this.kryoFactory = new KryoFactory();
+		this.kryoFactory.setClasses(new ArrayList<String>());
+		this.sut = new KryoSerializerService();
+		this.sut.setKryoFactory(this.kryoFactory);
+		this.fileName = new File(this.folder.getRoot(), "object.dat")
+				.getAbsolutePath();
+	}
+
+	private ArrayList<Object> createObject(final int size) {
+		ArrayList<Object> object = new ArrayList<Object>();
+		for (int i = 0; i < size; i++) {
+			object.add("Value " + i % 10);
+			object.add(new DateMidnight(2000, 1, 1 + i % 28));
+		}
+		return object;
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(100)));
+		assertEquals(createObject(100),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+		assertFalse(new File(this.fileName + ".tmp").exists());
+
+		// Replaced by next write
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(10)));
+		assertEquals(createObject(10),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		this.sut.setCompressionLevel(1);
+		assertTrue(this.sut.writeObjectToFile(this.fileName,
+				createObject(1000)));
+		long compressedLength = new File(this.fileName).length();
+		assertEquals(createObject(1000),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+
+		this.sut.setCompressionLevel(0);
+		// Compressed files are read whatever configuration is
+		assertEquals(createObject(1000),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+		assertTrue(this.sut.writeObjectToFile(this.fileName,
+				createObject(1000)));
+		assertTrue(compressedLength < new File(this.fileName).length());
+	}
+
+	@Test
+	public void testDamagedFileNotRead() throws IOException {
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(100)));
+		RandomAccessFile file = new RandomAccessFile(this.fileName, "rw");
+		file.seek(file.length() / 2);
+		int value = file.read();
+		file.seek(file.length() / 2);
+		file.write(value ^ 0xFF);
+		file.close();
+		assertNull(this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testReplaceInterruptedAfterFileRenamedToBackup()
+			throws IOException {
+		File file = new File(this.fileName);
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(100)));
+		// Replace by a new file completely written, interrupted after
+		// previous file was renamed to backup file
+		File newFile = new File(this.fileName + ".new");
+		assertTrue(this.sut.writeObjectToFile(newFile.getAbsolutePath(),
+				createObject(10)));
+		assertTrue(file.renameTo(FileUtils.getBackupFile(file)));
+		assertTrue(newFile.renameTo(new File(this.fileName + ".tmp")));
+
+		assertEquals(createObject(10),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+		assertTrue(file.exists());
+		assertFalse(new File(this.fileName + ".tmp").exists());
+
+		// Backup file is deleted by next replace
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(20)));
+		assertEquals(createObject(20),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testBackupFileReadWhenFileDamaged() throws IOException {
+		File file = new File(this.fileName);
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(100)));
+		assertTrue(file.renameTo(FileUtils.getBackupFile(file)));
+		// Damaged file left as replacement
+		FileOutputStream stream = new FileOutputStream(file);
+		stream.write(new byte[100]);
+		stream.close();
+
+		assertEquals(createObject(100),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testAppendedObjectsReplaceInterrupted() throws IOException {
+		File file = new File(this.fileName);
+		List<Object> objects = new ArrayList<Object>();
+		objects.add(createObject(1));
+		objects.add(createObject(2));
+		assertTrue(this.sut.writeObjectsToFile(this.fileName, objects));
+		assertTrue(file.renameTo(new File(this.fileName + ".tmp")));
+		assertTrue(FileUtils.getBackupFile(file).createNewFile());
+
+		assertTrue(this.sut.appendObjectToFile(this.fileName, createObject(3)));
+		assertEquals(3,
+				this.sut.readObjectsFromFile(this.fileName, ArrayList.class)
+						.size());
+	}
+
+	@Test
+	public void testFileOfPreviousVersion() throws Exception {
+		Output output = new Output(new FileOutputStream(this.fileName));
+		this.kryoFactory.getKryo().writeObject(output, createObject(100));
+		output.close();
+		assertEquals(createObject(100),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testReusedAfterEmptyCollection() throws IOException {
+		// Element type of empty list must not be used for next list
+		String otherFileName = this.fileName + ".other";
+		assertTrue(this.sut.writeObjectToFile(otherFileName,
+				new StringsHolder()));
+		assertTrue(this.sut.writeObjectToFile(this.fileName, createObject(10)));
+		assertTrue(((StringsHolder) this.sut.readObjectFromFile(otherFileName,
+				StringsHolder.class)).values.isEmpty());
+		assertEquals(createObject(10),
+				this.sut.readObjectFromFile(this.fileName, ArrayList.class));
+	}
+
+	@Test
+	public void testAppendedObjects() throws IOException {
+		assertTrue(this.sut.readObjectsFromFile(this.fileName, ArrayList.class)
+				.isEmpty());
+		for (int i = 1; i <= 3; i++) {
+			assertTrue(this.sut.appendObjectToFile(this.fileName,
+					createObject(i)));
+		}
+		List<Object> objects = this.sut.readObjectsFromFile(this.fileName,
+				ArrayList.class);
+		assertEquals(3, objects.size());
+		assertEquals(createObject(2), objects.get(1));
+
+		// Last object partially written is discarded
+		RandomAccessFile file = new RandomAccessFile(this.fileName, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+		assertEquals(2,
+				this.sut.readObjectsFromFile(this.fileName, ArrayList.class)
+						.size());
+	}
+
+	@Test
+	public void testAppendAfterDamagedObject() throws IOException {
+		for (int i = 1; i <= 3; i++) {
+			assertTrue(this.sut.appendObjectToFile(this.fileName,
+					createObject(i)));
+		}
+		long length = new File(this.fileName).length();
+		assertTrue(this.sut.readAppendedObjects(this.fileName,
+				ArrayList.class).isComplete());
+
+		// Damage last object
+		RandomAccessFile file = new RandomAccessFile(this.fileName, "rw");
+		file.seek(length - 1);
+		int lastByte = file.read();
+		file.seek(length - 1);
+		file.write(lastByte ^ 0xFF);
+		file.close();
+
+		AppendedObjects read = this.sut.readAppendedObjects(this.fileName,
+				ArrayList.class);
+		assertFalse(read.isComplete());
+		assertEquals(2, read.getObjects().size());
+
+		// Objects appended after damaged one can't be read until truncated
+		assertTrue(this.sut.truncateFile(this.fileName, read.getValidLength()));
+		assertTrue(this.sut.appendObjectToFile(this.fileName, createObject(4)));
+		read = this.sut.readAppendedObjects(this.fileName, ArrayList.class);
+		assertTrue(read.isComplete());
+		assertEquals(3, read.getObjects().size());
+		assertEquals(createObject(4), read.getObjects().get(2));
+	}
+
+	public static class StringsHolder {
+		List<String> values = new ArrayList<String>();
+	}
+}